@@ -14,6 +14,7 @@ package org.keyboardplaying.dailytasks.core;
 
 import org.keyboardplaying.dailytasks.core.events.ApplicationClosingListener;
 import org.keyboardplaying.dailytasks.core.managers.PreferencesManager;
+import org.keyboardplaying.dailytasks.core.managers.TaskManager;
 import org.keyboardplaying.dailytasks.messages.MessageBundle;
 import org.keyboardplaying.dailytasks.model.UIPreferences;
 import org.keyboardplaying.dailytasks.ui.events.ApplicationController;
@@ -85,6 +86,8 @@ public class Application implements ApplicationController {
     @Override
     public void terminate() {
         disposeAllWindows();
+        // the tasks are saved in the background, make sure the last modifications are not lost
+        TaskManager.getInstance().flush();
     }
 
     /**
@@ -50,7 +50,8 @@ public class ApplicationWindowGetter implements WindowGetter {
      */
     @Override
     public JFrame getMainWindow() {
-        TaskSet tasks = TaskManager.getInstance().getTasks();
+        // the window only displays the tasks as they are when it is opened
+        TaskSet tasks = TaskManager.getInstance().getTasks().snapshot();
         TaskCompletionListener taskStateListener = new TaskCompletionListener();
         JFrame window = WindowFactory.makeMainWindow(getUIPrefs().isAlwaysOnTop(), this, tasks, taskStateListener);
         taskStateListener.setMainWindow(window);
@@ -16,14 +16,43 @@ import org.keyboardplaying.dailytasks.core.managers.TaskManager;
 import org.keyboardplaying.dailytasks.model.Task;
 import org.keyboardplaying.dailytasks.ui.util.WindowUtils;
 
+import javax.swing.Timer;
+import java.util.List;
+
 /**
  * An implementation of the {@link TaskStateListener} which closes the application once all the tasks have been
  * completed.
+ * <p/>
+ * The application is closed after a short grace period, so that a mis-click on the last task can still be undone.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
 public class TaskCompletionListener extends TaskStateListener {
 
+    /**
+     * The delay before closing the application once all tasks have been completed, in milliseconds.
+     */
+    private static final int CLOSING_DELAY = 3_000;
+
+    /**
+     * The timer closing the application.
+     */
+    private final Timer closingTimer;
+
+    /**
+     * Creates a new instance.
+     */
+    public TaskCompletionListener() {
+        closingTimer = new Timer(CLOSING_DELAY, e -> {
+            // The completion is checked again in case a change was undone in the meantime.
+            if (TaskManager.getInstance().areAllTasksDone()) {
+                // Close the window
+                WindowUtils.triggerClosingEvent(getMainWindow());
+            }
+        });
+        closingTimer.setRepeats(false);
+    }
+
     /**
      * Closes the application if all tasks have been completed.
      *
@@ -31,10 +60,30 @@ public class TaskCompletionListener extends TaskStateListener {
      */
     @Override
     protected void processTaskAfterStateSaved(Task task) {
+        closeIfAllTasksDone();
+    }
+
+    /**
+     * Closes the application if all tasks have been completed.
+     * <p/>
+     * The completion is checked only once for the whole batch.
+     *
+     * @param tasks {@inheritDoc}
+     */
+    @Override
+    protected void processTasksAfterStatesSaved(List<Task> tasks) {
+        closeIfAllTasksDone();
+    }
+
+    /**
+     * Schedules the closing of the application if all tasks have been completed, or cancels it otherwise.
+     */
+    private void closeIfAllTasksDone() {
         // Is job done?
         if (TaskManager.getInstance().areAllTasksDone()) {
-            // Close the window
-            WindowUtils.triggerClosingEvent(getMainWindow());
+            closingTimer.restart();
+        } else {
+            closingTimer.stop();
         }
     }
 }
@@ -17,6 +17,8 @@ import org.keyboardplaying.dailytasks.model.Task;
 import org.keyboardplaying.dailytasks.ui.events.TaskStateChangeListener;
 
 import java.awt.*;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * A class to persist the tasks' states and provide appropriate processing on their state changes.
@@ -57,7 +59,7 @@ public abstract class TaskStateListener implements TaskStateChangeListener {
      * @param done   {@inheritDoc}
      */
     @Override
-    public void updateTaskState(int taskId, boolean done) {
+    public void updateTaskState(long taskId, boolean done) {
         // Update task
         Task updTask = TaskManager.getInstance().updateTask(taskId, done);
 
@@ -65,10 +67,68 @@ public abstract class TaskStateListener implements TaskStateChangeListener {
         processTaskAfterStateSaved(updTask);
     }
 
+    /**
+     * Updates the corresponding tasks at once, so that they are saved only once.
+     * <p/>
+     * After saving the tasks' states, an additional processing can be performed.
+     *
+     * @param taskIds {@inheritDoc}
+     * @param done    {@inheritDoc}
+     */
+    @Override
+    public void updateTaskStates(Collection<Long> taskIds, boolean done) {
+        // Update tasks
+        List<Task> updTasks = TaskManager.getInstance().updateTasks(taskIds, done);
+
+        // Additional processing
+        processTasksAfterStatesSaved(updTasks);
+    }
+
+    /**
+     * Undoes the latest state change, so that only the restored states are saved.
+     * <p/>
+     * After saving the tasks' states, an additional processing can be performed.
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public List<Task> undo() {
+        List<Task> updTasks = TaskManager.getInstance().undo();
+        processTasksAfterStatesSaved(updTasks);
+        return updTasks;
+    }
+
+    /**
+     * Redoes the latest undone state change, so that only the restored states are saved.
+     * <p/>
+     * After saving the tasks' states, an additional processing can be performed.
+     *
+     * @return {@inheritDoc}
+     */
+    @Override
+    public List<Task> redo() {
+        List<Task> updTasks = TaskManager.getInstance().redo();
+        processTasksAfterStatesSaved(updTasks);
+        return updTasks;
+    }
+
     /**
      * Implementations should provide additional processing on the task which was just updated after it has been saved.
      *
      * @param task the task which were just updated
      */
     protected abstract void processTaskAfterStateSaved(Task task);
+
+    /**
+     * Provides additional processing on the tasks which were just updated at once after they have been saved.
+     * <p/>
+     * The default implementation calls {@link #processTaskAfterStateSaved(Task)} for each task.
+     *
+     * @param tasks the tasks which were just updated
+     */
+    protected void processTasksAfterStatesSaved(List<Task> tasks) {
+        for (Task task : tasks) {
+            processTaskAfterStateSaved(task);
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import java.time.Duration;
+
+/**
+ * The completion statistics of a task or of a whole list.
+ * <p/>
+ * A task which repeats is expected to be finished once per day since it was added, and a one-off task once. The
+ * completion rate is the share of these expected completions which happened.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class CompletionStatistics {
+
+    /**
+     * The number of times the tasks were finished.
+     */
+    private final int completions;
+    /**
+     * The number of expected completions which happened.
+     */
+    private final long achieved;
+    /**
+     * The number of expected completions.
+     */
+    private final long expected;
+    /**
+     * The number of consecutive days, up to today or yesterday, on which a repeating task was finished.
+     */
+    private final int currentStreak;
+    /**
+     * The largest number of consecutive days on which a repeating task was finished.
+     */
+    private final int longestStreak;
+    /**
+     * The total time the tasks remained unfinished before being finished, in milliseconds.
+     */
+    private final long timeToDone;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param completions   the number of times the tasks were finished
+     * @param achieved      the number of expected completions which happened
+     * @param expected      the number of expected completions
+     * @param currentStreak the number of consecutive days, up to today or yesterday, on which a task was finished
+     * @param longestStreak the largest number of consecutive days on which a task was finished
+     * @param timeToDone    the total time the tasks remained unfinished before being finished, in milliseconds
+     */
+    CompletionStatistics(int completions, long achieved, long expected, int currentStreak, int longestStreak,
+            long timeToDone) {
+        this.completions = completions;
+        this.achieved = achieved;
+        this.expected = expected;
+        this.currentStreak = currentStreak;
+        this.longestStreak = longestStreak;
+        this.timeToDone = timeToDone;
+    }
+
+    /**
+     * Returns the number of times the tasks were finished.
+     *
+     * @return the number of completions
+     */
+    public int getCompletions() {
+        return completions;
+    }
+
+    /**
+     * Returns the share of the expected completions which happened.
+     *
+     * @return the completion rate, between {@code 0} and {@code 1}
+     */
+    public double getCompletionRate() {
+        return expected == 0 ? 0 : (double) achieved / expected;
+    }
+
+    /**
+     * Returns the number of consecutive days, up to today or yesterday, on which the task was finished.
+     * <p/>
+     * For a list, this is the best current streak of its tasks. One-off tasks have no streak.
+     *
+     * @return the current streak, in days
+     */
+    public int getCurrentStreak() {
+        return currentStreak;
+    }
+
+    /**
+     * Returns the largest number of consecutive days on which the task was finished.
+     * <p/>
+     * For a list, this is the longest streak of its tasks. One-off tasks have no streak.
+     *
+     * @return the longest streak, in days
+     */
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+
+    /**
+     * Returns the average time the tasks remained unfinished before being finished.
+     * <p/>
+     * A repeating task is considered unfinished from the beginning of the day, or from the time it was added or
+     * reopened if later.
+     *
+     * @return the average time, or {@code null} if the tasks were never finished
+     */
+    public Duration getAverageTimeToDone() {
+        return completions == 0 ? null : Duration.ofMillis(timeToDone / completions);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%d completions, %.0f%% rate, streak %d (longest %d), average %s", completions,
+                100 * getCompletionRate(), currentStreak, longestStreak, getAverageTimeToDone());
+    }
+}
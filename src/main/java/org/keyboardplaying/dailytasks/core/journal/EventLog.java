@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.util.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only log of {@link TaskEvent}s, split into segment files.
+ * <p/>
+ * Each event is given a sequence number, starting from {@code 1}. A segment is named after the sequence number of its
+ * first event, and holds each event as its length followed by its serialized form. A new segment is started each
+ * time the log is {@link #roll() rolled}, so that the events following a snapshot can be read without going through
+ * the older segments, which are {@link #deleteUpTo(long) deleted} once the snapshot is complete.
+ * <p/>
+ * An event which was partially written, because the application stopped while appending it, is dropped when the log
+ * is opened. Whether the appended events are forced to the storage device is decided by a {@link SyncPolicy}, which
+ * may have the events left unforced by their append forced later on by a background thread.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class EventLog implements Closeable {
+
+    /**
+     * The prefix of the name of the segment files.
+     */
+    private static final String PREFIX = "events-";
+    /**
+     * The extension of the segment files.
+     */
+    private static final String SUFFIX = ".log";
+
+    /**
+     * The thread forcing the events which were left unforced by their append, shared by all logs.
+     */
+    private static final ScheduledExecutorService SYNCER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "daily-tasks-syncer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The directory containing the segments.
+     */
+    private final Path directory;
+    /**
+     * The policy telling when the events are forced to the device.
+     */
+    private final SyncPolicy syncPolicy;
+    /**
+     * The segments, indexed by the sequence number of their first event.
+     */
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    /**
+     * The sequence number of the last appended event, or {@code 0} if none.
+     */
+    private long lastSequence;
+    /**
+     * The channel appending to the last segment, or {@code null} if the next append starts a new segment.
+     */
+    private FileChannel channel;
+    /**
+     * The time the last segment was last forced to the device, as given by {@link System#nanoTime()}.
+     */
+    private long lastSync;
+    /**
+     * Whether events were appended to the last segment since it was last forced to the device.
+     */
+    private boolean unsynced;
+    /**
+     * Whether a force of the unforced events is scheduled.
+     */
+    private boolean syncScheduled;
+
+    /**
+     * Opens the log of a directory, dropping the event which may have been partially written at the end.
+     *
+     * @param directory  the directory containing the segments
+     * @param syncPolicy the policy telling when the events are forced to the device
+     * @throws IOException if the segments cannot be read
+     */
+    EventLog(Path directory, SyncPolicy syncPolicy) throws IOException {
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())),
+                            file);
+                } catch (NumberFormatException e) {
+                    Logger.getLogger(getClass().getName()).warning("Ignoring unexpected file in journal: " + file);
+                }
+            }
+        }
+
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        if (last != null) {
+            lastSequence = last.getKey() - 1 + recover(last.getValue());
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last appended event.
+     *
+     * @return the sequence number, or {@code 0} if the log is empty
+     */
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Makes the next event start from a sequence number, if the log is behind it.
+     * <p/>
+     * This happens when the segments were removed while a snapshot of a later state was kept.
+     *
+     * @param sequence the sequence number of the last event which is known to have been recorded
+     * @throws IOException if the current segment cannot be closed
+     */
+    synchronized void skipTo(long sequence) throws IOException {
+        if (sequence > lastSequence) {
+            roll();
+            lastSequence = sequence;
+        }
+    }
+
+    /**
+     * Appends events to the log.
+     * <p/>
+     * The events are written to the file system before this method returns, and forced to the device if the policy
+     * of the log requires it.
+     * <p/>
+     * The events are serialized first and written at once. If they cannot all be written, the segment is truncated
+     * back to its previous length, so that no event is left in the log without a sequence number.
+     *
+     * @param events the events to append
+     * @return the sequence number of the last appended event
+     * @throws IOException            if the events cannot be written
+     * @throws SerializationException if an event cannot be serialized
+     */
+    synchronized long append(TaskEvent... events) throws IOException, SerializationException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(batch);
+        for (TaskEvent event : events) {
+            byte[] serialized = Serializer.serialize(event);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+        }
+
+        if (channel == null) {
+            Path segment = directory.resolve(String.format("%s%020d%s", PREFIX, lastSequence + 1, SUFFIX));
+            channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            segments.put(lastSequence + 1, segment);
+            lastSync = System.nanoTime();
+        }
+        long length = channel.size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            long now = System.nanoTime();
+            if (syncPolicy.isSyncDue(lastSync, now)) {
+                channel.force(false);
+                lastSync = now;
+                unsynced = false;
+            } else {
+                unsynced = true;
+                scheduleSync(now);
+            }
+        } catch (IOException e) {
+            discard(length, e);
+            throw e;
+        }
+        lastSequence += events.length;
+        return lastSequence;
+    }
+
+    /**
+     * Schedules a force of the events which were not forced when appended, once the policy of the log requires it.
+     *
+     * @param now the current time, as given by {@link System#nanoTime()}
+     */
+    private void scheduleSync(long now) {
+        long delay = syncPolicy.getSyncDelay(lastSync, now);
+        if (delay >= 0 && !syncScheduled) {
+            syncScheduled = true;
+            SYNCER.schedule(this::syncPending, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Forces the events which were not forced when appended to the device, on the thread of the scheduled forces.
+     */
+    private synchronized void syncPending() {
+        syncScheduled = false;
+        if (channel != null && unsynced) {
+            try {
+                channel.force(false);
+                lastSync = System.nanoTime();
+                unsynced = false;
+            } catch (IOException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "The events could not be forced", e);
+            }
+        }
+    }
+
+    /**
+     * Tells whether events were appended to the current segment since it was last forced to the device.
+     *
+     * @return {@code true} if some events were not forced yet
+     */
+    synchronized boolean hasUnsyncedEvents() {
+        return channel != null && unsynced;
+    }
+
+    /**
+     * Truncates the current segment back to the length it had before a failed append, and closes it.
+     * <p/>
+     * The next event starts a new segment, or the same one if it no longer holds any event.
+     *
+     * @param length the length of the segment before the append
+     * @param cause  the failure of the append, to which the failures of this method are added
+     */
+    private void discard(long length, IOException cause) {
+        try {
+            channel.truncate(length);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+        channel = null;
+        if (length == 0) {
+            segments.remove(lastSequence + 1);
+        }
+    }
+
+    /**
+     * Closes the current segment, so that the next event starts a new one.
+     * <p/>
+     * The segment is forced to the device first, unless the policy of the log never forces it.
+     *
+     * @throws IOException if the segment cannot be closed
+     */
+    synchronized void roll() throws IOException {
+        if (channel != null) {
+            try {
+                if (syncPolicy.isSyncedOnClose()) {
+                    channel.force(false);
+                }
+            } finally {
+                channel.close();
+                channel = null;
+                unsynced = false;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments whose events all precede a sequence number, once a snapshot including them was written.
+     * <p/>
+     * The segment being appended to is kept. A segment which cannot be deleted is logged and kept, and deleted with
+     * the next ones.
+     *
+     * @param sequence the sequence number of the last event included in the snapshot
+     */
+    synchronized void deleteUpTo(long sequence) {
+        Iterator<Map.Entry<Long, Path>> iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Path> segment = iterator.next();
+            Long next = segments.higherKey(segment.getKey());
+            boolean covered = next == null ? channel == null && lastSequence <= sequence : next <= sequence + 1;
+            if (!covered) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(segment.getValue());
+                iterator.remove();
+            } catch (IOException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "Could not delete " + segment.getValue(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the events following a sequence number.
+     * <p/>
+     * Only the segments containing such events are read. The segments which were deleted are not read again.
+     *
+     * @param after the sequence number after which to read
+     * @return the events, in the order they were appended
+     * @throws IOException              if a segment cannot be read
+     * @throws DeserializationException if an event cannot be deserialized
+     */
+    synchronized List<TaskEvent> read(long after) throws IOException, DeserializationException {
+        List<TaskEvent> events = new ArrayList<>();
+        Long first = segments.floorKey(after + 1);
+        for (Map.Entry<Long, Path> segment : segments.tailMap(first == null ? 0L : first, true).entrySet()) {
+            long sequence = segment.getKey();
+            long remaining = Files.size(segment.getValue());
+            try (DataInputStream in = open(segment.getValue())) {
+                byte[] serialized;
+                while ((serialized = readRecord(in, remaining)) != null) {
+                    remaining -= Integer.BYTES + serialized.length;
+                    if (sequence++ > after) {
+                        events.add(Serializer.deserialize(serialized));
+                    }
+                }
+            }
+        }
+        return events;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        roll();
+    }
+
+    /**
+     * Counts the complete events of a segment, truncating the segment after the last one.
+     *
+     * @param segment the segment
+     * @return the number of complete events
+     * @throws IOException if the segment cannot be read or truncated
+     */
+    private static long recover(Path segment) throws IOException {
+        long count = 0;
+        long length = 0;
+        long size = Files.size(segment);
+        try (DataInputStream in = open(segment)) {
+            byte[] record;
+            while ((record = readRecord(in, size - length)) != null) {
+                count++;
+                length += Integer.BYTES + record.length;
+            }
+        }
+        if (length < size) {
+            Logger.getLogger(EventLog.class.getName()).warning("Dropping a partially written event from " + segment);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Opens a segment for reading.
+     *
+     * @param segment the segment
+     * @return the stream
+     * @throws IOException if the segment cannot be opened
+     */
+    private static DataInputStream open(Path segment) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)));
+    }
+
+    /**
+     * Reads the next complete record of a segment.
+     * <p/>
+     * A length which exceeds the bytes left in the segment can only have been partially written or corrupted, and is
+     * treated as the end of the segment rather than allocated.
+     *
+     * @param in        the segment
+     * @param remaining the number of bytes left in the segment
+     * @return the serialized event, or {@code null} if the segment has no complete record left
+     * @throws IOException if the segment cannot be read
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > remaining - Integer.BYTES) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            return record;
+        } catch (EOFException e) {
+            // end of the segment, or partially written record
+            return null;
+        }
+    }
+}
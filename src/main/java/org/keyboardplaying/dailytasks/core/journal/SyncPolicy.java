@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Tells when the events appended to an {@link EventLog} are forced to the storage device.
+ * <p/>
+ * The events are always written to the file system before being acknowledged. Forcing them protects them against a
+ * crash of the operating system or a power loss as well, at the cost of a synchronous write to the device.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public enum SyncPolicy {
+
+    /**
+     * The events are forced to the device each time some are appended.
+     */
+    ALWAYS {
+        @Override
+        boolean isSyncDue(long lastSync, long now) {
+            return true;
+        }
+    },
+    /**
+     * The events are forced to the device when some are appended at least {@value #INTERVAL_MILLIS} milliseconds
+     * after the previous force, and when a segment is closed. The events which were not forced when appended are
+     * forced in the background once the interval elapsed, even if no other event is appended.
+     * <p/>
+     * At most the events of the last interval can be lost.
+     */
+    INTERVAL {
+        @Override
+        boolean isSyncDue(long lastSync, long now) {
+            return now - lastSync >= TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+        }
+
+        @Override
+        long getSyncDelay(long lastSync, long now) {
+            return Math.max(0, lastSync + TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS) - now);
+        }
+    },
+    /**
+     * The events are never forced, and are written to the device whenever the operating system decides to.
+     */
+    NEVER {
+        @Override
+        boolean isSyncDue(long lastSync, long now) {
+            return false;
+        }
+
+        @Override
+        boolean isSyncedOnClose() {
+            return false;
+        }
+    };
+
+    /**
+     * The system property which can be set to the name of the policy to use.
+     */
+    public static final String SYNC_PROPERTY = "daily-tasks.journal.sync";
+
+    /**
+     * The minimal time between two forces of the {@link #INTERVAL} policy, in milliseconds.
+     */
+    public static final long INTERVAL_MILLIS = 1_000;
+
+    /**
+     * Tells whether appended events should be forced to the device.
+     *
+     * @param lastSync the time of the previous force, as given by {@link System#nanoTime()}
+     * @param now      the current time, as given by {@link System#nanoTime()}
+     * @return {@code true} if the events should be forced
+     */
+    abstract boolean isSyncDue(long lastSync, long now);
+
+    /**
+     * Returns the delay after which the events which were not forced when appended should be forced, even if no other
+     * event is appended.
+     *
+     * @param lastSync the time of the previous force, as given by {@link System#nanoTime()}
+     * @param now      the current time, as given by {@link System#nanoTime()}
+     * @return the delay in nanoseconds, or a negative value if the events are not forced until the next due append
+     */
+    long getSyncDelay(long lastSync, long now) {
+        return -1;
+    }
+
+    /**
+     * Tells whether a segment should be forced to the device when it is closed.
+     *
+     * @return {@code true} if the segment should be forced
+     */
+    boolean isSyncedOnClose() {
+        return true;
+    }
+
+    /**
+     * Returns the policy named by the {@value #SYNC_PROPERTY} system property, or {@link #ALWAYS} if the property is
+     * not set or is not the name of a policy.
+     *
+     * @return the policy
+     */
+    public static SyncPolicy getDefault() {
+        String name = System.getProperty(SYNC_PROPERTY);
+        if (name != null) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                Logger.getLogger(SyncPolicy.class.getName()).warning("Unknown sync policy: " + name);
+            }
+        }
+        return ALWAYS;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.util.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An append-only, compressed store of the tasks which were finished long ago.
+ * <p/>
+ * The tasks are archived by batches. Each batch is compressed as a GZIP stream of the serialized tasks, and appended
+ * to the archive file as its length followed by the stream, so that archiving never rewrites what was archived
+ * before. A batch which was partially written, because the application stopped while appending it, is dropped when
+ * the archive is opened.
+ * <p/>
+ * The archive is not kept in memory: it is read from the file system each time it is searched.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TaskArchive {
+
+    /**
+     * The system property which can be set to change the number of days after which finished tasks are archived.
+     */
+    public static final String AGE_PROPERTY = "daily-tasks.archive.days";
+
+    /**
+     * The default number of days after which finished tasks are archived.
+     */
+    public static final int DEFAULT_AGE_DAYS = 30;
+
+    /**
+     * The name of the archive file.
+     */
+    private static final String ARCHIVE = "archive.log";
+    /**
+     * The maximal length of a serialized task, beyond which the length of a record is considered corrupted.
+     */
+    private static final int MAX_TASK_LENGTH = 1 << 20;
+
+    /**
+     * The archive file.
+     */
+    private final Path file;
+
+    /**
+     * Opens the archive of a directory, dropping the batch which may have been partially written at the end.
+     *
+     * @param directory the directory of the archive, which must exist
+     * @throws IOException if the archive cannot be read or repaired
+     */
+    public TaskArchive(Path directory) throws IOException {
+        this.file = directory.resolve(ARCHIVE);
+        if (Files.exists(file)) {
+            recover();
+        }
+    }
+
+    /**
+     * Returns the age after which finished tasks should be archived.
+     * <p/>
+     * This is {@value #DEFAULT_AGE_DAYS} days, unless the {@value #AGE_PROPERTY} system property is set.
+     *
+     * @return the age
+     */
+    public static Duration getDefaultAge() {
+        return Duration.ofDays(Long.getLong(AGE_PROPERTY, DEFAULT_AGE_DAYS));
+    }
+
+    /**
+     * Appends tasks to the archive.
+     * <p/>
+     * The tasks are forced to the storage device before this method returns, so that their removal can then be
+     * recorded without risking to lose them. If they cannot all be written, the archive is truncated back to its
+     * previous length.
+     *
+     * @param tasks the tasks to archive
+     * @throws IOException            if the tasks cannot be written
+     * @throws SerializationException if a task cannot be serialized
+     */
+    public synchronized void append(Collection<Task> tasks) throws IOException, SerializationException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(batch))) {
+            for (Task task : tasks) {
+                byte[] serialized = Serializer.serialize(task);
+                out.writeInt(serialized.length);
+                out.write(serialized);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + batch.size());
+        buffer.putInt(batch.size()).put(batch.toByteArray()).flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            long length = channel.size();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(length);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the archived tasks whose label contains some text, ignoring the case.
+     *
+     * @param text the text to look for
+     * @return the matching tasks, in the order they were archived
+     * @throws IOException              if the archive cannot be read
+     * @throws DeserializationException if a task cannot be deserialized
+     */
+    public List<Task> search(String text) throws IOException, DeserializationException {
+        final String lowerCase = text.toLowerCase(Locale.ROOT);
+        return search(task -> task.getTodo() != null && task.getTodo().toLowerCase(Locale.ROOT).contains(lowerCase));
+    }
+
+    /**
+     * Returns the archived tasks matching a condition.
+     * <p/>
+     * The archive is decompressed one batch at a time, and only the matching tasks are retained.
+     *
+     * @param condition the condition
+     * @return the matching tasks, in the order they were archived
+     * @throws IOException              if the archive cannot be read
+     * @throws DeserializationException if a task cannot be deserialized
+     */
+    public synchronized List<Task> search(Predicate<? super Task> condition) throws IOException,
+            DeserializationException {
+        List<Task> result = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return result;
+        }
+        long remaining = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] batch;
+            while ((batch = readRecord(in, remaining)) != null) {
+                remaining -= Integer.BYTES + batch.length;
+                try (DataInputStream tasks = new DataInputStream(
+                        new GZIPInputStream(new ByteArrayInputStream(batch)))) {
+                    byte[] serialized;
+                    while ((serialized = readRecord(tasks, MAX_TASK_LENGTH + Integer.BYTES)) != null) {
+                        Task task = Serializer.deserialize(serialized);
+                        if (condition.test(task)) {
+                            result.add(task);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Truncates the archive after its last complete batch.
+     *
+     * @throws IOException if the archive cannot be read or truncated
+     */
+    private void recover() throws IOException {
+        long length = 0;
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] batch;
+            while ((batch = readRecord(in, size - length)) != null) {
+                length += Integer.BYTES + batch.length;
+            }
+        }
+        if (length < size) {
+            Logger.getLogger(getClass().getName()).warning("Dropping a partially written batch from " + file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    /**
+     * Reads the next complete record of a stream, made of its length followed by its content.
+     * <p/>
+     * A length which exceeds the bytes left in the stream can only have been partially written or corrupted, and is
+     * treated as the end of the stream rather than allocated.
+     *
+     * @param in        the stream
+     * @param remaining the number of bytes left in the stream, or an upper bound of the length of a record
+     * @return the record, or {@code null} if the stream has no complete record left
+     * @throws IOException if the stream cannot be read
+     */
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > remaining - Integer.BYTES) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            return record;
+        } catch (EOFException e) {
+            // end of the stream, or partially written record
+            return null;
+        }
+    }
+}
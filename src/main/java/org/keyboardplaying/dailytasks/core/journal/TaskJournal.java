@@ -0,0 +1,438 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+import org.keyboardplaying.dailytasks.util.Serializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists a {@link TaskSet} as a snapshot followed by the log of the {@link TaskEvent}s recorded since.
+ * <p/>
+ * Recording a modification appends its events to the {@link EventLog}, whatever the size of the set, and forces them
+ * to the storage device as its {@link SyncPolicy} requires. Once enough events were recorded since the last snapshot,
+ * the log is rolled to a new segment and a new snapshot is written in the background, from a
+ * {@link TaskSet#snapshot() snapshot} of the set, so that recording a modification never waits for the whole set to
+ * be written. At startup, the set is rebuilt from the snapshot and the events which follow it.
+ * <p/>
+ * Once a snapshot is complete, the segments holding the events it includes are deleted, so that the journal does not
+ * grow with the number of recorded events.
+ * <p/>
+ * The {@link TaskStatistics} of the tasks are updated as the events are recorded, and saved along with each snapshot.
+ * If they were not saved with the latest snapshot, they are rebuilt from the events recorded since they were.
+ * <p/>
+ * The snapshot is written to a temporary file first, forced to the storage device and then moved over the previous
+ * one, so that a snapshot is either complete or not used.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TaskJournal implements Closeable {
+
+    /**
+     * The system property which can be set to store the journal in another directory than the default one.
+     */
+    public static final String DATA_DIR_PROPERTY = "daily-tasks.data.dir";
+
+    /**
+     * The default number of events recorded between two snapshots.
+     */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1_000;
+
+    /**
+     * The name of the snapshot file.
+     */
+    private static final String SNAPSHOT = "snapshot.ser";
+    /**
+     * The name of the file the snapshot is written to before replacing the previous one.
+     */
+    private static final String SNAPSHOT_TMP = "snapshot.tmp";
+    /**
+     * The name of the statistics file.
+     */
+    private static final String STATISTICS = "stats.ser";
+    /**
+     * The name of the file the statistics are written to before replacing the previous ones.
+     */
+    private static final String STATISTICS_TMP = "stats.tmp";
+
+    /**
+     * The thread writing the snapshots in the background, shared by all journals.
+     */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "daily-tasks-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The directory of the journal.
+     */
+    private final Path directory;
+    /**
+     * The log of events.
+     */
+    private final EventLog log;
+    /**
+     * The number of events recorded between two snapshots.
+     */
+    private final int snapshotInterval;
+    /**
+     * The sequence number of the last event included in the snapshot.
+     */
+    private long snapshotSequence;
+    /**
+     * The snapshot being written in the background, or {@code null} if none.
+     */
+    private Future<?> compaction;
+    /**
+     * The sequence number of the last event included in the snapshot being written in the background.
+     */
+    private long compactionSequence;
+    /**
+     * The statistics of the tasks.
+     */
+    private TaskStatistics statistics = new TaskStatistics();
+
+    /**
+     * Opens the journal of a directory, creating the directory if needed.
+     *
+     * @param directory the directory of the journal
+     * @throws IOException if the directory cannot be created or read
+     */
+    public TaskJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens the journal of a directory, creating the directory if needed.
+     *
+     * @param directory        the directory of the journal
+     * @param snapshotInterval the number of events recorded between two snapshots
+     * @throws IOException if the directory cannot be created or read
+     */
+    public TaskJournal(Path directory, int snapshotInterval) throws IOException {
+        this(directory, snapshotInterval, SyncPolicy.getDefault());
+    }
+
+    /**
+     * Opens the journal of a directory, creating the directory if needed.
+     *
+     * @param directory        the directory of the journal
+     * @param snapshotInterval the number of events recorded between two snapshots
+     * @param syncPolicy       the policy telling when the recorded events are forced to the storage device
+     * @throws IOException if the directory cannot be created or read
+     */
+    public TaskJournal(Path directory, int snapshotInterval, SyncPolicy syncPolicy) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.log = new EventLog(directory, syncPolicy);
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Returns the directory where the journal of the application is stored.
+     * <p/>
+     * This is the {@code .daily-tasks} directory of the home of the user, unless the {@value #DATA_DIR_PROPERTY}
+     * system property is set.
+     *
+     * @return the directory
+     */
+    public static Path getDefaultDirectory() {
+        String directory = System.getProperty(DATA_DIR_PROPERTY);
+        return directory == null ? Paths.get(System.getProperty("user.home"), ".daily-tasks") : Paths.get(directory);
+    }
+
+    /**
+     * Rebuilds the set from the snapshot and the events recorded since.
+     * <p/>
+     * The events which cannot be applied, because their task cannot be found, are skipped.
+     *
+     * @return the set, or {@code null} if nothing was recorded yet
+     * @throws IOException              if the journal cannot be read
+     * @throws DeserializationException if the snapshot or an event cannot be deserialized
+     */
+    public synchronized TaskSet load() throws IOException, DeserializationException {
+        awaitCompaction();
+        TaskSet tasks = null;
+        snapshotSequence = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                snapshotSequence = in.readLong();
+                tasks = Serializer.readFrom(in);
+            }
+            log.skipTo(snapshotSequence);
+        }
+
+        List<TaskEvent> events = log.read(snapshotSequence);
+        loadStatistics(events);
+        if (tasks == null) {
+            if (events.isEmpty()) {
+                return null;
+            }
+            tasks = new TaskSet();
+        }
+        for (TaskEvent event : events) {
+            try {
+                event.applyTo(tasks);
+            } catch (TaskNotFoundException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "Skipping event " + event, e);
+            }
+        }
+        statistics.track(tasks, System.currentTimeMillis());
+        return tasks;
+    }
+
+    /**
+     * Loads the statistics saved with the snapshot, and updates them with the events recorded since.
+     * <p/>
+     * If the statistics were saved after the snapshot, they are updated with the events recorded since they were. If
+     * they were saved before the snapshot, or not at all, the events preceding the snapshot may have been deleted
+     * from the log: they are only updated with the events recorded since the snapshot.
+     *
+     * @param events the events recorded since the snapshot
+     * @throws IOException              if the journal cannot be read
+     * @throws DeserializationException if the statistics or an event cannot be deserialized
+     */
+    private void loadStatistics(List<TaskEvent> events) throws IOException, DeserializationException {
+        statistics = null;
+        long sequence = 0;
+        Path file = directory.resolve(STATISTICS);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                sequence = in.readLong();
+                statistics = Serializer.readFrom(in);
+            } catch (DeserializationException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "Rebuilding the statistics", e);
+                statistics = null;
+            }
+        }
+        if (statistics == null) {
+            statistics = new TaskStatistics();
+        } else if (sequence < snapshotSequence) {
+            Logger.getLogger(getClass().getName()).warning("The statistics were saved before the snapshot");
+        }
+
+        for (TaskEvent event : sequence <= snapshotSequence ? events : log.read(sequence)) {
+            statistics.apply(event);
+        }
+    }
+
+    /**
+     * Records modifications made to a set, starting a snapshot of the set in the background if enough events were
+     * recorded since the last one.
+     * <p/>
+     * If the previous snapshot is still being written by then, this method waits for it to be complete. If the set is
+     * not supplied, no snapshot is started, and the next one starts with the next supplied set.
+     *
+     * @param tasks  the modified set, as it is after the modifications, or {@code null} to only append the events
+     * @param events the events recording the modifications
+     * @throws IOException            if the journal cannot be written
+     * @throws SerializationException if an event or the snapshot cannot be serialized
+     */
+    public synchronized void record(TaskSet tasks, TaskEvent... events) throws IOException, SerializationException {
+        if (events.length == 0) {
+            return;
+        }
+        log.append(events);
+        for (TaskEvent event : events) {
+            statistics.apply(event);
+        }
+        if (compaction != null && compaction.isDone()) {
+            awaitCompaction();
+        }
+        long sequence = log.getLastSequence();
+        if (tasks != null
+                && sequence - (compaction == null ? snapshotSequence : compactionSequence) >= snapshotInterval) {
+            awaitCompaction();
+            compact(tasks, sequence);
+        }
+    }
+
+    /**
+     * Starts writing a snapshot of a set in the background.
+     * <p/>
+     * The statistics are saved first, and the log is rolled so that the snapshot replaces whole segments. The
+     * snapshot only becomes the one the set is loaded from once it is complete; if it cannot be written, a new one is
+     * started with the next recorded events.
+     *
+     * @param tasks    the set, as it is after the last recorded events
+     * @param sequence the sequence number of the last recorded event
+     * @throws IOException            if the statistics cannot be written
+     * @throws SerializationException if the statistics cannot be serialized
+     */
+    private void compact(TaskSet tasks, final long sequence) throws IOException, SerializationException {
+        write(STATISTICS, STATISTICS_TMP, sequence, statistics);
+        final TaskSet image = tasks.snapshot();
+        log.roll();
+
+        compactionSequence = sequence;
+        compaction = COMPACTOR.submit(() -> {
+            write(SNAPSHOT, SNAPSHOT_TMP, sequence, image);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the snapshot being written in the background, if any, to be complete.
+     * <p/>
+     * The segments included in a complete snapshot are deleted. A snapshot which could not be written is logged and
+     * ignored, so that the set is still loaded from the previous one.
+     *
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    private void awaitCompaction() throws InterruptedIOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+            snapshotSequence = compactionSequence;
+            log.deleteUpTo(snapshotSequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the snapshot");
+        } catch (ExecutionException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, "Could not write the snapshot", e.getCause());
+        }
+        compaction = null;
+    }
+
+    /**
+     * Writes a snapshot of a set, which replaces the previous snapshot and the events recorded until now.
+     * <p/>
+     * Unlike the snapshots taken as events are recorded, this one is complete when this method returns.
+     * <p/>
+     * The statistics are saved along with the snapshot.
+     *
+     * @param tasks the set, as it is after the last recorded events
+     * @throws IOException            if the snapshot cannot be written
+     * @throws SerializationException if the set cannot be serialized
+     */
+    public synchronized void snapshot(TaskSet tasks) throws IOException, SerializationException {
+        awaitCompaction();
+        long sequence = log.getLastSequence();
+        statistics.track(tasks, System.currentTimeMillis());
+        write(STATISTICS, STATISTICS_TMP, sequence, statistics);
+        write(SNAPSHOT, SNAPSHOT_TMP, sequence, tasks.snapshot());
+
+        snapshotSequence = sequence;
+        log.roll();
+        log.deleteUpTo(snapshotSequence);
+    }
+
+    /**
+     * Returns the number of events recorded between two snapshots.
+     *
+     * @return the number of events
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Returns the statistics of the tasks, as of the last recorded event.
+     *
+     * @return the statistics
+     */
+    public synchronized TaskStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Writes a file as a sequence number followed by a serialized object, replacing the previous version of the file.
+     * <p/>
+     * The file is written to a temporary file first, which is forced to the device before being moved, so that the
+     * file is either complete or not used, even if the system stops. The object is streamed to the file, so that no
+     * serialized copy of it is held in memory.
+     *
+     * @param name     the name of the file
+     * @param tmpName  the name of the temporary file
+     * @param sequence the sequence number of the last event the data includes
+     * @param object   the object to serialize
+     * @throws IOException            if the file cannot be written
+     * @throws SerializationException if the object cannot be serialized
+     */
+    private void write(String name, String tmpName, long sequence, Serializable object) throws IOException,
+            SerializationException {
+        Path tmp = directory.resolve(tmpName);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeLong(sequence);
+            Serializer.writeTo(object, out);
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory();
+    }
+
+    /**
+     * Forces the entries of the directory to the device, so that a moved file is not lost if the system stops.
+     * <p/>
+     * Directories cannot be opened on every platform, in which case this method does nothing.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getName()).log(Level.FINE, "Could not force the directory", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            awaitCompaction();
+        } finally {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A named list of tasks, loaded from its {@link TaskJournal}.
+ * <p/>
+ * The tasks of the list which were finished long ago can be moved to its {@link TaskArchive}, so that the set and its
+ * snapshots do not grow with them.
+ * <p/>
+ * Instances are provided by a {@link TaskListRegistry}, which closes their journal once they are evicted.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class TaskList {
+
+    /**
+     * The name of the list.
+     */
+    private final String name;
+    /**
+     * The tasks of the list.
+     */
+    private final TaskSet tasks;
+    /**
+     * The journal the modifications of the list are recorded to.
+     */
+    private final TaskJournal journal;
+    /**
+     * The archive of the tasks which were finished long ago.
+     */
+    private final TaskArchive archive;
+    /**
+     * The tasks removed from the list which could not be written to the archive yet.
+     */
+    private final List<Task> unarchived = new ArrayList<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param name    the name of the list
+     * @param tasks   the tasks of the list
+     * @param journal the journal the modifications of the list are recorded to
+     * @param archive the archive of the tasks which were finished long ago
+     */
+    TaskList(String name, TaskSet tasks, TaskJournal journal, TaskArchive archive) {
+        this.name = name;
+        this.tasks = tasks;
+        this.journal = journal;
+        this.archive = archive;
+    }
+
+    /**
+     * Returns the name of the list.
+     *
+     * @return the name of the list
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the tasks of the list.
+     *
+     * @return the tasks of the list
+     */
+    public TaskSet getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Records modifications of the tasks of the list, from the thread modifying them.
+     * <p/>
+     * A snapshot of the tasks of the list may be taken, so that this method must not be called while they are
+     * modified.
+     *
+     * @param events the events recording the modifications
+     * @throws IOException            if the events cannot be written
+     * @throws SerializationException if an event cannot be serialized
+     * @see TaskJournal#record(TaskSet, TaskEvent...)
+     */
+    public synchronized void recordLive(TaskEvent... events) throws IOException, SerializationException {
+        // the tasks which could not be archived yet are not in the set anymore
+        journal.record(unarchived.isEmpty() ? tasks : null, events);
+    }
+
+    /**
+     * Records modifications of the tasks of the list, from another thread than the one modifying them.
+     * <p/>
+     * The tasks of the list are not read: a snapshot of the journal can only be taken from the supplied one.
+     *
+     * @param snapshot a {@link TaskSet#snapshot() snapshot} of the tasks, as they are after the modifications, or
+     *                 {@code null} to only append the events
+     * @param events   the events recording the modifications
+     * @throws IOException            if the events cannot be written
+     * @throws SerializationException if an event cannot be serialized
+     * @see #recordWithSnapshot(List, TaskSet, TaskEvent...)
+     */
+    public void recordWithSnapshot(TaskSet snapshot, TaskEvent... events) throws IOException,
+            SerializationException {
+        recordWithSnapshot(Collections.<Task>emptyList(), snapshot, events);
+    }
+
+    /**
+     * Writes tasks which were removed from the list to the archive, then records their removal and other
+     * modifications of the tasks, from another thread than the one modifying them.
+     * <p/>
+     * If the archive cannot be written, the removal of the tasks is not recorded, so that the journal still holds
+     * them. They are then written with the next recorded modifications, and no snapshot is taken until they could
+     * be, as the snapshots do not hold them.
+     *
+     * @param archived the tasks removed from the list before the other modifications
+     * @param snapshot a {@link TaskSet#snapshot() snapshot} of the tasks, as they are after the modifications, or
+     *                 {@code null} to only append the events
+     * @param events   the events recording the other modifications
+     * @throws IOException            if the events cannot be written
+     * @throws SerializationException if an event cannot be serialized
+     * @see TaskJournal#record(TaskSet, TaskEvent...)
+     */
+    public synchronized void recordWithSnapshot(List<Task> archived, TaskSet snapshot, TaskEvent... events)
+            throws IOException, SerializationException {
+        unarchived.addAll(archived);
+        TaskEvent[] removals = new TaskEvent[0];
+        if (!unarchived.isEmpty()) {
+            try {
+                archive.append(unarchived);
+                removals = removals(unarchived);
+                unarchived.clear();
+            } catch (IOException | SerializationException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, String.format(
+                        "%d finished tasks could not be archived, they will be retried with the next modifications.",
+                        unarchived.size()), e);
+            }
+        }
+        TaskEvent[] recorded = Arrays.copyOf(removals, removals.length + events.length);
+        System.arraycopy(events, 0, recorded, removals.length, events.length);
+        journal.record(unarchived.isEmpty() ? snapshot : null, recorded);
+    }
+
+    /**
+     * Moves the one-off tasks which were finished before some time to the archive, from the thread modifying the
+     * tasks.
+     * <p/>
+     * The tasks are written to the archive before their removal is recorded, so that a failure may leave a task in both
+     * places but never loses it. The tasks which could not be archived are written with the next recorded
+     * modifications.
+     *
+     * @param before the time before which the tasks must have been finished
+     * @return the archived tasks
+     * @throws IOException            if the archive or the journal cannot be written
+     * @throws SerializationException if a task or an event cannot be serialized
+     * @see TaskSet#removeTasksDoneBefore(Instant)
+     */
+    public synchronized List<Task> archive(Instant before) throws IOException, SerializationException {
+        List<Task> archived = tasks.removeTasksDoneBefore(before);
+        if (!archived.isEmpty()) {
+            try {
+                archive.append(archived);
+            } catch (IOException | SerializationException e) {
+                unarchived.addAll(archived);
+                throw e;
+            }
+            recordLive(removals(archived));
+        }
+        return archived;
+    }
+
+    /**
+     * Returns the events recording the removal of tasks.
+     *
+     * @param removed the removed tasks
+     * @return the events
+     */
+    private static TaskEvent[] removals(List<Task> removed) {
+        TaskEvent[] events = new TaskEvent[removed.size()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = TaskEvent.removed(removed.get(i).getId());
+        }
+        return events;
+    }
+
+    /**
+     * Returns the number of events recorded between two snapshots of the journal of the list.
+     *
+     * @return the number of events
+     */
+    public int getSnapshotInterval() {
+        return journal.getSnapshotInterval();
+    }
+
+    /**
+     * Returns the archived tasks whose label contains some text, ignoring the case.
+     *
+     * @param text the text to look for
+     * @return the matching tasks, in the order they were archived
+     * @throws IOException              if the archive cannot be read
+     * @throws DeserializationException if a task cannot be deserialized
+     */
+    public List<Task> searchArchive(String text) throws IOException, DeserializationException {
+        return archive.search(text);
+    }
+
+    /**
+     * Returns the completion statistics of the tasks of the list.
+     *
+     * @return the statistics
+     */
+    public TaskStatistics getStatistics() {
+        return journal.getStatistics();
+    }
+
+    /**
+     * Returns the journal of the list.
+     *
+     * @return the journal of the list
+     */
+    TaskJournal getJournal() {
+        return journal;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * A registry of named {@link TaskList}s, each of them stored in its own {@link TaskJournal} and {@link TaskArchive}.
+ * <p/>
+ * The {@value #DEFAULT_LIST} list is stored at the root of the data directory, where the journal of the application
+ * was stored before lists could be named, and the other ones in a subdirectory of the {@value #LISTS_DIR} directory.
+ * <p/>
+ * A list is loaded only when it is requested. The most recently used lists are kept in memory, up to the capacity of
+ * the registry; the least recently used one is then evicted and its journal closed, so that neither the startup time
+ * nor the memory grow with the number of lists.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TaskListRegistry implements Closeable {
+
+    /**
+     * The name of the list used when no other one was selected.
+     */
+    public static final String DEFAULT_LIST = "default";
+
+    /**
+     * The name of the directory containing the journals of the lists other than the default one.
+     */
+    static final String LISTS_DIR = "lists";
+
+    /**
+     * The pattern the names of the lists must match, so that they can be used as directory names.
+     */
+    private static final Pattern NAME_PATTERN = Pattern.compile("[\\w\\-]+(\\.[\\w\\-]+)*");
+
+    /**
+     * The data directory.
+     */
+    private final Path directory;
+    /**
+     * The function creating the tasks of a list whose journal is empty.
+     */
+    private final Function<String, TaskSet> initializer;
+    /**
+     * The loaded lists, from the least to the most recently used.
+     */
+    private final Map<String, TaskList> loaded;
+
+    /**
+     * Creates a new registry. No list is loaded until it is requested.
+     *
+     * @param directory   the data directory
+     * @param capacity    the maximal number of lists kept in memory
+     * @param initializer the function creating the tasks of a list whose journal is empty, from the name of the list
+     */
+    public TaskListRegistry(Path directory, final int capacity, Function<String, TaskSet> initializer) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("At least one list must be kept in memory.");
+        }
+        this.directory = directory;
+        this.initializer = initializer;
+        this.loaded = new LinkedHashMap<String, TaskList>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TaskList> eldest) {
+                if (size() > capacity) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Tests whether a name can be used for a list.
+     *
+     * @param name the name to test
+     * @return {@code true} if the name is valid
+     */
+    public static boolean isValidName(String name) {
+        return name != null && NAME_PATTERN.matcher(name).matches();
+    }
+
+    /**
+     * Returns the names of the existing lists, without loading them.
+     * <p/>
+     * The default list comes first, followed by the other lists in alphabetical order.
+     *
+     * @return the names of the lists
+     * @throws IOException if the data directory cannot be read
+     */
+    public List<String> getNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        Path lists = directory.resolve(LISTS_DIR);
+        if (Files.isDirectory(lists)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(lists, Files::isDirectory)) {
+                for (Path dir : dirs) {
+                    String name = dir.getFileName().toString();
+                    if (isValidName(name) && !DEFAULT_LIST.equals(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        Collections.sort(names);
+        names.add(0, DEFAULT_LIST);
+        return names;
+    }
+
+    /**
+     * Returns a list, loading it if it is not in memory.
+     * <p/>
+     * A list which does not exist is created, with the tasks supplied by the initializer of the registry.
+     *
+     * @param name the name of the list
+     * @return the list
+     * @throws IOException              if the journal of the list cannot be read or written
+     * @throws SerializationException   if the initial snapshot of a new list cannot be serialized
+     * @throws DeserializationException if the journal of the list cannot be deserialized
+     */
+    public synchronized TaskList get(String name) throws IOException, SerializationException,
+            DeserializationException {
+        TaskList list = loaded.get(name);
+        if (list == null) {
+            list = load(name);
+            loaded.put(name, list);
+        }
+        return list;
+    }
+
+    /**
+     * Tests whether a list is currently in memory.
+     *
+     * @param name the name of the list
+     * @return {@code true} if the list is loaded
+     */
+    public synchronized boolean isLoaded(String name) {
+        return loaded.containsKey(name);
+    }
+
+    /**
+     * Loads a list from its journal.
+     *
+     * @param name the name of the list
+     * @return the list
+     * @throws IOException              if the journal of the list cannot be read or written
+     * @throws SerializationException   if the initial snapshot of a new list cannot be serialized
+     * @throws DeserializationException if the journal of the list cannot be deserialized
+     */
+    private TaskList load(String name) throws IOException, SerializationException, DeserializationException {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException(String.format("Invalid list name: %s", name));
+        }
+
+        Path dir = DEFAULT_LIST.equals(name) ? directory : directory.resolve(LISTS_DIR).resolve(name);
+        TaskJournal journal = new TaskJournal(dir);
+        try {
+            TaskSet tasks = journal.load();
+            if (tasks == null) {
+                tasks = initializer.apply(name);
+                journal.snapshot(tasks);
+            }
+            return new TaskList(name, tasks, journal, new TaskArchive(dir));
+        } catch (IOException | SerializationException | DeserializationException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the journal of an evicted list.
+     *
+     * @param list the evicted list
+     */
+    private void close(TaskList list) {
+        try {
+            list.getJournal().close();
+        } catch (IOException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    String.format("The journal of list %s could not be closed.", list.getName()), e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() {
+        for (Iterator<TaskList> it = loaded.values().iterator(); it.hasNext(); ) {
+            close(it.next());
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The running completion statistics of the tasks of a list.
+ * <p/>
+ * The statistics of each task are aggregates, updated as each {@link TaskEvent} is recorded: they never go back to
+ * the history of the events, so that reading them costs the same whatever the length of the history. The statistics
+ * of a list are summed from the statistics of its tasks.
+ * <p/>
+ * A task which repeats counts at most one completion per day for its completion rate and streaks. The days are read
+ * in the time zone of the statistics.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class TaskStatistics implements Serializable {
+
+    /**
+     * Generated serial version UID.
+     */
+    private static final long serialVersionUID = -2410858342165924477L;
+
+    /**
+     * The time zone the days are read in.
+     */
+    private final ZoneId zone;
+    /**
+     * The statistics of each task, indexed by ID.
+     */
+    private final Map<Long, Counter> counters = new HashMap<>();
+
+    /**
+     * Creates empty statistics, reading the days in the default time zone.
+     */
+    public TaskStatistics() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param zone the time zone the days are read in
+     */
+    public TaskStatistics(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Returns the statistics of a task.
+     *
+     * @param taskId the ID of the task
+     * @param today  the current day
+     * @return the statistics, or {@code null} if the task is not tracked
+     */
+    public synchronized CompletionStatistics getStatistics(long taskId, LocalDate today) {
+        Counter counter = counters.get(taskId);
+        if (counter == null) {
+            return null;
+        }
+        return new CompletionStatistics(counter.completions, counter.achieved(), counter.expected(today.toEpochDay()),
+                counter.currentStreak(today.toEpochDay()), counter.longestStreak, counter.timeToDone);
+    }
+
+    /**
+     * Returns the statistics of a task as of today.
+     *
+     * @param taskId the ID of the task
+     * @return the statistics, or {@code null} if the task is not tracked
+     */
+    public CompletionStatistics getStatistics(long taskId) {
+        return getStatistics(taskId, LocalDate.now(zone));
+    }
+
+    /**
+     * Returns the statistics of the whole list, summed from the statistics of its tasks.
+     *
+     * @param today the current day
+     * @return the statistics
+     */
+    public synchronized CompletionStatistics getListStatistics(LocalDate today) {
+        long day = today.toEpochDay();
+        int completions = 0;
+        long achieved = 0;
+        long expected = 0;
+        int currentStreak = 0;
+        int longestStreak = 0;
+        long timeToDone = 0;
+        for (Counter counter : counters.values()) {
+            completions += counter.completions;
+            achieved += counter.achieved();
+            expected += counter.expected(day);
+            currentStreak = Math.max(currentStreak, counter.currentStreak(day));
+            longestStreak = Math.max(longestStreak, counter.longestStreak);
+            timeToDone += counter.timeToDone;
+        }
+        return new CompletionStatistics(completions, achieved, expected, currentStreak, longestStreak, timeToDone);
+    }
+
+    /**
+     * Returns the statistics of the whole list as of today.
+     *
+     * @return the statistics
+     */
+    public CompletionStatistics getListStatistics() {
+        return getListStatistics(LocalDate.now(zone));
+    }
+
+    /**
+     * Updates the statistics with a recorded event.
+     *
+     * @param event the event
+     */
+    synchronized void apply(TaskEvent event) {
+        long time = event.getTimestamp().toEpochMilli();
+        switch (event.getType()) {
+            case ADDED:
+                taskAdded(event.getTask(), time);
+                break;
+            case REMOVED:
+                counters.remove(event.getTaskId());
+                break;
+            case STATE_CHANGED:
+                Counter counter = counters.get(event.getTaskId());
+                if (counter != null) {
+                    counter.stateChanged(event.isDone(), time, dayOf(time), zone);
+                }
+                break;
+            case ALL_STATES_CHANGED:
+                for (Counter c : counters.values()) {
+                    c.stateChanged(event.isDone(), time, dayOf(time), zone);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected event type: " + event.getType());
+        }
+    }
+
+    /**
+     * Starts tracking a task.
+     *
+     * @param task the task
+     * @param time the time at which the task was added, in milliseconds since the epoch
+     */
+    synchronized void taskAdded(Task task, long time) {
+        counters.put(task.getId(), new Counter(task.getRecurrence() != null, task.isDone(), time, dayOf(time)));
+    }
+
+    /**
+     * Changes the state of a tracked task.
+     *
+     * @param taskId the ID of the task
+     * @param done   the new state
+     * @param time   the time of the change, in milliseconds since the epoch
+     */
+    synchronized void stateChanged(long taskId, boolean done, long time) {
+        Counter counter = counters.get(taskId);
+        if (counter != null) {
+            counter.stateChanged(done, time, dayOf(time), zone);
+        }
+    }
+
+    /**
+     * Aligns the statistics with the current content of a set.
+     * <p/>
+     * The tasks which were not tracked, because they were added before the statistics were kept, are tracked from now
+     * on, and the tasks which are no longer in the set are forgotten. The tasks whose state was reset when the session
+     * was restored, such as {@link org.keyboardplaying.dailytasks.model.DailyTask}s, are considered unfinished from
+     * now.
+     *
+     * @param tasks the set
+     * @param time  the current time, in milliseconds since the epoch
+     */
+    synchronized void track(TaskSet tasks, long time) {
+        Set<Long> ids = new HashSet<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+            Counter counter = counters.get(task.getId());
+            if (counter == null) {
+                taskAdded(task, time);
+            } else if (counter.done && !task.isDone()) {
+                counter.done = false;
+                counter.openSince = time;
+            }
+        }
+        for (Iterator<Long> it = counters.keySet().iterator(); it.hasNext(); ) {
+            if (!ids.contains(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the day of a time.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the day, as a number of days since the epoch
+     */
+    private long dayOf(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * The running statistics of a task.
+     */
+    private static final class Counter implements Serializable {
+
+        /**
+         * Generated serial version UID.
+         */
+        private static final long serialVersionUID = 5839284311873617645L;
+
+        /**
+         * Whether the task repeats.
+         */
+        private final boolean repeats;
+        /**
+         * The day the task was added.
+         */
+        private final long addedDay;
+        /**
+         * Whether the task is currently finished.
+         */
+        private boolean done;
+        /**
+         * The time since which the task is unfinished, in milliseconds since the epoch.
+         */
+        private long openSince;
+        /**
+         * The number of times the task was finished.
+         */
+        private int completions;
+        /**
+         * The number of days on which the task was finished.
+         */
+        private int completedDays;
+        /**
+         * The last day on which the task was finished, or {@link Long#MIN_VALUE} if never.
+         */
+        private long lastDay = Long.MIN_VALUE;
+        /**
+         * The number of consecutive days on which the task was finished, up to {@link #lastDay}.
+         */
+        private int streak;
+        /**
+         * The largest number of consecutive days on which the task was finished.
+         */
+        private int longestStreak;
+        /**
+         * The total time the task remained unfinished before being finished, in milliseconds.
+         */
+        private long timeToDone;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param repeats whether the task repeats
+         * @param done    whether the task is finished
+         * @param time    the time at which the task was added, in milliseconds since the epoch
+         * @param day     the day the task was added
+         */
+        private Counter(boolean repeats, boolean done, long time, long day) {
+            this.repeats = repeats;
+            this.addedDay = day;
+            this.done = done;
+            this.openSince = time;
+        }
+
+        /**
+         * Updates the statistics with a state change.
+         * <p/>
+         * A repeating task which is finished again on another day counts as a new completion, even if it was not
+         * reopened in between.
+         *
+         * @param done the new state
+         * @param time the time of the change, in milliseconds since the epoch
+         * @param day  the day of the change
+         * @param zone the time zone the days are read in
+         */
+        private void stateChanged(boolean done, long time, long day, ZoneId zone) {
+            if (!done) {
+                if (this.done) {
+                    this.done = false;
+                    openSince = time;
+                }
+                return;
+            }
+            if (this.done && !(repeats && day != lastDay)) {
+                return;
+            }
+
+            long start = openSince;
+            if (repeats) {
+                // a repeating task is open from the beginning of the day
+                start = Math.max(start, Instant.from(LocalDate.ofEpochDay(day).atStartOfDay(zone)).toEpochMilli());
+            }
+            this.done = true;
+            completions++;
+            timeToDone += Math.max(0, time - start);
+            if (day != lastDay) {
+                completedDays++;
+                streak = day == lastDay + 1 ? streak + 1 : 1;
+                longestStreak = Math.max(longestStreak, streak);
+                lastDay = day;
+            }
+        }
+
+        /**
+         * Returns the number of expected completions which happened.
+         *
+         * @return the number of completions
+         */
+        private long achieved() {
+            return repeats ? completedDays : done ? 1 : 0;
+        }
+
+        /**
+         * Returns the number of expected completions.
+         *
+         * @param today the current day
+         * @return one per day since the task was added for a repeating task, one for a one-off task
+         */
+        private long expected(long today) {
+            return repeats ? Math.max(1, today - addedDay + 1) : 1;
+        }
+
+        /**
+         * Returns the current streak of the task.
+         *
+         * @param today the current day
+         * @return the current streak, or {@code 0} if the task was not finished today or yesterday
+         */
+        private int currentStreak(long today) {
+            return repeats && lastDay >= today - 1 ? streak : 0;
+        }
+    }
+}
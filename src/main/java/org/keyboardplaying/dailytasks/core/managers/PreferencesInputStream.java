@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.managers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Base64;
+import java.util.prefs.Preferences;
+
+/**
+ * A stream reading the bytes written to a preference node by a {@link PreferencesOutputStream}.
+ * <p/>
+ * The chunks are decoded one at a time, so that the memory used to read the bytes does not depend on their number.
+ * Only the chunks of the committed generation are read; chunks written before generations were introduced are read if
+ * no generation was committed yet.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class PreferencesInputStream extends InputStream {
+
+    /**
+     * The preference node.
+     */
+    private final Preferences prefs;
+    /**
+     * The prefix of the keys of the chunks of the committed generation.
+     */
+    private final String prefix;
+    /**
+     * The chunk being read.
+     */
+    private byte[] chunk = new byte[0];
+    /**
+     * The position of the next byte to read in the chunk.
+     */
+    private int position;
+    /**
+     * The index of the next chunk to decode.
+     */
+    private int index;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param prefs the preference node
+     * @param key   the prefix of the keys
+     */
+    PreferencesInputStream(Preferences prefs, String key) {
+        this.prefs = prefs;
+        this.prefix = PreferencesOutputStream.chunkPrefix(key, PreferencesOutputStream.getGeneration(prefs, key));
+    }
+
+    /**
+     * Tells whether bytes were written to a preference node.
+     *
+     * @param prefs the preference node
+     * @param key   the prefix of the keys
+     * @return {@code true} if a generation was committed, or if the node holds chunks written without generations
+     */
+    static boolean exists(Preferences prefs, String key) {
+        return PreferencesOutputStream.getGeneration(prefs, key) >= 0
+                || prefs.get(PreferencesOutputStream.chunkKey(key, 0), null) != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+        return fill() ? chunk[position++] & 0xFF : -1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        } else if (!fill()) {
+            return -1;
+        }
+        int copied = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, copied);
+        position += copied;
+        return copied;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    /**
+     * Decodes the next chunk if the current one was read.
+     *
+     * @return {@code true} if bytes remain to be read, {@code false} if the last chunk was read
+     * @throws IOException if a chunk is not valid Base64
+     */
+    private boolean fill() throws IOException {
+        while (position == chunk.length) {
+            String value = prefs.get(PreferencesOutputStream.chunkKey(prefix, index), null);
+            if (value == null) {
+                return false;
+            }
+            try {
+                chunk = Base64.getDecoder().decode(value);
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException("Invalid chunk " + index + ": " + e.getMessage());
+            }
+            index++;
+            position = 0;
+        }
+        return true;
+    }
+}
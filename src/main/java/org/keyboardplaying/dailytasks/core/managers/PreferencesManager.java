@@ -12,6 +12,7 @@
  */
 package org.keyboardplaying.dailytasks.core.managers;
 
+import org.keyboardplaying.dailytasks.core.journal.TaskListRegistry;
 import org.keyboardplaying.dailytasks.exception.DeserializationException;
 import org.keyboardplaying.dailytasks.exception.SerializationException;
 import org.keyboardplaying.dailytasks.model.TaskSet;
@@ -20,6 +21,9 @@ import org.keyboardplaying.dailytasks.ui.theme.Theme;
 import org.keyboardplaying.dailytasks.util.ExceptionUtils;
 import org.keyboardplaying.dailytasks.util.Serializer;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Locale;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
@@ -57,9 +61,15 @@ public class PreferencesManager {
      */
     private static final String FLD_THEME = FLD_PREFIX + "theme";
     /**
-     * The field storing the tasks.
+     * The field storing the tasks, as a sequence of chunks.
+     * <p/>
+     * Previous versions stored all the tasks in this field, which is still read if no chunk exists.
      */
     private static final String FLD_TASKS = FLD_PREFIX + "tasks";
+    /**
+     * The field storing the name of the selected task list.
+     */
+    private static final String FLD_LIST = FLD_PREFIX + "list";
 
     /**
      * The default preference specifying if the todo-list should remain on top of other windows.
@@ -277,6 +287,47 @@ public class PreferencesManager {
         prefs.putBoolean(FLD_ON_TOP, alwaysOnTop);
     }
 
+    /**
+     * Returns the name of the selected task list, or the default list if none.
+     *
+     * @return the name of the list
+     */
+    public static String getListName() {
+        return getInstance().getInstanceListName();
+    }
+
+    /**
+     * Returns the name of the selected task list, or the default list if none.
+     *
+     * @return the name of the list
+     */
+    protected String getInstanceListName() {
+        String name = prefs.get(FLD_LIST, null);
+        if (!TaskListRegistry.isValidName(name)) {
+            // The stored value is missing or incorrect, use default.
+            name = TaskListRegistry.DEFAULT_LIST;
+        }
+        return name;
+    }
+
+    /**
+     * Sets the name of the selected task list.
+     *
+     * @param name the name of the list
+     */
+    public static void setListName(String name) {
+        getInstance().setInstanceListName(name);
+    }
+
+    /**
+     * Sets the name of the selected task list.
+     *
+     * @param name the name of the list
+     */
+    protected void setInstanceListName(String name) {
+        prefs.put(FLD_LIST, name);
+    }
+
     /**
      * Returns the UI preferences packed as a single object.
      *
@@ -317,15 +368,16 @@ public class PreferencesManager {
         TaskSet result;
 
         byte[] byteArray = prefs.getByteArray(FLD_TASKS, null);
-        if (byteArray == null) {
+        if (byteArray == null && !PreferencesInputStream.exists(prefs, FLD_TASKS)) {
             result = TaskManager.getDefaultTaskSet();
         } else {
-            try {
-                result = Serializer.deserialize(byteArray);
+            try (InputStream in = byteArray == null
+                    ? new PreferencesInputStream(prefs, FLD_TASKS) : new ByteArrayInputStream(byteArray)) {
+                result = Serializer.readFrom(in);
                 if (result == null || result.isEmpty()) {
                     result = TaskManager.getDefaultTaskSet();
                 }
-            } catch (DeserializationException e) {
+            } catch (DeserializationException | IOException e) {
                 result = null;
                 // this should never happen, as the Serializer is used in a
                 // controlled environment
@@ -351,9 +403,13 @@ public class PreferencesManager {
      * @param tasks the tasks to save
      */
     protected void setInstanceTasks(TaskSet tasks) {
-        try {
-            prefs.putByteArray(FLD_TASKS, Serializer.serialize(tasks));
-        } catch (SerializationException e) {
+        // stream the tasks to the preferences rather than serializing them to an array which would be copied again
+        // the previous tasks are only replaced once all of them were written
+        try (PreferencesOutputStream out = new PreferencesOutputStream(prefs, FLD_TASKS)) {
+            Serializer.writeTo(tasks, out);
+            out.commit();
+            prefs.remove(FLD_TASKS);
+        } catch (SerializationException | IOException e) {
             // this should never happen, as the Serializer is used in a
             // controlled environment
             ExceptionUtils.handleUnexpectedException(this, e);
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.managers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * A stream writing bytes to a preference node, as a sequence of Base64 chunks.
+ * <p/>
+ * A preference value is limited to {@link Preferences#MAX_VALUE_LENGTH} characters, so the bytes are split into chunks
+ * stored under the keys {@code <key>.<generation>.0}, {@code <key>.<generation>.1}, etc. Only one chunk is buffered at
+ * a time, so that the memory used to write the bytes does not depend on their number.
+ * <p/>
+ * Each value is written as a new generation of chunks, alongside the previous one. The bytes only replace the previous
+ * value once the stream is {@link #commit() committed}: the generation is then recorded under the key
+ * {@code <key>.generation}, and the chunks of the previous generation are removed. A stream closed without being
+ * committed, for instance because the bytes could not all be written, removes its own chunks and leaves the previous
+ * value as it was.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ * @see PreferencesInputStream
+ */
+final class PreferencesOutputStream extends OutputStream {
+
+    /**
+     * The number of bytes of a chunk, whose Base64 encoding has the maximal length of a preference value.
+     */
+    static final int CHUNK_SIZE = Preferences.MAX_VALUE_LENGTH / 4 * 3;
+
+    /**
+     * The preference node.
+     */
+    private final Preferences prefs;
+    /**
+     * The prefix of the keys.
+     */
+    private final String key;
+    /**
+     * The generation of the previous value, or {@code -1} if it was written without generations, if at all.
+     */
+    private final int previous;
+    /**
+     * The generation being written.
+     */
+    private final int generation;
+    /**
+     * The chunk being written.
+     */
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    /**
+     * The number of bytes in the chunk being written.
+     */
+    private int length;
+    /**
+     * The number of chunks stored in the preferences.
+     */
+    private int count;
+    /**
+     * {@code true} once the bytes replaced the previous value.
+     */
+    private boolean committed;
+    /**
+     * {@code true} once the stream is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     * <p/>
+     * The chunks left by a stream which was not committed are removed first.
+     *
+     * @param prefs the preference node
+     * @param key   the prefix of the keys
+     */
+    PreferencesOutputStream(Preferences prefs, String key) {
+        this.prefs = prefs;
+        this.key = key;
+        this.previous = getGeneration(prefs, key);
+        this.generation = previous == 0 ? 1 : 0;
+        removeChunks(prefs, chunkPrefix(key, generation));
+    }
+
+    /**
+     * Returns the key recording the generation of the current value.
+     *
+     * @param key the prefix of the keys
+     * @return the key of the generation
+     */
+    static String generationKey(String key) {
+        return key + ".generation";
+    }
+
+    /**
+     * Returns the generation of the current value.
+     *
+     * @param prefs the preference node
+     * @param key   the prefix of the keys
+     * @return the generation, or {@code -1} if the value was written without generations, if at all
+     */
+    static int getGeneration(Preferences prefs, String key) {
+        return prefs.getInt(generationKey(key), -1);
+    }
+
+    /**
+     * Returns the prefix of the keys of the chunks of a generation.
+     *
+     * @param key        the prefix of the keys
+     * @param generation the generation, or {@code -1} for the chunks written without generations
+     * @return the prefix of the keys of the chunks
+     */
+    static String chunkPrefix(String key, int generation) {
+        return generation < 0 ? key : key + '.' + generation;
+    }
+
+    /**
+     * Returns the key of a chunk.
+     *
+     * @param prefix the prefix of the keys of the chunks
+     * @param index  the index of the chunk
+     * @return the key of the chunk
+     */
+    static String chunkKey(String prefix, int index) {
+        return prefix + '.' + index;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (length == chunk.length) {
+            storeChunk();
+        }
+        chunk[length++] = (byte) b;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (length == chunk.length) {
+                storeChunk();
+            }
+            int copied = Math.min(len, chunk.length - length);
+            System.arraycopy(b, off, chunk, length, copied);
+            length += copied;
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    /**
+     * Stores the last chunk and makes the written bytes replace the previous value, whose chunks are then removed.
+     * <p/>
+     * The chunks are flushed to the backing store before the generation is switched, so that the generation never
+     * designates chunks which were not stored.
+     *
+     * @throws IOException if the chunks cannot be flushed to the backing store
+     */
+    void commit() throws IOException {
+        ensureOpen();
+        if (length > 0) {
+            storeChunk();
+        }
+        try {
+            prefs.flush();
+            prefs.putInt(generationKey(key), generation);
+            prefs.flush();
+        } catch (BackingStoreException e) {
+            throw new IOException("The preferences could not be stored", e);
+        }
+        committed = true;
+        removeChunks(prefs, chunkPrefix(key, previous));
+    }
+
+    /**
+     * Closes the stream, removing the chunks it stored unless it was {@link #commit() committed}.
+     *
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!committed) {
+            removeChunks(prefs, chunkPrefix(key, generation));
+        }
+    }
+
+    /**
+     * Stores the chunk being written in the preferences.
+     */
+    private void storeChunk() {
+        byte[] bytes = length == chunk.length ? chunk : Arrays.copyOf(chunk, length);
+        prefs.put(chunkKey(chunkPrefix(key, generation), count++), Base64.getEncoder().encodeToString(bytes));
+        length = 0;
+    }
+
+    /**
+     * Removes the chunks stored under a prefix.
+     *
+     * @param prefs  the preference node
+     * @param prefix the prefix of the keys of the chunks
+     */
+    private static void removeChunks(Preferences prefs, String prefix) {
+        for (int i = 0; prefs.get(chunkKey(prefix, i), null) != null; i++) {
+            prefs.remove(chunkKey(prefix, i));
+        }
+    }
+
+    /**
+     * Ensures the stream can still be written.
+     *
+     * @throws IOException if the stream is closed
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
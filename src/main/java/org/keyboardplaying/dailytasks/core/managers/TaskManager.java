@@ -12,23 +12,82 @@
  */
 package org.keyboardplaying.dailytasks.core.managers;
 
+import org.keyboardplaying.dailytasks.core.journal.TaskArchive;
+import org.keyboardplaying.dailytasks.core.journal.TaskJournal;
+import org.keyboardplaying.dailytasks.core.journal.TaskList;
+import org.keyboardplaying.dailytasks.core.journal.TaskListRegistry;
+import org.keyboardplaying.dailytasks.core.journal.TaskStatistics;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
 import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
 import org.keyboardplaying.dailytasks.messages.MessageBundle;
+import org.keyboardplaying.dailytasks.model.LabelPool;
 import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
 import org.keyboardplaying.dailytasks.model.TaskSet;
+import org.keyboardplaying.dailytasks.model.UndoHistory;
+import org.keyboardplaying.dailytasks.util.ExceptionUtils;
+import org.keyboardplaying.dailytasks.util.WriteBehindPersister;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Provides utilities to manage a {@link TaskSet}.
  * <p/>
- * This class implements the Singleton design pattern and will handle only one task set.
+ * This class implements the Singleton design pattern and will handle one task set at a time, from one of the named
+ * {@link TaskList}s of a {@link TaskListRegistry}. Only the selected list is loaded; the other ones are loaded when
+ * {@link #selectList(String) selected}, and kept in memory only while they are among the most recently used.
+ * <p/>
+ * Each modification is recorded as {@link TaskEvent}s in the {@link TaskJournal} of the list, so that saving it does
+ * not require the whole set to be written. The set is rebuilt from the journal when the list is loaded. If the journal
+ * cannot be used, the whole set is saved in the preferences instead, as it used to be, and other lists cannot be
+ * selected.
+ * <p/>
+ * When a list is loaded, its one-off tasks which were finished for longer than {@link TaskArchive#getDefaultAge()} are
+ * moved to its {@link TaskArchive}, where they can still be {@link #searchArchive(String) searched}.
+ * <p/>
+ * The modifications, including the archiving, are saved in the background by a {@link WriteBehindPersister}, so that
+ * a slow storage does not freeze the user interface. The modifications made within {@link #DEFAULT_SAVE_DELAY}
+ * milliseconds, unless the {@value #SAVE_DELAY_PROPERTY} system property tells otherwise, are saved at once. A
+ * snapshot of the set is only handed to the persister once the journal needs one, so that a modification does not cost
+ * a copy of the whole set. The pending modifications must be {@link #flush() flushed} before the application
+ * terminates.
+ * <p/>
+ * The state changes can be {@link #undo() undone} and {@link #redo() redone}, in which case only the tasks whose state
+ * is restored are recorded.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
 public class TaskManager {
 
+    /**
+     * The system property which can be set to the time, in milliseconds, during which the modifications are gathered
+     * before being saved.
+     */
+    public static final String SAVE_DELAY_PROPERTY = "daily-tasks.save.delay";
+    /**
+     * The default time, in milliseconds, during which the modifications are gathered before being saved.
+     */
+    public static final long DEFAULT_SAVE_DELAY = 500;
+
+    /**
+     * The number of state changes which can be undone.
+     */
+    private static final int UNDO_CAPACITY = 100;
+    /**
+     * The number of task lists kept in memory.
+     */
+    private static final int LIST_CACHE_SIZE = 4;
+
     /**
      * The single instance of the {@link TaskManager} class.
      */
@@ -38,6 +97,32 @@ public class TaskManager {
      * The tasks the unique instance of this class will manage.
      */
     private TaskSet tasks;
+    /**
+     * The registry of the task lists, or {@code null} if the tasks are saved in the preferences.
+     */
+    private TaskListRegistry registry;
+    /**
+     * The list the modifications are recorded to, or {@code null} if the tasks are saved in the preferences.
+     */
+    private TaskList list;
+    /**
+     * The state changes which can be undone.
+     */
+    private final UndoHistory history = new UndoHistory(UNDO_CAPACITY);
+    /**
+     * The object saving the modifications in the background.
+     */
+    private final WriteBehindPersister<PendingSave> persister = new WriteBehindPersister<>("daily-tasks-persister",
+            Long.getLong(SAVE_DELAY_PROPERTY, DEFAULT_SAVE_DELAY), PendingSave::merge, this::write);
+    /**
+     * Whether the journal could not be written by the persister, in which case the tasks are now saved in the
+     * preferences.
+     */
+    private volatile boolean journalFailed;
+    /**
+     * The number of events handed to the persister since the last snapshot of the set.
+     */
+    private int eventsSinceSnapshot;
 
     private TaskManager() {
     }
@@ -52,7 +137,10 @@ public class TaskManager {
     public static synchronized TaskManager getInstance() {
         if (instance == null) {
             instance = new TaskManager();
-            instance.tasks = PreferencesManager.getTasks();
+            instance.loadTasks();
+            Logger.getLogger(TaskManager.class.getName()).fine(String.format(
+                    "Label pool: %.0f%% hit rate, about %,d bytes saved",
+                    100 * LabelPool.getHitRate(), LabelPool.getBytesSaved()));
         }
         return instance;
     }
@@ -66,6 +154,107 @@ public class TaskManager {
         return this.tasks;
     }
 
+    /**
+     * Returns the name of the selected task list.
+     *
+     * @return the name of the list
+     */
+    public String getListName() {
+        return list == null ? TaskListRegistry.DEFAULT_LIST : list.getName();
+    }
+
+    /**
+     * Returns the names of the existing task lists, without loading them.
+     *
+     * @return the names of the lists
+     */
+    public List<String> getListNames() {
+        if (registry != null) {
+            try {
+                return registry.getNames();
+            } catch (IOException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "The task lists could not be listed.", e);
+            }
+        }
+        return Collections.singletonList(getListName());
+    }
+
+    /**
+     * Selects the task list to manage, creating it if it does not exist.
+     * <p/>
+     * The selection is saved in the preferences, so that the same list is loaded in the next session. The state
+     * changes of the previous list can no longer be undone.
+     *
+     * @param name the name of the list
+     * @return {@code true} if the list was selected, {@code false} if it could not be loaded and the previous one is
+     * still selected
+     */
+    public boolean selectList(String name) {
+        if (registry == null || !TaskListRegistry.isValidName(name)) {
+            return false;
+        }
+        // the pending modifications belong to the previous list
+        flush();
+        if (registry == null) {
+            // the journal could not be written meanwhile
+            return false;
+        }
+        try {
+            list = registry.get(name);
+        } catch (IOException | SerializationException | DeserializationException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    String.format("Task list %s could not be loaded.", name), e);
+            return false;
+        }
+        tasks = list.getTasks();
+        history.clear();
+        eventsSinceSnapshot = 0;
+        archiveOldTasks();
+        PreferencesManager.setListName(name);
+        return true;
+    }
+
+    /**
+     * Returns the archived tasks of the selected list whose label contains some text, ignoring the case.
+     *
+     * @param text the text to look for
+     * @return the matching tasks, or an empty list if the archive cannot be read
+     */
+    public List<Task> searchArchive(String text) {
+        if (list != null) {
+            try {
+                return list.searchArchive(text);
+            } catch (IOException | DeserializationException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING, "The archive could not be searched.", e);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the completion statistics of the selected list, which are maintained as its tasks change.
+     *
+     * @return the statistics, or {@code null} if the journal cannot be used
+     */
+    public TaskStatistics getStatistics() {
+        return list == null ? null : list.getStatistics();
+    }
+
+    /**
+     * Moves the tasks of the selected list which were finished long ago to its archive.
+     * <p/>
+     * The tasks are removed from the set at once, and written to the archive by the persister. If the archive cannot
+     * be written, their removal is not recorded until it can, so that they are still in the journal.
+     */
+    private void archiveOldTasks() {
+        List<Task> archived = tasks.removeTasksDoneBefore(Instant.now().minus(TaskArchive.getDefaultAge()));
+        if (!archived.isEmpty()) {
+            Logger.getLogger(getClass().getName()).fine(
+                    String.format("%d tasks archived from list %s", archived.size(), list.getName()));
+            saveTasks(archived);
+        }
+    }
+
     /**
      * Updates the state of a task in the set and persists changes in preferences for retrieval in the next session.
      *
@@ -73,7 +262,7 @@ public class TaskManager {
      * @param done   the completion state of the task
      * @return the updated task
      */
-    public Task updateTask(int taskId, boolean done) {
+    public Task updateTask(long taskId, boolean done) {
         // Retrieve the task in the list and update it
         Task task;
         try {
@@ -87,11 +276,79 @@ public class TaskManager {
         }
 
         // Persist data
-        saveTasks();
+        if (task != null) {
+            saveTasks(TaskEvent.stateChanged(taskId, done));
+        }
 
         return task;
     }
 
+    /**
+     * Updates the state of several tasks in the set and persists changes once for all.
+     * <p/>
+     * If one of the IDs cannot be found, no task is updated.
+     *
+     * @param taskIds the IDs of the tasks to update
+     * @param done    the completion state of the tasks
+     * @return the updated tasks
+     */
+    public List<Task> updateTasks(Collection<Long> taskIds, boolean done) {
+        List<Task> updated;
+        try {
+            List<Long> changed = UndoHistory.changedLeaves(tasks, taskIds, done);
+            updated = tasks.updateTaskStates(taskIds, done);
+            history.record(changed, done);
+        } catch (TaskNotFoundException e) {
+            // the set was left unchanged, there is nothing to save
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    String.format("Update of tasks %s (to done = %b) could not be performed.", taskIds, done), e);
+            return Collections.emptyList();
+        }
+
+        // Persist data
+        return saveStates(updated);
+    }
+
+    /**
+     * Updates the state of all tasks in the set and persists changes once for all.
+     *
+     * @param done the completion state of the tasks
+     */
+    public void updateAllTasks(boolean done) {
+        List<Long> candidates = new ArrayList<>(done ? tasks.countRemaining() : tasks.countDone());
+        for (Iterator<Task> it = done ? tasks.remainingIterator() : tasks.doneIterator(); it.hasNext(); ) {
+            candidates.add(it.next().getId());
+        }
+        List<Long> changed;
+        try {
+            changed = UndoHistory.changedLeaves(tasks, candidates, done);
+        } catch (TaskNotFoundException e) {
+            // the tasks were just iterated over
+            ExceptionUtils.handleUnexpectedException(this, e);
+            changed = Collections.emptyList();
+        }
+        tasks.updateAllTaskStates(done);
+        history.record(changed, done);
+        saveTasks(TaskEvent.allStatesChanged(done));
+    }
+
+    /**
+     * Removes all the finished tasks from the set and persists changes once for all.
+     *
+     * @return the removed tasks
+     */
+    public List<Task> removeDoneTasks() {
+        List<Task> removed = tasks.removeDoneTasks();
+        // the removed tasks cannot be restored
+        history.clear();
+        TaskEvent[] events = new TaskEvent[removed.size()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = TaskEvent.removed(removed.get(i).getId());
+        }
+        saveTasks(events);
+        return removed;
+    }
+
     /**
      * Updates the state of a task in the set.
      *
@@ -100,32 +357,285 @@ public class TaskManager {
      * @return the updated task
      * @throws TaskNotFoundException when the supplied task ID could not be found in the set
      */
-    private Task updateTaskState(int taskId, boolean done) throws TaskNotFoundException {
-        return tasks.updateTaskState(taskId, done);
+    private Task updateTaskState(long taskId, boolean done) throws TaskNotFoundException {
+        List<Long> changed = UndoHistory.changedLeaves(tasks, Collections.singleton(taskId), done);
+        Task task = tasks.updateTaskState(taskId, done);
+        history.record(changed, done);
+        return task;
+    }
+
+    /**
+     * Restores the state of the tasks before the latest state change, and persists the restored states only.
+     *
+     * @return the updated tasks, or an empty list if there is nothing to undo
+     */
+    public List<Task> undo() {
+        return saveStates(history.undo(tasks));
+    }
+
+    /**
+     * Applies again the latest undone state change, and persists the restored states only.
+     *
+     * @return the updated tasks, or an empty list if there is nothing to redo
+     */
+    public List<Task> redo() {
+        return saveStates(history.redo(tasks));
     }
 
     /**
-     * Updates the tasks in the preferences (between-sessions persistence).
+     * Records the current state of some tasks.
+     *
+     * @param updated the updated tasks
+     * @return the updated tasks
      */
-    private void saveTasks() {
-        PreferencesManager.setTasks(tasks);
+    private List<Task> saveStates(List<Task> updated) {
+        if (!updated.isEmpty()) {
+            TaskEvent[] events = new TaskEvent[updated.size()];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = TaskEvent.stateChanged(updated.get(i).getId(), updated.get(i).isDone());
+            }
+            saveTasks(events);
+        }
+        return updated;
+    }
+
+    /**
+     * Loads the tasks of the selected list from its journal.
+     * <p/>
+     * If the journal of the default list is empty, the tasks saved in the preferences by previous versions are loaded
+     * and written to the journal as its first snapshot. If the journal cannot be used, the tasks are loaded from the
+     * preferences.
+     */
+    private void loadTasks() {
+        registry = new TaskListRegistry(TaskJournal.getDefaultDirectory(), LIST_CACHE_SIZE,
+                name -> TaskListRegistry.DEFAULT_LIST.equals(name) ? PreferencesManager.getTasks()
+                        : getDefaultTaskSet());
+        try {
+            list = registry.get(PreferencesManager.getListName());
+            tasks = list.getTasks();
+            eventsSinceSnapshot = 0;
+            archiveOldTasks();
+        } catch (IOException | SerializationException | DeserializationException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                    "The journal could not be used, tasks will be saved in the preferences.", e);
+            registry = null;
+            list = null;
+            tasks = PreferencesManager.getTasks();
+        }
+    }
+
+    /**
+     * Records modifications of the tasks (between-sessions persistence).
+     *
+     * @param events the events recording the modifications
+     */
+    private void saveTasks(TaskEvent... events) {
+        saveTasks(Collections.<Task>emptyList(), events);
+    }
+
+    /**
+     * Records modifications of the tasks (between-sessions persistence), after archiving tasks removed from the set.
+     * <p/>
+     * The events are handed to the persister, which does not read the set while it is being modified. A snapshot of
+     * the set is handed along once enough events were saved for the journal to take a snapshot of its own, or if the
+     * whole set is saved in the preferences.
+     *
+     * @param archived the tasks removed from the set to be archived
+     * @param events   the events recording the other modifications
+     */
+    private void saveTasks(List<Task> archived, TaskEvent... events) {
+        if (journalFailed) {
+            registry = null;
+            list = null;
+        }
+        TaskSet snapshot = null;
+        eventsSinceSnapshot += archived.size() + events.length;
+        if (list == null || eventsSinceSnapshot >= list.getSnapshotInterval()) {
+            snapshot = tasks.snapshot();
+            eventsSinceSnapshot = 0;
+        }
+        persister.submit(new PendingSave(list, archived, snapshot, Arrays.asList(events)));
+    }
+
+    /**
+     * Writes modifications of the tasks, on the thread of the persister.
+     * <p/>
+     * The archived tasks are written to the archive and their removal recorded, then the events are appended to the
+     * journal, along with the snapshot if any (see {@link TaskList#recordWithSnapshot(List, TaskSet, TaskEvent...)}
+     * for an archive which cannot be written). If the journal cannot be used, the snapshot of the whole set is saved
+     * in the preferences; if the save has none, the set is saved by the next modification or the next
+     * {@link #flush() flush}.
+     *
+     * @param save the modifications
+     */
+    private void write(PendingSave save) {
+        if (save.list != null && !journalFailed) {
+            try {
+                List<TaskEvent> events = save.events;
+                // the events following the snapshot are appended without it, as it does not include them
+                int split = events.size() - save.eventsAfterSnapshot;
+                save.list.recordWithSnapshot(save.archived, save.snapshot,
+                        events.subList(0, split).toArray(new TaskEvent[split]));
+                if (split < events.size()) {
+                    save.list.recordWithSnapshot(null,
+                            events.subList(split, events.size()).toArray(new TaskEvent[events.size() - split]));
+                }
+                return;
+            } catch (IOException | SerializationException e) {
+                Logger.getLogger(getClass().getName()).log(Level.WARNING,
+                        "The journal could not be written, tasks will be saved in the preferences.", e);
+                journalFailed = true;
+            }
+        }
+        if (save.snapshot != null && save.eventsAfterSnapshot == 0) {
+            PreferencesManager.setTasks(save.snapshot);
+        }
+    }
+
+    /**
+     * Saves the pending modifications of the tasks, and waits for them to be saved.
+     * <p/>
+     * If the journal could not be written meanwhile, the whole set is then saved in the preferences.
+     * <p/>
+     * This method must be called before the application terminates.
+     */
+    public void flush() {
+        persister.flush();
+        if (journalFailed && list != null) {
+            saveTasks();
+            persister.flush();
+        }
+        Logger.getLogger(getClass().getName()).fine(String.format(
+                "Persister: %d writes, %.1f ms on average, %.1f ms at most", persister.getWriteCount(),
+                persister.getAverageWriteNanos() / 1e6, persister.getMaxWriteNanos() / 1e6));
+    }
+
+    /**
+     * Returns the object saving the modifications in the background, which tells how many modifications are pending
+     * and how long the saves take.
+     *
+     * @return the persister
+     */
+    public WriteBehindPersister<?> getPersister() {
+        return persister;
     }
 
     /**
      * Tests whether all tasks are complete.
+     * <p/>
+     * This test reads the progress of the whole {@link TaskSet}, which is maintained as tasks and subtasks change, and
+     * does not iterate over the tasks.
      *
      * @return {@code true} if all tasks are in a complete state
      */
     public boolean areAllTasksDone() {
-        /* Checks the state of all tasks. */
-        boolean allTasksDone = true;
-        for (Task task : tasks) {
-            if (!task.isDone()) {
-                allTasksDone = false;
-                break;
+        return tasks.countRemainingLeaves() == 0;
+    }
+
+    /**
+     * Modifications of the tasks waiting to be saved.
+     * <p/>
+     * The modifications gathered while a save is pending are merged into a new instance, keeping all of their archived
+     * tasks and events, and the latest snapshot of the set along with the number of events which follow it.
+     */
+    private static final class PendingSave {
+
+        /**
+         * The list the modifications are recorded to, or {@code null} if the tasks are saved in the preferences.
+         */
+        private final TaskList list;
+        /**
+         * The tasks removed from the set to be archived, before the other modifications.
+         */
+        private final List<Task> archived;
+        /**
+         * A snapshot of the set, or {@code null} if none was taken.
+         */
+        private final TaskSet snapshot;
+        /**
+         * The number of events made after the snapshot was taken, which are the last ones.
+         */
+        private final int eventsAfterSnapshot;
+        /**
+         * The events recording the other modifications.
+         */
+        private final List<TaskEvent> events;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param list     the list the modifications are recorded to, or {@code null}
+         * @param archived the tasks removed from the set to be archived
+         * @param snapshot a snapshot of the set, as it is after the modifications, or {@code null}
+         * @param events   the events recording the other modifications
+         */
+        private PendingSave(TaskList list, List<Task> archived, TaskSet snapshot, List<TaskEvent> events) {
+            this(list, archived, snapshot, 0, events);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param list                the list the modifications are recorded to, or {@code null}
+         * @param archived            the tasks removed from the set to be archived
+         * @param snapshot            a snapshot of the set, or {@code null}
+         * @param eventsAfterSnapshot the number of events made after the snapshot was taken
+         * @param events              the events recording the other modifications
+         */
+        private PendingSave(TaskList list, List<Task> archived, TaskSet snapshot, int eventsAfterSnapshot,
+                List<TaskEvent> events) {
+            this.list = list;
+            this.archived = Collections.unmodifiableList(archived);
+            this.snapshot = snapshot;
+            this.eventsAfterSnapshot = eventsAfterSnapshot;
+            this.events = Collections.unmodifiableList(events);
+        }
+
+        /**
+         * Merges two pending saves.
+         * <p/>
+         * The saves concern the same list, as the pending modifications are flushed before another list is selected,
+         * unless the journal could not be written in the meantime. The later save then holds a snapshot of the whole
+         * set for the preferences, and replaces the earlier one.
+         *
+         * @param earlier the earlier save
+         * @param later   the later save
+         * @return the merged save
+         */
+        private static PendingSave merge(PendingSave earlier, PendingSave later) {
+            if (earlier.list != later.list) {
+                return later;
+            }
+            List<Task> archived = concat(earlier.archived, later.archived);
+            List<TaskEvent> events = concat(earlier.events, later.events);
+            if (later.snapshot != null) {
+                return new PendingSave(later.list, archived, later.snapshot, later.eventsAfterSnapshot, events);
+            } else if (later.archived.isEmpty() && earlier.snapshot != null) {
+                return new PendingSave(later.list, archived, earlier.snapshot,
+                        earlier.eventsAfterSnapshot + later.events.size(), events);
+            }
+            // the tasks archived after the earlier snapshot would be recorded before the events it does not include
+            return new PendingSave(later.list, archived, null, events);
+        }
+
+        /**
+         * Returns a new list holding the elements of two lists.
+         *
+         * @param first  the first list
+         * @param second the second list
+         * @return the new list, or one of the lists if the other one is empty
+         */
+        private static <E> List<E> concat(List<E> first, List<E> second) {
+            if (first.isEmpty()) {
+                return second;
+            } else if (second.isEmpty()) {
+                return first;
             }
+            List<E> result = new ArrayList<>(first.size() + second.size());
+            result.addAll(first);
+            result.addAll(second);
+            return result;
         }
-        return allTasksDone;
     }
 
     /**
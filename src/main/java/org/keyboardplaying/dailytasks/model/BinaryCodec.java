@@ -0,0 +1,675 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for {@link Task}, {@link TaskSet} and {@link TaskEvent}, which is several times smaller
+ * than the Java serialization.
+ * <p/>
+ * The data starts with a header made of the magic bytes {@code DT}, the version of the format and the kind of object
+ * it holds. IDs and times are written as variable-length deltas from the previous ID or time, labels as
+ * length-prefixed UTF-8 and the states of the tasks as a bitmap preceding their records.
+ * <p/>
+ * As with the Java serialization, the state of a {@link DailyTask} is not saved and a {@link RecurringTask} is only
+ * restored as finished if no occurrence started since it was finished.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class BinaryCodec {
+
+    /**
+     * The first bytes of the encoded data.
+     */
+    private static final byte[] MAGIC = {'D', 'T'};
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The kind of the data holding a {@link TaskSet}.
+     */
+    private static final int KIND_SET = 1;
+    /**
+     * The kind of the data holding a single {@link Task}.
+     */
+    private static final int KIND_TASK = 2;
+    /**
+     * The kind of the data holding a {@link TaskEvent}.
+     */
+    private static final int KIND_EVENT = 3;
+
+    /**
+     * The bits of the flags of an event which tell the type of the event.
+     */
+    private static final int EVENT_TYPE_MASK = 0x03;
+    /**
+     * The flag telling the state applied by an event.
+     */
+    private static final int EVENT_DONE = 0x04;
+    /**
+     * The flag telling an event holds a task.
+     */
+    private static final int EVENT_TASK = 0x08;
+    /**
+     * The flag telling an event holds the ID of the parent of its task.
+     */
+    private static final int EVENT_PARENT = 0x10;
+
+    /**
+     * The bits of the flags of a task record which tell the type of the task.
+     */
+    private static final int TYPE_MASK = 0x03;
+    /**
+     * The flag telling the task has a due date.
+     */
+    private static final int FLAG_DUE = 0x04;
+    /**
+     * The flag telling the task has a completion time.
+     */
+    private static final int FLAG_COMPLETED = 0x08;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private BinaryCodec() {
+    }
+
+    /**
+     * Tells whether some data was written by this codec.
+     *
+     * @param data the data
+     * @return {@code true} if the data starts with the header of this format
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length > MAGIC.length && data[0] == MAGIC[0] && data[1] == MAGIC[1];
+    }
+
+    /**
+     * Tells whether an object can be written by this codec.
+     * <p/>
+     * Subclasses of {@link Task} defined outside of this package are not supported, as their additional fields would
+     * be lost.
+     *
+     * @param object the object
+     * @return {@code true} for a {@link TaskSet}, a {@link TaskEvent} or a {@link Task}, {@link DailyTask} or
+     * {@link RecurringTask}
+     */
+    public static boolean supports(Object object) {
+        return TaskRecord.supports(object)
+                || object instanceof TaskEvent && (((TaskEvent) object).getTask() == null
+                || TaskRecord.supports(((TaskEvent) object).getTask()));
+    }
+
+    /**
+     * Writes an object to a stream.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param object the object, which must be {@link #supports(Object) supported}
+     * @param out    the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public static void encode(Object object, OutputStream out) throws IOException {
+        if (!supports(object)) {
+            throw new IllegalArgumentException("Unsupported object: " + object);
+        }
+
+        Writer writer = new Writer(out);
+        writer.buffer.write(MAGIC);
+        writer.buffer.write(VERSION);
+        if (object instanceof TaskSet) {
+            writer.buffer.write(KIND_SET);
+            writer.writeSet((TaskSet) object);
+        } else if (object instanceof TaskEvent) {
+            writer.buffer.write(KIND_EVENT);
+            writer.writeEvent((TaskEvent) object);
+        } else {
+            writer.buffer.write(KIND_TASK);
+            writer.writeTasks(Collections.singletonList((Task) object), 1);
+        }
+        writer.buffer.flush();
+    }
+
+    /**
+     * Reads an object from a stream.
+     *
+     * @param in the stream, which is not read past the end of the object, and should be buffered as it is read one byte
+     *           at a time
+     * @return the {@link TaskSet}, {@link Task} or {@link TaskEvent}
+     * @throws IOException if the stream cannot be read or does not hold data written by this codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        if (reader.readByte() != MAGIC[0] || reader.readByte() != MAGIC[1]) {
+            throw new StreamCorruptedException("Invalid header");
+        }
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version: " + version);
+        }
+        int kind = reader.readByte();
+        switch (kind) {
+            case KIND_SET:
+                return (T) reader.readSet();
+            case KIND_TASK:
+                List<Task> tasks = reader.readTasks();
+                if (tasks.size() != 1) {
+                    throw new StreamCorruptedException("A single task was expected");
+                }
+                return (T) tasks.get(0);
+            case KIND_EVENT:
+                return (T) reader.readEvent();
+            default:
+                throw new StreamCorruptedException("Unsupported kind: " + kind);
+        }
+    }
+
+    /**
+     * Writes the values of the format to a buffered stream.
+     */
+    private static final class Writer {
+
+        /**
+         * The buffered stream.
+         */
+        private final OutputStream buffer;
+        /**
+         * The last ID which was written.
+         */
+        private long lastId;
+        /**
+         * The last time which was written.
+         */
+        private long lastTime;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param out the stream to write to
+         */
+        Writer(OutputStream out) {
+            this.buffer = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out);
+        }
+
+        /**
+         * Writes a set: its storage, its tasks, then the links, tags and priorities of the tasks.
+         *
+         * @param set the set, which should be a {@link TaskSet#snapshot() snapshot} if it may be modified meanwhile
+         * @throws IOException if the stream cannot be written
+         */
+        void writeSet(TaskSet set) throws IOException {
+            buffer.write(set.getStorage().ordinal());
+            writeTasks(set, set.size());
+
+            long[] links = set.exportLinks();
+            writeIds(links == null ? new long[0] : links);
+
+            Map<String, long[]> tags = set.exportTags();
+            writeVarLong(tags == null ? 0 : tags.size());
+            if (tags != null) {
+                for (Map.Entry<String, long[]> tag : tags.entrySet()) {
+                    writeString(tag.getKey());
+                    writeIds(tag.getValue());
+                }
+            }
+
+            long[] priorities = set.exportPriorities();
+            int count = priorities == null ? 0 : priorities.length / 2;
+            writeVarLong(count);
+            for (int i = 0; i < count; i++) {
+                writeId(priorities[2 * i]);
+                writeVarLong(zigZag(priorities[2 * i + 1]));
+            }
+        }
+
+        /**
+         * Writes an event: its type and state, its time, the ID of its task and of the parent of its task if any,
+         * then its task if any.
+         *
+         * @param event the event
+         * @throws IOException if the stream cannot be written
+         */
+        void writeEvent(TaskEvent event) throws IOException {
+            Task task = event.getTask();
+            int flags = event.getType().ordinal();
+            if (event.isDone()) {
+                flags |= EVENT_DONE;
+            }
+            if (task != null) {
+                flags |= EVENT_TASK;
+            }
+            if (event.getParentId() != 0) {
+                flags |= EVENT_PARENT;
+            }
+            buffer.write(flags);
+            writeTime(event.getTime());
+            writeId(event.getTaskId());
+            if (event.getParentId() != 0) {
+                writeId(event.getParentId());
+            }
+            if (task != null) {
+                writeTasks(Collections.singletonList(task), 1);
+            }
+        }
+
+        /**
+         * Writes tasks: their number, the bitmap of their states, then their records.
+         * <p/>
+         * The tasks are iterated twice rather than copied, so that the memory used does not depend on their number.
+         *
+         * @param tasks the tasks
+         * @param count the number of tasks
+         * @throws IOException if the stream cannot be written
+         * @throws ConcurrentModificationException if the number of tasks changed while they were written
+         */
+        void writeTasks(Iterable<Task> tasks, int count) throws IOException {
+            writeVarLong(count);
+
+            int i = 0;
+            int bits = 0;
+            for (Task task : tasks) {
+                if (task.isDone() && TaskRecord.typeOf(task.getClass()) != TaskRecord.TYPE_DAILY) {
+                    bits |= 1 << (i & 7);
+                }
+                if ((++i & 7) == 0) {
+                    buffer.write(bits);
+                    bits = 0;
+                }
+            }
+            if ((i & 7) != 0) {
+                buffer.write(bits);
+            }
+
+            int records = 0;
+            for (Task task : tasks) {
+                writeTask(task);
+                records++;
+            }
+            if (i != count || records != count) {
+                throw new ConcurrentModificationException("The tasks were modified while being written");
+            }
+        }
+
+        /**
+         * Writes the record of a task, without its state.
+         *
+         * @param task the task
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeTask(Task task) throws IOException {
+            int type = TaskRecord.typeOf(task.getClass());
+            long dueTime = task.getDueTime();
+            long completionTime = TaskRecord.completionTimeOf(task);
+
+            int flags = type;
+            if (dueTime != 0) {
+                flags |= FLAG_DUE;
+            }
+            if (completionTime != 0) {
+                flags |= FLAG_COMPLETED;
+            }
+            buffer.write(flags);
+            writeId(task.getId());
+            writeString(task.getTodo());
+            if (dueTime != 0) {
+                writeTime(dueTime);
+            }
+            if (completionTime != 0) {
+                writeTime(completionTime);
+            }
+            if (type == TaskRecord.TYPE_RECURRING) {
+                writeString(task.getRecurrence().toString());
+            }
+        }
+
+        /**
+         * Writes a list of IDs, preceded by their number.
+         *
+         * @param ids the IDs
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeIds(long[] ids) throws IOException {
+            writeVarLong(ids.length);
+            for (long id : ids) {
+                writeId(id);
+            }
+        }
+
+        /**
+         * Writes an ID as its difference from the previous one.
+         *
+         * @param id the ID
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeId(long id) throws IOException {
+            writeVarLong(zigZag(id - lastId));
+            lastId = id;
+        }
+
+        /**
+         * Writes a time as its difference from the previous one, as the tasks are often finished or due together.
+         *
+         * @param time the time in milliseconds since the epoch
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeTime(long time) throws IOException {
+            writeVarLong(zigZag(time - lastTime));
+            lastTime = time;
+        }
+
+        /**
+         * Writes a string as its length in UTF-8 plus one, {@code 0} standing for {@code null}, followed by its bytes.
+         *
+         * @param value the string, or {@code null}
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(bytes.length + 1L);
+                buffer.write(bytes);
+            }
+        }
+
+        /**
+         * Writes an unsigned number on as many bytes as needed, seven bits at a time.
+         *
+         * @param value the number
+         * @throws IOException if the stream cannot be written
+         */
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                buffer.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer.write((int) value);
+        }
+    }
+
+    /**
+     * Reads the values of the format from a stream, without reading past the end of the object.
+     */
+    private static final class Reader {
+
+        /**
+         * The stream.
+         */
+        private final InputStream in;
+        /**
+         * The last ID which was read.
+         */
+        private long lastId;
+        /**
+         * The last time which was read.
+         */
+        private long lastTime;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param in the stream to read from
+         */
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads a set.
+         *
+         * @return the set
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        TaskSet readSet() throws IOException {
+            int storage = readByte();
+            TaskSet.Storage[] storages = TaskSet.Storage.values();
+            if (storage >= storages.length) {
+                throw new StreamCorruptedException("Unknown storage: " + storage);
+            }
+
+            List<Task> tasks = readTasks();
+            long[] links = readIds();
+
+            int tagCount = readCount();
+            Map<String, long[]> tags = tagCount == 0 ? null : new LinkedHashMap<String, long[]>();
+            for (int i = 0; i < tagCount; i++) {
+                tags.put(readString(), readIds());
+            }
+
+            int priorityCount = readCount();
+            long[] priorities = priorityCount == 0 ? null : new long[2 * priorityCount];
+            for (int i = 0; i < priorityCount; i++) {
+                priorities[2 * i] = readId();
+                priorities[2 * i + 1] = unZigZag(readVarLong());
+            }
+
+            TaskSet set = new TaskSet(storages[storage]);
+            try {
+                set.restore(tasks, links.length == 0 ? null : links, tags, priorities);
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException("Cyclic subtasks");
+            }
+            return set;
+        }
+
+        /**
+         * Reads an event.
+         *
+         * @return the event
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        TaskEvent readEvent() throws IOException {
+            int flags = readByte();
+            TaskEvent.Type[] types = TaskEvent.Type.values();
+            int type = flags & EVENT_TYPE_MASK;
+            if (type >= types.length) {
+                throw new StreamCorruptedException("Unknown event type: " + type);
+            }
+            long time = readTime();
+            long taskId = readId();
+            long parentId = (flags & EVENT_PARENT) == 0 ? 0 : readId();
+            Task task = null;
+            if ((flags & EVENT_TASK) != 0) {
+                List<Task> tasks = readTasks();
+                if (tasks.size() != 1) {
+                    throw new StreamCorruptedException("A single task was expected");
+                }
+                task = tasks.get(0);
+            }
+            return new TaskEvent(types[type], time, taskId, (flags & EVENT_DONE) != 0, parentId, task);
+        }
+
+        /**
+         * Reads a list of tasks.
+         *
+         * @return the tasks
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        List<Task> readTasks() throws IOException {
+            int count = readCount();
+            byte[] states = new byte[(count + 7) / 8];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = (byte) readByte();
+            }
+
+            List<Task> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                tasks.add(readTask((states[i >> 3] & (1 << (i & 7))) != 0));
+            }
+            return tasks;
+        }
+
+        /**
+         * Reads the record of a task.
+         *
+         * @param done the saved state of the task
+         * @return the task
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private Task readTask(boolean done) throws IOException {
+            int flags = readByte();
+            long id = readId();
+            String todo = readString();
+            long dueTime = (flags & FLAG_DUE) == 0 ? 0 : readTime();
+            long completionTime = (flags & FLAG_COMPLETED) == 0 ? 0 : readTime();
+            int type = flags & TYPE_MASK;
+
+            try {
+                Recurrence recurrence = type == TaskRecord.TYPE_RECURRING ? Recurrence.cron(readString()) : null;
+                return TaskRecord.restore(type, id, todo, done, dueTime, completionTime, recurrence);
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException(e.getMessage());
+            }
+        }
+
+        /**
+         * Reads a list of IDs preceded by their number.
+         *
+         * @return the IDs
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private long[] readIds() throws IOException {
+            long[] ids = new long[readCount()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = readId();
+            }
+            return ids;
+        }
+
+        /**
+         * Reads an ID written as its difference from the previous one.
+         *
+         * @return the ID
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private long readId() throws IOException {
+            lastId += unZigZag(readVarLong());
+            return lastId;
+        }
+
+        /**
+         * Reads a time written as its difference from the previous one.
+         *
+         * @return the time in milliseconds since the epoch
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private long readTime() throws IOException {
+            lastTime += unZigZag(readVarLong());
+            return lastTime;
+        }
+
+        /**
+         * Reads a number of items.
+         *
+         * @return the number
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private int readCount() throws IOException {
+            long count = readVarLong();
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new StreamCorruptedException("Invalid count: " + count);
+            }
+            return (int) count;
+        }
+
+        /**
+         * Reads a string.
+         *
+         * @return the string, or {@code null}
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private String readString() throws IOException {
+            int length = readCount();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            for (int off = 0; off < bytes.length; ) {
+                int read = in.read(bytes, off, bytes.length - off);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                off += read;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads an unsigned number written seven bits at a time.
+         *
+         * @return the number
+         * @throws IOException if the stream cannot be read or is corrupted
+         */
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed number");
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return the byte, as an unsigned value
+         * @throws IOException if the stream cannot be read or ends
+         */
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+    }
+
+    /**
+     * Maps a signed number to an unsigned one, so that small negative numbers are written on few bytes.
+     *
+     * @param value the signed number
+     * @return the unsigned number
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverts {@link #zigZag(long)}.
+     *
+     * @param value the unsigned number
+     * @return the signed number
+     */
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link TaskStore} keeping the tasks as parallel columns rather than as objects.
+ * <p/>
+ * Each task occupies a slot in an array of IDs and an array of labels, while the states are stored as bits. The arrays
+ * of due dates and completion times are only allocated once a task has one, and so is the array of recurrences once
+ * a {@link RecurringTask} is added. No {@link Task} instance is retained: the tasks returned by this
+ * store are flyweights, created on demand from the columns. As a consequence, modifying them has no effect on the
+ * store.
+ * <p/>
+ * Removed tasks leave an empty slot behind, so that the order of the other tasks is preserved. Slots are compacted once
+ * they outnumber the remaining tasks.
+ * <p/>
+ * The slots of the finished and unfinished tasks are kept as separate bits, so that iterating over the tasks in one
+ * state only materializes these tasks. It still scans a word of bits for each 64 slots.
+ * <p/>
+ * Only {@link Task}, {@link DailyTask} and {@link RecurringTask} can be restored from the columns. Other subclasses of
+ * {@link Task} will be returned as one of these.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+class CompactTaskStore implements TaskStore {
+
+    /**
+     * The initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The ID of the task in each slot.
+     */
+    private long[] ids = new long[INITIAL_CAPACITY];
+    /**
+     * The label of the task in each slot.
+     */
+    private String[] labels = new String[INITIAL_CAPACITY];
+    /**
+     * The due date of the task in each slot, or {@code null} if no task has a due date.
+     */
+    private long[] dueTimes;
+    /**
+     * The recurrence of the task in each slot if it is a {@link RecurringTask}, or {@code null} if no task is.
+     */
+    private Recurrence[] recurrences;
+    /**
+     * The completion time of the task in each slot, or {@code null} if no task was finished.
+     */
+    private long[] completionTimes;
+    /**
+     * The slots containing a task.
+     */
+    private BitSet used = new BitSet();
+    /**
+     * The slots containing a finished task.
+     */
+    private BitSet done = new BitSet();
+    /**
+     * The slots containing an unfinished task.
+     */
+    private BitSet remaining = new BitSet();
+    /**
+     * The slots containing a {@link DailyTask}.
+     */
+    private BitSet daily = new BitSet();
+    /**
+     * The slot of each task, indexed by ID.
+     */
+    private SlotIndex index = new SlotIndex(this::idOf);
+    /**
+     * The first slot which was never used.
+     */
+    private int end;
+    /**
+     * The number of structural modifications, for iterators to detect concurrent modifications.
+     */
+    private int modCount;
+    /**
+     * The number of finished tasks.
+     */
+    private int doneCount;
+    /**
+     * The set owning this store.
+     */
+    private final TaskSet owner;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param owner the set owning this store
+     */
+    CompactTaskStore(TaskSet owner) {
+        this.owner = owner;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#add(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public boolean add(Task task) {
+        if (contains(task.getId())) {
+            return false;
+        }
+
+        if (end == ids.length) {
+            ids = Arrays.copyOf(ids, end * 2);
+            labels = Arrays.copyOf(labels, end * 2);
+            if (dueTimes != null) {
+                dueTimes = Arrays.copyOf(dueTimes, end * 2);
+            }
+            if (recurrences != null) {
+                recurrences = Arrays.copyOf(recurrences, end * 2);
+            }
+            if (completionTimes != null) {
+                completionTimes = Arrays.copyOf(completionTimes, end * 2);
+            }
+        }
+
+        int slot = end++;
+        setDueTime(slot, task.getDueTime());
+        setCompletionTime(slot, task.getCompletionTime());
+        if (task instanceof RecurringTask) {
+            setRecurrence(slot, task.getRecurrence());
+        }
+        // the index reads the ID from its slot
+        ids[slot] = task.getId();
+        labels[slot] = task.getTodo();
+        used.set(slot);
+        done.set(slot, task.isDone());
+        remaining.set(slot, !task.isDone());
+        daily.set(slot, task instanceof DailyTask);
+        index.put(task.getId(), slot);
+        if (task.isDone()) {
+            doneCount++;
+        }
+        modCount++;
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#contains(long)
+     */
+    @Override
+    public boolean contains(long taskId) {
+        return index.get(taskId) != SlotIndex.NO_SLOT;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#get(long)
+     */
+    @Override
+    public Task get(long taskId) {
+        int slot = index.get(taskId);
+        return slot == SlotIndex.NO_SLOT ? null : materialize(slot);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDone(long, boolean)
+     */
+    @Override
+    public Task setDone(long taskId, boolean done) {
+        int slot = index.get(taskId);
+        if (slot == SlotIndex.NO_SLOT) {
+            return null;
+        }
+        if (this.done.get(slot) != done) {
+            setCompletionTime(slot, done ? System.currentTimeMillis() : 0);
+            this.done.set(slot, done);
+            remaining.set(slot, !done);
+            owner.taskStateChanged(taskId, done);
+        }
+        return materialize(slot);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDueDate(long, java.time.Instant)
+     */
+    @Override
+    public Task setDueDate(long taskId, Instant dueDate) {
+        int slot = index.get(taskId);
+        if (slot == SlotIndex.NO_SLOT) {
+            return null;
+        }
+        long dueTime = dueDate == null ? 0 : dueDate.toEpochMilli();
+        if (dueTimeOf(slot) != dueTime) {
+            setDueTime(slot, dueTime);
+            owner.taskDueDateChanged(taskId);
+        }
+        return materialize(slot);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setCompletionTime(long, long)
+     */
+    @Override
+    public void setCompletionTime(long taskId, long completionTime) {
+        int slot = index.get(taskId);
+        if (slot != SlotIndex.NO_SLOT) {
+            setCompletionTime(slot, completionTime);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#remove(long)
+     */
+    @Override
+    public Task remove(long taskId) {
+        int slot = index.remove(taskId);
+        if (slot == SlotIndex.NO_SLOT) {
+            return null;
+        }
+
+        Task task = materialize(slot);
+        if (task.isDone()) {
+            doneCount--;
+        }
+        labels[slot] = null;
+        setDueTime(slot, 0);
+        setCompletionTime(slot, 0);
+        if (recurrences != null) {
+            setRecurrence(slot, null);
+        }
+        used.clear(slot);
+        done.clear(slot);
+        remaining.clear(slot);
+        daily.clear(slot);
+        modCount++;
+
+        if (end > INITIAL_CAPACITY && index.size() < end / 2) {
+            compact();
+        }
+        return task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#size()
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#countDone()
+     */
+    @Override
+    public int countDone() {
+        return doneCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#stateChanged(long, boolean)
+     */
+    @Override
+    public void stateChanged(long taskId, boolean done) {
+        doneCount += done ? 1 : -1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return iterator(used);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#iterator(boolean)
+     */
+    @Override
+    public Iterator<Task> iterator(boolean done) {
+        return iterator(done ? this.done : remaining);
+    }
+
+    /**
+     * Returns an iterator over the tasks in some slots.
+     * <p/>
+     * The slots are read as the iteration goes, so that the iterator reflects the state changes of the following
+     * slots.
+     *
+     * @param slots the slots to iterate over
+     * @return the iterator
+     */
+    private Iterator<Task> iterator(final BitSet slots) {
+        return new Iterator<Task>() {
+            private final int expectedModCount = modCount;
+            private int next = slots.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Task next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Task task = materialize(next);
+                next = slots.nextSetBit(next + 1);
+                return task;
+            }
+        };
+    }
+
+    /**
+     * Returns the ID of the task in a slot.
+     *
+     * @param slot the slot
+     * @return the ID of the task
+     */
+    private long idOf(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Creates a flyweight {@link Task} from the columns.
+     *
+     * @param slot the slot of the task
+     * @return the task
+     */
+    private Task materialize(int slot) {
+        Task task;
+        if (recurrences != null && recurrences[slot] != null) {
+            task = new RecurringTask(ids[slot], labels[slot], done.get(slot), recurrences[slot],
+                    completionTimeOf(slot));
+        } else if (daily.get(slot)) {
+            task = new DailyTask(ids[slot], labels[slot], done.get(slot));
+        } else {
+            task = new Task(ids[slot], labels[slot], done.get(slot));
+        }
+        return task.withDueTime(dueTimeOf(slot)).withCompletionTime(completionTimeOf(slot));
+    }
+
+    /**
+     * Returns the due date of the task in a slot.
+     *
+     * @param slot the slot
+     * @return the due date in milliseconds since the epoch, or {@code 0} if the task has no due date
+     */
+    private long dueTimeOf(int slot) {
+        return dueTimes == null ? 0 : dueTimes[slot];
+    }
+
+    /**
+     * Sets the due date of the task in a slot, allocating the column of due dates if needed.
+     *
+     * @param slot    the slot
+     * @param dueTime the due date in milliseconds since the epoch, or {@code 0} if the task has no due date
+     */
+    private void setDueTime(int slot, long dueTime) {
+        if (dueTimes == null && dueTime != 0) {
+            dueTimes = new long[ids.length];
+        }
+        if (dueTimes != null) {
+            dueTimes[slot] = dueTime;
+        }
+    }
+
+    /**
+     * Returns the completion time of the task in a slot.
+     *
+     * @param slot the slot
+     * @return the completion time in milliseconds since the epoch, or {@code 0} if the task is not finished
+     */
+    private long completionTimeOf(int slot) {
+        return completionTimes == null ? 0 : completionTimes[slot];
+    }
+
+    /**
+     * Sets the completion time of the task in a slot, allocating the column of completion times if needed.
+     *
+     * @param slot           the slot
+     * @param completionTime the completion time in milliseconds since the epoch, or {@code 0}
+     */
+    private void setCompletionTime(int slot, long completionTime) {
+        if (completionTimes == null && completionTime != 0) {
+            completionTimes = new long[ids.length];
+        }
+        if (completionTimes != null) {
+            completionTimes[slot] = completionTime;
+        }
+    }
+
+    /**
+     * Sets the recurrence of the task in a slot, allocating the column of recurrences if needed.
+     *
+     * @param slot       the slot
+     * @param recurrence the recurrence, or {@code null} if the task is not a {@link RecurringTask}
+     */
+    private void setRecurrence(int slot, Recurrence recurrence) {
+        if (recurrences == null) {
+            recurrences = new Recurrence[ids.length];
+        }
+        recurrences[slot] = recurrence;
+    }
+
+    /**
+     * Moves all tasks to the first slots, preserving their order, and rebuilds the index.
+     */
+    private void compact() {
+        int size = index.size();
+        int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+        long[] newIds = new long[capacity];
+        String[] newLabels = new String[capacity];
+        long[] newDueTimes = dueTimes == null ? null : new long[capacity];
+        Recurrence[] newRecurrences = recurrences == null ? null : new Recurrence[capacity];
+        long[] newCompletionTimes = completionTimes == null ? null : new long[capacity];
+        BitSet newUsed = new BitSet(capacity);
+        BitSet newDone = new BitSet(capacity);
+        BitSet newRemaining = new BitSet(capacity);
+        BitSet newDaily = new BitSet(capacity);
+
+        int slot = 0;
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            newIds[slot] = ids[i];
+            newLabels[slot] = labels[i];
+            if (newDueTimes != null) {
+                newDueTimes[slot] = dueTimes[i];
+            }
+            if (newRecurrences != null) {
+                newRecurrences[slot] = recurrences[i];
+            }
+            if (newCompletionTimes != null) {
+                newCompletionTimes[slot] = completionTimes[i];
+            }
+            newDone.set(slot, done.get(i));
+            newRemaining.set(slot, remaining.get(i));
+            newDaily.set(slot, daily.get(i));
+            slot++;
+        }
+
+        newUsed.set(0, slot);
+
+        ids = newIds;
+        labels = newLabels;
+        dueTimes = newDueTimes;
+        recurrences = newRecurrences;
+        completionTimes = newCompletionTimes;
+        // the new index reads the IDs from the new slots
+        SlotIndex newIndex = new SlotIndex(this::idOf);
+        for (int i = 0; i < slot; i++) {
+            newIndex.put(ids[i], i);
+        }
+        used = newUsed;
+        done = newDone;
+        remaining = newRemaining;
+        daily = newDaily;
+        index = newIndex;
+        end = slot;
+        modCount++;
+    }
+}
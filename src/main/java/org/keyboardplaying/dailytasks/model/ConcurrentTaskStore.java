@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe {@link TaskStore}.
+ * <p/>
+ * Tasks are indexed by ID in a concurrent hash map, and ordered by their position of insertion in a concurrent skip
+ * list. Two other skip lists partition them by state. Lookups and iterations do not lock: iterators are weakly
+ * consistent, they never throw a {@link java.util.ConcurrentModificationException} and reflect some of the
+ * modifications made after their creation.
+ * <p/>
+ * Modifications lock one stripe among several, chosen from the ID of the task, so that threads modifying different
+ * tasks do not wait for each other. {@link #lockAll()} locks all stripes at once.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+class ConcurrentTaskStore implements TaskStore {
+
+    /**
+     * The number of lock stripes, which must be a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * The tasks, indexed by ID.
+     */
+    private final ConcurrentMap<Long, Entry> index = new ConcurrentHashMap<>();
+    /**
+     * The tasks, indexed by insertion position.
+     */
+    private final ConcurrentNavigableMap<Long, Task> order = new ConcurrentSkipListMap<>();
+    /**
+     * The unfinished tasks, indexed by insertion position.
+     */
+    private final ConcurrentNavigableMap<Long, Task> remaining = new ConcurrentSkipListMap<>();
+    /**
+     * The finished tasks, indexed by insertion position.
+     */
+    private final ConcurrentNavigableMap<Long, Task> done = new ConcurrentSkipListMap<>();
+    /**
+     * The sequence providing the insertion positions.
+     */
+    private final AtomicLong positions = new AtomicLong();
+    /**
+     * The number of finished tasks.
+     */
+    private final LongAdder doneCount = new LongAdder();
+    /**
+     * The locks guarding modifications, chosen from the ID of the modified task.
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    /**
+     * The set owning this store.
+     */
+    private final TaskSet owner;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param owner the set owning this store
+     */
+    ConcurrentTaskStore(TaskSet owner) {
+        this.owner = owner;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#add(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public boolean add(Task task) {
+        long taskId = task.getId();
+        ReentrantLock lock = stripe(taskId);
+        lock.lock();
+        try {
+            if (index.containsKey(taskId)) {
+                return false;
+            }
+
+            claim(task);
+            Entry entry = new Entry(positions.incrementAndGet(), task);
+            index.put(taskId, entry);
+            order.put(entry.position, task);
+            partition(entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#contains(long)
+     */
+    @Override
+    public boolean contains(long taskId) {
+        return index.containsKey(taskId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#get(long)
+     */
+    @Override
+    public Task get(long taskId) {
+        Entry entry = index.get(taskId);
+        return entry == null ? null : entry.task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDone(long, boolean)
+     */
+    @Override
+    public Task setDone(long taskId, boolean done) {
+        ReentrantLock lock = stripe(taskId);
+        lock.lock();
+        try {
+            Entry entry = index.get(taskId);
+            if (entry == null) {
+                return null;
+            }
+            entry.task.setDone(done);
+            return entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#remove(long)
+     */
+    @Override
+    public Task remove(long taskId) {
+        ReentrantLock lock = stripe(taskId);
+        lock.lock();
+        try {
+            Entry entry = index.remove(taskId);
+            if (entry == null) {
+                return null;
+            }
+            order.remove(entry.position);
+            remaining.remove(entry.position);
+            done.remove(entry.position);
+            release(entry.task);
+            return entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#size()
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#countDone()
+     */
+    @Override
+    public int countDone() {
+        return doneCount.intValue();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#stateChanged(long, boolean)
+     */
+    @Override
+    public void stateChanged(long taskId, boolean done) {
+        doneCount.add(done ? 1 : -1);
+
+        ReentrantLock lock = stripe(taskId);
+        lock.lock();
+        try {
+            Entry entry = index.get(taskId);
+            if (entry != null) {
+                partition(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#lockAll()
+     */
+    @Override
+    public void lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#unlockAll()
+     */
+    @Override
+    public void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#isLockedByCurrentThread()
+     */
+    @Override
+    public boolean isLockedByCurrentThread() {
+        for (ReentrantLock lock : stripes) {
+            if (lock.isHeldByCurrentThread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return Collections.unmodifiableCollection(order.values()).iterator();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#iterator(boolean)
+     */
+    @Override
+    public Iterator<Task> iterator(boolean done) {
+        return Collections.unmodifiableCollection((done ? this.done : remaining).values()).iterator();
+    }
+
+    /**
+     * Moves a task to the partition matching its current state.
+     * <p/>
+     * This method must be called under the lock of the task's stripe. As the state is read rather than passed along
+     * with the notification, the partition remains right even if the notifications of concurrent changes of the state
+     * are received out of order.
+     *
+     * @param entry the task along with its position
+     */
+    private void partition(Entry entry) {
+        if (entry.task.isDone()) {
+            done.put(entry.position, entry.task);
+            remaining.remove(entry.position);
+        } else {
+            remaining.put(entry.position, entry.task);
+            done.remove(entry.position);
+        }
+    }
+
+    /**
+     * Returns the lock guarding the modifications of a task.
+     *
+     * @param taskId the ID of the task
+     * @return the lock
+     */
+    private ReentrantLock stripe(long taskId) {
+        long h = taskId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h ^ (h >>> 32)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Makes a task belong to the owner of this store and counts it.
+     * <p/>
+     * The ownership and the state are read under the lock of the task, so that a concurrent state change is either
+     * counted here or notified to the owner, but not both.
+     *
+     * @param task the task to claim
+     * @throws IllegalArgumentException if the task already belongs to another set
+     */
+    private void claim(Task task) {
+        synchronized (task) {
+            if (task.getOwner() != null) {
+                throw new IllegalArgumentException(String.format("Task #%d already belongs to another set.",
+                        task.getId()));
+            }
+            task.setOwner(owner);
+            if (task.isDone()) {
+                doneCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Detaches a task from the owner of this store and uncounts it.
+     *
+     * @param task the task to release
+     */
+    private void release(Task task) {
+        synchronized (task) {
+            task.setOwner(null);
+            if (task.isDone()) {
+                doneCount.decrement();
+            }
+        }
+    }
+
+    /**
+     * A task along with its insertion position.
+     */
+    private static final class Entry {
+
+        /**
+         * The insertion position of the task.
+         */
+        private final long position;
+        /**
+         * The task.
+         */
+        private final Task task;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param position the insertion position of the task
+         * @param task     the task
+         */
+        private Entry(long position, Task task) {
+            this.position = position;
+            this.task = task;
+        }
+    }
+}
@@ -12,6 +12,7 @@
  */
 package org.keyboardplaying.dailytasks.model;
 
+import java.io.EOFException;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -27,6 +28,17 @@ import java.io.ObjectOutput;
  */
 public class DailyTask extends Task implements Externalizable {
 
+    /**
+     * The serial version UID computed for the first versions of this class, so that the tasks they saved can still be
+     * read.
+     */
+    private static final long serialVersionUID = 1162822585662586883L;
+
+    /**
+     * The rule telling when daily tasks repeat.
+     */
+    private static final Recurrence DAILY = Recurrence.daily();
+
     /**
      * This constructor is for serialization only. Please don't use it.
      */
@@ -53,6 +65,56 @@ public class DailyTask extends Task implements Externalizable {
         super(todo);
     }
 
+    /**
+     * Creates a new instance with a known identifier.
+     *
+     * @param id   the task's identifier
+     * @param todo the task's label
+     * @param done {@code true} if the task is finished, {@code false} otherwise
+     * @see Task#Task(long, String, boolean)
+     */
+    DailyTask(long id, String todo, boolean done) {
+        super(id, todo, done);
+    }
+
+    /**
+     * Returns the rule telling when this task repeats, which is every day at midnight.
+     * <p/>
+     * The state of the task is however reset at each session rather than each day, see {@link RecurringTask} for a
+     * task whose state follows its occurrences.
+     *
+     * @return {@link Recurrence#daily()}
+     */
+    @Override
+    public Recurrence getRecurrence() {
+        return DAILY;
+    }
+
+    /**
+     * Returns the state this task should be restored to when replaying a recorded state change, which is always
+     * unfinished as the state of a daily task is not saved.
+     *
+     * @param done           the recorded state
+     * @param completionTime the time at which the state was recorded, in milliseconds since the epoch
+     * @return {@code false}
+     */
+    @Override
+    boolean restoredState(boolean done, long completionTime) {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.Task#copy()
+     */
+    @Override
+    DailyTask copy() {
+        DailyTask copy = new DailyTask(getId(), getTodo(), isDone());
+        copy.withDueTime(getDueTime());
+        return copy;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -60,8 +122,10 @@ public class DailyTask extends Task implements Externalizable {
      */
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        // write only label, do not save state
+        // write only label, ID and due date, do not save state
         out.writeObject(getTodo());
+        out.writeLong(getId());
+        out.writeLong(getDueTime());
     }
 
     /*
@@ -73,5 +137,16 @@ public class DailyTask extends Task implements Externalizable {
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         // read the fields which were written, in the same order
         setTodo((String) in.readObject());
+        try {
+            restoreId(in.readLong());
+        } catch (EOFException e) {
+            // tasks saved by previous versions only had a label, keep the ID allocated on instantiation
+            return;
+        }
+        try {
+            withDueTime(in.readLong());
+        } catch (EOFException e) {
+            // tasks saved by previous versions had no due date
+        }
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The unfinished tasks of a {@link TaskSet} due in a window of time relative to the current time, such as the overdue
+ * tasks or the tasks due today.
+ * <p/>
+ * The view is computed by a range query over the due dates of the set, which does not go through the tasks outside
+ * the window. As the window moves with time, the view is {@link #refresh() refreshed} on demand or periodically, on a
+ * {@link #schedule(ScheduledExecutorService, long, TimeUnit, Runnable) timer}.
+ * <p/>
+ * The view is thread-safe.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class DueDateView {
+
+    /**
+     * The windows of time a view can show.
+     */
+    public enum Window {
+        /**
+         * The tasks whose due date is past.
+         */
+        OVERDUE {
+            @Override
+            List<Task> query(TaskSet tasks, ZonedDateTime now) {
+                return tasks.getOverdueTasks(now.toInstant());
+            }
+        },
+        /**
+         * The tasks due within the next hour.
+         */
+        NEXT_HOUR {
+            @Override
+            List<Task> query(TaskSet tasks, ZonedDateTime now) {
+                return tasks.getTasksDue(now.toInstant(), now.plusHours(1).toInstant());
+            }
+        },
+        /**
+         * The tasks due today, including the ones whose due date is already past, in the time zone of the clock.
+         */
+        TODAY {
+            @Override
+            List<Task> query(TaskSet tasks, ZonedDateTime now) {
+                ZonedDateTime today = now.truncatedTo(ChronoUnit.DAYS);
+                return tasks.getTasksDue(today.toInstant(), today.plusDays(1).toInstant());
+            }
+        };
+
+        /**
+         * Looks up the tasks in this window.
+         *
+         * @param tasks the set of tasks
+         * @param now   the current time
+         * @return the unfinished tasks in the window, ordered by due date
+         */
+        abstract List<Task> query(TaskSet tasks, ZonedDateTime now);
+    }
+
+    /**
+     * The set of tasks.
+     */
+    private final TaskSet tasks;
+    /**
+     * The window of time shown by this view.
+     */
+    private final Window window;
+    /**
+     * The clock giving the current time and time zone.
+     */
+    private final Clock clock;
+    /**
+     * The tasks in the window, as of the last refresh.
+     */
+    private volatile List<Task> current = Collections.emptyList();
+
+    /**
+     * Creates a new view, using the system clock and time zone.
+     *
+     * @param tasks  the set of tasks
+     * @param window the window of time to show
+     */
+    public DueDateView(TaskSet tasks, Window window) {
+        this(tasks, window, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a new view.
+     *
+     * @param tasks  the set of tasks
+     * @param window the window of time to show
+     * @param clock  the clock giving the current time and time zone
+     */
+    public DueDateView(TaskSet tasks, Window window, Clock clock) {
+        this.tasks = tasks;
+        this.window = window;
+        this.clock = clock;
+        refresh();
+    }
+
+    /**
+     * Returns the tasks in the window, as of the last refresh.
+     *
+     * @return the unfinished tasks in the window, ordered by due date
+     */
+    public List<Task> getTasks() {
+        return current;
+    }
+
+    /**
+     * Looks up the tasks in the window at the current time.
+     *
+     * @return {@code true} if the tasks in the window changed since the last refresh
+     */
+    public synchronized boolean refresh() {
+        List<Task> refreshed = Collections.unmodifiableList(window.query(tasks, ZonedDateTime.now(clock)));
+        // tasks are equal when they have the same ID
+        boolean changed = !refreshed.equals(current);
+        current = refreshed;
+        return changed;
+    }
+
+    /**
+     * Refreshes this view periodically.
+     *
+     * @param executor the executor running the refreshes
+     * @param period   the time between two refreshes
+     * @param unit     the unit of the period
+     * @param onChange the action to run after a refresh changed the view, or {@code null} if none
+     * @return the scheduled refreshes, to be cancelled once the view is no longer needed
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit,
+            final Runnable onChange) {
+        return executor.scheduleAtFixedRate(() -> {
+            if (refresh() && onChange != null) {
+                onChange.run();
+            }
+        }, period, period, unit);
+    }
+}
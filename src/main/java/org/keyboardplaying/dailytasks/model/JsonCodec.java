@@ -0,0 +1,649 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON format for {@link Task} and {@link TaskSet}, which can be read and edited by other tools.
+ * <p/>
+ * The data is an object holding the version of the format and either a {@code task} or the {@code storage},
+ * {@code tasks}, {@code links}, {@code tags} and {@code priorities} of a set. Each task is an object holding its
+ * {@code id}, {@code type}, {@code todo} and {@code done} state, and when relevant its {@code due} date and
+ * {@code completed} time as ISO-8601 instants and its {@code recurrence} as a cron expression.
+ * <p/>
+ * The same rules as for the other formats apply when reading the states of the tasks, see {@link BinaryCodec}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class JsonCodec {
+
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The names of the types of tasks, indexed by type.
+     */
+    private static final String[] TYPES = {"task", "daily", "recurring"};
+
+    /**
+     * Private constructor for utility class.
+     */
+    private JsonCodec() {
+    }
+
+    /**
+     * Tells whether an object can be written by this codec.
+     *
+     * @param object the object
+     * @return {@code true} for a {@link TaskSet} or a {@link Task}, {@link DailyTask} or {@link RecurringTask}
+     * @see BinaryCodec#supports(Object)
+     */
+    public static boolean supports(Object object) {
+        return TaskRecord.supports(object);
+    }
+
+    /**
+     * Writes an object to a stream, as UTF-8.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param object the object, which must be {@link #supports(Object) supported}
+     * @param out    the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public static void encode(Object object, OutputStream out) throws IOException {
+        if (!supports(object)) {
+            throw new IllegalArgumentException("Unsupported object: " + object);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("{\"version\":" + VERSION + ',');
+        if (object instanceof TaskSet) {
+            writeSet((TaskSet) object, writer);
+        } else {
+            writer.write("\"task\":");
+            writeTask((Task) object, writer);
+        }
+        writer.write("}\n");
+        writer.flush();
+    }
+
+    /**
+     * Reads an object from a stream.
+     *
+     * @param in the stream, which is read up to its end
+     * @return the {@link TaskSet} or {@link Task}
+     * @throws IOException if the stream cannot be read or does not hold data written by this codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(InputStream in) throws IOException {
+        Map<String, Object> root = asObject(new Parser(new InputStreamReader(in, StandardCharsets.UTF_8)).parse());
+        long version = asLong(root.get("version"));
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version: " + version);
+        }
+
+        try {
+            if (root.containsKey("task")) {
+                return (T) readTask(root.get("task"));
+            }
+            return (T) readSet(root);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new StreamCorruptedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the members of a set.
+     *
+     * @param set    the set, which should be a {@link TaskSet#snapshot() snapshot} if it may be modified meanwhile
+     * @param writer the writer
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeSet(TaskSet set, Writer writer) throws IOException {
+        writer.write("\"storage\":\"" + set.getStorage().name() + "\",\"tasks\":[");
+        boolean first = true;
+        for (Task task : set) {
+            writer.write(first ? "\n" : ",\n");
+            writeTask(task, writer);
+            first = false;
+        }
+        writer.write("\n],\"links\":[");
+        long[] links = set.exportLinks();
+        for (int i = 0; links != null && i < links.length; i += 2) {
+            writer.write((i == 0 ? "[" : ",[") + links[i] + ',' + links[i + 1] + ']');
+        }
+        writer.write("],\"tags\":{");
+        Map<String, long[]> tags = set.exportTags();
+        first = true;
+        for (Map.Entry<String, long[]> tag : tags == null ? Collections.<String, long[]>emptyMap().entrySet()
+                : tags.entrySet()) {
+            writer.write(first ? "" : ",");
+            writeString(tag.getKey(), writer);
+            writer.write(':');
+            writeIds(tag.getValue(), writer);
+            first = false;
+        }
+        writer.write("},\"priorities\":[");
+        long[] priorities = set.exportPriorities();
+        for (int i = 0; priorities != null && i < priorities.length; i += 2) {
+            writer.write((i == 0 ? "[" : ",[") + priorities[i] + ',' + priorities[i + 1] + ']');
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Writes a task as an object.
+     *
+     * @param task   the task
+     * @param writer the writer
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeTask(Task task, Writer writer) throws IOException {
+        int type = TaskRecord.typeOf(task.getClass());
+        writer.write("{\"id\":" + task.getId() + ",\"type\":\"" + TYPES[type] + "\",\"todo\":");
+        writeString(task.getTodo(), writer);
+        writer.write(",\"done\":" + (task.isDone() && type != TaskRecord.TYPE_DAILY));
+        if (task.getDueTime() != 0) {
+            writer.write(",\"due\":\"" + Instant.ofEpochMilli(task.getDueTime()) + '"');
+        }
+        long completionTime = TaskRecord.completionTimeOf(task);
+        if (completionTime != 0) {
+            writer.write(",\"completed\":\"" + Instant.ofEpochMilli(completionTime) + '"');
+        }
+        if (type == TaskRecord.TYPE_RECURRING) {
+            writer.write(",\"recurrence\":");
+            writeString(task.getRecurrence().toString(), writer);
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Writes an array of IDs.
+     *
+     * @param ids    the IDs
+     * @param writer the writer
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeIds(long[] ids, Writer writer) throws IOException {
+        writer.write('[');
+        for (int i = 0; i < ids.length; i++) {
+            writer.write((i == 0 ? "" : ",") + ids[i]);
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Writes a string, escaping the characters JSON requires to be.
+     *
+     * @param value  the string, or {@code null}
+     * @param writer the writer
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeString(String value, Writer writer) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Rebuilds a set from its members.
+     *
+     * @param root the object holding the members of the set
+     * @return the set
+     * @throws StreamCorruptedException if a member does not have the expected type
+     */
+    private static TaskSet readSet(Map<String, Object> root) throws StreamCorruptedException {
+        TaskSet.Storage storage = TaskSet.Storage.valueOf(asString(root.get("storage")));
+
+        List<Task> tasks = new ArrayList<>();
+        for (Object task : asArray(root.get("tasks"))) {
+            tasks.add(readTask(task));
+        }
+
+        List<Object> linkPairs = root.containsKey("links") ? asArray(root.get("links")) : Collections.emptyList();
+        long[] links = linkPairs.isEmpty() ? null : readPairs(linkPairs);
+
+        Map<String, long[]> tags = null;
+        if (root.containsKey("tags")) {
+            for (Map.Entry<String, Object> tag : asObject(root.get("tags")).entrySet()) {
+                if (tags == null) {
+                    tags = new LinkedHashMap<>();
+                }
+                List<Object> ids = asArray(tag.getValue());
+                long[] tagged = new long[ids.size()];
+                for (int i = 0; i < tagged.length; i++) {
+                    tagged[i] = asLong(ids.get(i));
+                }
+                tags.put(tag.getKey(), tagged);
+            }
+        }
+
+        List<Object> priorityPairs = root.containsKey("priorities") ? asArray(root.get("priorities"))
+                : Collections.emptyList();
+        long[] priorities = priorityPairs.isEmpty() ? null : readPairs(priorityPairs);
+
+        TaskSet set = new TaskSet(storage);
+        set.restore(tasks, links, tags, priorities);
+        return set;
+    }
+
+    /**
+     * Reads an array of pairs of numbers.
+     *
+     * @param pairs the array of pairs
+     * @return the numbers, in order
+     * @throws StreamCorruptedException if an item is not a pair of numbers
+     */
+    private static long[] readPairs(List<Object> pairs) throws StreamCorruptedException {
+        long[] values = new long[2 * pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            List<Object> pair = asArray(pairs.get(i));
+            if (pair.size() != 2) {
+                throw new StreamCorruptedException("A pair was expected: " + pair);
+            }
+            values[2 * i] = asLong(pair.get(0));
+            values[2 * i + 1] = asLong(pair.get(1));
+        }
+        return values;
+    }
+
+    /**
+     * Rebuilds a task from an object.
+     *
+     * @param value the object
+     * @return the task
+     * @throws StreamCorruptedException if a member does not have the expected type
+     */
+    private static Task readTask(Object value) throws StreamCorruptedException {
+        Map<String, Object> task = asObject(value);
+        String typeName = asString(task.get("type"));
+        int type = -1;
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(typeName)) {
+                type = i;
+            }
+        }
+        Object due = task.get("due");
+        Object completed = task.get("completed");
+        Object todo = task.get("todo");
+        Object recurrence = task.get("recurrence");
+        return TaskRecord.restore(type, asLong(task.get("id")), todo == null ? null : asString(todo),
+                Boolean.TRUE.equals(task.get("done")),
+                due == null ? 0 : Instant.parse(asString(due)).toEpochMilli(),
+                completed == null ? 0 : Instant.parse(asString(completed)).toEpochMilli(),
+                recurrence == null ? null : Recurrence.cron(asString(recurrence)));
+    }
+
+    /**
+     * Checks a parsed value is an object.
+     *
+     * @param value the value
+     * @return the members of the object
+     * @throws StreamCorruptedException if the value is not an object
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value) throws StreamCorruptedException {
+        return (Map<String, Object>) as(value, Map.class);
+    }
+
+    /**
+     * Checks a parsed value is an array.
+     *
+     * @param value the value
+     * @return the items of the array
+     * @throws StreamCorruptedException if the value is not an array
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> asArray(Object value) throws StreamCorruptedException {
+        return (List<Object>) as(value, List.class);
+    }
+
+    /**
+     * Checks a parsed value is a string.
+     *
+     * @param value the value
+     * @return the string
+     * @throws StreamCorruptedException if the value is not a string
+     */
+    private static String asString(Object value) throws StreamCorruptedException {
+        return as(value, String.class);
+    }
+
+    /**
+     * Checks a parsed value is an integer.
+     *
+     * @param value the value
+     * @return the integer
+     * @throws StreamCorruptedException if the value is not an integer
+     */
+    private static long asLong(Object value) throws StreamCorruptedException {
+        return as(value, Long.class);
+    }
+
+    /**
+     * Checks the type of a parsed value.
+     *
+     * @param value the value
+     * @param type  the expected type
+     * @return the value
+     * @throws StreamCorruptedException if the value is missing or does not have the expected type
+     */
+    private static <T> T as(Object value, Class<T> type) throws StreamCorruptedException {
+        if (!type.isInstance(value)) {
+            throw new StreamCorruptedException("Expected " + type.getSimpleName() + ", found " + value);
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * A parser of JSON documents, returning objects as maps, arrays as lists and integers as longs.
+     */
+    private static final class Parser {
+
+        /**
+         * The document.
+         */
+        private final CharSequence document;
+        /**
+         * The next character, or {@code -1} at the end of the document.
+         */
+        private int next;
+        /**
+         * The position of the next character.
+         */
+        private int position = -1;
+
+        /**
+         * Creates a new instance.
+         * <p/>
+         * The document is read at once, as the parsed values hold all of its content anyway.
+         *
+         * @param reader the reader of the document
+         * @throws IOException if the document cannot be read
+         */
+        Parser(Reader reader) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int read; (read = reader.read(buffer)) >= 0; ) {
+                builder.append(buffer, 0, read);
+            }
+            this.document = builder;
+            advance();
+        }
+
+        /**
+         * Parses the document.
+         *
+         * @return the root value of the document
+         * @throws StreamCorruptedException if the document is not valid JSON
+         */
+        Object parse() throws StreamCorruptedException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (next != -1) {
+                throw error("end of document");
+            }
+            return value;
+        }
+
+        /**
+         * Parses a value.
+         *
+         * @return the value
+         * @throws StreamCorruptedException if the document is not valid JSON
+         */
+        private Object parseValue() throws StreamCorruptedException {
+            skipWhitespace();
+            switch (next) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return parseNumber();
+            }
+        }
+
+        /**
+         * Parses an object.
+         *
+         * @return the members of the object, in order
+         * @throws StreamCorruptedException if the document is not valid JSON
+         */
+        private Map<String, Object> parseObject() throws StreamCorruptedException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            advance();
+            skipWhitespace();
+            if (next == '}') {
+                advance();
+                return object;
+            }
+            do {
+                skipWhitespace();
+                if (next != '"') {
+                    throw error("member name");
+                }
+                String name = parseString();
+                skipWhitespace();
+                expect(":");
+                object.put(name, parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            expect("}");
+            return object;
+        }
+
+        /**
+         * Parses an array.
+         *
+         * @return the items of the array
+         * @throws StreamCorruptedException if the document is not valid JSON
+         */
+        private List<Object> parseArray() throws StreamCorruptedException {
+            List<Object> array = new ArrayList<>();
+            advance();
+            skipWhitespace();
+            if (next == ']') {
+                advance();
+                return array;
+            }
+            do {
+                array.add(parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            expect("]");
+            return array;
+        }
+
+        /**
+         * Parses a string.
+         *
+         * @return the string
+         * @throws StreamCorruptedException if the document is not valid JSON
+         */
+        private String parseString() throws StreamCorruptedException {
+            StringBuilder builder = new StringBuilder();
+            advance();
+            while (next != '"') {
+                if (next == -1 || next < 0x20) {
+                    throw error("closing quote");
+                } else if (next == '\\') {
+                    advance();
+                    switch (next) {
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < hex.length; i++) {
+                                advance();
+                                hex[i] = (char) next;
+                            }
+                            try {
+                                builder.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw error("unicode escape");
+                            }
+                            break;
+                        case '"':
+                        case '\\':
+                        case '/':
+                            builder.append((char) next);
+                            break;
+                        default:
+                            throw error("escape sequence");
+                    }
+                } else {
+                    builder.append((char) next);
+                }
+                advance();
+            }
+            advance();
+            return builder.toString();
+        }
+
+        /**
+         * Parses an integer.
+         *
+         * @return the integer
+         * @throws StreamCorruptedException if the value is not an integer
+         */
+        private Long parseNumber() throws StreamCorruptedException {
+            StringBuilder builder = new StringBuilder();
+            if (next == '-') {
+                builder.append('-');
+                advance();
+            }
+            while (next >= '0' && next <= '9') {
+                builder.append((char) next);
+                advance();
+            }
+            try {
+                return Long.valueOf(builder.toString());
+            } catch (NumberFormatException e) {
+                throw error("integer");
+            }
+        }
+
+        /**
+         * Consumes the next character if it is the expected one.
+         *
+         * @param c the expected character
+         * @return {@code true} if the character was consumed
+         */
+        private boolean consume(char c) {
+            if (next == c) {
+                advance();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Consumes the expected characters.
+         *
+         * @param expected the expected characters
+         * @throws StreamCorruptedException if the document holds other characters
+         */
+        private void expect(String expected) throws StreamCorruptedException {
+            for (int i = 0; i < expected.length(); i++) {
+                if (!consume(expected.charAt(i))) {
+                    throw error('"' + expected + '"');
+                }
+            }
+        }
+
+        /**
+         * Skips the whitespace preceding the next token.
+         */
+        private void skipWhitespace() {
+            while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+                advance();
+            }
+        }
+
+        /**
+         * Moves to the next character.
+         */
+        private void advance() {
+            position++;
+            next = position < document.length() ? document.charAt(position) : -1;
+        }
+
+        /**
+         * Creates the exception thrown when the document is not valid.
+         *
+         * @param expected what was expected
+         * @return the exception
+         */
+        private StreamCorruptedException error(String expected) {
+            return new StreamCorruptedException("Expected " + expected + " at position " + position);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index of the words in the labels of a {@link TaskSet}'s tasks.
+ * <p/>
+ * The labels are split into words, which are lower-cased and stripped from their diacritics. Each word is mapped to
+ * the sorted IDs of the tasks whose label contains it, so that a query only goes through the tasks matching its words
+ * rather than through all the labels.
+ * <p/>
+ * The index can also map the trigrams (sequences of three characters) of the words to the words containing them, so
+ * that the words containing a fragment or close to a misspelled word are found without going through the whole
+ * vocabulary. Without trigrams, these queries go through the vocabulary, which is still much smaller than the set.
+ * <p/>
+ * The index listens to its set to stay up to date as tasks are added or removed, until it is {@link #close() closed}.
+ * It is thread-safe.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class LabelIndex implements TaskSetListener {
+
+    /**
+     * The length of the trigrams.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * The indexed set.
+     */
+    private final TaskSet tasks;
+    /**
+     * The IDs of the tasks containing each word.
+     */
+    private final Map<String, Postings> postings = new HashMap<>();
+    /**
+     * The words containing each trigram, or {@code null} if trigrams are not indexed.
+     */
+    private final Map<String, Set<String>> trigrams;
+
+    /**
+     * Creates an index of the tasks of a set, and keeps it up to date with the changes of the set.
+     *
+     * @param tasks    the set to index
+     * @param trigrams {@code true} to index the trigrams of the words for substring and approximate queries
+     */
+    public LabelIndex(TaskSet tasks, boolean trigrams) {
+        this.tasks = tasks;
+        this.trigrams = trigrams ? new HashMap<String, Set<String>>() : null;
+        tasks.addListener(this, true);
+    }
+
+    /**
+     * Stops updating this index when its set changes.
+     */
+    public void close() {
+        tasks.removeListener(this);
+    }
+
+    /**
+     * Returns the IDs of the tasks whose label contains all the words of a query.
+     *
+     * @param query the words to look for
+     * @return the IDs of the matching tasks, in ascending order
+     */
+    public synchronized long[] search(String query) {
+        List<Postings> matches = new ArrayList<>();
+        for (String word : tokenize(query)) {
+            Postings match = postings.get(word);
+            if (match == null) {
+                return new long[0];
+            }
+            matches.add(match);
+        }
+        return intersect(matches);
+    }
+
+    /**
+     * Returns the IDs of the tasks whose label contains words containing each fragment of a query.
+     * <p/>
+     * For instance, "back chec" matches "Check backups".
+     *
+     * @param query the fragments of words to look for
+     * @return the IDs of the matching tasks, in ascending order
+     */
+    public synchronized long[] searchSubstring(String query) {
+        List<Postings> matches = new ArrayList<>();
+        for (String fragment : tokenize(query)) {
+            List<String> words = new ArrayList<>();
+            for (String word : candidates(fragment, false)) {
+                if (word.contains(fragment)) {
+                    words.add(word);
+                }
+            }
+            matches.add(union(words));
+        }
+        return intersect(matches);
+    }
+
+    /**
+     * Returns the IDs of the tasks whose label contains words close to each word of a query.
+     * <p/>
+     * Two words are close if one can be changed into the other by inserting, deleting or replacing at most
+     * {@code maxDistance} characters (Levenshtein distance). For instance, "chek bakcups" matches "Check backups"
+     * with a distance of {@code 2}.
+     *
+     * @param query       the words to look for
+     * @param maxDistance the maximal number of typos in each word
+     * @return the IDs of the matching tasks, in ascending order
+     */
+    public synchronized long[] searchApproximate(String query, int maxDistance) {
+        List<Postings> matches = new ArrayList<>();
+        for (String typed : tokenize(query)) {
+            List<String> words = new ArrayList<>();
+            // each typo alters at most three trigrams, long enough words keep at least one of them
+            boolean shareTrigram = typed.length() >= GRAM * (maxDistance + 1);
+            for (String word : shareTrigram ? candidates(typed, true) : postings.keySet()) {
+                if (Math.abs(word.length() - typed.length()) <= maxDistance
+                        && distance(word, typed, maxDistance) <= maxDistance) {
+                    words.add(word);
+                }
+            }
+            matches.add(union(words));
+        }
+        return intersect(matches);
+    }
+
+    /**
+     * Returns the number of distinct words in the index.
+     *
+     * @return the size of the vocabulary
+     */
+    public synchronized int getVocabularySize() {
+        return postings.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskAdded(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public synchronized void taskAdded(Task task) {
+        for (String word : new HashSet<>(tokenize(task.getTodo()))) {
+            Postings ids = postings.get(word);
+            if (ids == null) {
+                ids = new Postings();
+                postings.put(word, ids);
+                indexTrigrams(word);
+            }
+            ids.add(task.getId());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public synchronized void taskRemoved(Task task) {
+        for (String word : new HashSet<>(tokenize(task.getTodo()))) {
+            Postings ids = postings.get(word);
+            if (ids != null && ids.remove(task.getId()) && ids.size == 0) {
+                postings.remove(word);
+                unindexTrigrams(word);
+            }
+        }
+    }
+
+    /**
+     * Splits a text into normalized words.
+     * <p/>
+     * The words are the sequences of letters and digits of the text, lower-cased and stripped from their diacritics.
+     *
+     * @param text the text to split
+     * @return the words of the text, in order
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Returns the words of the vocabulary which may match a word.
+     * <p/>
+     * If trigrams are indexed and the word is long enough, the candidates are the words sharing all (or at least one)
+     * of its trigrams. Otherwise, the whole vocabulary is returned.
+     *
+     * @param word the word
+     * @param any  {@code true} if the candidates need only share one trigram with the word, {@code false} if they
+     *             must share all of them
+     * @return the candidates
+     */
+    private Collection<String> candidates(String word, boolean any) {
+        if (trigrams == null || word.length() < GRAM) {
+            return postings.keySet();
+        }
+
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            Set<String> words = trigrams.get(word.substring(i, i + GRAM));
+            if (any) {
+                if (words != null) {
+                    if (candidates == null) {
+                        candidates = new HashSet<>();
+                    }
+                    candidates.addAll(words);
+                }
+            } else if (words == null) {
+                return new ArrayList<>();
+            } else if (candidates == null) {
+                candidates = new HashSet<>(words);
+            } else {
+                candidates.retainAll(words);
+            }
+        }
+        return candidates == null ? new ArrayList<String>() : candidates;
+    }
+
+    /**
+     * Maps the trigrams of a new word of the vocabulary to it.
+     *
+     * @param word the word
+     */
+    private void indexTrigrams(String word) {
+        if (trigrams != null) {
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                String trigram = word.substring(i, i + GRAM);
+                Set<String> words = trigrams.get(trigram);
+                if (words == null) {
+                    words = new HashSet<>();
+                    trigrams.put(trigram, words);
+                }
+                words.add(word);
+            }
+        }
+    }
+
+    /**
+     * Unmaps the trigrams of a word which left the vocabulary.
+     *
+     * @param word the word
+     */
+    private void unindexTrigrams(String word) {
+        if (trigrams != null) {
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                String trigram = word.substring(i, i + GRAM);
+                Set<String> words = trigrams.get(trigram);
+                if (words != null && words.remove(word) && words.isEmpty()) {
+                    trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the tasks containing any of the supplied words.
+     * <p/>
+     * The lists of IDs are merged two by two, so that each ID is copied once per level of merging.
+     *
+     * @param words the words of the vocabulary
+     * @return the IDs of the tasks containing at least one of the words
+     */
+    private Postings union(List<String> words) {
+        List<Postings> lists = new ArrayList<>(words.size());
+        for (String word : words) {
+            lists.add(postings.get(word));
+        }
+        if (lists.isEmpty()) {
+            return new Postings();
+        }
+
+        while (lists.size() > 1) {
+            List<Postings> merged = new ArrayList<>((lists.size() + 1) / 2);
+            for (int i = 0; i < lists.size(); i += 2) {
+                merged.add(i + 1 < lists.size() ? merge(lists.get(i), lists.get(i + 1)) : lists.get(i));
+            }
+            lists = merged;
+        }
+        return lists.get(0);
+    }
+
+    /**
+     * Merges two lists of IDs.
+     *
+     * @param a the first list
+     * @param b the second list
+     * @return the IDs contained in either list, in ascending order
+     */
+    private static Postings merge(Postings a, Postings b) {
+        Postings merged = new Postings();
+        merged.ensureCapacity(a.size + b.size);
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            long id;
+            if (j == b.size || i < a.size && a.ids[i] < b.ids[j]) {
+                id = a.ids[i++];
+            } else if (i == a.size || b.ids[j] < a.ids[i]) {
+                id = b.ids[j++];
+            } else {
+                // the task contains both words
+                id = a.ids[i++];
+                j++;
+            }
+            merged.ids[merged.size++] = id;
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the IDs contained in all the supplied lists.
+     * <p/>
+     * The lists are intersected from the shortest one, looking up its IDs in the others by binary search, so that the
+     * cost depends on the size of the shortest list.
+     *
+     * @param lists the lists of IDs
+     * @return the IDs contained in all lists, in ascending order
+     */
+    private static long[] intersect(List<Postings> lists) {
+        if (lists.isEmpty()) {
+            return new long[0];
+        }
+
+        Postings shortest = lists.get(0);
+        for (Postings list : lists) {
+            if (list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+
+        long[] result = new long[shortest.size];
+        int size = 0;
+        for (int i = 0; i < shortest.size; i++) {
+            long id = shortest.ids[i];
+            boolean everywhere = true;
+            for (Postings list : lists) {
+                if (list != shortest && list.indexOf(id) < 0) {
+                    everywhere = false;
+                    break;
+                }
+            }
+            if (everywhere) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Computes the Levenshtein distance between two words, giving up once it exceeds a maximum.
+     *
+     * @param a           the first word
+     * @param b           the second word
+     * @param maxDistance the maximal distance of interest
+     * @return the distance, or {@code maxDistance + 1} if it exceeds the maximum
+     */
+    static int distance(String a, String b, int maxDistance) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxDistance + 1);
+    }
+
+    /**
+     * A sorted list of task IDs.
+     * <p/>
+     * As IDs are allocated in ascending order, new tasks are usually appended at the end.
+     */
+    private static final class Postings {
+
+        /**
+         * The IDs, in ascending order.
+         */
+        private long[] ids = new long[2];
+        /**
+         * The number of IDs.
+         */
+        private int size;
+
+        /**
+         * Adds an ID, unless already present.
+         *
+         * @param id the ID
+         */
+        private void add(long id) {
+            int index = size == 0 || ids[size - 1] < id ? -size - 1 : indexOf(id);
+            if (index < 0) {
+                int insertion = -index - 1;
+                ensureCapacity(size + 1);
+                System.arraycopy(ids, insertion, ids, insertion + 1, size - insertion);
+                ids[insertion] = id;
+                size++;
+            }
+        }
+
+        /**
+         * Removes an ID.
+         *
+         * @param id the ID
+         * @return {@code true} if the ID was present
+         */
+        private boolean remove(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Looks for an ID.
+         *
+         * @param id the ID
+         * @return the index of the ID, or {@code -(insertion point) - 1} if absent
+         * @see Arrays#binarySearch(long[], int, int, long)
+         */
+        private int indexOf(long id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        /**
+         * Grows the array of IDs if needed.
+         *
+         * @param capacity the required capacity
+         */
+        private void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of task labels, so that tasks with identical labels share one {@link String} instance.
+ * <p/>
+ * The pool is a fixed-size table of weak references, indexed by the hash of the labels: it never grows, a label is
+ * evicted when another one with the same index is pooled, and it does not prevent unused labels from being garbage
+ * collected. Unlike {@link String#intern()}, it is therefore safe to use with any number of distinct labels.
+ * <p/>
+ * The pool is thread-safe, and keeps statistics about its efficiency.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class LabelPool {
+
+    /**
+     * The number of labels the pool can hold, which must be a power of two.
+     */
+    private static final int CAPACITY = 4096;
+    /**
+     * The estimated size of an empty {@link String}, including its array of characters.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    /**
+     * The pooled labels.
+     */
+    private static final AtomicReferenceArray<WeakReference<String>> LABELS = new AtomicReferenceArray<>(CAPACITY);
+    /**
+     * The number of labels submitted to the pool.
+     */
+    private static final LongAdder LOOKUPS = new LongAdder();
+    /**
+     * The number of labels which were found in the pool.
+     */
+    private static final LongAdder HITS = new LongAdder();
+    /**
+     * The estimated number of bytes saved by replacing labels with their pooled instance.
+     */
+    private static final LongAdder BYTES_SAVED = new LongAdder();
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private LabelPool() {
+    }
+
+    /**
+     * Returns the pooled instance of a label.
+     * <p/>
+     * If no equal label is pooled, the supplied label is pooled and returned.
+     *
+     * @param label the label
+     * @return an instance equal to the supplied label, or {@code null} if the label is {@code null}
+     */
+    public static String intern(String label) {
+        if (label == null) {
+            return null;
+        }
+
+        LOOKUPS.increment();
+        int h = label.hashCode();
+        int index = (h ^ (h >>> 16)) & (CAPACITY - 1);
+        WeakReference<String> reference = LABELS.get(index);
+        String pooled = reference == null ? null : reference.get();
+        if (label.equals(pooled)) {
+            HITS.increment();
+            if (pooled != label) {
+                // the supplied instance can now be garbage collected
+                BYTES_SAVED.add(STRING_OVERHEAD + label.length());
+            }
+            return pooled;
+        }
+
+        LABELS.set(index, new WeakReference<>(label));
+        return label;
+    }
+
+    /**
+     * Returns the number of labels submitted to the pool.
+     *
+     * @return the number of lookups
+     */
+    public static long getLookups() {
+        return LOOKUPS.sum();
+    }
+
+    /**
+     * Returns the number of labels which were found in the pool.
+     *
+     * @return the number of hits
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     * Returns the ratio of labels which were found in the pool.
+     *
+     * @return the hit rate, between {@code 0} and {@code 1}
+     */
+    public static double getHitRate() {
+        long lookups = getLookups();
+        return lookups == 0 ? 0 : (double) getHits() / lookups;
+    }
+
+    /**
+     * Returns the estimated number of bytes saved by sharing labels, assuming a byte per character.
+     *
+     * @return the estimated number of bytes saved
+     */
+    public static long getBytesSaved() {
+        return BYTES_SAVED.sum();
+    }
+}
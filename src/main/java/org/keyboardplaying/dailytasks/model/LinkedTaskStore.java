@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The default {@link TaskStore}, keeping the {@link Task} instances in insertion order, indexed by their ID.
+ * <p/>
+ * The stored tasks notify the set they belong to when their state changes, even when they are modified directly. As a
+ * task can belong to one set only, adding a task which already belongs to another set is rejected.
+ * <p/>
+ * Each task occupies a slot of an array, in insertion order. The slots of the finished and unfinished tasks are kept
+ * as separate bits, so that the tasks in one state can be iterated over without going through the others. Removed
+ * tasks leave an empty slot behind, and slots are compacted once they outnumber the remaining tasks.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+class LinkedTaskStore implements TaskStore {
+
+    /**
+     * The initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The task in each slot.
+     */
+    private Task[] slots = new Task[INITIAL_CAPACITY];
+    /**
+     * The slots containing a task.
+     */
+    private BitSet used = new BitSet();
+    /**
+     * The slots containing a finished task.
+     */
+    private BitSet done = new BitSet();
+    /**
+     * The slots containing an unfinished task.
+     */
+    private BitSet remaining = new BitSet();
+    /**
+     * The slot of each task, indexed by ID.
+     */
+    private SlotIndex index = new SlotIndex();
+    /**
+     * The first slot which was never used.
+     */
+    private int end;
+    /**
+     * The number of structural modifications, for iterators to detect concurrent modifications.
+     */
+    private int modCount;
+    /**
+     * The number of finished tasks.
+     */
+    private int doneCount;
+    /**
+     * The set owning this store.
+     */
+    private final TaskSet owner;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param owner the set owning this store
+     */
+    LinkedTaskStore(TaskSet owner) {
+        this.owner = owner;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#add(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public boolean add(Task task) {
+        if (contains(task.getId())) {
+            return false;
+        }
+
+        if (end == slots.length) {
+            slots = Arrays.copyOf(slots, end * 2);
+        }
+
+        if (task.getOwner() != null) {
+            throw new IllegalArgumentException(String.format("Task #%d already belongs to another set.",
+                    task.getId()));
+        }
+        task.setOwner(owner);
+        int slot = end++;
+        slots[slot] = task;
+        used.set(slot);
+        index.put(task.getId(), slot);
+        if (task.isDone()) {
+            done.set(slot);
+            doneCount++;
+        } else {
+            remaining.set(slot);
+        }
+        modCount++;
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#contains(long)
+     */
+    @Override
+    public boolean contains(long taskId) {
+        return index.get(taskId) != SlotIndex.NO_SLOT;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#get(long)
+     */
+    @Override
+    public Task get(long taskId) {
+        int slot = index.get(taskId);
+        return slot == SlotIndex.NO_SLOT ? null : slots[slot];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDone(long, boolean)
+     */
+    @Override
+    public Task setDone(long taskId, boolean done) {
+        Task task = get(taskId);
+        if (task != null) {
+            task.setDone(done);
+        }
+        return task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#remove(long)
+     */
+    @Override
+    public Task remove(long taskId) {
+        int slot = index.remove(taskId);
+        if (slot == SlotIndex.NO_SLOT) {
+            return null;
+        }
+
+        Task task = slots[slot];
+        task.setOwner(null);
+        if (done.get(slot)) {
+            doneCount--;
+        }
+        slots[slot] = null;
+        used.clear(slot);
+        done.clear(slot);
+        remaining.clear(slot);
+        modCount++;
+
+        if (end > INITIAL_CAPACITY && index.size() < end / 2) {
+            compact();
+        }
+        return task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#size()
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#countDone()
+     */
+    @Override
+    public int countDone() {
+        return doneCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#stateChanged(long, boolean)
+     */
+    @Override
+    public void stateChanged(long taskId, boolean done) {
+        int slot = index.get(taskId);
+        this.done.set(slot, done);
+        remaining.set(slot, !done);
+        doneCount += done ? 1 : -1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return iterator(used);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#iterator(boolean)
+     */
+    @Override
+    public Iterator<Task> iterator(boolean done) {
+        return iterator(done ? this.done : remaining);
+    }
+
+    /**
+     * Returns an iterator over the tasks in some slots.
+     * <p/>
+     * The slots are read as the iteration goes, so that the iterator reflects the state changes of the following
+     * slots.
+     *
+     * @param slots the slots to iterate over
+     * @return the iterator
+     */
+    private Iterator<Task> iterator(final BitSet slots) {
+        return new Iterator<Task>() {
+            private final int expectedModCount = modCount;
+            private int next = slots.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Task next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                Task task = LinkedTaskStore.this.slots[next];
+                next = slots.nextSetBit(next + 1);
+                return task;
+            }
+        };
+    }
+
+    /**
+     * Moves all tasks to the first slots, preserving their order, and rebuilds the index.
+     */
+    private void compact() {
+        int size = index.size();
+        int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+        Task[] newSlots = new Task[capacity];
+        BitSet newDone = new BitSet(capacity);
+        BitSet newRemaining = new BitSet(capacity);
+        SlotIndex newIndex = new SlotIndex();
+
+        int slot = 0;
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            newSlots[slot] = slots[i];
+            newDone.set(slot, done.get(i));
+            newRemaining.set(slot, remaining.get(i));
+            newIndex.put(slots[i].getId(), slot);
+            slot++;
+        }
+
+        BitSet newUsed = new BitSet(capacity);
+        newUsed.set(0, slot);
+
+        slots = newSlots;
+        used = newUsed;
+        done = newDone;
+        remaining = newRemaining;
+        index = newIndex;
+        end = slot;
+        modCount++;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * An occurrence of a repeating task, as listed when viewing a period of time.
+ * <p/>
+ * Occurrences are created on demand from the {@link Recurrence} of their task, and are not kept by the set. Only the
+ * occurrence during which the task was last finished is finished.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class Occurrence {
+
+    /**
+     * The repeating task.
+     */
+    private final Task task;
+    /**
+     * The local date and time at which the occurrence starts.
+     */
+    private final LocalDateTime start;
+    /**
+     * The state of the occurrence.
+     */
+    private final boolean done;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param task  the repeating task
+     * @param start the local date and time at which the occurrence starts
+     * @param done  {@code true} if the occurrence is finished, {@code false} otherwise
+     */
+    Occurrence(Task task, LocalDateTime start, boolean done) {
+        this.task = task;
+        this.start = start;
+        this.done = done;
+    }
+
+    /**
+     * Returns the repeating task.
+     *
+     * @return the task
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the local date and time at which the occurrence starts.
+     *
+     * @return the start of the occurrence
+     */
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the state of the occurrence.
+     *
+     * @return {@code true} if the occurrence is finished, {@code false} otherwise
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "[" + (done ? "X" : " ") + "] " + task.getTodo() + " @ " + start;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable array, which shares its structure with the versions it was derived from.
+ * <p/>
+ * The elements are stored in the leaves of a tree whose nodes have 32 children. Deriving a new version with an
+ * {@link Editor} only copies the nodes on the path to the modified elements, so that the cost of a new version is
+ * proportional to the number of modifications rather than to the number of elements.
+ *
+ * @param <E> the type of the elements
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class PersistentVector<E> implements Iterable<E> {
+
+    /**
+     * The number of bits of the index consumed by each level of the tree.
+     */
+    private static final int BITS = 5;
+    /**
+     * The number of children of each node.
+     */
+    private static final int WIDTH = 1 << BITS;
+    /**
+     * The mask to extract the index of a child from a shifted index.
+     */
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * The root of the tree.
+     */
+    private final Node root;
+    /**
+     * The shift to apply to an index to get the child of the root containing it.
+     */
+    private final int shift;
+    /**
+     * The number of elements.
+     */
+    private final int size;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param root  the root of the tree
+     * @param shift the shift to apply to an index to get the child of the root containing it
+     * @param size  the number of elements
+     */
+    private PersistentVector(Node root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * Returns an empty vector.
+     *
+     * @param <E> the type of the elements
+     * @return an empty vector
+     */
+    static <E> PersistentVector<E> empty() {
+        return new PersistentVector<>(new Node(null), 0, 0);
+    }
+
+    /**
+     * Returns the number of elements in this vector.
+     *
+     * @return the number of elements
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an element of this vector.
+     *
+     * @param index the index of the element
+     * @return the element
+     * @throws IndexOutOfBoundsException if the index is negative or greater than or equal to the size
+     */
+    E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return elementAt(leafFor(root, shift, index), index);
+    }
+
+    /**
+     * Returns an editor to derive a new version from this one.
+     *
+     * @return an editor initialized with the content of this vector
+     */
+    Editor<E> edit() {
+        return new Editor<>(this);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next;
+            private Node leaf;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public E next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                if ((next & MASK) == 0) {
+                    leaf = leafFor(root, shift, next);
+                }
+                return elementAt(leaf, next++);
+            }
+        };
+    }
+
+    /**
+     * Returns the leaf containing an index.
+     *
+     * @param root  the root of the tree
+     * @param shift the shift of the root
+     * @param index the index
+     * @return the leaf
+     */
+    private static Node leafFor(Node root, int shift, int index) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Returns an element from its leaf.
+     *
+     * @param leaf  the leaf containing the element
+     * @param index the index of the element
+     * @param <E>   the type of the element
+     * @return the element
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> E elementAt(Node leaf, int index) {
+        return (E) leaf.array[index & MASK];
+    }
+
+    /**
+     * A node of the tree.
+     */
+    private static final class Node {
+
+        /**
+         * The token of the editor which created this node, which may modify it in place.
+         */
+        private final Object edit;
+        /**
+         * The children of this node, or the elements if this node is a leaf.
+         */
+        private final Object[] array;
+
+        /**
+         * Creates an empty node.
+         *
+         * @param edit the token of the editor creating this node
+         */
+        private Node(Object edit) {
+            this(edit, new Object[WIDTH]);
+        }
+
+        /**
+         * Creates a node.
+         *
+         * @param edit  the token of the editor creating this node
+         * @param array the children of this node
+         */
+        private Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+    }
+
+    /**
+     * Derives a new version of a vector.
+     * <p/>
+     * An editor copies the shared nodes before modifying them. The nodes it created are modified in place until
+     * {@link #toVector()} is called, after which they are shared in turn.
+     *
+     * @param <E> the type of the elements
+     */
+    static final class Editor<E> {
+
+        /**
+         * The token identifying the nodes this editor may modify in place.
+         */
+        private Object edit = new Object();
+        /**
+         * The root of the tree.
+         */
+        private Node root;
+        /**
+         * The shift to apply to an index to get the child of the root containing it.
+         */
+        private int shift;
+        /**
+         * The number of elements.
+         */
+        private int size;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param vector the vector to derive
+         */
+        private Editor(PersistentVector<E> vector) {
+            this.root = vector.root;
+            this.shift = vector.shift;
+            this.size = vector.size;
+        }
+
+        /**
+         * Returns the number of elements.
+         *
+         * @return the number of elements
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns an element.
+         *
+         * @param index the index of the element
+         * @return the element
+         * @throws IndexOutOfBoundsException if the index is negative or greater than or equal to the size
+         */
+        E get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return elementAt(leafFor(root, shift, index), index);
+        }
+
+        /**
+         * Replaces an element.
+         *
+         * @param index the index of the element
+         * @param value the new element
+         * @throws IndexOutOfBoundsException if the index is negative or greater than or equal to the size
+         */
+        void set(int index, E value) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            root = setIn(root, shift, index, value);
+        }
+
+        /**
+         * Adds an element at the end.
+         *
+         * @param value the new element
+         */
+        void append(E value) {
+            if (size == 1 << (shift + BITS)) {
+                // the tree is full, add a level
+                Node newRoot = new Node(edit);
+                newRoot.array[0] = root;
+                root = newRoot;
+                shift += BITS;
+            }
+            root = setIn(root, shift, size++, value);
+        }
+
+        /**
+         * Returns the current version, which will not be modified by further changes made through this editor.
+         *
+         * @return the current version
+         */
+        PersistentVector<E> toVector() {
+            // the nodes created so far are now shared
+            edit = new Object();
+            return new PersistentVector<>(root, shift, size);
+        }
+
+        /**
+         * Sets an element in a subtree, copying the nodes which this editor may not modify.
+         *
+         * @param node  the root of the subtree, or {@code null} if it does not exist yet
+         * @param level the shift of the root of the subtree
+         * @param index the index of the element
+         * @param value the new element
+         * @return the root of the subtree, which may be a copy of the supplied node
+         */
+        private Node setIn(Node node, int level, int index, E value) {
+            Node editable;
+            if (node == null) {
+                editable = new Node(edit);
+            } else if (node.edit == edit) {
+                editable = node;
+            } else {
+                editable = new Node(edit, node.array.clone());
+            }
+
+            int child = (index >>> level) & MASK;
+            if (level == 0) {
+                editable.array[child] = value;
+            } else {
+                editable.array[child] = setIn((Node) editable.array[child], level - BITS, index, value);
+            }
+            return editable;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * A {@link TaskStore} keeping the {@link Task} instances ordered by priority.
+ * <p/>
+ * Tasks are iterated over from the highest priority to the lowest, tasks with the same priority being kept in
+ * insertion order. The finished and unfinished tasks are kept in two balanced trees ordered this way, so that adding,
+ * removing, reprioritizing a task or changing its state costs a logarithmic time. Iterating over all tasks merges the
+ * two trees as it goes, without copying them.
+ * <p/>
+ * As with {@link LinkedTaskStore}, the stored tasks notify the set they belong to when their state changes, and adding a
+ * task which already belongs to another set is rejected. Iterators reflect the state changes made during the
+ * iteration, but fail on additions, removals and reprioritizations.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+class PriorityTaskStore implements TaskStore {
+
+    /**
+     * The order of the tasks: highest priority first, then insertion order.
+     */
+    private static final Comparator<Entry> ORDER = (left, right) -> left.priority != right.priority
+            ? Integer.compare(right.priority, left.priority)
+            : Long.compare(left.sequence, right.sequence);
+
+    /**
+     * The tasks, indexed by ID.
+     */
+    private final Map<Long, Entry> index = new HashMap<>();
+    /**
+     * The finished tasks, in priority order.
+     */
+    private final NavigableSet<Entry> done = new TreeSet<>(ORDER);
+    /**
+     * The unfinished tasks, in priority order.
+     */
+    private final NavigableSet<Entry> remaining = new TreeSet<>(ORDER);
+    /**
+     * The sequence breaking the ties between tasks of the same priority.
+     */
+    private long sequence;
+    /**
+     * The number of structural modifications, for iterators to detect concurrent modifications.
+     */
+    private int modCount;
+    /**
+     * The set owning this store.
+     */
+    private final TaskSet owner;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param owner the set owning this store
+     */
+    PriorityTaskStore(TaskSet owner) {
+        this.owner = owner;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#add(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public boolean add(Task task) {
+        if (contains(task.getId())) {
+            return false;
+        }
+
+        if (task.getOwner() != null) {
+            throw new IllegalArgumentException(String.format("Task #%d already belongs to another set.",
+                    task.getId()));
+        }
+        task.setOwner(owner);
+        Entry entry = new Entry(task, sequence++, task.isDone());
+        index.put(task.getId(), entry);
+        partition(entry).add(entry);
+        modCount++;
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#contains(long)
+     */
+    @Override
+    public boolean contains(long taskId) {
+        return index.containsKey(taskId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#get(long)
+     */
+    @Override
+    public Task get(long taskId) {
+        Entry entry = index.get(taskId);
+        return entry == null ? null : entry.task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDone(long, boolean)
+     */
+    @Override
+    public Task setDone(long taskId, boolean done) {
+        Task task = get(taskId);
+        if (task != null) {
+            task.setDone(done);
+        }
+        return task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#remove(long)
+     */
+    @Override
+    public Task remove(long taskId) {
+        Entry entry = index.remove(taskId);
+        if (entry == null) {
+            return null;
+        }
+
+        partition(entry).remove(entry);
+        entry.task.setOwner(null);
+        modCount++;
+        return entry.task;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#size()
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#countDone()
+     */
+    @Override
+    public int countDone() {
+        return done.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#stateChanged(long, boolean)
+     */
+    @Override
+    public void stateChanged(long taskId, boolean done) {
+        Entry entry = index.get(taskId);
+        if (entry != null && entry.done != done) {
+            partition(entry).remove(entry);
+            entry.done = done;
+            partition(entry).add(entry);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#getPriority(long)
+     */
+    @Override
+    public int getPriority(long taskId) {
+        Entry entry = index.get(taskId);
+        return entry == null ? 0 : entry.priority;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setPriority(long, int)
+     */
+    @Override
+    public Task setPriority(long taskId, int priority) {
+        Entry entry = index.get(taskId);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.priority != priority) {
+            // the entry must leave its tree before its key changes
+            NavigableSet<Entry> partition = partition(entry);
+            partition.remove(entry);
+            entry.priority = priority;
+            partition.add(entry);
+            modCount++;
+        }
+        return entry.task;
+    }
+
+    /**
+     * Returns the priorities which differ from the default one.
+     *
+     * @return the priorities, indexed by task ID
+     */
+    Map<Long, Integer> getPriorities() {
+        Map<Long, Integer> priorities = new HashMap<>();
+        for (Entry entry : index.values()) {
+            if (entry.priority != 0) {
+                priorities.put(entry.task.getId(), entry.priority);
+            }
+        }
+        return priorities;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return iterator(done, remaining);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#iterator(boolean)
+     */
+    @Override
+    public Iterator<Task> iterator(boolean done) {
+        return iterator(done ? this.done : remaining, null);
+    }
+
+    /**
+     * Returns an iterator over the tasks of one or two trees, in priority order.
+     * <p/>
+     * Each step looks up the entry following the previous one in the trees, rather than walking their nodes, so that
+     * the iteration is not disturbed by tasks moving from one tree to the other.
+     *
+     * @param first  the first tree
+     * @param second the second tree, or {@code null}
+     * @return the iterator
+     */
+    private Iterator<Task> iterator(final NavigableSet<Entry> first, final NavigableSet<Entry> second) {
+        return new Iterator<Task>() {
+            private final int expectedModCount = modCount;
+            private Entry next = advance(null);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Task next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Entry current = next;
+                next = advance(current);
+                return current.task;
+            }
+
+            private Entry advance(Entry previous) {
+                Entry candidate = following(first, previous);
+                if (second != null) {
+                    Entry other = following(second, previous);
+                    if (candidate == null || other != null && ORDER.compare(other, candidate) < 0) {
+                        candidate = other;
+                    }
+                }
+                return candidate;
+            }
+        };
+    }
+
+    /**
+     * Returns the tree holding a task, depending on its state.
+     *
+     * @param entry the task
+     * @return the tree of the finished or unfinished tasks
+     */
+    private NavigableSet<Entry> partition(Entry entry) {
+        return entry.done ? done : remaining;
+    }
+
+    /**
+     * Returns the first entry of a tree which follows another one.
+     *
+     * @param tree     the tree
+     * @param previous the previous entry, or {@code null} to get the first one
+     * @return the following entry, or {@code null} if there is none
+     */
+    private static Entry following(NavigableSet<Entry> tree, Entry previous) {
+        if (previous == null) {
+            return tree.isEmpty() ? null : tree.first();
+        }
+        return tree.higher(previous);
+    }
+
+    /**
+     * A task along with its position in the trees.
+     */
+    private static final class Entry {
+
+        /**
+         * The task.
+         */
+        private final Task task;
+        /**
+         * The insertion position of the task.
+         */
+        private final long sequence;
+        /**
+         * The priority of the task.
+         */
+        private int priority;
+        /**
+         * The state of the task, as known by the trees.
+         */
+        private boolean done;
+
+        /**
+         * Creates a new instance, with the default priority.
+         *
+         * @param task     the task
+         * @param sequence the insertion position of the task
+         * @param done     the state of the task
+         */
+        private Entry(Task task, long sequence, boolean done) {
+            this.task = task;
+            this.sequence = sequence;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A rule telling when a repeating task occurs, such as every day, every weekday or on the first day of each month.
+ * <p/>
+ * The rules follow the model of cron expressions: an occurrence is a minute whose minute, hour, day of month, month
+ * and day of week are all allowed by the rule. As with cron, when both the days of month and the days of week are
+ * restricted, a day matching either of them is allowed. Rules apply to the local date and time.
+ * <p/>
+ * The occurrences are never stored: each one is computed from the previous one when needed, by skipping the months,
+ * days, hours and minutes which the rule does not allow. A rule which cannot occur, such as every February 30, has
+ * no occurrence.
+ * <p/>
+ * Rules are immutable.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class Recurrence implements Serializable {
+
+    /**
+     * Generated serial version UID.
+     */
+    private static final long serialVersionUID = -3411275408823581519L;
+
+    /**
+     * The number of years searched for the next occurrence before giving up, enough to reach the next February 29.
+     */
+    private static final int SEARCH_YEARS = 8;
+
+    /**
+     * The names which can be used in the month field of an expression.
+     */
+    private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT",
+            "NOV", "DEC"};
+    /**
+     * The names which can be used in the day-of-week field of an expression, from Sunday.
+     */
+    private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    /**
+     * The allowed minutes, as bits 0 to 59.
+     */
+    private final long minutes;
+    /**
+     * The allowed hours, as bits 0 to 23.
+     */
+    private final long hours;
+    /**
+     * The allowed days of month, as bits 1 to 31.
+     */
+    private final long daysOfMonth;
+    /**
+     * The allowed months, as bits 1 to 12.
+     */
+    private final long months;
+    /**
+     * The allowed days of week, as bits 1 (Monday) to 7 (Sunday).
+     */
+    private final long daysOfWeek;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param minutes     the allowed minutes, as bits 0 to 59
+     * @param hours       the allowed hours, as bits 0 to 23
+     * @param daysOfMonth the allowed days of month, as bits 1 to 31
+     * @param months      the allowed months, as bits 1 to 12
+     * @param daysOfWeek  the allowed days of week, as bits 1 (Monday) to 7 (Sunday)
+     */
+    private Recurrence(long minutes, long hours, long daysOfMonth, long months, long daysOfWeek) {
+        this.minutes = minutes;
+        this.hours = hours;
+        this.daysOfMonth = daysOfMonth;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    /**
+     * Returns a rule occurring every day at midnight.
+     *
+     * @return the rule
+     */
+    public static Recurrence daily() {
+        return cron("0 0 * * *");
+    }
+
+    /**
+     * Returns a rule occurring from Monday to Friday at midnight.
+     *
+     * @return the rule
+     */
+    public static Recurrence weekdays() {
+        return cron("0 0 * * MON-FRI");
+    }
+
+    /**
+     * Returns a rule occurring once a week at midnight.
+     *
+     * @param day the day of the week
+     * @return the rule
+     */
+    public static Recurrence weekly(DayOfWeek day) {
+        return cron("0 0 * * " + day.getValue());
+    }
+
+    /**
+     * Returns a rule occurring once a month at midnight.
+     * <p/>
+     * As with cron, the months which are too short for the supplied day are skipped.
+     *
+     * @param dayOfMonth the day of the month, from 1 to 31
+     * @return the rule
+     * @throws IllegalArgumentException if the day is not between 1 and 31
+     */
+    public static Recurrence monthly(int dayOfMonth) {
+        return cron("0 0 " + dayOfMonth + " * *");
+    }
+
+    /**
+     * Parses a cron expression.
+     * <p/>
+     * The expression is made of five fields separated by spaces: minute (0-59), hour (0-23), day of month (1-31),
+     * month (1-12 or JAN-DEC) and day of week (0-7 or SUN-SAT, 0 and 7 being Sunday). Each field is a comma-separated
+     * list of values, ranges ({@code 1-5}) and {@code *}, each of which can be followed by a step: {@code 0-30/10}
+     * allows 0, 10, 20 and 30, and a value followed by a step runs up to the highest allowed value.
+     *
+     * @param expression the expression
+     * @return the rule
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static Recurrence cron(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("A cron expression has five fields: " + expression);
+        }
+        long daysOfWeek = parseField(fields[4], 0, 7, DAYS);
+        if ((daysOfWeek & 1) != 0) {
+            // Sunday is both 0 and 7, store it as ISO day 7
+            daysOfWeek = daysOfWeek & ~1L | 1L << 7;
+        }
+        return new Recurrence(parseField(fields[0], 0, 59, null), parseField(fields[1], 0, 23, null),
+                parseField(fields[2], 1, 31, null), parseField(fields[3], 1, 12, MONTHS), daysOfWeek);
+    }
+
+    /**
+     * Returns a rule occurring on the same days as this one, once a day at the supplied time.
+     * <p/>
+     * The seconds of the time are ignored.
+     *
+     * @param time the time of the occurrences
+     * @return the rule
+     */
+    public Recurrence at(LocalTime time) {
+        return new Recurrence(1L << time.getMinute(), 1L << time.getHour(), daysOfMonth, months, daysOfWeek);
+    }
+
+    /**
+     * Returns the first occurrence after a date and time.
+     *
+     * @param after the date and time, excluded
+     * @return the next occurrence, or {@code null} if the rule does not occur within the next years
+     */
+    public LocalDateTime next(LocalDateTime after) {
+        LocalDateTime next = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int lastYear = next.getYear() + SEARCH_YEARS;
+        while (next.getYear() <= lastYear) {
+            LocalDate date = next.toLocalDate();
+            if (!has(months, date.getMonthValue())) {
+                next = date.withDayOfMonth(1).plusMonths(1).atStartOfDay();
+            } else if (!matches(date)) {
+                next = date.plusDays(1).atStartOfDay();
+            } else {
+                int hour = nextBit(hours, next.getHour());
+                if (hour < 0) {
+                    next = date.plusDays(1).atStartOfDay();
+                } else {
+                    int minute = nextBit(minutes, hour == next.getHour() ? next.getMinute() : 0);
+                    if (minute >= 0) {
+                        return date.atTime(hour, minute);
+                    }
+                    // no minute left in this hour, try the next allowed one
+                    next = date.atTime(hour, 0).plusHours(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the occurrences in a period of time.
+     * <p/>
+     * The occurrences are computed as the iteration goes, so that only the ones which are read are created.
+     *
+     * @param from the start of the period, included
+     * @param to   the end of the period, excluded
+     * @return the occurrences, in chronological order
+     */
+    public Iterable<LocalDateTime> between(final LocalDateTime from, final LocalDateTime to) {
+        return () -> new Iterator<LocalDateTime>() {
+            private LocalDateTime next = advance(from.minusNanos(1));
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LocalDateTime next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                LocalDateTime current = next;
+                next = advance(current);
+                return current;
+            }
+
+            private LocalDateTime advance(LocalDateTime after) {
+                LocalDateTime occurrence = Recurrence.this.next(after);
+                return occurrence == null || !occurrence.isBefore(to) ? null : occurrence;
+            }
+        };
+    }
+
+    /**
+     * Tells whether a day is allowed by this rule, regardless of its month.
+     *
+     * @param date the day
+     * @return {@code true} if the rule allows the day
+     */
+    private boolean matches(LocalDate date) {
+        boolean anyDayOfMonth = daysOfMonth == bits(1, 31);
+        boolean anyDayOfWeek = daysOfWeek == bits(1, 7);
+        boolean dayOfMonth = has(daysOfMonth, date.getDayOfMonth());
+        boolean dayOfWeek = has(daysOfWeek, date.getDayOfWeek().getValue());
+        if (!anyDayOfMonth && !anyDayOfWeek) {
+            // cron allows either when both are restricted
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(minutes, hours, daysOfMonth, months, daysOfWeek);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Recurrence)) {
+            return false;
+        }
+        Recurrence other = (Recurrence) o;
+        return minutes == other.minutes && hours == other.hours && daysOfMonth == other.daysOfMonth
+                && months == other.months && daysOfWeek == other.daysOfWeek;
+    }
+
+    /**
+     * Returns the rule as a cron expression, which can be {@link #cron(String) parsed} again.
+     *
+     * @return the cron expression
+     */
+    @Override
+    public String toString() {
+        return formatField(minutes, 0, 59) + ' ' + formatField(hours, 0, 23) + ' ' + formatField(daysOfMonth, 1, 31)
+                + ' ' + formatField(months, 1, 12) + ' ' + formatField(daysOfWeek, 1, 7);
+    }
+
+    /**
+     * Parses a field of a cron expression.
+     *
+     * @param field the field
+     * @param min   the lowest allowed value
+     * @param max   the highest allowed value
+     * @param names the names of the values from {@code min}, or {@code null} if the field only accepts numbers
+     * @return the values, as bits
+     * @throws IllegalArgumentException if the field is not valid
+     */
+    private static long parseField(String field, int min, int max, String[] names) {
+        long bits = 0;
+        for (String part : field.split(",", -1)) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, max, null, field);
+                part = part.substring(0, slash);
+            }
+            int first;
+            int last;
+            if ("*".equals(part)) {
+                first = min;
+                last = max;
+            } else {
+                int dash = part.indexOf('-');
+                first = parseValue(dash < 0 ? part : part.substring(0, dash), min, max, names, field);
+                last = dash < 0 ? (slash < 0 ? first : max) : parseValue(part.substring(dash + 1), min, max, names,
+                        field);
+                if (last < first) {
+                    throw new IllegalArgumentException("Invalid range in cron field: " + field);
+                }
+            }
+            for (int value = first; value <= last; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Parses a value of a field of a cron expression.
+     *
+     * @param value the value
+     * @param min   the lowest allowed value
+     * @param max   the highest allowed value
+     * @param names the names of the values from {@code min}, or {@code null} if the field only accepts numbers
+     * @param field the whole field, for error messages
+     * @return the value
+     * @throws IllegalArgumentException if the value is not valid
+     */
+    private static int parseValue(String value, int min, int max, String[] names, String field) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(value.toUpperCase(Locale.ROOT))) {
+                    return min + i;
+                }
+            }
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value in cron field: " + field, e);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("Value out of range in cron field: " + field);
+        }
+        return parsed;
+    }
+
+    /**
+     * Formats a field of a cron expression.
+     *
+     * @param bits the values, as bits
+     * @param min  the lowest allowed value
+     * @param max  the highest allowed value
+     * @return the field
+     */
+    private static String formatField(long bits, int min, int max) {
+        if (bits == bits(min, max)) {
+            return "*";
+        }
+        StringBuilder field = new StringBuilder();
+        for (int first = nextBit(bits, min); first >= 0; ) {
+            int last = first;
+            while (last < max && has(bits, last + 1)) {
+                last++;
+            }
+            if (field.length() > 0) {
+                field.append(',');
+            }
+            field.append(first);
+            if (last > first) {
+                field.append('-').append(last);
+            }
+            first = last < max ? nextBit(bits, last + 1) : -1;
+        }
+        return field.toString();
+    }
+
+    /**
+     * Returns a range of bits.
+     *
+     * @param first the first bit, included
+     * @param last  the last bit, included
+     * @return the bits
+     */
+    private static long bits(int first, int last) {
+        return (-1L >>> (63 - last)) & (-1L << first);
+    }
+
+    /**
+     * Tells whether a bit is set.
+     *
+     * @param bits  the bits
+     * @param index the index of the bit
+     * @return {@code true} if the bit is set
+     */
+    private static boolean has(long bits, int index) {
+        return (bits & 1L << index) != 0;
+    }
+
+    /**
+     * Returns the index of the first set bit from an index.
+     *
+     * @param bits the bits
+     * @param from the index to start from, included
+     * @return the index of the bit, or {@code -1} if none is set from the supplied index
+     */
+    private static int nextBit(long bits, int from) {
+        long remaining = bits & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+}
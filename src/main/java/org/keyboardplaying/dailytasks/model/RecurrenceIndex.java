@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The repeating tasks of a {@link TaskSet}, whose occurrences are expanded on demand.
+ * <p/>
+ * Only the IDs of the repeating tasks are indexed. Viewing a period of time merges the occurrences of the tasks in
+ * chronological order as the iteration goes, so that the occurrences outside the period, or past the point where the
+ * iteration stops, are never created.
+ * <p/>
+ * The index listens to its set to stay up to date. It is thread-safe.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class RecurrenceIndex implements TaskSetListener {
+
+    /**
+     * Orders the pending occurrences by start, then by ID of task, that is by creation of the tasks.
+     */
+    private static final Comparator<Cursor> CHRONOLOGICAL = Comparator.<Cursor, LocalDateTime>comparing(
+            cursor -> cursor.start).thenComparingLong(cursor -> cursor.task.getId());
+
+    /**
+     * The indexed set.
+     */
+    private final TaskSet set;
+    /**
+     * The IDs of the repeating tasks.
+     */
+    private final Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param set the set to index
+     */
+    RecurrenceIndex(TaskSet set) {
+        this.set = set;
+    }
+
+    /**
+     * Returns the occurrences of the repeating tasks in a period of time.
+     * <p/>
+     * The tasks are read when this method is called, their occurrences as the iteration goes.
+     *
+     * @param from the start of the period, included
+     * @param to   the end of the period, excluded
+     * @param zone the time zone of the period, in which the completion times of the tasks are read
+     * @return the occurrences, in chronological order
+     */
+    Iterator<Occurrence> occurrences(LocalDateTime from, LocalDateTime to, ZoneId zone) {
+        final PriorityQueue<Cursor> pending = new PriorityQueue<>(CHRONOLOGICAL);
+        LocalDateTime now = LocalDateTime.now(zone);
+        for (long taskId : ids) {
+            Task task = set.findTask(taskId);
+            if (task != null) {
+                Cursor cursor = new Cursor(task, to, completion(task, zone, now));
+                if (cursor.advance(from.minusNanos(1))) {
+                    pending.add(cursor);
+                }
+            }
+        }
+
+        return new Iterator<Occurrence>() {
+            @Override
+            public boolean hasNext() {
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public Occurrence next() {
+                Cursor cursor = pending.poll();
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                Occurrence occurrence = cursor.current();
+                if (cursor.advance(cursor.start)) {
+                    pending.add(cursor);
+                }
+                return occurrence;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of repeating tasks.
+     *
+     * @return the number of repeating tasks
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskAdded(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskAdded(Task task) {
+        if (task.getRecurrence() != null) {
+            ids.add(task.getId());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskRemoved(Task task) {
+        ids.remove(task.getId());
+    }
+
+    /**
+     * Returns the local date and time at which a task was finished.
+     *
+     * @param task the task
+     * @param zone the time zone
+     * @param now  the current local date and time, for the tasks which do not record when they were finished
+     * @return the date and time, or {@code null} if the task is not finished
+     */
+    private static LocalDateTime completion(Task task, ZoneId zone, LocalDateTime now) {
+        if (!task.isDone()) {
+            return null;
+        }
+        long time = task.getCompletionTime();
+        return time == 0 ? now : LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone);
+    }
+
+    /**
+     * The next occurrence of a repeating task within the viewed period.
+     */
+    private static final class Cursor {
+
+        /**
+         * The repeating task.
+         */
+        private final Task task;
+        /**
+         * The end of the viewed period, excluded.
+         */
+        private final LocalDateTime end;
+        /**
+         * The local date and time at which the task was finished, or {@code null} if it is not finished.
+         */
+        private final LocalDateTime completion;
+        /**
+         * The start of the next occurrence.
+         */
+        private LocalDateTime start;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param task       the repeating task
+         * @param end        the end of the viewed period, excluded
+         * @param completion the local date and time at which the task was finished, or {@code null}
+         */
+        private Cursor(Task task, LocalDateTime end, LocalDateTime completion) {
+            this.task = task;
+            this.end = end;
+            this.completion = completion;
+        }
+
+        /**
+         * Moves to the next occurrence.
+         *
+         * @param after the date and time after which to look for the occurrence
+         * @return {@code true} if the occurrence is in the viewed period
+         */
+        private boolean advance(LocalDateTime after) {
+            start = task.getRecurrence().next(after);
+            return start != null && start.isBefore(end);
+        }
+
+        /**
+         * Creates the current occurrence.
+         *
+         * @return the occurrence
+         */
+        private Occurrence current() {
+            boolean done = false;
+            if (completion != null && !completion.isBefore(start)) {
+                // the task was finished during this occurrence unless the next one started before
+                LocalDateTime following = task.getRecurrence().next(start);
+                done = following == null || completion.isBefore(following);
+            }
+            return new Occurrence(task, start, done);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * An implementation of {@link Task} which repeats according to a {@link Recurrence}.
+ * <p/>
+ * Unlike a {@link DailyTask}, which is reset at each session, the time at which the task was finished is saved with
+ * it. When the session is restored, the task remains finished unless a new occurrence started in the meantime.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class RecurringTask extends Task implements Externalizable {
+
+    /**
+     * Generated serial version UID.
+     */
+    private static final long serialVersionUID = -6052413720932711852L;
+
+    /**
+     * The rule telling when this task repeats.
+     */
+    private Recurrence recurrence;
+
+    /**
+     * This constructor is for serialization only. Please don't use it.
+     */
+    public RecurringTask() {
+        this(null, Recurrence.daily());
+    }
+
+    /**
+     * Creates a new unfinished task.
+     *
+     * @param todo       the task's label
+     * @param recurrence the rule telling when the task repeats
+     */
+    public RecurringTask(String todo, Recurrence recurrence) {
+        super(todo);
+        this.recurrence = Objects.requireNonNull(recurrence, "recurrence");
+    }
+
+    /**
+     * Creates a new instance with a known identifier.
+     *
+     * @param id             the task's identifier
+     * @param todo           the task's label
+     * @param done           {@code true} if the task is finished, {@code false} otherwise
+     * @param recurrence     the rule telling when the task repeats
+     * @param completionTime the time at which the task was last finished, in milliseconds since the epoch
+     * @see Task#Task(long, String, boolean)
+     */
+    RecurringTask(long id, String todo, boolean done, Recurrence recurrence, long completionTime) {
+        super(id, todo, done);
+        this.recurrence = recurrence;
+        withCompletionTime(completionTime);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.Task#getRecurrence()
+     */
+    @Override
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    /**
+     * Returns the state this task should be restored to when replaying a recorded state change, which is finished
+     * only if no occurrence started since the task was finished.
+     *
+     * @param done           the recorded state
+     * @param completionTime the time at which the state was recorded, in milliseconds since the epoch
+     * @return the state to restore
+     */
+    @Override
+    boolean restoredState(boolean done, long completionTime) {
+        return done && isStillDone(recurrence, completionTime);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.Task#copy()
+     */
+    @Override
+    RecurringTask copy() {
+        RecurringTask copy = new RecurringTask(getId(), getTodo(), isDone(), recurrence, getCompletionTime());
+        copy.withDueTime(getDueTime());
+        return copy;
+    }
+
+    /**
+     * Tells whether a task finished at some time is still finished now, that is whether no occurrence started since.
+     *
+     * @param recurrence     the rule telling when the task repeats
+     * @param completionTime the time at which the task was finished, in milliseconds since the epoch, or {@code 0}
+     * @return {@code true} if the task is still finished
+     */
+    static boolean isStillDone(Recurrence recurrence, long completionTime) {
+        if (completionTime == 0) {
+            return false;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime next = recurrence.next(LocalDateTime.ofInstant(Instant.ofEpochMilli(completionTime), zone));
+        return next == null || next.isAfter(LocalDateTime.now(zone));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        // the state is saved as the time at which the task was finished
+        out.writeObject(getTodo());
+        out.writeLong(getId());
+        out.writeLong(getDueTime());
+        out.writeObject(recurrence);
+        out.writeLong(isDone() ? getCompletionTime() : 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        // read the fields which were written, in the same order
+        setTodo((String) in.readObject());
+        restoreId(in.readLong());
+        withDueTime(in.readLong());
+        recurrence = (Recurrence) in.readObject();
+        long completionTime = in.readLong();
+        if (isStillDone(recurrence, completionTime)) {
+            // the task does not belong to any set yet, and the completion time must be kept
+            setDone(true);
+            withCompletionTime(completionTime);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * A map from task IDs to slots in a columnar storage.
+ * <p/>
+ * This map uses open addressing over primitive arrays, so that indexing a task does not require any object to be
+ * allocated.
+ * <p/>
+ * When the storage already keeps the ID of the task in each slot, the index can read the keys from the storage rather
+ * than holding a copy of them, which saves eight bytes per bucket at the cost of an indirection on each probe.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class SlotIndex {
+
+    /**
+     * The value returned when a key is absent from the index.
+     */
+    static final int NO_SLOT = -1;
+
+    /**
+     * The minimal capacity of the index.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * The function returning the key of a slot, or {@code null} if the keys are held by the index.
+     */
+    private final IntToLongFunction keyOfSlot;
+    /**
+     * The keys (task IDs) of the index, or {@code null} if they are read from the storage.
+     */
+    private long[] keys;
+    /**
+     * The slot of each key, shifted by one so that {@code 0} marks an empty bucket.
+     */
+    private int[] values;
+    /**
+     * The number of keys in the index.
+     */
+    private int size;
+
+    /**
+     * Creates a new empty index, holding its keys.
+     */
+    SlotIndex() {
+        this(null);
+    }
+
+    /**
+     * Creates a new empty index, reading its keys from the storage.
+     * <p/>
+     * The key of a slot must not change while the slot is indexed.
+     *
+     * @param keyOfSlot the function returning the task ID stored in a slot
+     */
+    SlotIndex(IntToLongFunction keyOfSlot) {
+        this.keyOfSlot = keyOfSlot;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the slot associated to the supplied task ID.
+     *
+     * @param key the task ID
+     * @return the slot, or {@link #NO_SLOT} if the ID is not indexed
+     */
+    int get(long key) {
+        int mask = values.length - 1;
+        for (int i = hash(key) & mask; values[i] != 0; i = (i + 1) & mask) {
+            if (keyAt(i) == key) {
+                return values[i] - 1;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    /**
+     * Associates a slot to the supplied task ID, replacing the previous association if any.
+     *
+     * @param key  the task ID
+     * @param slot the slot
+     */
+    void put(long key, int slot) {
+        if ((size + 1) * 4 > values.length * 3) {
+            rehash(values.length * 2);
+        }
+
+        int mask = values.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != 0 && keyAt(i) != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == 0) {
+            size++;
+        }
+        if (keys != null) {
+            keys[i] = key;
+        }
+        values[i] = slot + 1;
+    }
+
+    /**
+     * Removes the supplied task ID from the index.
+     *
+     * @param key the task ID
+     * @return the slot which was associated to the ID, or {@link #NO_SLOT} if the ID was not indexed
+     */
+    int remove(long key) {
+        int mask = values.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != 0 && keyAt(i) != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == 0) {
+            return NO_SLOT;
+        }
+
+        int slot = values[i] - 1;
+        size--;
+
+        /* Shift back the following entries of the cluster so that no lookup ends on the freed bucket. */
+        int free = i;
+        for (int j = (i + 1) & mask; values[j] != 0; j = (j + 1) & mask) {
+            int home = hash(keyAt(j)) & mask;
+            // move the entry if its home bucket is not between the free bucket and its current position
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                if (keys != null) {
+                    keys[free] = keys[j];
+                }
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        values[free] = 0;
+
+        return slot;
+    }
+
+    /**
+     * Returns the number of IDs in the index.
+     *
+     * @return the number of IDs in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Allocates empty arrays for the index.
+     *
+     * @param capacity the capacity of the arrays, which must be a power of two
+     */
+    private void allocate(int capacity) {
+        keys = keyOfSlot == null ? new long[capacity] : null;
+        values = new int[capacity];
+    }
+
+    /**
+     * Copies the index into larger arrays.
+     *
+     * @param capacity the new capacity, which must be a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = oldValues[i] - 1;
+                put(oldKeys == null ? keyOfSlot.applyAsLong(slot) : oldKeys[i], slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a non-empty bucket.
+     *
+     * @param bucket the bucket
+     * @return the key
+     */
+    private long keyAt(int bucket) {
+        return keys == null ? keyOfSlot.applyAsLong(values[bucket] - 1) : keys[bucket];
+    }
+
+    /**
+     * Spreads the bits of the key, as task IDs are sequential.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
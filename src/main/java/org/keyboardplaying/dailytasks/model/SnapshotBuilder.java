@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Takes the snapshots of a {@link TaskSet}.
+ * <p/>
+ * The builder keeps the last snapshot and listens to the set to record the IDs of the tasks which were added, updated
+ * or removed since. The next snapshot is derived from the previous one by only copying these tasks, so that its cost is
+ * proportional to the number of changes rather than to the size of the set.
+ * <p/>
+ * The changes may be recorded by several threads at once, but snapshots must be taken one at a time, while the set is
+ * not being modified.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class SnapshotBuilder implements TaskSetListener {
+
+    /**
+     * The IDs of the tasks added since the last snapshot, in insertion order.
+     * <p/>
+     * A task removed then added again appears twice, as it moved to the end of the set.
+     */
+    private final Queue<Long> added = new ConcurrentLinkedQueue<>();
+    /**
+     * The IDs of the tasks updated or removed since the last snapshot.
+     */
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    /**
+     * The slot of each task of the last snapshot.
+     */
+    private final SlotIndex index = new SlotIndex();
+
+    /**
+     * The tasks of the last snapshot, with {@code null} in place of the removed tasks.
+     */
+    private PersistentVector<Task> slots = PersistentVector.empty();
+    /**
+     * The number of tasks in the last snapshot.
+     */
+    private int size;
+    /**
+     * The number of finished tasks in the last snapshot.
+     */
+    private int doneCount;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskAdded(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskAdded(Task task) {
+        added.add(task.getId());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskRemoved(Task task) {
+        changed.add(task.getId());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskStateChanged(long, boolean)
+     */
+    @Override
+    public void taskStateChanged(long taskId, boolean done) {
+        changed.add(taskId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskDueDateChanged(long)
+     */
+    @Override
+    public void taskDueDateChanged(long taskId) {
+        changed.add(taskId);
+    }
+
+    /**
+     * Takes a new snapshot, applying the changes recorded since the last one.
+     *
+     * @param store the store the snapshot is taken from
+     * @return the store of the snapshot
+     */
+    SnapshotTaskStore build(TaskStore store) {
+        PersistentVector.Editor<Task> editor = slots.edit();
+
+        for (Long taskId = added.poll(); taskId != null; taskId = added.poll()) {
+            Task task = store.get(taskId);
+            if (task != null) {
+                // a task removed then added again moves to the end
+                clear(editor, taskId);
+                index.put(taskId, editor.size());
+                editor.append(task.copy());
+                size++;
+                if (task.isDone()) {
+                    doneCount++;
+                }
+            }
+        }
+
+        for (Iterator<Long> it = changed.iterator(); it.hasNext(); ) {
+            long taskId = it.next();
+            it.remove();
+            int slot = index.get(taskId);
+            if (slot != SlotIndex.NO_SLOT) {
+                Task task = store.get(taskId);
+                if (task == null) {
+                    clear(editor, taskId);
+                } else {
+                    boolean wasDone = editor.get(slot).isDone();
+                    editor.set(slot, task.copy());
+                    if (task.isDone() != wasDone) {
+                        doneCount += task.isDone() ? 1 : -1;
+                    }
+                }
+            }
+        }
+
+        if (editor.size() > 2 * size + 32) {
+            // the removed tasks make up most of the slots
+            editor = compact(editor);
+        }
+
+        slots = editor.toVector();
+        return new SnapshotTaskStore(slots, size, doneCount);
+    }
+
+    /**
+     * Removes a task from the snapshot being built, if it was part of it.
+     *
+     * @param editor the snapshot being built
+     * @param taskId the ID of the task
+     */
+    private void clear(PersistentVector.Editor<Task> editor, long taskId) {
+        int slot = index.remove(taskId);
+        if (slot != SlotIndex.NO_SLOT) {
+            if (editor.get(slot).isDone()) {
+                doneCount--;
+            }
+            editor.set(slot, null);
+            size--;
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot being built without the slots of the removed tasks.
+     *
+     * @param editor the snapshot being built
+     * @return the editor of the rebuilt snapshot
+     */
+    private PersistentVector.Editor<Task> compact(PersistentVector.Editor<Task> editor) {
+        PersistentVector.Editor<Task> compacted = PersistentVector.<Task>empty().edit();
+        for (Task task : editor.toVector()) {
+            if (task != null) {
+                index.put(task.getId(), compacted.size());
+                compacted.append(task);
+            }
+        }
+        return compacted;
+    }
+}
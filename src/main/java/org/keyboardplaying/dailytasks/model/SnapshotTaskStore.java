@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only {@link TaskStore}, holding the tasks of a set as they were when a snapshot was taken.
+ * <p/>
+ * The tasks are kept as copies in a {@link PersistentVector}, which shares its structure with the other snapshots of
+ * the same set. Removed tasks leave a {@code null} hole in the vector, which is skipped when iterating. The tasks
+ * returned by this store are new copies, so that modifying them does not alter the snapshot.
+ * <p/>
+ * The tasks are not partitioned by state: iterating over the tasks in one state filters the vector, and stops once all
+ * the tasks in this state were found.
+ * <p/>
+ * The snapshot of a set ordered by priority also holds the priorities of its tasks. The tasks are then sorted on the
+ * first iteration, so that taking the snapshot does not cost more.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class SnapshotTaskStore implements TaskStore {
+
+    /**
+     * The copies of the tasks, in insertion order, with {@code null} in place of the removed tasks.
+     */
+    private final PersistentVector<Task> slots;
+    /**
+     * The number of tasks.
+     */
+    private final int size;
+    /**
+     * The number of finished tasks.
+     */
+    private final int doneCount;
+    /**
+     * The slot of each task, built on the first lookup.
+     */
+    private volatile SlotIndex index;
+    /**
+     * The priorities which differ from the default one, indexed by task ID, or {@code null} if the tasks are in
+     * insertion order.
+     */
+    private final Map<Long, Integer> priorities;
+    /**
+     * The tasks in priority order, sorted on the first iteration.
+     */
+    private volatile Task[] ordered;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param slots     the copies of the tasks, with {@code null} in place of the removed tasks
+     * @param size      the number of tasks
+     * @param doneCount the number of finished tasks
+     */
+    SnapshotTaskStore(PersistentVector<Task> slots, int size, int doneCount) {
+        this(slots, size, doneCount, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param slots      the copies of the tasks, with {@code null} in place of the removed tasks
+     * @param size       the number of tasks
+     * @param doneCount  the number of finished tasks
+     * @param priorities the priorities which differ from the default one, or {@code null} to keep the insertion order
+     */
+    private SnapshotTaskStore(PersistentVector<Task> slots, int size, int doneCount, Map<Long, Integer> priorities) {
+        this.slots = slots;
+        this.size = size;
+        this.doneCount = doneCount;
+        this.priorities = priorities;
+    }
+
+    /**
+     * Returns a snapshot of the same tasks, ordered by priority.
+     *
+     * @param priorities the priorities which differ from the default one, indexed by task ID
+     * @return the snapshot
+     */
+    SnapshotTaskStore withPriorities(Map<Long, Integer> priorities) {
+        return new SnapshotTaskStore(slots, size, doneCount, priorities);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#add(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public boolean add(Task task) {
+        throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#contains(long)
+     */
+    @Override
+    public boolean contains(long taskId) {
+        return getIndex().get(taskId) != SlotIndex.NO_SLOT;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#get(long)
+     */
+    @Override
+    public Task get(long taskId) {
+        int slot = getIndex().get(taskId);
+        return slot == SlotIndex.NO_SLOT ? null : slots.get(slot).copy();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDone(long, boolean)
+     */
+    @Override
+    public Task setDone(long taskId, boolean done) {
+        throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#setDueDate(long, java.time.Instant)
+     */
+    @Override
+    public Task setDueDate(long taskId, Instant dueDate) {
+        throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#remove(long)
+     */
+    @Override
+    public Task remove(long taskId) {
+        throw new UnsupportedOperationException("A snapshot cannot be modified.");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#countDone()
+     */
+    @Override
+    public int countDone() {
+        return doneCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#stateChanged(long, boolean)
+     */
+    @Override
+    public void stateChanged(long taskId, boolean done) {
+        // the copies do not belong to any set and cannot notify it
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#getPriority(long)
+     */
+    @Override
+    public int getPriority(long taskId) {
+        Integer priority = priorities == null ? null : priorities.get(taskId);
+        return priority == null ? 0 : priority;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        final Iterator<Task> iterator = priorities == null ? slots.iterator() : Arrays.asList(getOrdered()).iterator();
+        return new Iterator<Task>() {
+            private Task next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Task next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Task current = next;
+                next = advance();
+                return current.copy();
+            }
+
+            private Task advance() {
+                while (iterator.hasNext()) {
+                    Task task = iterator.next();
+                    if (task != null) {
+                        return task;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskStore#iterator(boolean)
+     */
+    @Override
+    public Iterator<Task> iterator(final boolean done) {
+        final Iterator<Task> iterator = iterator();
+        return new Iterator<Task>() {
+            private int left = done ? doneCount : size - doneCount;
+            private Task next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Task next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Task current = next;
+                next = advance();
+                return current;
+            }
+
+            private Task advance() {
+                // stop as soon as all the tasks in the requested state were found
+                while (left > 0 && iterator.hasNext()) {
+                    Task task = iterator.next();
+                    if (task.isDone() == done) {
+                        left--;
+                        return task;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns the tasks in priority order, sorting them on the first call.
+     * <p/>
+     * The sort is stable, so that tasks with the same priority remain in insertion order.
+     *
+     * @return the tasks, from the highest priority to the lowest
+     */
+    private Task[] getOrdered() {
+        Task[] result = ordered;
+        if (result == null) {
+            List<Task> tasks = new ArrayList<>(size);
+            for (Task task : slots) {
+                if (task != null) {
+                    tasks.add(task);
+                }
+            }
+            result = tasks.toArray(new Task[tasks.size()]);
+            Arrays.sort(result,
+                    (left, right) -> Integer.compare(getPriority(right.getId()), getPriority(left.getId())));
+            // concurrent callers may sort twice, but the array is never modified once published
+            ordered = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot of each task, building the index on the first call.
+     * <p/>
+     * Most snapshots are only iterated over, which is why the index is not built when the snapshot is taken.
+     *
+     * @return the index
+     */
+    private SlotIndex getIndex() {
+        SlotIndex result = index;
+        if (result == null) {
+            result = new SlotIndex();
+            int slot = 0;
+            for (Task task : slots) {
+                if (task != null) {
+                    result.put(task.getId(), slot);
+                }
+                slot++;
+            }
+            // concurrent callers may build the index twice, but the index is never modified once published
+            index = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A mutable bitmap over dense ordinals, compressed by not allocating the blocks of bits which are all clear.
+ * <p/>
+ * Bits are stored as blocks of {@value #BLOCK_WORDS} words. Boolean operations are applied word by word over the
+ * blocks both operands allocated, and produce new bitmaps.
+ * <p/>
+ * {@link #copy()} shares the blocks between the original and the copy: each side clones a shared block the first
+ * time it modifies it, so that copying costs one reference per block rather than the bits themselves.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class SparseBitmap {
+
+    /**
+     * The number of bits of the ordinal giving the position of its bit in a block.
+     */
+    static final int BLOCK_SHIFT = 12;
+    /**
+     * The number of words of a block.
+     */
+    static final int BLOCK_WORDS = 1 << (BLOCK_SHIFT - 6);
+
+    /**
+     * The empty blocks array.
+     */
+    private static final long[][] NO_BLOCKS = new long[0][];
+
+    /**
+     * The blocks of bits, {@code null} when all bits of a block are clear.
+     */
+    private long[][] blocks;
+    /**
+     * The blocks this bitmap may modify without cloning them.
+     */
+    private BitSet owned = new BitSet();
+
+    /**
+     * Creates an empty bitmap.
+     */
+    SparseBitmap() {
+        this(NO_BLOCKS);
+    }
+
+    /**
+     * Creates a bitmap owning the supplied blocks.
+     *
+     * @param blocks the blocks
+     */
+    private SparseBitmap(long[][] blocks) {
+        this.blocks = blocks;
+        this.owned.set(0, blocks.length);
+    }
+
+    /**
+     * Tells whether a bit is set.
+     *
+     * @param ordinal the position of the bit
+     * @return {@code true} if the bit is set
+     */
+    boolean get(int ordinal) {
+        int block = ordinal >>> BLOCK_SHIFT;
+        return block < blocks.length && blocks[block] != null
+                && (blocks[block][(ordinal >>> 6) & (BLOCK_WORDS - 1)] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @param ordinal the position of the bit
+     */
+    void set(int ordinal) {
+        int block = ordinal >>> BLOCK_SHIFT;
+        if (block >= blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(block + 1, blocks.length * 2));
+        }
+        writable(block)[(ordinal >>> 6) & (BLOCK_WORDS - 1)] |= 1L << ordinal;
+    }
+
+    /**
+     * Sets or clears a bit.
+     *
+     * @param ordinal the position of the bit
+     * @param value   {@code true} to set the bit, {@code false} to clear it
+     */
+    void set(int ordinal, boolean value) {
+        if (value) {
+            set(ordinal);
+        } else {
+            clear(ordinal);
+        }
+    }
+
+    /**
+     * Clears a bit, releasing its block if it becomes empty.
+     *
+     * @param ordinal the position of the bit
+     */
+    void clear(int ordinal) {
+        if (!get(ordinal)) {
+            return;
+        }
+
+        int block = ordinal >>> BLOCK_SHIFT;
+        long[] words = writable(block);
+        words[(ordinal >>> 6) & (BLOCK_WORDS - 1)] &= ~(1L << ordinal);
+        if (isEmpty(words)) {
+            blocks[block] = null;
+        }
+    }
+
+    /**
+     * Returns the number of set bits.
+     *
+     * @return the number of set bits
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (long[] words : blocks) {
+            if (words != null) {
+                for (long word : words) {
+                    cardinality += Long.bitCount(word);
+                }
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns the position of the first set bit from a given position.
+     *
+     * @param from the position to start from, inclusive
+     * @return the position of the next set bit, or {@code -1} if there is none
+     */
+    int nextSetBit(int from) {
+        int w = (from >>> 6) & (BLOCK_WORDS - 1);
+        long mask = -1L << from;
+        for (int block = from >>> BLOCK_SHIFT; block < blocks.length; block++, w = 0, mask = -1L) {
+            long[] words = blocks[block];
+            if (words == null) {
+                continue;
+            }
+            for (; w < BLOCK_WORDS; w++, mask = -1L) {
+                long word = words[w] & mask;
+                if (word != 0) {
+                    return (block << BLOCK_SHIFT) + (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the intersection of this bitmap and another one.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap, with the bits set in both
+     */
+    SparseBitmap and(SparseBitmap other) {
+        long[][] result = new long[Math.min(blocks.length, other.blocks.length)][];
+        for (int block = 0; block < result.length; block++) {
+            long[] left = blocks[block];
+            long[] right = other.blocks[block];
+            if (left != null && right != null) {
+                long[] words = new long[BLOCK_WORDS];
+                long any = 0;
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    any |= words[w] = left[w] & right[w];
+                }
+                result[block] = any == 0 ? null : words;
+            }
+        }
+        return new SparseBitmap(result);
+    }
+
+    /**
+     * Returns the union of this bitmap and another one.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap, with the bits set in either
+     */
+    SparseBitmap or(SparseBitmap other) {
+        long[][] result = new long[Math.max(blocks.length, other.blocks.length)][];
+        for (int block = 0; block < result.length; block++) {
+            long[] left = block < blocks.length ? blocks[block] : null;
+            long[] right = block < other.blocks.length ? other.blocks[block] : null;
+            if (left == null || right == null) {
+                long[] words = left == null ? right : left;
+                result[block] = words == null ? null : words.clone();
+            } else {
+                long[] words = new long[BLOCK_WORDS];
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    words[w] = left[w] | right[w];
+                }
+                result[block] = words;
+            }
+        }
+        return new SparseBitmap(result);
+    }
+
+    /**
+     * Returns the difference between this bitmap and another one.
+     *
+     * @param other the other bitmap
+     * @return a new bitmap, with the bits set in this bitmap but not in the other one
+     */
+    SparseBitmap andNot(SparseBitmap other) {
+        long[][] result = new long[blocks.length][];
+        for (int block = 0; block < result.length; block++) {
+            long[] left = blocks[block];
+            long[] right = block < other.blocks.length ? other.blocks[block] : null;
+            if (left != null && right == null) {
+                result[block] = left.clone();
+            } else if (left != null) {
+                long[] words = new long[BLOCK_WORDS];
+                long any = 0;
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    any |= words[w] = left[w] & ~right[w];
+                }
+                result[block] = any == 0 ? null : words;
+            }
+        }
+        return new SparseBitmap(result);
+    }
+
+    /**
+     * Returns a copy of this bitmap, sharing its blocks until either side modifies them.
+     *
+     * @return the copy
+     */
+    SparseBitmap copy() {
+        SparseBitmap copy = new SparseBitmap(blocks.clone());
+        copy.owned.clear();
+        owned.clear();
+        return copy;
+    }
+
+    /**
+     * Returns a block this bitmap can modify, cloning or allocating it if needed.
+     *
+     * @param block the index of the block
+     * @return the words of the block
+     */
+    private long[] writable(int block) {
+        long[] words = blocks[block];
+        if (words == null) {
+            words = new long[BLOCK_WORDS];
+            blocks[block] = words;
+            owned.set(block);
+        } else if (!owned.get(block)) {
+            words = words.clone();
+            blocks[block] = words;
+            owned.set(block);
+        }
+        return words;
+    }
+
+    /**
+     * Tells whether all the bits of a block are clear.
+     *
+     * @param words the words of the block
+     * @return {@code true} if no bit is set
+     */
+    private static boolean isEmpty(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
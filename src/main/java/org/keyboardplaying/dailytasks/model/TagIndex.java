@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The tags of a {@link TaskSet}, as bitmaps.
+ * <p/>
+ * Each task of the set is given a dense ordinal, the ordinals of removed tasks being reused. Each tag is a
+ * {@link SparseBitmap} of the ordinals of the tasks bearing it, and two more bitmaps hold the ordinals of all tasks and
+ * of the finished ones, so that a {@link TaskFilter} is evaluated as a few word-wise operations.
+ * <p/>
+ * The index listens to its set to stay up to date. It is thread-safe.
+ * <p/>
+ * {@link #copy()} shares the blocks of bitmaps and ordinals with the original until either side modifies them.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class TagIndex implements TaskSetListener {
+
+    /**
+     * The ID of the task of each ordinal, as blocks of the size of a bitmap block.
+     */
+    private long[][] ids = new long[0][];
+    /**
+     * The blocks of {@link #ids} this index may modify without cloning them.
+     */
+    private BitSet ownedIds = new BitSet();
+    /**
+     * The ordinal of each task, indexed by ID, or {@code null} until needed if this index is a copy.
+     */
+    private SlotIndex ordinals = new SlotIndex();
+    /**
+     * The ordinals released by removed tasks.
+     */
+    private int[] free = new int[0];
+    /**
+     * The number of released ordinals.
+     */
+    private int freeCount;
+    /**
+     * The first ordinal which was never used.
+     */
+    private int end;
+    /**
+     * The ordinals of all tasks.
+     */
+    private SparseBitmap all = new SparseBitmap();
+    /**
+     * The ordinals of the finished tasks.
+     */
+    private SparseBitmap done = new SparseBitmap();
+    /**
+     * The ordinals of the tasks bearing each tag.
+     */
+    private Map<String, SparseBitmap> tags = new HashMap<>();
+
+    /**
+     * Tags a task.
+     *
+     * @param taskId the ID of the task
+     * @param tag    the tag
+     * @return {@code true} if the task was tagged, {@code false} if it already bore the tag or is not indexed
+     */
+    synchronized boolean addTag(long taskId, String tag) {
+        int ordinal = ordinals().get(taskId);
+        if (ordinal == SlotIndex.NO_SLOT) {
+            return false;
+        }
+
+        SparseBitmap tagged = tags.get(tag);
+        if (tagged == null) {
+            tagged = new SparseBitmap();
+            tags.put(tag, tagged);
+        } else if (tagged.get(ordinal)) {
+            return false;
+        }
+        tagged.set(ordinal);
+        return true;
+    }
+
+    /**
+     * Untags a task.
+     *
+     * @param taskId the ID of the task
+     * @param tag    the tag
+     * @return {@code true} if the task was untagged, {@code false} if it did not bear the tag
+     */
+    synchronized boolean removeTag(long taskId, String tag) {
+        int ordinal = ordinals().get(taskId);
+        SparseBitmap tagged = tags.get(tag);
+        if (ordinal == SlotIndex.NO_SLOT || tagged == null || !tagged.get(ordinal)) {
+            return false;
+        }
+        untag(tag, tagged, ordinal);
+        return true;
+    }
+
+    /**
+     * Returns the tags of a task.
+     *
+     * @param taskId the ID of the task
+     * @return the tags, in alphabetical order
+     */
+    synchronized Set<String> getTags(long taskId) {
+        Set<String> result = new TreeSet<>();
+        int ordinal = ordinals().get(taskId);
+        if (ordinal != SlotIndex.NO_SLOT) {
+            for (Map.Entry<String, SparseBitmap> tag : tags.entrySet()) {
+                if (tag.getValue().get(ordinal)) {
+                    result.add(tag.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tags borne by at least one task.
+     *
+     * @return the tags, in alphabetical order
+     */
+    synchronized Set<String> getTagNames() {
+        return new TreeSet<>(tags.keySet());
+    }
+
+    /**
+     * Returns the IDs of the tasks selected by a filter.
+     *
+     * @param filter the filter
+     * @return the IDs of the selected tasks, in the order of their ordinals
+     */
+    synchronized long[] filter(TaskFilter filter) {
+        SparseBitmap selected = filter.evaluate(this);
+        long[] result = new long[selected.cardinality()];
+        int i = 0;
+        for (int ordinal = selected.nextSetBit(0); ordinal >= 0; ordinal = selected.nextSetBit(ordinal + 1)) {
+            result[i++] = idOf(ordinal);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of tasks selected by a filter.
+     *
+     * @param filter the filter
+     * @return the number of selected tasks
+     */
+    synchronized int count(TaskFilter filter) {
+        return filter.evaluate(this).cardinality();
+    }
+
+    /**
+     * Returns the IDs of the tasks bearing each tag.
+     *
+     * @return the IDs of the tagged tasks, by tag
+     */
+    synchronized Map<String, long[]> export() {
+        Map<String, long[]> result = new HashMap<>();
+        for (String tag : tags.keySet()) {
+            result.put(tag, filter(TaskFilter.tag(tag)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of this index, which is not registered to any set.
+     *
+     * @return the copy
+     */
+    synchronized TagIndex copy() {
+        TagIndex copy = new TagIndex();
+        copy.ids = ids.clone();
+        ownedIds.clear();
+        copy.ordinals = null;
+        copy.free = free.clone();
+        copy.freeCount = freeCount;
+        copy.end = end;
+        copy.all = all.copy();
+        copy.done = done.copy();
+        for (Map.Entry<String, SparseBitmap> tag : tags.entrySet()) {
+            copy.tags.put(tag.getKey(), tag.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the bitmap of all tasks, for filters.
+     *
+     * @return the bitmap, which must not be modified
+     */
+    SparseBitmap getAll() {
+        return all;
+    }
+
+    /**
+     * Returns the bitmap of the finished tasks, for filters.
+     *
+     * @return the bitmap, which must not be modified
+     */
+    SparseBitmap getDone() {
+        return done;
+    }
+
+    /**
+     * Returns the bitmap of the tasks bearing a tag, for filters.
+     *
+     * @param tag the tag
+     * @return the bitmap, which must not be modified
+     */
+    SparseBitmap getTagged(String tag) {
+        SparseBitmap tagged = tags.get(tag);
+        return tagged == null ? new SparseBitmap() : tagged;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskAdded(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public synchronized void taskAdded(Task task) {
+        SlotIndex index = ordinals();
+        if (index.get(task.getId()) != SlotIndex.NO_SLOT) {
+            return;
+        }
+
+        int ordinal = freeCount > 0 ? free[--freeCount] : end++;
+        setId(ordinal, task.getId());
+        index.put(task.getId(), ordinal);
+        all.set(ordinal);
+        done.set(ordinal, task.isDone());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public synchronized void taskRemoved(Task task) {
+        int ordinal = ordinals().remove(task.getId());
+        if (ordinal == SlotIndex.NO_SLOT) {
+            return;
+        }
+
+        all.clear(ordinal);
+        done.clear(ordinal);
+        for (Iterator<Map.Entry<String, SparseBitmap>> it = tags.entrySet().iterator(); it.hasNext(); ) {
+            SparseBitmap tagged = it.next().getValue();
+            if (tagged.get(ordinal)) {
+                tagged.clear(ordinal);
+                if (tagged.nextSetBit(0) < 0) {
+                    it.remove();
+                }
+            }
+        }
+
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(16, free.length * 2));
+        }
+        free[freeCount++] = ordinal;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskStateChanged(long, boolean)
+     */
+    @Override
+    public synchronized void taskStateChanged(long taskId, boolean done) {
+        int ordinal = ordinals().get(taskId);
+        if (ordinal != SlotIndex.NO_SLOT) {
+            this.done.set(ordinal, done);
+        }
+    }
+
+    /**
+     * Untags a task, forgetting the tag if no other task bears it.
+     *
+     * @param tag     the tag
+     * @param tagged  the bitmap of the tag
+     * @param ordinal the ordinal of the task
+     */
+    private void untag(String tag, SparseBitmap tagged, int ordinal) {
+        tagged.clear(ordinal);
+        if (tagged.nextSetBit(0) < 0) {
+            tags.remove(tag);
+        }
+    }
+
+    /**
+     * Returns the index of ordinals, rebuilding it if this index is a copy.
+     *
+     * @return the ordinal of each task, indexed by ID
+     */
+    private SlotIndex ordinals() {
+        if (ordinals == null) {
+            ordinals = new SlotIndex();
+            for (int ordinal = all.nextSetBit(0); ordinal >= 0; ordinal = all.nextSetBit(ordinal + 1)) {
+                ordinals.put(idOf(ordinal), ordinal);
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Returns the ID of the task of an ordinal.
+     *
+     * @param ordinal the ordinal
+     * @return the ID of the task
+     */
+    private long idOf(int ordinal) {
+        return ids[ordinal >>> SparseBitmap.BLOCK_SHIFT][ordinal & ((1 << SparseBitmap.BLOCK_SHIFT) - 1)];
+    }
+
+    /**
+     * Sets the ID of the task of an ordinal, cloning or allocating its block if needed.
+     *
+     * @param ordinal the ordinal
+     * @param taskId  the ID of the task
+     */
+    private void setId(int ordinal, long taskId) {
+        int block = ordinal >>> SparseBitmap.BLOCK_SHIFT;
+        if (block >= ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(block + 1, ids.length * 2));
+        }
+        if (ids[block] == null) {
+            ids[block] = new long[1 << SparseBitmap.BLOCK_SHIFT];
+            ownedIds.set(block);
+        } else if (!ownedIds.get(block)) {
+            ids[block] = ids[block].clone();
+            ownedIds.set(block);
+        }
+        ids[block][ordinal & ((1 << SparseBitmap.BLOCK_SHIFT) - 1)] = taskId;
+    }
+}
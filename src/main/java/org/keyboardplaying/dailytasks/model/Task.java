@@ -15,12 +15,29 @@ package org.keyboardplaying.dailytasks.model;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A basic representation of a task and its state.
  * <p/>
- * The task contains an integer identifier generated upon instantiation. This ID will be used to ensure equality.
- * <strong>Warning:</strong> The IDs will not be serialised and will be valid only for current session.
+ * The task contains a 64-bit identifier generated upon instantiation. This ID will be used to ensure equality. It is
+ * serialized along with the task, so that a task keeps its ID from one session to the next.
+ * <p/>
+ * The IDs are allocated from a sequence which starts from the current time, shifted so that a million tasks can be
+ * created each millisecond without overlapping the IDs of a later session. The sequence also skips the IDs of the
+ * deserialized tasks, so that a new task never reuses the ID of a saved one.
+ * <p/>
+ * A task may have a due date. The set it belongs to indexes the tasks by due date, so that the tasks due in a period
+ * of time are found without going through the others.
+ * <p/>
+ * A task may repeat, as told by its {@link #getRecurrence() recurrence}. Its occurrences are computed when a period
+ * of time is viewed, and are never stored.
+ * <p/>
+ * The time at which a task was finished is recorded and serialized along with its state, so that the tasks finished
+ * long ago can be archived.
+ * <p/>
+ * Tasks may be shared between threads: IDs are allocated atomically and state changes are synchronized.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
@@ -34,12 +51,12 @@ public class Task implements Serializable {
     /**
      * A sequence used to generate a unique ID for each task.
      */
-    private static int sequence = 0;
+    private static final AtomicLong SEQUENCE = new AtomicLong(System.currentTimeMillis() << 20);
 
     /**
      * The task's identifier.
      */
-    private transient int id = ++sequence;
+    private long id;
     /**
      * The task's label and identifier.
      */
@@ -47,7 +64,20 @@ public class Task implements Serializable {
     /**
      * The task state (finished or not).
      */
-    private boolean done;
+    private volatile boolean done;
+    /**
+     * The due date of the task, in milliseconds since the epoch, or {@code 0} if the task has no due date.
+     */
+    private volatile long dueDate;
+    /**
+     * The time at which the task was last finished, in milliseconds since the epoch, or {@code 0} if it is not
+     * finished.
+     */
+    private volatile long completionTime;
+    /**
+     * The set this task belongs to, which is notified when the state of the task changes.
+     */
+    private transient TaskSet owner;
 
     /**
      * Creates a new instance.
@@ -56,8 +86,10 @@ public class Task implements Serializable {
      * @param done {@code true} if the task is finished, {@code false} otherwise
      */
     public Task(String todo, boolean done) {
-        this.todo = todo;
-        this.done = done;
+        this(SEQUENCE.incrementAndGet(), LabelPool.intern(todo), done);
+        if (done) {
+            completionTime = System.currentTimeMillis();
+        }
     }
 
     /**
@@ -69,13 +101,31 @@ public class Task implements Serializable {
         this(todo, false);
     }
 
+    /**
+     * Creates a new instance with a known identifier.
+     * <p/>
+     * This constructor is used to rebuild a task which was stored in another form, and should not be used to create
+     * new tasks. The label is expected to come from the {@link LabelPool} already.
+     *
+     * @param id   the task's identifier
+     * @param todo the task's label
+     * @param done {@code true} if the task is finished, {@code false} otherwise
+     */
+    Task(long id, String todo, boolean done) {
+        this.id = id;
+        this.todo = todo;
+        this.done = done;
+    }
+
     /**
      * Sets the task's label.
+     * <p/>
+     * The label is replaced with its instance from the {@link LabelPool}.
      *
      * @param todo the task's label
      */
     protected void setTodo(String todo) {
-        this.todo = todo;
+        this.todo = LabelPool.intern(todo);
     }
 
     /**
@@ -92,7 +142,7 @@ public class Task implements Serializable {
      *
      * @return the task's ID
      */
-    public int getId() {
+    public long getId() {
         return id;
     }
 
@@ -106,12 +156,170 @@ public class Task implements Serializable {
     }
 
     /**
-     * Sets the task's state.
+     * Sets the task's state, recording the time at which it was finished.
      *
      * @param done {@code true} if the task is finished, {@code false} otherwise
      */
     public void setDone(boolean done) {
-        this.done = done;
+        TaskSet notified;
+        synchronized (this) {
+            if (this.done == done) {
+                return;
+            }
+            this.done = done;
+            completionTime = done ? System.currentTimeMillis() : 0;
+            notified = owner;
+        }
+        // notify outside of the lock; the owner was read along with the change
+        if (notified != null) {
+            notified.taskStateChanged(id, done);
+        }
+    }
+
+    /**
+     * Returns the task's due date.
+     *
+     * @return the due date, or {@code null} if the task has no due date
+     */
+    public Instant getDueDate() {
+        long due = dueDate;
+        return due == 0 ? null : Instant.ofEpochMilli(due);
+    }
+
+    /**
+     * Sets the task's due date.
+     * <p/>
+     * The due date is kept to the millisecond.
+     *
+     * @param dueDate the due date, or {@code null} to remove it
+     */
+    public void setDueDate(Instant dueDate) {
+        long due = dueDate == null ? 0 : dueDate.toEpochMilli();
+        TaskSet notified;
+        synchronized (this) {
+            if (this.dueDate == due) {
+                return;
+            }
+            this.dueDate = due;
+            notified = owner;
+        }
+        // notify outside of the lock, as for state changes
+        if (notified != null) {
+            notified.taskDueDateChanged(id);
+        }
+    }
+
+    /**
+     * Returns the rule telling when this task repeats.
+     *
+     * @return the rule, or {@code null} if the task does not repeat
+     */
+    public Recurrence getRecurrence() {
+        return null;
+    }
+
+    /**
+     * Returns the time at which this task was last finished.
+     *
+     * @return the time, or {@code null} if the task is not finished
+     */
+    public Instant getCompletionDate() {
+        long time = completionTime;
+        return time == 0 ? null : Instant.ofEpochMilli(time);
+    }
+
+    /**
+     * Returns the time at which this task was last finished, as a number.
+     *
+     * @return the time in milliseconds since the epoch, or {@code 0} if the task is not finished
+     */
+    long getCompletionTime() {
+        return completionTime;
+    }
+
+    /**
+     * Sets the time at which this task was last finished without notifying its set, when rebuilding a task or
+     * restoring its state.
+     *
+     * @param completionTime the time in milliseconds since the epoch, or {@code 0} if the task is not finished
+     * @return this task
+     */
+    Task withCompletionTime(long completionTime) {
+        this.completionTime = completionTime;
+        return this;
+    }
+
+    /**
+     * Returns the state this task should be restored to when replaying a recorded state change, which is the recorded
+     * state for a task whose state is saved.
+     *
+     * @param done           the recorded state
+     * @param completionTime the time at which the state was recorded, in milliseconds since the epoch
+     * @return the state to restore
+     */
+    boolean restoredState(boolean done, long completionTime) {
+        return done;
+    }
+
+    /**
+     * Returns the task's due date as a number.
+     *
+     * @return the due date in milliseconds since the epoch, or {@code 0} if the task has no due date
+     */
+    long getDueTime() {
+        return dueDate;
+    }
+
+    /**
+     * Sets the task's due date without notifying its set, when rebuilding a task.
+     *
+     * @param dueTime the due date in milliseconds since the epoch, or {@code 0} if the task has no due date
+     * @return this task
+     */
+    Task withDueTime(long dueTime) {
+        this.dueDate = dueTime;
+        return this;
+    }
+
+    /**
+     * Returns the set this task belongs to.
+     *
+     * @return the set this task belongs to, or {@code null} if none
+     */
+    synchronized TaskSet getOwner() {
+        return owner;
+    }
+
+    /**
+     * Sets the set this task belongs to.
+     * <p/>
+     * A task belongs to at most one set, which will be notified of each change of the task's state.
+     *
+     * @param owner the set this task belongs to, or {@code null} if none
+     */
+    synchronized void setOwner(TaskSet owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Creates a copy of this task, with the same ID, label, state, due date and completion time, which does not
+     * belong to any set.
+     *
+     * @return the copy
+     */
+    Task copy() {
+        return new Task(id, todo, done).withDueTime(dueDate).withCompletionTime(completionTime);
+    }
+
+    /**
+     * Restores the ID of a deserialized task.
+     *
+     * @param id the saved ID
+     */
+    void restoreId(long id) {
+        this.id = id;
+        // never allocate this ID again
+        SEQUENCE.accumulateAndGet(id, Math::max);
     }
 
     /*
@@ -121,7 +329,7 @@ public class Task implements Serializable {
      */
     @Override
     public int hashCode() {
-        return id;
+        return Long.hashCode(id);
     }
 
     /*
@@ -154,7 +362,16 @@ public class Task implements Serializable {
     private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
         // default deserialization
         in.defaultReadObject();
-        // initialize ID
-        id = ++sequence;
+        todo = LabelPool.intern(todo);
+        if (done && completionTime == 0) {
+            // tasks saved by previous versions did not record when they were finished
+            completionTime = System.currentTimeMillis();
+        }
+        if (id == 0) {
+            // tasks saved by previous versions did not have a persistent ID
+            id = SEQUENCE.incrementAndGet();
+        } else {
+            restoreId(id);
+        }
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable record of a modification made to a {@link TaskSet}.
+ * <p/>
+ * Events are recorded as the set is modified, so that replaying them in order on the set as it was before rebuilds
+ * the set as it is now. Replaying restores the states the way a saved session would: the state of a
+ * {@link DailyTask} is not restored, and a {@link RecurringTask} remains finished only if no occurrence started since
+ * the event.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class TaskEvent implements Serializable {
+
+    /**
+     * The kinds of modification an event can record.
+     */
+    public enum Type {
+        /**
+         * A task was added to the set, possibly as a subtask of another one.
+         */
+        ADDED {
+            @Override
+            void apply(TaskEvent event, TaskSet set) throws TaskNotFoundException {
+                if (event.parentId == 0) {
+                    set.addTask(event.task.copy());
+                } else {
+                    set.addSubtask(event.parentId, event.task.copy());
+                }
+            }
+        },
+        /**
+         * A task was removed from the set.
+         */
+        REMOVED {
+            @Override
+            void apply(TaskEvent event, TaskSet set) throws TaskNotFoundException {
+                set.removeTask(event.taskId);
+            }
+        },
+        /**
+         * The state of a task was changed.
+         */
+        STATE_CHANGED {
+            @Override
+            void apply(TaskEvent event, TaskSet set) throws TaskNotFoundException {
+                set.restoreTaskState(event.taskId, event.done, event.timestamp);
+            }
+        },
+        /**
+         * The state of all the tasks of the set was changed.
+         */
+        ALL_STATES_CHANGED {
+            @Override
+            void apply(TaskEvent event, TaskSet set) throws TaskNotFoundException {
+                List<Long> taskIds = new ArrayList<>(set.size());
+                for (Task task : set) {
+                    taskIds.add(task.getId());
+                }
+                for (long taskId : taskIds) {
+                    set.restoreTaskState(taskId, event.done, event.timestamp);
+                }
+            }
+        };
+
+        /**
+         * Applies an event of this type to a set.
+         *
+         * @param event the event
+         * @param set   the set
+         * @throws TaskNotFoundException when the task of the event could not be found in the set
+         */
+        abstract void apply(TaskEvent event, TaskSet set) throws TaskNotFoundException;
+    }
+
+    /**
+     * Generated serial version UID.
+     */
+    private static final long serialVersionUID = 4459187011254317530L;
+
+    /**
+     * The kind of modification.
+     */
+    private final Type type;
+    /**
+     * The time of the modification, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+    /**
+     * The ID of the modified task, or {@code 0} if the event applies to the whole set.
+     */
+    private final long taskId;
+    /**
+     * The state applied, for state changes.
+     */
+    private final boolean done;
+    /**
+     * The ID of the parent of an added task, or {@code 0} if the task was not added as a subtask.
+     */
+    private final long parentId;
+    /**
+     * A copy of the added task, or {@code null} for other events.
+     */
+    private final Task task;
+
+    /**
+     * Creates a new instance, timestamped with the current time.
+     *
+     * @param type     the kind of modification
+     * @param taskId   the ID of the modified task, or {@code 0} if the event applies to the whole set
+     * @param done     the state applied, for state changes
+     * @param parentId the ID of the parent of an added task, or {@code 0}
+     * @param task     a copy of the added task, or {@code null}
+     */
+    private TaskEvent(Type type, long taskId, boolean done, long parentId, Task task) {
+        this(type, System.currentTimeMillis(), taskId, done, parentId, task);
+    }
+
+    /**
+     * Creates a new instance with a known timestamp, when reading a recorded event.
+     *
+     * @param type      the kind of modification
+     * @param timestamp the time of the modification, in milliseconds since the epoch
+     * @param taskId    the ID of the modified task, or {@code 0} if the event applies to the whole set
+     * @param done      the state applied, for state changes
+     * @param parentId  the ID of the parent of an added task, or {@code 0}
+     * @param task      a copy of the added task, or {@code null}
+     */
+    TaskEvent(Type type, long timestamp, long taskId, boolean done, long parentId, Task task) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.taskId = taskId;
+        this.done = done;
+        this.parentId = parentId;
+        this.task = task;
+    }
+
+    /**
+     * Records the addition of a task.
+     *
+     * @param task the added task
+     * @return the event
+     */
+    public static TaskEvent added(Task task) {
+        return added(task, 0);
+    }
+
+    /**
+     * Records the addition of a task as a subtask of another one.
+     *
+     * @param task     the added task
+     * @param parentId the ID of the parent task
+     * @return the event
+     */
+    public static TaskEvent added(Task task, long parentId) {
+        // the event keeps the task as it is now
+        return new TaskEvent(Type.ADDED, task.getId(), task.isDone(), parentId, task.copy());
+    }
+
+    /**
+     * Records the removal of a task.
+     *
+     * @param taskId the ID of the removed task
+     * @return the event
+     */
+    public static TaskEvent removed(long taskId) {
+        return new TaskEvent(Type.REMOVED, taskId, false, 0, null);
+    }
+
+    /**
+     * Records a change of the state of a task.
+     *
+     * @param taskId the ID of the updated task
+     * @param done   the state applied
+     * @return the event
+     */
+    public static TaskEvent stateChanged(long taskId, boolean done) {
+        return new TaskEvent(Type.STATE_CHANGED, taskId, done, 0, null);
+    }
+
+    /**
+     * Records a change of the state of all the tasks of a set.
+     *
+     * @param done the state applied
+     * @return the event
+     */
+    public static TaskEvent allStatesChanged(boolean done) {
+        return new TaskEvent(Type.ALL_STATES_CHANGED, 0, done, 0, null);
+    }
+
+    /**
+     * Applies this event to a set.
+     *
+     * @param set the set
+     * @throws TaskNotFoundException when the task of this event could not be found in the set
+     */
+    public void applyTo(TaskSet set) throws TaskNotFoundException {
+        type.apply(this, set);
+    }
+
+    /**
+     * Returns the kind of modification.
+     *
+     * @return the kind of modification
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the time of the modification.
+     *
+     * @return the time of the modification
+     */
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    /**
+     * Returns the time of the modification, as a number.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    long getTime() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the ID of the parent of the added task.
+     *
+     * @return the ID of the parent, or {@code 0} if the task was not added as a subtask or the event is not an
+     * addition
+     */
+    long getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Returns the ID of the modified task.
+     *
+     * @return the ID of the modified task, or {@code 0} if the event applies to the whole set
+     */
+    public long getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Returns the task which was added.
+     * <p/>
+     * This is a copy of the task as it was when the event was recorded, which does not belong to any set.
+     *
+     * @return the added task, or {@code null} for other events
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the state applied by a state change, or the state of an added task.
+     *
+     * @return {@code true} if the task was finished, {@code false} otherwise
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getTimestamp() + " " + type + (taskId == 0 ? "" : " #" + taskId)
+                + (type == Type.STATE_CHANGED || type == Type.ALL_STATES_CHANGED ? " done=" + done : "");
+    }
+}
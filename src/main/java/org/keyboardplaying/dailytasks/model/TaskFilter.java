@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A combination of tags and states selecting tasks of a {@link TaskSet}, such as "ops AND daily AND NOT done":
+ * <pre>
+ * TaskFilter.tag("ops").and(TaskFilter.tag("daily")).andNot(TaskFilter.done())
+ * </pre>
+ * <p/>
+ * Filters are immutable. They are evaluated by {@link TaskSet#filter(TaskFilter)} and
+ * {@link TaskSet#count(TaskFilter)} as word-wise operations over the bitmaps of their tags and states.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class TaskFilter {
+
+    /**
+     * The evaluation of the filter against the bitmaps of a set.
+     */
+    private final Function<TagIndex, SparseBitmap> evaluation;
+    /**
+     * The description of the filter.
+     */
+    private final String description;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param evaluation  the evaluation of the filter against the bitmaps of a set
+     * @param description the description of the filter
+     */
+    private TaskFilter(Function<TagIndex, SparseBitmap> evaluation, String description) {
+        this.evaluation = evaluation;
+        this.description = description;
+    }
+
+    /**
+     * Returns a filter selecting the tasks bearing a tag.
+     *
+     * @param tag the tag
+     * @return the filter
+     */
+    public static TaskFilter tag(final String tag) {
+        Objects.requireNonNull(tag, "tag");
+        return new TaskFilter(index -> index.getTagged(tag), '"' + tag + '"');
+    }
+
+    /**
+     * Returns a filter selecting all tasks.
+     *
+     * @return the filter
+     */
+    public static TaskFilter all() {
+        return new TaskFilter(TagIndex::getAll, "ALL");
+    }
+
+    /**
+     * Returns a filter selecting the finished tasks.
+     *
+     * @return the filter
+     */
+    public static TaskFilter done() {
+        return new TaskFilter(TagIndex::getDone, "DONE");
+    }
+
+    /**
+     * Returns a filter selecting the unfinished tasks.
+     *
+     * @return the filter
+     */
+    public static TaskFilter remaining() {
+        return new TaskFilter(index -> index.getAll().andNot(index.getDone()), "REMAINING");
+    }
+
+    /**
+     * Returns a filter selecting the tasks selected by both this filter and another one.
+     *
+     * @param other the other filter
+     * @return the filter
+     */
+    public TaskFilter and(final TaskFilter other) {
+        return new TaskFilter(index -> evaluate(index).and(other.evaluate(index)),
+                "(" + this + " AND " + other + ")");
+    }
+
+    /**
+     * Returns a filter selecting the tasks selected by this filter, another one, or both.
+     *
+     * @param other the other filter
+     * @return the filter
+     */
+    public TaskFilter or(final TaskFilter other) {
+        return new TaskFilter(index -> evaluate(index).or(other.evaluate(index)),
+                "(" + this + " OR " + other + ")");
+    }
+
+    /**
+     * Returns a filter selecting the tasks selected by this filter but not by another one.
+     *
+     * @param other the other filter
+     * @return the filter
+     */
+    public TaskFilter andNot(final TaskFilter other) {
+        return new TaskFilter(index -> evaluate(index).andNot(other.evaluate(index)),
+                "(" + this + " AND NOT " + other + ")");
+    }
+
+    /**
+     * Computes the bitmap of the tasks selected by this filter.
+     * <p/>
+     * The returned bitmap may be one of the index: it must not be modified.
+     *
+     * @param index the bitmaps of the set
+     * @return the bitmap of the selected tasks
+     */
+    SparseBitmap evaluate(TagIndex index) {
+        return evaluation.apply(index);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
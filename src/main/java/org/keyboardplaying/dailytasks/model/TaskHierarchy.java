@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The subtasks of a {@link TaskSet}.
+ * <p/>
+ * Only the tasks which have a parent or subtasks are tracked, as nodes of a forest. Each node counts the leaves
+ * (tasks without subtasks) of its subtree and how many of them are finished. These counts are updated along the
+ * ancestors of a task each time it changes, so that toggling a leaf costs time proportional to its depth. The same
+ * counts are kept for the whole forest, from which the set derives its root aggregates.
+ * <p/>
+ * The state of a task with subtasks is derived from its leaves: it is finished when all of them are. When the state of
+ * such a task is changed directly, the change is applied to all its leaves.
+ * <p/>
+ * Applying derived states or removing the subtasks of a removed task requires modifying the set, which could deadlock
+ * if done while the store of a concurrent set holds a lock. These modifications are therefore queued by the thread
+ * which triggered them, and applied when the set calls {@link #flush()}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class TaskHierarchy implements TaskSetListener {
+
+    /**
+     * The set whose subtasks are tracked.
+     */
+    private final TaskSet set;
+    /**
+     * {@code false} if the set is read-only, in which case the states are never derived.
+     */
+    private final boolean derive;
+    /**
+     * The tracked tasks, indexed by ID.
+     */
+    private final Map<Long, Node> nodes = new HashMap<>();
+    /**
+     * The modifications queued by each thread.
+     */
+    private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>() {
+        @Override
+        protected Pending initialValue() {
+            return new Pending();
+        }
+    };
+    /**
+     * The number of finished tracked tasks.
+     */
+    private int trackedDone;
+    /**
+     * The number of leaves of the forest.
+     */
+    private int leaves;
+    /**
+     * The number of finished leaves of the forest.
+     */
+    private int doneLeaves;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param set    the set whose subtasks will be tracked
+     * @param derive {@code false} if the set is read-only
+     */
+    TaskHierarchy(TaskSet set, boolean derive) {
+        this.set = set;
+        this.derive = derive;
+    }
+
+    /**
+     * Makes a task a subtask of another one.
+     *
+     * @param childId  the ID of the subtask
+     * @param parentId the ID of the parent task
+     * @return {@code false} if the link was ignored because one of the tasks is not in the set
+     * @throws IllegalArgumentException if the parent task is the child or one of its subtasks
+     */
+    synchronized boolean link(long childId, long parentId) {
+        Node parent = track(parentId);
+        Node child = track(childId);
+        if (parent == null || child == null) {
+            return false;
+        }
+        for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == child) {
+                throw new IllegalArgumentException(
+                        String.format("Task %d cannot become a subtask of its subtask %d.", childId, parentId));
+            }
+        }
+        if (child.parent == parent) {
+            return true;
+        }
+
+        Pending work = pending.get();
+        if (child.parent != null) {
+            detach(child, work);
+        }
+        // the child was a root of the forest
+        leaves -= child.leaves;
+        doneLeaves -= child.doneLeaves;
+
+        boolean wasLeaf = parent.children.isEmpty();
+        parent.children.add(child);
+        child.parent = parent;
+        propagate(parent, child.leaves - (wasLeaf ? 1 : 0),
+                child.doneLeaves - (wasLeaf && parent.done ? 1 : 0), work);
+        return true;
+    }
+
+    /**
+     * Returns the ID of the parent of a task.
+     *
+     * @param taskId the ID of the task
+     * @return the ID of its parent, or {@code 0} if the task is not a subtask
+     */
+    synchronized long getParentId(long taskId) {
+        Node node = nodes.get(taskId);
+        return node == null || node.parent == null ? 0 : node.parent.id;
+    }
+
+    /**
+     * Returns the IDs of the direct subtasks of a task.
+     *
+     * @param taskId the ID of the task
+     * @return the IDs of its subtasks, in the order they were added
+     */
+    synchronized List<Long> getChildIds(long taskId) {
+        List<Long> ids = new ArrayList<>();
+        Node node = nodes.get(taskId);
+        if (node != null) {
+            for (Node child : node.children) {
+                ids.add(child.id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the links of the tracked subtasks.
+     *
+     * @return the ID of each subtask followed by the ID of its parent, parents coming before their subtasks
+     */
+    synchronized long[] getLinks() {
+        long[] links = new long[2 * (nodes.size())];
+        int size = 0;
+        Deque<Node> roots = new ArrayDeque<>();
+        for (Node node : nodes.values()) {
+            if (node.parent == null) {
+                roots.add(node);
+            }
+        }
+        while (!roots.isEmpty()) {
+            Node node = roots.poll();
+            for (Node child : node.children) {
+                links[size++] = child.id;
+                links[size++] = node.id;
+                roots.add(child);
+            }
+        }
+        long[] result = new long[size];
+        System.arraycopy(links, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Returns the number of leaves in the subtree of a task.
+     *
+     * @param task the task
+     * @return the number of leaves, {@code 1} if the task has no subtask
+     */
+    synchronized int countLeaves(Task task) {
+        Node node = nodes.get(task.getId());
+        return node == null ? 1 : node.leaves;
+    }
+
+    /**
+     * Returns the number of finished leaves in the subtree of a task.
+     *
+     * @param task the task
+     * @return the number of finished leaves
+     */
+    synchronized int countDoneLeaves(Task task) {
+        Node node = nodes.get(task.getId());
+        return node == null ? (task.isDone() ? 1 : 0) : node.doneLeaves;
+    }
+
+    /**
+     * Returns the number of leaves in the set.
+     *
+     * @return the number of tasks without subtasks
+     */
+    synchronized int countLeaves() {
+        return set.size() - nodes.size() + leaves;
+    }
+
+    /**
+     * Returns the number of finished leaves in the set.
+     *
+     * @return the number of finished tasks without subtasks
+     */
+    synchronized int countDoneLeaves() {
+        return set.countDone() - trackedDone + doneLeaves;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public synchronized void taskRemoved(Task task) {
+        Node node = nodes.get(task.getId());
+        if (node == null) {
+            return;
+        }
+
+        Pending work = pending.get();
+        if (node.parent != null) {
+            detach(node, work);
+        }
+        leaves -= node.leaves;
+        doneLeaves -= node.doneLeaves;
+
+        // untrack the subtree, and queue the removal of the subtasks
+        Deque<Node> subtree = new ArrayDeque<>();
+        subtree.add(node);
+        while (!subtree.isEmpty()) {
+            final Node removed = subtree.poll();
+            nodes.remove(removed.id);
+            trackedDone -= removed.done ? 1 : 0;
+            if (removed != node) {
+                work.add(() -> set.removeQuietly(removed.id));
+            }
+            subtree.addAll(removed.children);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskStateChanged(long, boolean)
+     */
+    @Override
+    public synchronized void taskStateChanged(long taskId, boolean done) {
+        Node node = nodes.get(taskId);
+        if (node == null || node.done == done) {
+            return;
+        }
+
+        Pending work = pending.get();
+        node.done = done;
+        trackedDone += done ? 1 : -1;
+        if (node.children.isEmpty()) {
+            propagate(node, 0, done ? 1 : -1, work);
+        } else if (derive && !work.syncing && done != node.isComplete()) {
+            // the state was changed directly, apply it to the leaves
+            cascade(node, done, work);
+        }
+    }
+
+    /**
+     * Applies the modifications queued by the current thread.
+     * <p/>
+     * The modifications queued while flushing are applied by the same call.
+     */
+    void flush() {
+        Pending work = pending.get();
+        if (work.flushing) {
+            return;
+        }
+
+        work.flushing = true;
+        try {
+            for (Runnable modification = work.poll(); modification != null; modification = work.poll()) {
+                modification.run();
+            }
+        } finally {
+            work.flushing = false;
+        }
+    }
+
+    /**
+     * Returns the node of a task, tracking it if needed.
+     *
+     * @param taskId the ID of the task
+     * @return the node, or {@code null} if the task is not in the set
+     */
+    private Node track(long taskId) {
+        Node node = nodes.get(taskId);
+        if (node == null) {
+            Task task = set.findTask(taskId);
+            if (task == null) {
+                return null;
+            }
+            node = new Node(taskId, task.isDone());
+            nodes.put(taskId, node);
+            trackedDone += node.done ? 1 : 0;
+            leaves += 1;
+            doneLeaves += node.doneLeaves;
+        }
+        return node;
+    }
+
+    /**
+     * Detaches a node from its parent, making it a root of the forest.
+     *
+     * @param child the node to detach
+     * @param work  the queue of the current thread
+     */
+    private void detach(Node child, Pending work) {
+        Node parent = child.parent;
+        parent.children.remove(child);
+        child.parent = null;
+        leaves += child.leaves;
+        doneLeaves += child.doneLeaves;
+
+        boolean isLeaf = parent.children.isEmpty();
+        propagate(parent, (isLeaf ? 1 : 0) - child.leaves,
+                (isLeaf && parent.done ? 1 : 0) - child.doneLeaves, work);
+    }
+
+    /**
+     * Updates the counts of a node and its ancestors.
+     * <p/>
+     * When the state of an ancestor no longer matches its leaves, its update is queued.
+     *
+     * @param from       the first node to update
+     * @param leafDelta  the change of the number of leaves
+     * @param doneDelta  the change of the number of finished leaves
+     * @param work       the queue of the current thread
+     */
+    private void propagate(Node from, int leafDelta, int doneDelta, Pending work) {
+        if (leafDelta == 0 && doneDelta == 0) {
+            return;
+        }
+
+        for (Node node = from; node != null; node = node.parent) {
+            node.leaves += leafDelta;
+            node.doneLeaves += doneDelta;
+            if (derive && !node.children.isEmpty() && node.done != node.isComplete()) {
+                final Node derived = node;
+                work.add(() -> applyDerivedState(derived));
+            }
+            if (node.parent == null) {
+                leaves += leafDelta;
+                doneLeaves += doneDelta;
+            }
+        }
+    }
+
+    /**
+     * Applies a state to all the leaves of a node.
+     * <p/>
+     * The counts are updated at once, and the updates of the tasks are queued.
+     *
+     * @param node the node
+     * @param done the state to apply
+     * @param work the queue of the current thread
+     */
+    private void cascade(Node node, final boolean done, Pending work) {
+        Deque<Node> subtree = new ArrayDeque<>(node.children);
+        while (!subtree.isEmpty()) {
+            final Node descendant = subtree.poll();
+            if (!descendant.children.isEmpty()) {
+                subtree.addAll(descendant.children);
+            } else if (descendant.done != done) {
+                descendant.done = done;
+                trackedDone += done ? 1 : -1;
+                propagate(descendant, 0, done ? 1 : -1, work);
+                work.add(() -> set.setStateQuietly(descendant.id, done));
+            }
+        }
+    }
+
+    /**
+     * Sets the state of a task with subtasks to the one derived from its leaves, if they still differ.
+     *
+     * @param node the node of the task
+     */
+    private void applyDerivedState(Node node) {
+        boolean complete;
+        synchronized (this) {
+            if (nodes.get(node.id) != node || node.children.isEmpty() || node.done == node.isComplete()) {
+                return;
+            }
+            complete = node.isComplete();
+        }
+
+        Pending work = pending.get();
+        work.syncing = true;
+        try {
+            set.setStateQuietly(node.id, complete);
+        } finally {
+            work.syncing = false;
+        }
+    }
+
+    /**
+     * A tracked task.
+     */
+    private static final class Node {
+
+        /**
+         * The ID of the task.
+         */
+        private final long id;
+        /**
+         * The subtasks.
+         */
+        private final Set<Node> children = new LinkedHashSet<>();
+        /**
+         * The parent task, or {@code null} if the task is a root.
+         */
+        private Node parent;
+        /**
+         * The state of the task.
+         */
+        private boolean done;
+        /**
+         * The number of leaves in the subtree, {@code 1} if the task has no subtasks.
+         */
+        private int leaves = 1;
+        /**
+         * The number of finished leaves in the subtree.
+         */
+        private int doneLeaves;
+
+        /**
+         * Creates a new node, without parent nor subtasks.
+         *
+         * @param id   the ID of the task
+         * @param done the state of the task
+         */
+        private Node(long id, boolean done) {
+            this.id = id;
+            this.done = done;
+            this.doneLeaves = done ? 1 : 0;
+        }
+
+        /**
+         * Tells whether all the leaves of the subtree are finished.
+         *
+         * @return {@code true} if all leaves are finished
+         */
+        private boolean isComplete() {
+            return doneLeaves == leaves;
+        }
+    }
+
+    /**
+     * The modifications queued by a thread.
+     */
+    private static final class Pending extends ArrayDeque<Runnable> {
+
+        /**
+         * Generated serial version UID.
+         */
+        private static final long serialVersionUID = 2934151380640312717L;
+
+        /**
+         * {@code true} while the queued modifications are being applied.
+         */
+        private boolean flushing;
+        /**
+         * {@code true} while a derived state is being applied.
+         */
+        private boolean syncing;
+    }
+}
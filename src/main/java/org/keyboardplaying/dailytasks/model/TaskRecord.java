@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+/**
+ * The types of tasks the codecs can write, and the rebuilding of the tasks they read.
+ * <p/>
+ * As with the Java serialization, the state of a {@link DailyTask} is not restored and a {@link RecurringTask} is only
+ * restored as finished if no occurrence started since it was finished.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ * @see BinaryCodec
+ * @see JsonCodec
+ */
+final class TaskRecord {
+
+    /**
+     * The type of a {@link Task}.
+     */
+    static final int TYPE_TASK = 0;
+    /**
+     * The type of a {@link DailyTask}.
+     */
+    static final int TYPE_DAILY = 1;
+    /**
+     * The type of a {@link RecurringTask}.
+     */
+    static final int TYPE_RECURRING = 2;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private TaskRecord() {
+    }
+
+    /**
+     * Returns the type of the records of a task class.
+     * <p/>
+     * Subclasses of {@link Task} defined outside of this package are not supported, as their additional fields would
+     * be lost.
+     *
+     * @param type the class of the task
+     * @return the type of the records, or {@code -1} if the class is not supported
+     */
+    static int typeOf(Class<?> type) {
+        if (type == Task.class) {
+            return TYPE_TASK;
+        } else if (type == DailyTask.class) {
+            return TYPE_DAILY;
+        } else if (type == RecurringTask.class) {
+            return TYPE_RECURRING;
+        }
+        return -1;
+    }
+
+    /**
+     * Tells whether an object can be written by the codecs.
+     *
+     * @param object the object
+     * @return {@code true} for a {@link TaskSet} or a {@link Task}, {@link DailyTask} or {@link RecurringTask}
+     */
+    static boolean supports(Object object) {
+        return object instanceof TaskSet || object != null && typeOf(object.getClass()) >= 0;
+    }
+
+    /**
+     * Returns the completion time to write for a task, which only matters for finished tasks whose state is saved.
+     *
+     * @param task the task
+     * @return the time at which the task was finished, or {@code 0} if it is not to be written
+     */
+    static long completionTimeOf(Task task) {
+        return typeOf(task.getClass()) == TYPE_DAILY || !task.isDone() ? 0 : task.getCompletionTime();
+    }
+
+    /**
+     * Rebuilds a task.
+     *
+     * @param type           the type of the task
+     * @param id             the ID of the task
+     * @param todo           the label of the task
+     * @param done           the saved state of the task
+     * @param dueTime        the due date of the task in milliseconds since the epoch, or {@code 0}
+     * @param completionTime the time at which the task was finished in milliseconds since the epoch, or {@code 0}
+     * @param recurrence     the rule telling when a {@link RecurringTask} repeats, ignored for other types
+     * @return the task
+     * @throws IllegalArgumentException if the type is unknown, or the recurrence of a recurring task is missing
+     */
+    static Task restore(int type, long id, String todo, boolean done, long dueTime, long completionTime,
+            Recurrence recurrence) {
+        String label = LabelPool.intern(todo);
+        Task task;
+        switch (type) {
+            case TYPE_TASK:
+                if (done && completionTime == 0) {
+                    completionTime = System.currentTimeMillis();
+                }
+                task = new Task(id, label, done).withCompletionTime(done ? completionTime : 0);
+                break;
+            case TYPE_DAILY:
+                task = new DailyTask(id, label, false);
+                break;
+            case TYPE_RECURRING:
+                if (recurrence == null) {
+                    throw new IllegalArgumentException("A recurring task must have a recurrence");
+                }
+                boolean stillDone = done && RecurringTask.isStillDone(recurrence, completionTime);
+                task = new RecurringTask(id, label, stillDone, recurrence, stillDone ? completionTime : 0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown task type: " + type);
+        }
+        task.withDueTime(dueTime).restoreId(id);
+        return task;
+    }
+}
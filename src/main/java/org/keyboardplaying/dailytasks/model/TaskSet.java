@@ -14,10 +14,28 @@ package org.keyboardplaying.dailytasks.model;
 
 import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A set of tasks.
@@ -28,32 +46,498 @@ import java.util.Set;
  * <li>Being ordered, it preserves the order of tasks.</li>
  * <li>Composition was retained rather than inheritance to allow for future reordering of tasks.</li>
  * </ul>
+ * <p/>
+ * Tasks are indexed by their ID, so that looking up, updating or removing a task by its ID is performed in constant
+ * time, independently of the size of the set.
+ * <p/>
+ * The way tasks are kept in memory depends on the {@link Storage} chosen when creating the set.
+ * <p/>
+ * The number of finished and unfinished tasks is kept up to date on each change, so that it can be known without
+ * iterating over the set.
+ * <p/>
+ * A task can be added as a subtask of another one. The state of a task with subtasks is derived from the tasks
+ * without subtasks (the leaves) below it, whose number is maintained up the chain of parents on each change. The
+ * counts of leaves make up the progress of the set.
+ * <p/>
+ * Tasks can bear tags. Each tag is kept as a bitmap, so that a {@link TaskFilter} combining tags and states is
+ * evaluated without iterating over the set.
+ * <p/>
+ * The tasks which have a due date are indexed by due date, so that the tasks due in a period of time are found
+ * without iterating over the set.
+ * <p/>
+ * The repeating tasks are indexed as well, and their occurrences in a period of time are computed on demand, so that
+ * a schedule is never expanded beyond the period being viewed.
+ * <p/>
+ * {@link TaskSetListener}s can be registered to be notified of the changes made to the set.
+ * <p/>
+ * Unless it uses the {@link Storage#CONCURRENT} storage, a set is not thread-safe. Other threads can however be handed
+ * a {@link #snapshot()} of the set, which is immutable.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
 public class TaskSet implements Serializable, Iterable<Task> {
 
+    /**
+     * The ways a {@link TaskSet} can store its tasks.
+     */
+    public enum Storage {
+        /**
+         * The tasks are kept as objects in insertion order, indexed by their ID.
+         * <p/>
+         * The tasks returned by the set are the ones which were added to it.
+         */
+        LINKED {
+            @Override
+            TaskStore createStore(TaskSet owner) {
+                return new LinkedTaskStore(owner);
+            }
+        },
+        /**
+         * The tasks are kept as columns of primitive values and labels, which requires several times less memory for
+         * large sets.
+         * <p/>
+         * The tasks returned by the set are copies created on demand, which must not be modified: state changes must
+         * be performed through the set.
+         */
+        COMPACT {
+            @Override
+            TaskStore createStore(TaskSet owner) {
+                return new CompactTaskStore(owner);
+            }
+        },
+        /**
+         * The tasks are kept as objects in concurrent structures, so that the set can be read and modified by several
+         * threads at once.
+         * <p/>
+         * Lookups and iterations do not lock, and iterators are weakly consistent: they never throw a
+         * {@link java.util.ConcurrentModificationException} and may or may not reflect the modifications made after
+         * their creation. Batch operations are applied atomically with regard to the other modifications made through
+         * the set.
+         */
+        CONCURRENT {
+            @Override
+            TaskStore createStore(TaskSet owner) {
+                return new ConcurrentTaskStore(owner);
+            }
+        },
+        /**
+         * The tasks are kept as objects ordered by priority, from the highest to the lowest, tasks with the same
+         * priority remaining in insertion order.
+         * <p/>
+         * Adding, removing or {@link TaskSet#setPriority(long, int) reprioritizing} a task costs a logarithmic time,
+         * and iterators go through the tasks in priority order without copying them. The tasks returned by the set
+         * are the ones which were added to it.
+         */
+        PRIORITY {
+            @Override
+            TaskStore createStore(TaskSet owner) {
+                return new PriorityTaskStore(owner);
+            }
+        };
+
+        /**
+         * Creates an empty store for this storage mode.
+         *
+         * @param owner the set the store will belong to
+         * @return the new store
+         */
+        abstract TaskStore createStore(TaskSet owner);
+    }
+
     /**
      * Generated serial version UID.
      */
     private static final long serialVersionUID = -1091318559849096033L;
 
+    /**
+     * The serialized fields of this class.
+     * <p/>
+     * The tasks used to be stored in a {@link Set}, which is kept as the serialized form so that the sets saved by
+     * previous versions can still be read. The tasks are now written as a {@link SerializedTasks} set, which streams
+     * them from the store.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("tasks", Set.class),
+            new ObjectStreamField("storage", Storage.class),
+            new ObjectStreamField("parents", long[].class),
+            new ObjectStreamField("tags", Map.class),
+            new ObjectStreamField("priorities", long[].class)
+    };
+
+    /**
+     * The way tasks are stored.
+     */
+    private transient Storage storage;
     /**
      * The tasks of this instance.
      */
-    private Set<Task> tasks = new LinkedHashSet<>();
+    private transient TaskStore tasks;
+    /**
+     * The listeners notified of the changes made to this set.
+     */
+    private transient List<TaskSetListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Records the changes made since the last snapshot, or {@code null} if no snapshot was taken yet.
+     */
+    private transient volatile SnapshotBuilder snapshots;
+    /**
+     * The subtasks of this set, or {@code null} if no subtask was added yet.
+     */
+    private transient volatile TaskHierarchy hierarchy;
+    /**
+     * The tags of this set, or {@code null} if no tag was added or filter evaluated yet.
+     */
+    private transient volatile TagIndex tags;
+    /**
+     * The tasks of this set which have a due date, or {@code null} if no task had a due date yet.
+     */
+    private transient volatile TimeIndex dueDates;
+    /**
+     * The repeating tasks of this set, or {@code null} if no repeating task was added yet.
+     */
+    private transient volatile RecurrenceIndex recurring;
+
+    /**
+     * Creates a new empty set, using the {@link Storage#LINKED} storage.
+     */
+    public TaskSet() {
+        this(Storage.LINKED);
+    }
+
+    /**
+     * Creates a new empty set.
+     *
+     * @param storage the way tasks should be stored
+     */
+    public TaskSet(Storage storage) {
+        this.storage = storage;
+        this.tasks = storage.createStore(this);
+    }
+
+    /**
+     * Creates a set around an existing store.
+     *
+     * @param storage the way tasks are stored
+     * @param tasks   the store
+     */
+    private TaskSet(Storage storage, TaskStore tasks) {
+        this.storage = storage;
+        this.tasks = tasks;
+    }
+
+    /**
+     * Returns the way tasks are stored in this set.
+     *
+     * @return the storage of this set
+     */
+    public Storage getStorage() {
+        return storage;
+    }
 
     /**
      * Adds a task to the collection.
      * <p/>
      * The call to this method will be ignored if the supplied argument is {@code null}.
+     * <p/>
+     * The task is stored as is, so that changing its state through {@link Task#setDone(boolean)} updates this set,
+     * except with the {@link Storage#COMPACT} storage, which copies it into its columns. A task can only belong to one
+     * set at a time, and must be removed from it before being added to another one.
      *
      * @param task the task to add to the set
+     * @throws IllegalArgumentException when the task already belongs to another set
      */
     public void addTask(Task task) {
-        if (task != null) {
-            tasks.add(task);
+        if (task != null && tasks.add(task)) {
+            if (task.getDueTime() != 0) {
+                // the index is notified of the task along with the other listeners
+                getTimeIndex();
+            }
+            if (task.getRecurrence() != null) {
+                // so is the index of repeating tasks
+                getRecurrenceIndex();
+            }
+            for (TaskSetListener listener : listeners) {
+                listener.taskAdded(task);
+            }
+        }
+    }
+
+    /**
+     * Adds a task to the collection, as a subtask of another task of the set.
+     * <p/>
+     * If the task is already in the set, it is moved under the supplied parent along with its own subtasks. Once the
+     * task is added, the state of the parent is derived from its subtasks.
+     * <p/>
+     * The call to this method will be ignored if the supplied task is {@code null}.
+     *
+     * @param parentId the ID of the parent task
+     * @param task     the task to add to the set
+     * @throws TaskNotFoundException    when the supplied parent ID could not be found in the set
+     * @throws IllegalArgumentException when the parent is the task itself or one of its subtasks, or when the task
+     *                                  already belongs to another set
+     */
+    public void addSubtask(long parentId, Task task) throws TaskNotFoundException {
+        if (task == null) {
+            return;
+        }
+
+        tasks.lockAll();
+        try {
+            assertFound(tasks.get(parentId), parentId);
+            addTask(task);
+            getHierarchy().link(task.getId(), parentId);
+        } finally {
+            tasks.unlockAll();
         }
+        flushHierarchy();
+    }
+
+    /**
+     * Returns the ID of the parent of a task.
+     *
+     * @param taskId the ID of the subtask
+     * @return the ID of its parent, or {@code 0} if the task is not a subtask
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public long getParentId(long taskId) throws TaskNotFoundException {
+        assertFound(tasks.get(taskId), taskId);
+        TaskHierarchy h = hierarchy;
+        return h == null ? 0 : h.getParentId(taskId);
+    }
+
+    /**
+     * Returns the direct subtasks of a task.
+     *
+     * @param taskId the ID of the parent task
+     * @return the subtasks, in the order they were added
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public List<Task> getSubtasks(long taskId) throws TaskNotFoundException {
+        assertFound(tasks.get(taskId), taskId);
+        List<Task> subtasks = new ArrayList<>();
+        TaskHierarchy h = hierarchy;
+        if (h != null) {
+            for (long childId : h.getChildIds(taskId)) {
+                Task child = tasks.get(childId);
+                if (child != null) {
+                    subtasks.add(child);
+                }
+            }
+        }
+        return subtasks;
+    }
+
+    /**
+     * Updates the due date of a task in the set.
+     *
+     * @param taskId  the id of the task to update
+     * @param dueDate the due date to apply, or {@code null} to remove it
+     * @return the updated {@link Task}
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public Task setDueDate(long taskId, Instant dueDate) throws TaskNotFoundException {
+        return assertFound(tasks.setDueDate(taskId, dueDate), taskId);
+    }
+
+    /**
+     * Returns the unfinished tasks due in a period of time.
+     * <p/>
+     * The tasks are looked up in the index of due dates, so that the cost of the query depends on the number of tasks
+     * due in the period rather than on the size of the set.
+     *
+     * @param from the start of the period, inclusive
+     * @param to   the end of the period, exclusive
+     * @return the unfinished tasks due in the period, ordered by due date
+     */
+    public List<Task> getTasksDue(Instant from, Instant to) {
+        return getTasksDue(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * Returns the unfinished tasks whose due date is past.
+     *
+     * @param now the current time
+     * @return the overdue tasks, ordered by due date
+     */
+    public List<Task> getOverdueTasks(Instant now) {
+        return getTasksDue(Long.MIN_VALUE, now.toEpochMilli());
+    }
+
+    /**
+     * Returns the unfinished tasks due in a period of time.
+     *
+     * @param from the start of the period, inclusive, in milliseconds since the epoch
+     * @param to   the end of the period, exclusive, in milliseconds since the epoch
+     * @return the unfinished tasks due in the period, ordered by due date
+     */
+    private List<Task> getTasksDue(long from, long to) {
+        List<Task> due = new ArrayList<>();
+        // snapshots are only indexed when queried
+        TimeIndex index = tasks instanceof SnapshotTaskStore ? getTimeIndex() : dueDates;
+        if (index != null) {
+            for (long taskId : index.getTaskIds(from, to)) {
+                // the index only holds unfinished tasks, but a task may be finished while it is read
+                Task task = tasks.get(taskId);
+                if (task != null && !task.isDone()) {
+                    due.add(task);
+                }
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Returns the occurrences of the repeating tasks in a period of time, in the system time zone.
+     * <p/>
+     * The occurrences are computed from the {@link Recurrence} of each repeating task as the iteration goes, and are
+     * not kept by the set. Viewing a period thus costs memory for the occurrences which are read only, whatever the
+     * number of repeating tasks or the length of their schedule.
+     *
+     * @param from the start of the period, included
+     * @param to   the end of the period, excluded
+     * @return the occurrences, in chronological order
+     */
+    public Iterator<Occurrence> getOccurrences(LocalDateTime from, LocalDateTime to) {
+        // snapshots are only indexed when queried
+        RecurrenceIndex index = tasks instanceof SnapshotTaskStore ? getRecurrenceIndex() : recurring;
+        if (index == null) {
+            return Collections.emptyIterator();
+        }
+        return index.occurrences(from, to, ZoneId.systemDefault());
+    }
+
+    /**
+     * Returns the priority of a task.
+     *
+     * @param taskId the ID of the task
+     * @return the priority of the task, {@code 0} unless the set uses the {@link Storage#PRIORITY} storage
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public int getPriority(long taskId) throws TaskNotFoundException {
+        assertFound(tasks.get(taskId), taskId);
+        return tasks.getPriority(taskId);
+    }
+
+    /**
+     * Changes the priority of a task, moving it among the tasks of the set.
+     * <p/>
+     * Tasks are iterated over from the highest priority to the lowest. Tasks are added with the priority {@code 0}.
+     *
+     * @param taskId   the ID of the task
+     * @param priority the new priority
+     * @return the updated {@link Task}
+     * @throws TaskNotFoundException         when the supplied task ID could not be found in the set
+     * @throws UnsupportedOperationException unless the set uses the {@link Storage#PRIORITY} storage
+     */
+    public Task setPriority(long taskId, int priority) throws TaskNotFoundException {
+        return assertFound(tasks.setPriority(taskId, priority), taskId);
+    }
+
+    /**
+     * Tags a task of the set.
+     *
+     * @param taskId the ID of the task
+     * @param tag    the tag
+     * @return {@code true} if the task was tagged, {@code false} if it already bore the tag
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public boolean addTag(long taskId, String tag) throws TaskNotFoundException {
+        assertModifiable();
+        Objects.requireNonNull(tag, "tag");
+        tasks.lockAll();
+        try {
+            assertFound(tasks.get(taskId), taskId);
+            return getTagIndex().addTag(taskId, tag);
+        } finally {
+            tasks.unlockAll();
+        }
+    }
+
+    /**
+     * Untags a task of the set.
+     *
+     * @param taskId the ID of the task
+     * @param tag    the tag
+     * @return {@code true} if the task was untagged, {@code false} if it did not bear the tag
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public boolean removeTag(long taskId, String tag) throws TaskNotFoundException {
+        assertModifiable();
+        tasks.lockAll();
+        try {
+            assertFound(tasks.get(taskId), taskId);
+            TagIndex index = tags;
+            return index != null && index.removeTag(taskId, tag);
+        } finally {
+            tasks.unlockAll();
+        }
+    }
+
+    /**
+     * Returns the tags of a task of the set.
+     *
+     * @param taskId the ID of the task
+     * @return the tags of the task, in alphabetical order
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public Set<String> getTags(long taskId) throws TaskNotFoundException {
+        assertFound(tasks.get(taskId), taskId);
+        TagIndex index = tags;
+        return index == null ? new TreeSet<String>() : index.getTags(taskId);
+    }
+
+    /**
+     * Returns the tags borne by the tasks of the set.
+     *
+     * @return the tags, in alphabetical order
+     */
+    public Set<String> getTagNames() {
+        TagIndex index = tags;
+        return index == null ? new TreeSet<String>() : index.getTagNames();
+    }
+
+    /**
+     * Returns the IDs of the tasks selected by a filter.
+     * <p/>
+     * The filter is evaluated over bitmaps, in time proportional to the size of the set divided by the number of
+     * tasks a block of bits covers, plus the number of selected tasks.
+     *
+     * @param filter the filter
+     * @return the IDs of the selected tasks, in no particular order
+     */
+    public long[] filter(TaskFilter filter) {
+        return getTagIndex().filter(filter);
+    }
+
+    /**
+     * Returns the number of tasks selected by a filter, without listing them.
+     *
+     * @param filter the filter
+     * @return the number of selected tasks
+     */
+    public int count(TaskFilter filter) {
+        return getTagIndex().count(filter);
+    }
+
+    /**
+     * Tells whether the set contains a task with the supplied ID.
+     *
+     * @param taskId the id of the task to look for
+     * @return {@code true} if the set contains a task with this ID, {@code false} otherwise
+     */
+    public boolean containsTask(long taskId) {
+        return tasks.contains(taskId);
+    }
+
+    /**
+     * Returns the task with the supplied ID.
+     *
+     * @param taskId the id of the task to look for
+     * @return the {@link Task} with the supplied ID
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public Task getTask(long taskId) throws TaskNotFoundException {
+        return assertFound(tasks.get(taskId), taskId);
     }
 
     /**
@@ -75,47 +559,486 @@ public class TaskSet implements Serializable, Iterable<Task> {
      * @return the updated {@link Task}
      * @throws TaskNotFoundException when the supplied task ID could not be found in the set
      */
-    public Task updateTaskState(int taskId, boolean done) throws TaskNotFoundException {
-        Task result = null;
+    public Task updateTaskState(long taskId, boolean done) throws TaskNotFoundException {
+        Task task = assertFound(tasks.setDone(taskId, done), taskId);
+        flushHierarchy();
+        return task;
+    }
 
-        /* Search for the task. */
-        for (Task task : tasks) {
-            if (task.getId() == taskId) {
-                /* Update the task. */
-                task.setDone(done);
-                result = task;
+    /**
+     * Updates the {@link Task#isDone()} value of a collection in the set.
+     * <p/>
+     * The new value for the state will be the one of the passed {@link Task}.
+     *
+     * @param task the task to update
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public void updateTaskState(Task task) throws TaskNotFoundException {
+        updateTaskState(task.getId(), task.isDone());
+    }
 
-                break;
+    /**
+     * Updates the {@link Task#isDone()} value of several tasks in the set.
+     * <p/>
+     * All IDs are checked before any task is updated: if one of them cannot be found, the set is left unchanged.
+     *
+     * @param taskIds the IDs of the tasks to update
+     * @param done    the state to apply
+     * @return the updated tasks, in the order of the supplied IDs
+     * @throws TaskNotFoundException when one of the supplied task IDs could not be found in the set
+     */
+    public List<Task> updateTaskStates(Collection<Long> taskIds, boolean done) throws TaskNotFoundException {
+        tasks.lockAll();
+        try {
+            for (long taskId : taskIds) {
+                if (!tasks.contains(taskId)) {
+                    throw new TaskNotFoundException(String.format("Task with id %d could not be found.", taskId));
+                }
+            }
+
+            List<Task> updated = new ArrayList<>(taskIds.size());
+            for (long taskId : taskIds) {
+                updated.add(tasks.setDone(taskId, done));
             }
+            return updated;
+        } finally {
+            tasks.unlockAll();
+            flushHierarchy();
         }
+    }
 
-        /* The task does not exist in the collection. */
-        if (result == null) {
-            throw new TaskNotFoundException(String.format("Task with id %d could not be found.", taskId));
+    /**
+     * Updates the {@link Task#isDone()} value of all the tasks in the set.
+     *
+     * @param done the state to apply
+     */
+    public void updateAllTaskStates(boolean done) {
+        tasks.lockAll();
+        try {
+            // collect the IDs first, as the partition changes with each update
+            List<Long> updated = new ArrayList<>(done ? countRemaining() : countDone());
+            for (Iterator<Task> it = tasks.iterator(!done); it.hasNext(); ) {
+                updated.add(it.next().getId());
+            }
+            for (long taskId : updated) {
+                tasks.setDone(taskId, done);
+            }
+        } finally {
+            tasks.unlockAll();
+            flushHierarchy();
         }
+    }
 
-        return result;
+    /**
+     * Removes all the finished tasks from the set.
+     * <p/>
+     * As the state of a task with subtasks is derived from them, finished subtrees are removed as a whole.
+     *
+     * @return the removed tasks
+     */
+    public List<Task> removeDoneTasks() {
+        tasks.lockAll();
+        try {
+            List<Task> done = new ArrayList<>(countDone());
+            for (Iterator<Task> it = tasks.iterator(true); it.hasNext(); ) {
+                done.add(it.next());
+            }
+            for (Task task : done) {
+                fireTaskRemoved(tasks.remove(task.getId()));
+            }
+            return done;
+        } finally {
+            tasks.unlockAll();
+            flushHierarchy();
+        }
     }
 
     /**
-     * Updates the {@link Task#isDone()} value of a collection in the set.
+     * Removes the one-off tasks which were finished before some time, so that they can be archived.
      * <p/>
-     * The new value for the state will be the one of the passed {@link Task}.
+     * The tasks which repeat are never removed. A task with subtasks is removed along with them, and only if all of
+     * them can be removed; a subtask is not removed without its parent.
      *
-     * @param task the task to update
-     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     * @param time the time before which the tasks must have been finished
+     * @return the removed tasks, each parent preceding its subtasks
      */
-    public void updateTaskState(Task task) throws TaskNotFoundException {
-        updateTaskState(task.getId(), task.isDone());
+    public List<Task> removeTasksDoneBefore(Instant time) {
+        long before = time.toEpochMilli();
+        tasks.lockAll();
+        try {
+            TaskHierarchy h = hierarchy;
+            List<Task> removed = new ArrayList<>();
+            for (Iterator<Task> it = tasks.iterator(true); it.hasNext(); ) {
+                Task task = it.next();
+                if (h == null || h.getParentId(task.getId()) == 0) {
+                    collectDoneBefore(task, before, h, removed);
+                }
+            }
+            for (Task task : removed) {
+                fireTaskRemoved(tasks.remove(task.getId()));
+            }
+            return removed;
+        } finally {
+            tasks.unlockAll();
+            flushHierarchy();
+        }
+    }
+
+    /**
+     * Adds a task and its subtasks to a list if they are all one-off tasks finished before some time.
+     *
+     * @param task   the task
+     * @param before the time before which the tasks must have been finished, in milliseconds since the epoch
+     * @param h      the subtasks of this set, or {@code null} if none
+     * @param result the list to add the tasks to, which is left unchanged if one of them must be kept
+     * @return {@code true} if the tasks were added
+     */
+    private boolean collectDoneBefore(Task task, long before, TaskHierarchy h, List<Task> result) {
+        long completionTime = task.getCompletionTime();
+        if (!task.isDone() || task.getRecurrence() != null || completionTime == 0 || completionTime >= before) {
+            return false;
+        }
+        int mark = result.size();
+        result.add(task);
+        if (h != null) {
+            for (long childId : h.getChildIds(task.getId())) {
+                Task child = tasks.get(childId);
+                if (child != null && !collectDoneBefore(child, before, h, result)) {
+                    result.subList(mark, result.size()).clear();
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
-     * Removes a {@link Task} from the set.
+     * Removes a {@link Task} from the set, along with its subtasks.
      *
      * @param task the task to remove
      */
     public void removeTask(Task task) {
-        tasks.remove(task);
+        if (task != null) {
+            removeQuietly(task.getId());
+            flushHierarchy();
+        }
+    }
+
+    /**
+     * Removes the {@link Task} with the supplied ID from the set, along with its subtasks.
+     *
+     * @param taskId the id of the task to remove
+     * @return the removed {@link Task}
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public Task removeTask(long taskId) throws TaskNotFoundException {
+        Task task = assertFound(removeQuietly(taskId), taskId);
+        flushHierarchy();
+        return task;
+    }
+
+    /**
+     * Returns the task with the supplied ID, if the set contains one.
+     *
+     * @param taskId the ID of the task to look for
+     * @return the task, or {@code null} if none has this ID
+     */
+    Task findTask(long taskId) {
+        return tasks.get(taskId);
+    }
+
+    /**
+     * Restores the state of a task from a recorded state change.
+     * <p/>
+     * The state is restored the way the task would restore it from a saved session: the state of a {@link DailyTask}
+     * is not restored, and a {@link RecurringTask} remains finished only if no occurrence started since.
+     *
+     * @param taskId    the ID of the task to update
+     * @param done      the recorded state
+     * @param timestamp the time at which the state was recorded, in milliseconds since the epoch
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    void restoreTaskState(long taskId, boolean done, long timestamp) throws TaskNotFoundException {
+        Task task = assertFound(tasks.get(taskId), taskId);
+        boolean restored = task.restoredState(done, timestamp);
+        if (task.isDone() != restored) {
+            updateTaskState(taskId, restored);
+            if (restored) {
+                // the task was finished when the state was recorded, not when it is replayed
+                tasks.setCompletionTime(taskId, timestamp);
+            }
+        }
+    }
+
+    /**
+     * Updates the state of a task, if the set still contains it.
+     * <p/>
+     * This method is used to apply the states derived by the {@link TaskHierarchy}.
+     *
+     * @param taskId the ID of the task to update
+     * @param done   the state to apply
+     */
+    void setStateQuietly(long taskId, boolean done) {
+        tasks.setDone(taskId, done);
+    }
+
+    /**
+     * Removes a task, if the set still contains it, and notifies the listeners.
+     *
+     * @param taskId the ID of the task to remove
+     * @return the removed task, or {@code null} if none has this ID
+     */
+    Task removeQuietly(long taskId) {
+        return fireTaskRemoved(tasks.remove(taskId));
+    }
+
+    /**
+     * Called by the store or the tasks themselves when the state of a task of this set changes.
+     *
+     * @param taskId the ID of the updated task
+     * @param done   the new state of the task
+     */
+    void taskStateChanged(long taskId, boolean done) {
+        tasks.stateChanged(taskId, done);
+        for (TaskSetListener listener : listeners) {
+            listener.taskStateChanged(taskId, done);
+        }
+        // the store may be notifying under one of its locks, in which case the set will flush afterwards
+        if (hierarchy != null && !tasks.isLockedByCurrentThread()) {
+            flushHierarchy();
+        }
+    }
+
+    /**
+     * Returns the subtasks of this set, creating the structure if needed.
+     * <p/>
+     * This method must be called under {@link TaskStore#lockAll()}.
+     *
+     * @return the subtasks of this set
+     */
+    private TaskHierarchy getHierarchy() {
+        TaskHierarchy h = hierarchy;
+        if (h == null) {
+            h = new TaskHierarchy(this, !(tasks instanceof SnapshotTaskStore));
+            listeners.add(h);
+            hierarchy = h;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the tags of this set, indexing the tasks first if needed.
+     *
+     * @return the tags of this set
+     */
+    private TagIndex getTagIndex() {
+        TagIndex index = tags;
+        return index != null ? index : lazyIndex(() -> tags, TagIndex::new, created -> tags = created);
+    }
+
+    /**
+     * Returns the index of due dates, indexing the tasks first if needed.
+     *
+     * @return the index of due dates
+     */
+    private TimeIndex getTimeIndex() {
+        TimeIndex index = dueDates;
+        return index != null ? index
+                : lazyIndex(() -> dueDates, () -> new TimeIndex(this), created -> dueDates = created);
+    }
+
+    /**
+     * Returns the index of repeating tasks, indexing the tasks first if needed.
+     *
+     * @return the index of repeating tasks
+     */
+    private RecurrenceIndex getRecurrenceIndex() {
+        RecurrenceIndex index = recurring;
+        return index != null ? index
+                : lazyIndex(() -> recurring, () -> new RecurrenceIndex(this), created -> recurring = created);
+    }
+
+    /**
+     * Creates an index of the tasks of this set, unless another thread did meanwhile.
+     * <p/>
+     * The index is created under {@link TaskStore#lockAll()}, notified of the addition of each task of the set and
+     * registered as a listener, so that it misses no modification. The tasks of a snapshot never change, so that the
+     * index of a snapshot is not registered.
+     *
+     * @param current the function returning the index of this set, or {@code null} if it was not created yet
+     * @param factory the function creating an empty index
+     * @param publish the function storing the created index in this set
+     * @param <L>     the type of the index
+     * @return the index of this set
+     */
+    private <L extends TaskSetListener> L lazyIndex(Supplier<L> current, Supplier<L> factory, Consumer<L> publish) {
+        tasks.lockAll();
+        try {
+            L index = current.get();
+            if (index == null) {
+                index = factory.get();
+                if (tasks instanceof SnapshotTaskStore) {
+                    for (Task task : tasks) {
+                        index.taskAdded(task);
+                    }
+                } else {
+                    addListener(index, true);
+                }
+                publish.accept(index);
+            }
+            return index;
+        } finally {
+            tasks.unlockAll();
+        }
+    }
+
+    /**
+     * Ensures this set is not a snapshot.
+     *
+     * @throws UnsupportedOperationException if this set is a snapshot
+     */
+    private void assertModifiable() {
+        if (tasks instanceof SnapshotTaskStore) {
+            throw new UnsupportedOperationException("A snapshot cannot be modified.");
+        }
+    }
+
+    /**
+     * Applies the modifications of the set implied by its subtasks, such as derived states.
+     */
+    private void flushHierarchy() {
+        TaskHierarchy h = hierarchy;
+        if (h != null) {
+            h.flush();
+        }
+    }
+
+    /**
+     * Called by the store or the tasks themselves when the due date of a task of this set changes.
+     *
+     * @param taskId the ID of the updated task
+     */
+    void taskDueDateChanged(long taskId) {
+        if (dueDates == null) {
+            // the index is notified of the change along with the other listeners
+            getTimeIndex();
+        }
+        for (TaskSetListener listener : listeners) {
+            listener.taskDueDateChanged(taskId);
+        }
+    }
+
+    /**
+     * Returns an immutable copy of this set, as it is at the time of the call.
+     * <p/>
+     * The snapshot can be read by other threads while this set keeps being modified, for instance to save or display
+     * the tasks. Its tasks are copies, which do not belong to any set, and any attempt to modify the snapshot throws
+     * an {@link UnsupportedOperationException}.
+     * <p/>
+     * The first snapshot copies the whole set. The following ones share the unchanged part of the previous one, so
+     * that their cost is proportional to the number of tasks added, updated or removed in the meantime, plus the
+     * number of subtasks, whose links are copied, and the number of blocks of the bitmaps of tags, which are shared.
+     * The priorities of a set ordered by priority are copied as well.
+     *
+     * @return a snapshot of this set
+     */
+    public TaskSet snapshot() {
+        if (tasks instanceof SnapshotTaskStore) {
+            return this;
+        }
+
+        tasks.lockAll();
+        try {
+            SnapshotBuilder builder = snapshots;
+            if (builder == null) {
+                builder = new SnapshotBuilder();
+                addListener(builder, true);
+                snapshots = builder;
+            }
+            SnapshotTaskStore store = builder.build(tasks);
+            if (tasks instanceof PriorityTaskStore) {
+                store = store.withPriorities(((PriorityTaskStore) tasks).getPriorities());
+            }
+            TaskSet snapshot = new TaskSet(storage, store);
+            TaskHierarchy h = hierarchy;
+            if (h != null) {
+                snapshot.link(h.getLinks());
+            }
+            TagIndex index = tags;
+            if (index != null) {
+                snapshot.tags = index.copy();
+            }
+            return snapshot;
+        } finally {
+            tasks.unlockAll();
+        }
+    }
+
+    /**
+     * Registers a listener to be notified of the changes made to this set.
+     *
+     * @param listener the listener
+     */
+    public void addListener(TaskSetListener listener) {
+        addListener(listener, false);
+    }
+
+    /**
+     * Registers a listener to be notified of the changes made to this set.
+     *
+     * @param listener the listener
+     * @param replay   {@code true} to notify the listener of the addition of each task the set already contains,
+     *                 atomically with regard to the other modifications made through the set
+     */
+    void addListener(TaskSetListener listener, boolean replay) {
+        tasks.lockAll();
+        try {
+            if (replay) {
+                for (Task task : tasks) {
+                    listener.taskAdded(task);
+                }
+            }
+            listeners.add(listener);
+        } finally {
+            tasks.unlockAll();
+        }
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(TaskSetListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies the listeners that a task was removed.
+     *
+     * @param task the removed task, or {@code null} if none was removed
+     * @return the removed task
+     */
+    private Task fireTaskRemoved(Task task) {
+        if (task != null) {
+            for (TaskSetListener listener : listeners) {
+                listener.taskRemoved(task);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Makes tasks of this set subtasks of other ones.
+     *
+     * @param links the ID of each subtask followed by the ID of its parent; links to tasks absent from the set are
+     *              ignored
+     */
+    private void link(long[] links) {
+        TaskHierarchy h = getHierarchy();
+        for (int i = 0; i < links.length; i += 2) {
+            h.link(links[i], links[i + 1]);
+        }
     }
 
     /**
@@ -133,7 +1056,85 @@ public class TaskSet implements Serializable, Iterable<Task> {
      * @return {@code true} if the set is empty, {@code false} otherwise
      */
     public boolean isEmpty() {
-        return tasks.isEmpty();
+        return tasks.size() == 0;
+    }
+
+    /**
+     * Returns the number of finished tasks in this set.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time.
+     *
+     * @return the number of tasks whose {@link Task#isDone()} method returns {@code true}
+     */
+    public int countDone() {
+        return tasks.countDone();
+    }
+
+    /**
+     * Returns the number of unfinished tasks in this set.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time.
+     *
+     * @return the number of tasks whose {@link Task#isDone()} method returns {@code false}
+     */
+    public int countRemaining() {
+        return size() - countDone();
+    }
+
+    /**
+     * Returns the number of tasks without subtasks in this set.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time.
+     *
+     * @return the number of leaves of the set
+     */
+    public int countLeaves() {
+        TaskHierarchy h = hierarchy;
+        return h == null ? size() : h.countLeaves();
+    }
+
+    /**
+     * Returns the number of unfinished tasks without subtasks in this set.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time. It is {@code 0} when all tasks are
+     * finished, be they leaves or derived from them.
+     *
+     * @return the number of unfinished leaves of the set
+     */
+    public int countRemainingLeaves() {
+        TaskHierarchy h = hierarchy;
+        return h == null ? countRemaining() : h.countLeaves() - h.countDoneLeaves();
+    }
+
+    /**
+     * Returns the number of tasks without subtasks below a task.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time.
+     *
+     * @param taskId the ID of the task
+     * @return the number of leaves below the task, or {@code 1} if it has no subtasks
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public int countLeaves(long taskId) throws TaskNotFoundException {
+        Task task = assertFound(tasks.get(taskId), taskId);
+        TaskHierarchy h = hierarchy;
+        return h == null ? 1 : h.countLeaves(task);
+    }
+
+    /**
+     * Returns the number of unfinished tasks without subtasks below a task.
+     * <p/>
+     * This count is maintained on each change, and is returned in constant time.
+     *
+     * @param taskId the ID of the task
+     * @return the number of unfinished leaves below the task, or whether the task itself is unfinished if it has no
+     * subtasks
+     * @throws TaskNotFoundException when the supplied task ID could not be found in the set
+     */
+    public int countRemainingLeaves(long taskId) throws TaskNotFoundException {
+        Task task = assertFound(tasks.get(taskId), taskId);
+        TaskHierarchy h = hierarchy;
+        return h == null ? (task.isDone() ? 0 : 1) : h.countLeaves(task) - h.countDoneLeaves(task);
     }
 
     /*
@@ -145,4 +1146,267 @@ public class TaskSet implements Serializable, Iterable<Task> {
     public Iterator<Task> iterator() {
         return tasks.iterator();
     }
+
+    /**
+     * Returns an iterator over the unfinished tasks of this set, in insertion order.
+     * <p/>
+     * The cost of the iteration depends on the storage: it is proportional to the number of unfinished tasks for the
+     * {@link Storage#CONCURRENT} and {@link Storage#PRIORITY} storages, which keep the tasks partitioned by state. The
+     * {@link Storage#LINKED} and {@link Storage#COMPACT} storages scan a bit per task on top of that, a word for each
+     * 64 tasks, and a {@link #snapshot() snapshot} filters its tasks until all the unfinished ones were found.
+     *
+     * @return an iterator over the tasks whose {@link Task#isDone()} method returns {@code false}
+     */
+    public Iterator<Task> remainingIterator() {
+        return tasks.iterator(false);
+    }
+
+    /**
+     * Returns an iterator over the finished tasks of this set, in insertion order.
+     * <p/>
+     * The cost of the iteration depends on the storage: it is proportional to the number of finished tasks for the
+     * {@link Storage#CONCURRENT} and {@link Storage#PRIORITY} storages, which keep the tasks partitioned by state. The
+     * {@link Storage#LINKED} and {@link Storage#COMPACT} storages scan a bit per task on top of that, a word for each
+     * 64 tasks, and a {@link #snapshot() snapshot} filters its tasks until all the finished ones were found.
+     *
+     * @return an iterator over the tasks whose {@link Task#isDone()} method returns {@code true}
+     */
+    public Iterator<Task> doneIterator() {
+        return tasks.iterator(true);
+    }
+
+    /**
+     * Ensures a task was found in the store.
+     *
+     * @param task   the task returned by the store
+     * @param taskId the ID of the task which was looked for
+     * @return the task
+     * @throws TaskNotFoundException if the task is {@code null}
+     */
+    private static Task assertFound(Task task, long taskId) throws TaskNotFoundException {
+        if (task == null) {
+            throw new TaskNotFoundException(String.format("Task with id %d could not be found.", taskId));
+        }
+        return task;
+    }
+
+    /**
+     * Converts a list of longs to an array.
+     *
+     * @param list the list
+     * @return the array
+     */
+    private static long[] toArray(List<Long> list) {
+        long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Writes this set to a stream, using the serialized form of previous versions.
+     * <p/>
+     * The tasks are streamed from the store rather than copied to a set first, so that a {@link Storage#COMPACT}
+     * store does not materialize all of its tasks at once.
+     *
+     * @param out the serializer
+     * @throws IOException when an exception occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("tasks", new SerializedTasks(tasks));
+        fields.put("storage", storage);
+        fields.put("parents", exportLinks());
+        fields.put("tags", exportTags());
+        fields.put("priorities", exportPriorities());
+        out.writeFields();
+    }
+
+    /**
+     * Returns the links between the tasks and their subtasks, for serialization.
+     *
+     * @return the ID of each subtask followed by the ID of its parent, or {@code null} if there are no subtasks
+     */
+    long[] exportLinks() {
+        TaskHierarchy h = hierarchy;
+        return h == null ? null : h.getLinks();
+    }
+
+    /**
+     * Returns the tagged tasks, for serialization.
+     *
+     * @return the IDs of the tasks bearing each tag, or {@code null} if no task was ever tagged
+     */
+    Map<String, long[]> exportTags() {
+        TagIndex index = tags;
+        return index == null ? null : index.export();
+    }
+
+    /**
+     * Returns the priorities of the tasks, for serialization.
+     *
+     * @return the ID of each task whose priority is not {@code 0} followed by its priority, or {@code null} if none
+     */
+    long[] exportPriorities() {
+        List<Long> priorities = new ArrayList<>();
+        for (Task task : tasks) {
+            int priority = tasks.getPriority(task.getId());
+            if (priority != 0) {
+                priorities.add(task.getId());
+                priorities.add((long) priority);
+            }
+        }
+        return priorities.isEmpty() ? null : toArray(priorities);
+    }
+
+    /**
+     * Invoked when deserializing an instance.
+     *
+     * @param in the deserializer
+     * @throws ClassNotFoundException when the class is not found
+     * @throws IOException            when an exception occurs
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Set<Task> serialized = (Set<Task>) fields.get("tasks", null);
+        // sets saved by previous versions did not specify their storage
+        storage = (Storage) fields.get("storage", Storage.LINKED);
+        long[] parents = (long[]) fields.get("parents", null);
+        Map<String, long[]> tagged = (Map<String, long[]>) fields.get("tags", null);
+        long[] priorities = (long[]) fields.get("priorities", null);
+
+        // rebuild the store
+        tasks = storage.createStore(this);
+        listeners = new CopyOnWriteArrayList<>();
+        try {
+            restore(serialized == null ? Collections.<Task>emptyList() : serialized, parents, tagged, priorities);
+        } catch (IllegalArgumentException e) {
+            InvalidObjectException ioe = new InvalidObjectException("Cyclic subtasks");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Fills this empty set with deserialized tasks.
+     *
+     * @param serialized the tasks
+     * @param parents    the ID of each subtask followed by the ID of its parent, or {@code null}
+     * @param tagged     the IDs of the tasks bearing each tag, or {@code null}
+     * @param priorities the ID of each task followed by its priority, or {@code null}
+     * @throws IllegalArgumentException if the links between the tasks and their subtasks form a cycle
+     */
+    void restore(Iterable<Task> serialized, long[] parents, Map<String, long[]> tagged, long[] priorities) {
+        for (Task task : serialized) {
+            addTask(task);
+        }
+        if (priorities != null && storage == Storage.PRIORITY) {
+            for (int i = 0; i < priorities.length; i += 2) {
+                tasks.setPriority(priorities[i], (int) priorities[i + 1]);
+            }
+        }
+        if (parents != null) {
+            link(parents);
+            // the states of daily tasks may have been reset
+            flushHierarchy();
+        }
+        if (tagged != null) {
+            TagIndex index = getTagIndex();
+            for (Map.Entry<String, long[]> tag : tagged.entrySet()) {
+                for (long taskId : tag.getValue()) {
+                    index.addTag(taskId, tag.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * The tasks of a set, as they are serialized.
+     * <p/>
+     * When written, the tasks are streamed from the store, unshared so that the stream does not keep a reference to
+     * each of them, and followed by {@code null}. When read, they are collected in insertion order.
+     */
+    private static final class SerializedTasks extends AbstractSet<Task> implements Serializable {
+
+        /**
+         * Generated serial version UID.
+         */
+        private static final long serialVersionUID = 4632816264514358411L;
+
+        /**
+         * The tasks, either the store being written or the tasks which were read.
+         */
+        private transient Iterable<Task> tasks;
+        /**
+         * The number of tasks which were read.
+         */
+        private transient int size;
+
+        /**
+         * Creates a new instance, for writing the tasks of a store.
+         *
+         * @param store the store
+         */
+        private SerializedTasks(TaskStore store) {
+            this.tasks = store;
+            this.size = store.size();
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.AbstractCollection#iterator()
+         */
+        @Override
+        public Iterator<Task> iterator() {
+            return tasks.iterator();
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.AbstractCollection#size()
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the tasks to a stream.
+         *
+         * @param out the serializer
+         * @throws IOException when an exception occurs
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            for (Task task : tasks) {
+                out.writeUnshared(task);
+            }
+            out.writeObject(null);
+        }
+
+        /**
+         * Reads the tasks from a stream.
+         *
+         * @param in the deserializer
+         * @throws ClassNotFoundException when the class is not found
+         * @throws IOException            when an exception occurs
+         */
+        private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
+            in.defaultReadObject();
+            List<Task> read = new ArrayList<>();
+            Object task;
+            while ((task = in.readUnshared()) != null) {
+                if (!(task instanceof Task)) {
+                    throw new InvalidObjectException("Unexpected object in a set of tasks: " + task.getClass());
+                }
+                read.add((Task) task);
+            }
+            tasks = read;
+            size = read.size();
+        }
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+/**
+ * A listener notified of the changes made to a {@link TaskSet}.
+ * <p/>
+ * The listeners are called synchronously by the thread modifying the set, after the change was applied. When the set
+ * uses the {@link TaskSet.Storage#CONCURRENT} storage, they may be called by several threads at once.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public interface TaskSetListener {
+
+    /**
+     * Called when a task was added to the set.
+     *
+     * @param task the added task
+     */
+    default void taskAdded(Task task) {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when a task was removed from the set.
+     *
+     * @param task the removed task
+     */
+    default void taskRemoved(Task task) {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when the state of a task of the set changed.
+     *
+     * @param taskId the ID of the updated task
+     * @param done   the new state of the task
+     */
+    default void taskStateChanged(long taskId, boolean done) {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when the due date of a task of the set changed.
+     *
+     * @param taskId the ID of the updated task
+     */
+    default void taskDueDateChanged(long taskId) {
+        // nothing to do by default
+    }
+}
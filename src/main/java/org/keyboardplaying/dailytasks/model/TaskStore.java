@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.time.Instant;
+import java.util.Iterator;
+
+/**
+ * The internal storage of a {@link TaskSet}.
+ * <p/>
+ * Implementations must preserve the insertion order of tasks, unless they order them by priority, and ensure the
+ * unicity of their IDs. They are not expected to handle {@code null} arguments, which are filtered out by the
+ * {@link TaskSet}.
+ * <p/>
+ * Implementations also keep count of the finished tasks. Each time the state of a stored task changes, implementations
+ * must call {@link TaskSet#taskStateChanged(long, boolean)} on the set owning the store, which will in turn call
+ * {@link #stateChanged(long, boolean)}. The same goes for the changes of due dates, with
+ * {@link TaskSet#taskDueDateChanged(long)}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+interface TaskStore extends Iterable<Task> {
+
+    /**
+     * Adds a task to the store, unless a task with the same ID is already stored.
+     *
+     * @param task the task to add
+     * @return {@code true} if the task was added, {@code false} if the store already contained this ID
+     */
+    boolean add(Task task);
+
+    /**
+     * Tells whether a task with the supplied ID is stored.
+     *
+     * @param taskId the ID of the task to look for
+     * @return {@code true} if the store contains a task with this ID
+     */
+    boolean contains(long taskId);
+
+    /**
+     * Returns the task with the supplied ID.
+     *
+     * @param taskId the ID of the task to look for
+     * @return the task, or {@code null} if none has this ID
+     */
+    Task get(long taskId);
+
+    /**
+     * Updates the state of the task with the supplied ID.
+     *
+     * @param taskId the ID of the task to update
+     * @param done   the state to apply
+     * @return the updated task, or {@code null} if none has this ID
+     */
+    Task setDone(long taskId, boolean done);
+
+    /**
+     * Updates the due date of the task with the supplied ID.
+     * <p/>
+     * The default implementation updates the stored task, which notifies the set. Stores which do not keep the
+     * {@link Task} instances must override it.
+     *
+     * @param taskId  the ID of the task to update
+     * @param dueDate the due date to apply, or {@code null} to remove it
+     * @return the updated task, or {@code null} if none has this ID
+     */
+    default Task setDueDate(long taskId, Instant dueDate) {
+        Task task = get(taskId);
+        if (task != null) {
+            task.setDueDate(dueDate);
+        }
+        return task;
+    }
+
+    /**
+     * Sets the time at which a task was last finished, when restoring its state.
+     * <p/>
+     * The default implementation updates the stored task. Stores which do not keep the {@link Task} instances must
+     * override it.
+     *
+     * @param taskId         the ID of the task to update
+     * @param completionTime the time in milliseconds since the epoch
+     */
+    default void setCompletionTime(long taskId, long completionTime) {
+        Task task = get(taskId);
+        if (task != null) {
+            task.withCompletionTime(completionTime);
+        }
+    }
+
+    /**
+     * Removes the task with the supplied ID.
+     *
+     * @param taskId the ID of the task to remove
+     * @return the removed task, or {@code null} if none has this ID
+     */
+    Task remove(long taskId);
+
+    /**
+     * Returns the number of tasks in this store.
+     *
+     * @return the number of tasks in this store
+     */
+    int size();
+
+    /**
+     * Returns the number of finished tasks in this store.
+     *
+     * @return the number of finished tasks in this store
+     */
+    int countDone();
+
+    /**
+     * Updates the count of finished tasks after the state of a stored task changed.
+     *
+     * @param taskId the ID of the updated task
+     * @param done   the new state of the task
+     */
+    void stateChanged(long taskId, boolean done);
+
+    /**
+     * Returns the priority of the task with the supplied ID.
+     * <p/>
+     * The default implementation returns {@code 0}, as stores are not ordered by priority unless specified otherwise.
+     *
+     * @param taskId the ID of the task
+     * @return the priority of the task, or {@code 0} if none has this ID
+     */
+    default int getPriority(long taskId) {
+        return 0;
+    }
+
+    /**
+     * Changes the priority of the task with the supplied ID, moving it accordingly.
+     * <p/>
+     * The default implementation throws an {@link UnsupportedOperationException}, as stores are not ordered by priority
+     * unless specified otherwise.
+     *
+     * @param taskId   the ID of the task
+     * @param priority the new priority
+     * @return the updated task, or {@code null} if none has this ID
+     */
+    default Task setPriority(long taskId, int priority) {
+        throw new UnsupportedOperationException("This set is not ordered by priority.");
+    }
+
+    /**
+     * Returns an iterator over the tasks in a given state, in insertion order.
+     * <p/>
+     * Implementations should keep their tasks partitioned by state where they can, so that the cost of the iteration
+     * depends mostly on the number of tasks in the requested state rather than on the size of the store. The cost of
+     * each implementation is documented by {@link TaskSet#remainingIterator()}.
+     *
+     * @param done the state of the tasks to iterate over
+     * @return an iterator over the finished tasks if {@code done} is {@code true}, over the unfinished ones otherwise
+     */
+    Iterator<Task> iterator(boolean done);
+
+    /**
+     * Prevents any other thread from modifying the store until {@link #unlockAll()} is called, so that several
+     * modifications can be applied at once.
+     * <p/>
+     * The default implementation does nothing, as stores are not thread-safe unless specified otherwise.
+     */
+    default void lockAll() {
+        // nothing to lock
+    }
+
+    /**
+     * Releases the lock acquired by {@link #lockAll()}.
+     */
+    default void unlockAll() {
+        // nothing to unlock
+    }
+
+    /**
+     * Tells whether the current thread holds a lock of the store, in which case it must not wait for a lock which
+     * another thread could hold while waiting for this one.
+     * <p/>
+     * The default implementation returns {@code false}, as stores are not thread-safe unless specified otherwise.
+     *
+     * @return {@code true} if the current thread holds a lock of the store
+     */
+    default boolean isLockedByCurrentThread() {
+        return false;
+    }
+}
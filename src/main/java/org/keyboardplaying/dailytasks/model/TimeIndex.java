@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The unfinished tasks of a {@link TaskSet} which have a due date, ordered by due date.
+ * <p/>
+ * The due dates are kept in a skip list, so that the tasks due in a period of time are found by a range query whose
+ * cost depends on the number of unfinished tasks in the period rather than on the size of the set. Tasks without a due
+ * date are not indexed, and finished tasks leave the index until they are reopened, so that the finished tasks do not
+ * slow down the queries of the overdue tasks as they pile up.
+ * <p/>
+ * The index listens to its set to stay up to date. It is thread-safe, and queries do not lock.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class TimeIndex implements TaskSetListener {
+
+    /**
+     * The indexed set.
+     */
+    private final TaskSet set;
+    /**
+     * The indexed tasks, ordered by due date, then by ID.
+     */
+    private final NavigableSet<Due> dueDates = new ConcurrentSkipListSet<>();
+    /**
+     * The due date of each indexed task, indexed by ID.
+     */
+    private final Map<Long, Long> dueTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param set the set to index
+     */
+    TimeIndex(TaskSet set) {
+        this.set = set;
+    }
+
+    /**
+     * Returns the IDs of the tasks due in a period of time.
+     *
+     * @param from the start of the period, inclusive, in milliseconds since the epoch
+     * @param to   the end of the period, exclusive, in milliseconds since the epoch
+     * @return the IDs of the tasks, ordered by due date
+     */
+    List<Long> getTaskIds(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        if (from < to) {
+            for (Due due : dueDates.subSet(new Due(from, Long.MIN_VALUE), new Due(to, Long.MIN_VALUE))) {
+                ids.add(due.taskId);
+            }
+        }
+        return ids;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskAdded(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskAdded(Task task) {
+        reindex(task.getId(), task.isDone() ? 0 : task.getDueTime());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskRemoved(org.keyboardplaying.dailytasks.model.Task)
+     */
+    @Override
+    public void taskRemoved(Task task) {
+        reindex(task.getId(), 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskDueDateChanged(long)
+     */
+    @Override
+    public void taskDueDateChanged(long taskId) {
+        refresh(taskId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.model.TaskSetListener#taskStateChanged(long, boolean)
+     */
+    @Override
+    public void taskStateChanged(long taskId, boolean done) {
+        refresh(taskId);
+    }
+
+    /**
+     * Indexes a task as it currently is in the set.
+     * <p/>
+     * The task is read rather than trusting the order of the notifications.
+     *
+     * @param taskId the ID of the task
+     */
+    private synchronized void refresh(long taskId) {
+        Task task = set.findTask(taskId);
+        reindex(taskId, task == null || task.isDone() ? 0 : task.getDueTime());
+    }
+
+    /**
+     * Moves a task to its new due date.
+     *
+     * @param taskId  the ID of the task
+     * @param dueTime the new due date, or {@code 0} to remove the task from the index
+     */
+    private synchronized void reindex(long taskId, long dueTime) {
+        Long previous = dueTime == 0 ? dueTimes.remove(taskId) : dueTimes.put(taskId, dueTime);
+        if (previous != null) {
+            dueDates.remove(new Due(previous, taskId));
+        }
+        if (dueTime != 0) {
+            dueDates.add(new Due(dueTime, taskId));
+        }
+    }
+
+    /**
+     * A task at its due date.
+     */
+    private static final class Due implements Comparable<Due> {
+
+        /**
+         * The due date, in milliseconds since the epoch.
+         */
+        private final long dueTime;
+        /**
+         * The ID of the task.
+         */
+        private final long taskId;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param dueTime the due date, in milliseconds since the epoch
+         * @param taskId  the ID of the task
+         */
+        private Due(long dueTime, long taskId) {
+            this.dueTime = dueTime;
+            this.taskId = taskId;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(Due other) {
+            return dueTime != other.dueTime
+                    ? Long.compare(dueTime, other.dueTime)
+                    : Long.compare(taskId, other.taskId);
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Due && compareTo((Due) o) == 0;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return Long.hashCode(taskId) * 31 + Long.hashCode(dueTime);
+        }
+    }
+}
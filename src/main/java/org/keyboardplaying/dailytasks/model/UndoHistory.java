@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded history of the state changes made to a {@link TaskSet}, which can be undone and redone.
+ * <p/>
+ * Each step is kept as a compact delta: the IDs of the tasks whose state was changed by a single user action, and the
+ * state which was applied to them. As a state change is only recorded when it actually changed the task, the previous
+ * state is the opposite one. Undoing or redoing a step thus updates its tasks only, in a time proportional to the
+ * number of tasks in the step, and the oldest steps are dropped once the history is full.
+ * <p/>
+ * The state of a task with subtasks is derived from its leaves, and changing it changes all of its leaves. A step
+ * therefore records the {@link #changedLeaves(TaskSet, Collection, boolean) leaves which were changed}, rather than the
+ * task the user changed, so that undoing it restores the leaves which were already in the applied state as they were.
+ * <p/>
+ * Recording a new step forgets the steps which were undone.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class UndoHistory {
+
+    /**
+     * The steps which can be undone, the latest first.
+     */
+    private final Deque<Step> undoable = new ArrayDeque<>();
+    /**
+     * The steps which can be redone, the latest undone first.
+     */
+    private final Deque<Step> redoable = new ArrayDeque<>();
+    /**
+     * The maximal number of steps which can be undone.
+     */
+    private final int capacity;
+
+    /**
+     * Creates a new empty history.
+     *
+     * @param capacity the maximal number of steps which can be undone
+     */
+    public UndoHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a step changing the state of some tasks.
+     * <p/>
+     * The tasks must be the ones whose state was actually changed, and must not have subtasks.
+     *
+     * @param taskIds the IDs of the tasks whose state was changed
+     * @param done    the state which was applied
+     */
+    public synchronized void record(Collection<Long> taskIds, boolean done) {
+        if (taskIds.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[taskIds.size()];
+        int i = 0;
+        for (long taskId : taskIds) {
+            ids[i++] = taskId;
+        }
+        redoable.clear();
+        undoable.push(new Step(ids, done));
+        if (undoable.size() > capacity) {
+            undoable.removeLast();
+        }
+    }
+
+    /**
+     * Records a step changing the state of a task.
+     *
+     * @param taskId the ID of the task whose state was changed
+     * @param done   the state which was applied
+     */
+    public void record(long taskId, boolean done) {
+        record(Collections.singleton(taskId), done);
+    }
+
+    /**
+     * Returns the tasks whose state would actually be changed by applying a state to some tasks of a set.
+     * <p/>
+     * A task with subtasks is replaced with its leaves, as its state is derived from them. This method must be called
+     * before the state is applied.
+     *
+     * @param tasks   the set
+     * @param taskIds the IDs of the tasks the state is about to be applied to
+     * @param done    the state about to be applied
+     * @return the IDs of the tasks without subtasks whose state differs from the applied one
+     * @throws TaskNotFoundException when one of the IDs could not be found in the set
+     */
+    public static List<Long> changedLeaves(TaskSet tasks, Collection<Long> taskIds, boolean done)
+            throws TaskNotFoundException {
+        Set<Long> changed = new LinkedHashSet<>();
+        Deque<Long> pending = new ArrayDeque<>(taskIds);
+        while (!pending.isEmpty()) {
+            long taskId = pending.poll();
+            List<Task> subtasks = tasks.getSubtasks(taskId);
+            if (!subtasks.isEmpty()) {
+                for (Task subtask : subtasks) {
+                    pending.add(subtask.getId());
+                }
+            } else if (tasks.getTask(taskId).isDone() != done) {
+                changed.add(taskId);
+            }
+        }
+        return new ArrayList<>(changed);
+    }
+
+    /**
+     * Tells whether a step can be undone.
+     *
+     * @return {@code true} if a step can be undone
+     */
+    public synchronized boolean canUndo() {
+        return !undoable.isEmpty();
+    }
+
+    /**
+     * Tells whether a step can be redone.
+     *
+     * @return {@code true} if a step can be redone
+     */
+    public synchronized boolean canRedo() {
+        return !redoable.isEmpty();
+    }
+
+    /**
+     * Restores the previous state of the tasks of the latest step.
+     * <p/>
+     * If some tasks of the step cannot be found in the set anymore, the step is dropped and the set is left unchanged.
+     *
+     * @param tasks the set the step was recorded for
+     * @return the updated tasks, or an empty list if no step could be undone
+     */
+    public synchronized List<Task> undo(TaskSet tasks) {
+        return move(undoable, redoable, tasks, true);
+    }
+
+    /**
+     * Applies again the latest undone step.
+     * <p/>
+     * If some tasks of the step cannot be found in the set anymore, the step is dropped and the set is left unchanged.
+     *
+     * @param tasks the set the step was recorded for
+     * @return the updated tasks, or an empty list if no step could be redone
+     */
+    public synchronized List<Task> redo(TaskSet tasks) {
+        return move(redoable, undoable, tasks, false);
+    }
+
+    /**
+     * Forgets all the steps.
+     */
+    public synchronized void clear() {
+        undoable.clear();
+        redoable.clear();
+    }
+
+    /**
+     * Applies the latest step of a stack and moves it to the other.
+     *
+     * @param from   the stack to take the step from
+     * @param to     the stack to move the step to
+     * @param tasks  the set the step was recorded for
+     * @param revert {@code true} to restore the previous state, {@code false} to apply the recorded one
+     * @return the updated tasks
+     */
+    private List<Task> move(Deque<Step> from, Deque<Step> to, TaskSet tasks, boolean revert) {
+        Step step = from.poll();
+        if (step == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<Task> updated = tasks.updateTaskStates(step.taskIdList(), step.done != revert);
+            to.push(step);
+            return updated;
+        } catch (TaskNotFoundException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, "Dropping a step whose tasks were removed.", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * A user action changing the state of some tasks.
+     */
+    private static final class Step {
+
+        /**
+         * The IDs of the updated tasks.
+         */
+        private final long[] taskIds;
+        /**
+         * The state which was applied.
+         */
+        private final boolean done;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param taskIds the IDs of the updated tasks
+         * @param done    the state which was applied
+         */
+        private Step(long[] taskIds, boolean done) {
+            this.taskIds = taskIds;
+            this.done = done;
+        }
+
+        /**
+         * Returns the IDs of the updated tasks as a list, without copying them.
+         *
+         * @return the IDs
+         */
+        private List<Long> taskIdList() {
+            return new AbstractList<Long>() {
+                @Override
+                public Long get(int index) {
+                    return taskIds[index];
+                }
+
+                @Override
+                public int size() {
+                    return taskIds.length;
+                }
+            };
+        }
+    }
+}
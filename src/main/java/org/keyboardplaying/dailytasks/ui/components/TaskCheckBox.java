@@ -34,7 +34,7 @@ public class TaskCheckBox extends JCheckBox {
     /**
      * The ID of the task this check box represents.
      */
-    private int taskId;
+    private long taskId;
 
     /**
      * Creates new instance.
@@ -51,6 +51,15 @@ public class TaskCheckBox extends JCheckBox {
         this.addActionListener(new TaskCheckBoxListener(stateListener));
     }
 
+    /**
+     * Returns the ID of the task this check box represents.
+     *
+     * @return the ID of the task
+     */
+    public long getTaskId() {
+        return taskId;
+    }
+
     /**
      * An action listener to monitor the changes of the box's check state.
      * <p/>
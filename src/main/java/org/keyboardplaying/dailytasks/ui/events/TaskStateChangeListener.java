@@ -12,6 +12,12 @@
  */
 package org.keyboardplaying.dailytasks.ui.events;
 
+import org.keyboardplaying.dailytasks.model.Task;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * An interface for when task's state changes.
  *
@@ -27,5 +33,42 @@ public interface TaskStateChangeListener {
      * @param taskId the ID of the updated task
      * @param done   the new state of the task
      */
-    void updateTaskState(int taskId, boolean done);
+    void updateTaskState(long taskId, boolean done);
+
+    /**
+     * This method is called when the state of several tasks is changed by a single user action.
+     * <p/>
+     * The default implementation calls {@link #updateTaskState(long, boolean)} for each task. Implementations should
+     * override it to process the whole batch at once.
+     *
+     * @param taskIds the IDs of the updated tasks
+     * @param done    the new state of the tasks
+     */
+    default void updateTaskStates(Collection<Long> taskIds, boolean done) {
+        for (long taskId : taskIds) {
+            updateTaskState(taskId, done);
+        }
+    }
+
+    /**
+     * This method is called when the user asks for the latest state change to be undone.
+     * <p/>
+     * The default implementation does not support undoing.
+     *
+     * @return the tasks whose state was restored, so that their display can be updated
+     */
+    default List<Task> undo() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * This method is called when the user asks for the latest undone state change to be applied again.
+     * <p/>
+     * The default implementation does not support redoing.
+     *
+     * @return the tasks whose state was restored, so that their display can be updated
+     */
+    default List<Task> redo() {
+        return Collections.emptyList();
+    }
 }
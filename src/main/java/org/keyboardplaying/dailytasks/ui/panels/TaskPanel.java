@@ -20,9 +20,18 @@ import org.keyboardplaying.dailytasks.ui.events.TaskStateChangeListener;
 import org.keyboardplaying.dailytasks.ui.util.FontUtils.FontAwesomeGlyph;
 
 import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * A panel to display the tasks.
+ * <p/>
+ * The latest state change can be undone with Ctrl+Z, and redone with Ctrl+Y or Ctrl+Shift+Z.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
@@ -38,6 +47,11 @@ public class TaskPanel extends JPanel {
      */
     private static final int BORDER_WIDTH = 2;
 
+    /**
+     * The check box of each task, indexed by ID.
+     */
+    private final Map<Long, TaskCheckBox> checkBoxes = new HashMap<>();
+
     /**
      * Creates a new instance and initializes layout and content.
      *
@@ -68,7 +82,40 @@ public class TaskPanel extends JPanel {
         /* Now add tasks. */
         for (Task task : tasks) {
             // Create the checkbox and add it to the container.
-            this.add(new TaskCheckBox(task, listener));
+            TaskCheckBox checkBox = new TaskCheckBox(task, listener);
+            checkBoxes.put(task.getId(), checkBox);
+            this.add(checkBox);
         }
+
+        /* Undo and redo. */
+        bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo", listener::undo);
+        bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo", listener::redo);
+        bindKey(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo",
+                listener::redo);
+    }
+
+    /**
+     * Binds a key stroke to an action restoring the state of some tasks.
+     *
+     * @param keyStroke the key stroke
+     * @param name      the name of the action
+     * @param action    the action, returning the tasks whose state was restored
+     */
+    private void bindKey(KeyStroke keyStroke, String name, final Supplier<List<Task>> action) {
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(keyStroke, name);
+        getActionMap().put(name, new AbstractAction(name) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                for (Task task : action.get()) {
+                    TaskCheckBox checkBox = checkBoxes.get(task.getId());
+                    if (checkBox != null) {
+                        // does not notify the listener again
+                        checkBox.setSelected(task.isDone());
+                    }
+                }
+            }
+        });
     }
 }
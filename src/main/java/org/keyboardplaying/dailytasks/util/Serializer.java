@@ -14,18 +14,27 @@ package org.keyboardplaying.dailytasks.util;
 
 import org.keyboardplaying.dailytasks.exception.DeserializationException;
 import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.util.codec.Codec;
+import org.keyboardplaying.dailytasks.util.codec.Codecs;
+import org.keyboardplaying.dailytasks.util.codec.StandardCodec;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 
 /**
- * A utility class to convert {@link Serializable} objects to byte arrays and back.
+ * A utility class to convert {@link Serializable} objects to byte arrays or streams and back.
  * <p/>
- * This class uses the {@link ObjectOutputStream} and {@link ObjectInputStream}.
+ * Objects are written with the {@link Codecs#getDefault() selected codec}, or with the Java serialization if the
+ * selected codec does not support them. Data is read with the codec identified by its first byte, so that data written
+ * by previous versions or with another codec can still be read.
+ * <p/>
+ * The stream methods write and read the objects through bounded buffers, so that large sets can be saved to files
+ * without holding a serialized copy of them in memory.
  *
  * @author Cyrille Chopelet (https://keyboardplaying.org)
  */
@@ -45,21 +54,48 @@ public final class Serializer {
      * @throws SerializationException if serialization fails
      */
     public static <T extends Serializable> byte[] serialize(T object) throws SerializationException {
-        try (ByteArrayOutputStream output = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(output)) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writeTo(object, output);
 
-            oos.writeObject(object);
-            oos.flush();
+        // done, return the result
+        return output.toByteArray();
+    }
 
-            // done, return the result
-            return output.toByteArray();
+    /**
+     * Marshals a {@link Serializable} object to a stream, with the {@link Codecs#getDefault() selected codec}.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param object the object to serialize
+     * @param out    the stream to write the object to
+     * @throws SerializationException if serialization fails or the stream cannot be written
+     */
+    public static <T extends Serializable> void writeTo(T object, OutputStream out) throws SerializationException {
+        writeTo(object, out, Codecs.getDefault());
+    }
+
+    /**
+     * Marshals a {@link Serializable} object to a stream, with the supplied codec.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param object the object to serialize
+     * @param out    the stream to write the object to
+     * @param codec  the codec, replaced with the Java serialization if it does not support the object
+     * @throws SerializationException if serialization fails or the stream cannot be written
+     */
+    public static <T extends Serializable> void writeTo(T object, OutputStream out, Codec codec)
+            throws SerializationException {
+        try {
+
+            (codec.supports(object) ? codec : StandardCodec.JAVA).encode(object, out);
 
         } catch (IOException e) {
 
             throw new SerializationException(
                     String.format("An error occurred while serializing an object of type %s: <%s>",
                             object.getClass().getName(), object.toString()),
-                    e); 
+                    e);
         }
     }
 
@@ -70,18 +106,57 @@ public final class Serializer {
      * @return the deserialized object
      * @throws DeserializationException if deserialization fails
      */
-    @SuppressWarnings("unchecked")
     public static <T extends Serializable> T deserialize(byte[] serialized) throws DeserializationException {
-        try (ByteArrayInputStream input = new ByteArrayInputStream(serialized);
-             ObjectInputStream ois = new ObjectInputStream(input)) {
+        try {
+            return readFrom(new ByteArrayInputStream(serialized));
+        } catch (DeserializationException e) {
+            throw new DeserializationException(
+                    String.format("An error occurred while deserializing data: <%s>", new String(serialized)),
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Unmarshals an object from a stream.
+     * <p/>
+     * The stream is not closed. It is not buffered either, so that it is not read past the end of an object written
+     * with the Java serialization or the binary format: a buffered stream should be supplied if it is read from a file.
+     *
+     * @param in the stream to read the object from
+     * @return the deserialized object
+     * @throws DeserializationException if deserialization fails or the stream cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T readFrom(InputStream in) throws DeserializationException {
+        InputStream input;
+        int header;
+        try {
+
+            // detect the format from the first byte, which is unread without buffering the stream
+            if (in.markSupported()) {
+                input = in;
+                input.mark(1);
+                header = input.read();
+                input.reset();
+            } else {
+                PushbackInputStream pushback = new PushbackInputStream(in, 1);
+                input = pushback;
+                header = pushback.read();
+                if (header >= 0) {
+                    pushback.unread(header);
+                }
+            }
+            Codec codec = Codecs.forHeader(header);
+            if (codec == null) {
+                throw new IOException(header < 0 ? "No data" : String.format("Unknown format: 0x%02X", header));
+            }
 
             // done, return the result
-            return (T) ois.readObject();
+            return (T) codec.decode(input);
 
         } catch (IOException | ClassNotFoundException e) {
 
-            throw new DeserializationException(
-                    String.format("An error occurred while deserializing data: <%s>", new String(serialized)), e);
+            throw new DeserializationException("An error occurred while deserializing data from a stream", e);
         }
     }
 }
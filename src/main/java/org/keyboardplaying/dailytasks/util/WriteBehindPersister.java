@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes values on a dedicated thread, after they were submitted, so that the thread submitting them does not wait for
+ * the storage.
+ * <p/>
+ * The first value submitted after a write is written once a delay has elapsed. The values submitted in the meantime
+ * are merged into the pending one, so that a burst of submissions costs a single write of the latest state. The values
+ * are written one at a time, in the order they were submitted.
+ * <p/>
+ * A write which fails is logged, and the value is dropped. The pending value can be {@link #flush() flushed} when it
+ * must not wait for the delay, for instance when the application terminates.
+ *
+ * @param <T> the type of the values
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class WriteBehindPersister<T> implements Closeable {
+
+    /**
+     * The thread writing the values.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * The time between the submission of a value and its write, in milliseconds.
+     */
+    private final long delay;
+    /**
+     * The function merging a submitted value into the pending one.
+     */
+    private final BinaryOperator<T> merger;
+    /**
+     * The function writing a value.
+     */
+    private final Consumer<? super T> writer;
+
+    /**
+     * The value waiting to be written, or {@code null} if none.
+     */
+    private T pending;
+    /**
+     * The number of submissions merged into the pending value.
+     */
+    private int queueDepth;
+    /**
+     * The scheduled write of the pending value, or {@code null} if none.
+     */
+    private Future<?> scheduled;
+
+    /**
+     * The number of writes, successful or not.
+     */
+    private long writeCount;
+    /**
+     * The total time spent writing, in nanoseconds.
+     */
+    private long totalWriteNanos;
+    /**
+     * The time spent by the longest write, in nanoseconds.
+     */
+    private long maxWriteNanos;
+    /**
+     * The time spent by the last write, in nanoseconds.
+     */
+    private long lastWriteNanos;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param name   the name of the thread writing the values
+     * @param delay  the time between the submission of a value and its write, in milliseconds
+     * @param merger the function merging a submitted value (second argument) into the pending one (first argument)
+     * @param writer the function writing a value
+     */
+    public WriteBehindPersister(String name, long delay, BinaryOperator<T> merger, Consumer<? super T> writer) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delay = delay;
+        this.merger = merger;
+        this.writer = writer;
+    }
+
+    /**
+     * Submits a value to write, merging it into the pending one if any.
+     * <p/>
+     * This method does not wait for the value to be written.
+     *
+     * @param value the value
+     */
+    public synchronized void submit(T value) {
+        if (executor.isShutdown()) {
+            Logger.getLogger(getClass().getName()).warning("Ignoring a value submitted after closing.");
+            return;
+        }
+        pending = pending == null ? value : merger.apply(pending, value);
+        queueDepth++;
+        if (scheduled == null) {
+            scheduled = executor.schedule(this::writePending, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the pending value without waiting for the delay, and waits for it to be written.
+     * <p/>
+     * If the thread is interrupted while waiting, the value is still written, and the interruption status of the thread
+     * is restored.
+     */
+    public void flush() {
+        Future<?> flush;
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            flush = executor.submit(this::writePending);
+        }
+        try {
+            flush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // writePending does not throw
+            ExceptionUtils.handleUnexpectedException(this, e.getCause());
+        }
+    }
+
+    /**
+     * Returns the number of submissions which were not written yet.
+     *
+     * @return the number of submissions merged into the pending value
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of writes since this instance was created, including the failed ones.
+     *
+     * @return the number of writes
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Returns the time spent by the last write.
+     *
+     * @return the time, in nanoseconds, or {@code 0} if nothing was written yet
+     */
+    public synchronized long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * Returns the average time spent by a write.
+     *
+     * @return the time, in nanoseconds, or {@code 0} if nothing was written yet
+     */
+    public synchronized long getAverageWriteNanos() {
+        return writeCount == 0 ? 0 : totalWriteNanos / writeCount;
+    }
+
+    /**
+     * Returns the time spent by the longest write.
+     *
+     * @return the time, in nanoseconds, or {@code 0} if nothing was written yet
+     */
+    public synchronized long getMaxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    /**
+     * Writes the pending value and stops the thread writing the values.
+     * <p/>
+     * The values submitted afterwards are not written.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        flush();
+        synchronized (this) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Writes the pending value, if any.
+     * <p/>
+     * This method is only run by the thread of the executor, so that the writes do not overlap.
+     */
+    private void writePending() {
+        T value;
+        synchronized (this) {
+            value = pending;
+            pending = null;
+            queueDepth = 0;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+        if (value == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            writer.accept(value);
+        } catch (RuntimeException e) {
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, "The value could not be written.", e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                writeCount++;
+                totalWriteNanos += elapsed;
+                maxWriteNanos = Math.max(maxWriteNanos, elapsed);
+                lastWriteNanos = elapsed;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * A format objects can be serialized to.
+ * <p/>
+ * The data written by a codec starts with a byte identifying its format, so that the codec can be detected when
+ * reading the data. Besides the {@link StandardCodec standard codecs}, codecs can be provided as services, see
+ * {@link Codecs}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public interface Codec {
+
+    /**
+     * Returns the name this codec is selected by.
+     *
+     * @return the name of the codec
+     */
+    String getName();
+
+    /**
+     * Returns the first byte of the data written by this codec, which must differ from the one of the other codecs.
+     *
+     * @return the first byte, as an unsigned value
+     */
+    int getHeader();
+
+    /**
+     * Tells whether an object can be written by this codec.
+     *
+     * @param object the object
+     * @return {@code true} if the object can be written
+     */
+    boolean supports(Object object);
+
+    /**
+     * Writes an object to a stream.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param object the object, which must be {@link #supports(Object) supported}
+     * @param out    the stream
+     * @throws IOException if the stream cannot be written
+     */
+    void encode(Serializable object, OutputStream out) throws IOException;
+
+    /**
+     * Reads an object from a stream.
+     * <p/>
+     * The stream is not closed, but may have been read past the end of the object.
+     *
+     * @param in the stream
+     * @return the object
+     * @throws IOException            if the stream cannot be read or does not hold data written by this codec
+     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     */
+    Object decode(InputStream in) throws IOException, ClassNotFoundException;
+}
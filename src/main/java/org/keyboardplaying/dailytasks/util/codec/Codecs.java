@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The registry of the available codecs.
+ * <p/>
+ * The available codecs are the {@link StandardCodec standard codecs}, followed by the implementations of {@link Codec}
+ * declared as services in a {@code META-INF/services/org.keyboardplaying.dailytasks.util.codec.Codec} file. When
+ * several codecs share a name or a header, the first one is used.
+ * <p/>
+ * The codec used to write objects is the {@link StandardCodec#BINARY binary codec}, unless another one is selected by
+ * name with the {@value #CODEC_PROPERTY} system property.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public final class Codecs {
+
+    /**
+     * The system property selecting the codec used to write objects.
+     */
+    public static final String CODEC_PROPERTY = "daily-tasks.codec";
+    /**
+     * The codec used to write objects if none is selected.
+     */
+    public static final Codec DEFAULT_CODEC = StandardCodec.BINARY;
+
+    /**
+     * The available codecs, loaded on first use.
+     */
+    private static volatile List<Codec> codecs;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private Codecs() {
+    }
+
+    /**
+     * Returns the available codecs.
+     *
+     * @return the standard codecs, followed by the ones provided as services
+     */
+    public static List<Codec> getCodecs() {
+        List<Codec> result = codecs;
+        if (result == null) {
+            result = new ArrayList<Codec>(Arrays.asList(StandardCodec.values()));
+            try {
+                for (Codec codec : ServiceLoader.load(Codec.class)) {
+                    result.add(codec);
+                }
+            } catch (ServiceConfigurationError e) {
+                Logger.getLogger(Codecs.class.getName()).log(Level.WARNING, "Could not load the provided codecs", e);
+            }
+            result = Collections.unmodifiableList(result);
+            codecs = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the codec with the supplied name.
+     *
+     * @param name the name of the codec
+     * @return the codec, or {@code null} if none has this name
+     */
+    public static Codec forName(String name) {
+        for (Codec codec : getCodecs()) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the codec which wrote some data.
+     *
+     * @param header the first byte of the data, as an unsigned value
+     * @return the codec, or {@code null} if none writes data starting with this byte
+     */
+    public static Codec forHeader(int header) {
+        for (Codec codec : getCodecs()) {
+            if (codec.getHeader() == header) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the codec used to write objects.
+     *
+     * @return the codec selected with the {@value #CODEC_PROPERTY} system property, or {@link #DEFAULT_CODEC} if none
+     * is selected or no codec has the selected name
+     */
+    public static Codec getDefault() {
+        String name = System.getProperty(CODEC_PROPERTY);
+        if (name == null) {
+            return DEFAULT_CODEC;
+        }
+        Codec codec = forName(name);
+        if (codec == null) {
+            Logger.getLogger(Codecs.class.getName()).warning("Unknown codec: " + name);
+            return DEFAULT_CODEC;
+        }
+        return codec;
+    }
+}
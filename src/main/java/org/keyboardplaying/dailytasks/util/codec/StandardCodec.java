@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util.codec;
+
+import org.keyboardplaying.dailytasks.model.BinaryCodec;
+import org.keyboardplaying.dailytasks.model.JsonCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * The codecs provided with the application.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public enum StandardCodec implements Codec {
+
+    /**
+     * The Java serialization, which supports any {@link Serializable} object.
+     */
+    JAVA(0xAC) {
+        @Override
+        public boolean supports(Object object) {
+            return object instanceof Serializable;
+        }
+
+        @Override
+        public void encode(Serializable object, OutputStream out) throws IOException {
+            // the object stream is not closed, as it would close the supplied stream
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(object);
+            oos.flush();
+        }
+
+        @Override
+        public Object decode(InputStream in) throws IOException, ClassNotFoundException {
+            // the object stream is not closed, as it would close the supplied stream
+            return new ObjectInputStream(in).readObject();
+        }
+    },
+    /**
+     * The compact binary format of the {@link BinaryCodec}, which supports tasks and task sets.
+     */
+    BINARY('D') {
+        @Override
+        public boolean supports(Object object) {
+            return BinaryCodec.supports(object);
+        }
+
+        @Override
+        public void encode(Serializable object, OutputStream out) throws IOException {
+            BinaryCodec.encode(object, out);
+        }
+
+        @Override
+        public Object decode(InputStream in) throws IOException {
+            return BinaryCodec.decode(in);
+        }
+    },
+    /**
+     * The JSON format of the {@link JsonCodec}, which supports tasks and task sets.
+     */
+    JSON('{') {
+        @Override
+        public boolean supports(Object object) {
+            return JsonCodec.supports(object);
+        }
+
+        @Override
+        public void encode(Serializable object, OutputStream out) throws IOException {
+            JsonCodec.encode(object, out);
+        }
+
+        @Override
+        public Object decode(InputStream in) throws IOException {
+            return JsonCodec.decode(in);
+        }
+    };
+
+    /**
+     * The first byte of the data written by the codec.
+     */
+    private final int header;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param header the first byte of the data written by the codec
+     */
+    StandardCodec(int header) {
+        this.header = header;
+    }
+
+    /**
+     * Returns the name of the codec, which is the name of the constant in lower case.
+     *
+     * @return the name of the codec
+     */
+    @Override
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.keyboardplaying.dailytasks.util.codec.Codec#getHeader()
+     */
+    @Override
+    public int getHeader() {
+        return header;
+    }
+}
@@ -17,6 +17,7 @@ import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.keyboardplaying.dailytasks.core.journal.TaskListRegistry;
 import org.keyboardplaying.dailytasks.core.managers.PreferencesManager;
 import org.keyboardplaying.dailytasks.core.managers.TaskManager;
 import org.keyboardplaying.dailytasks.messages.MessageBundle;
@@ -28,6 +29,7 @@ import org.keyboardplaying.dailytasks.ui.theme.Theme;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -109,6 +111,22 @@ public class PreferencesManagerTest {
         assertTrue(PreferencesManager.isAlwaysOnTop());
     }
 
+    /**
+     * Tests the selected task list setting.
+     */
+    @Test
+    public void testListName() {
+        // Test default value
+        assertEquals(TaskListRegistry.DEFAULT_LIST, PreferencesManager.getListName());
+
+        // Test saving and retrieving
+        PreferencesManager.setListName("ops");
+        assertEquals("ops", PreferencesManager.getListName());
+        // an invalid name falls back to the default list
+        PreferencesManager.setListName("../ops");
+        assertEquals(TaskListRegistry.DEFAULT_LIST, PreferencesManager.getListName());
+    }
+
     /**
      * Tests the preferences manipulation using the {@link UIPreferences} object.
      */
@@ -166,6 +184,37 @@ public class PreferencesManagerTest {
         assertFalse(iter.hasNext());
     }
 
+    /**
+     * Tests saving a set larger than the maximal length of a preference value.
+     */
+    @Test
+    public void testLargeTasks() throws BackingStoreException {
+        TaskSet tasks = new TaskSet();
+        for (int i = 0; i < 10_000; i++) {
+            tasks.addTask(new Task("Task " + i, i % 2 == 0));
+        }
+        PreferencesManager.setTasks(tasks);
+        Preferences node = Preferences.userRoot().node(PreferencesManager.class.getName());
+        int keys = node.keys().length;
+        assertTrue(keys > 2);
+
+        TaskSet result = PreferencesManager.getTasks();
+        assertEquals(tasks.size(), result.size());
+        Iterator<Task> iter = tasks.iterator();
+        for (Task task : result) {
+            Task expected = iter.next();
+            assertEquals(expected.getTodo(), task.getTodo());
+            assertEquals(expected.isDone(), task.isDone());
+        }
+
+        // the chunks of the previous set are removed when saving a smaller one
+        tasks = new TaskSet();
+        tasks.addTask(new Task("Task"));
+        PreferencesManager.setTasks(tasks);
+        assertTrue(node.keys().length < keys);
+        assertEquals(1, PreferencesManager.getTasks().size());
+    }
+
     /**
      * Asserts a {@link TaskSet} is the default task set.
      *
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.model.DailyTask;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link TaskArchive} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class TaskArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ensures the archived tasks are appended by batches and can be searched.
+     */
+    @Test
+    public void testSearch() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        TaskArchive archive = new TaskArchive(directory);
+        assertTrue(archive.search("backup").isEmpty());
+
+        Task backups = new Task("Check backups", true);
+        archive.append(Arrays.asList(backups, new Task("Deploy", true)));
+        archive.append(Arrays.asList(new Task("Restore a backup", true)));
+
+        archive = new TaskArchive(directory);
+        List<Task> found = archive.search("BACKUP");
+        assertEquals(2, found.size());
+        assertEquals(backups.getId(), found.get(0).getId());
+        assertEquals(backups.getCompletionDate(), found.get(0).getCompletionDate());
+        assertEquals("Restore a backup", found.get(1).getTodo());
+        assertEquals(3, archive.search(task -> true).size());
+    }
+
+    /**
+     * Ensures a partially written batch is dropped, and the following batches can still be read.
+     */
+    @Test
+    public void testPartialWrite() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        new TaskArchive(directory).append(Arrays.asList(new Task("Complete", true)));
+        try (OutputStream out = Files.newOutputStream(directory.resolve("archive.log"), StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0, 0, 1, 0, 31});
+        }
+
+        TaskArchive archive = new TaskArchive(directory);
+        archive.append(Arrays.asList(new Task("Appended", true)));
+        assertEquals(2, archive.search(task -> true).size());
+
+        // a corrupted length is not allocated
+        try (OutputStream out = Files.newOutputStream(directory.resolve("archive.log"), StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 31});
+        }
+        assertEquals(2, archive.search(task -> true).size());
+        assertEquals(2, new TaskArchive(directory).search(task -> true).size());
+    }
+
+    /**
+     * Ensures the old finished tasks are moved from the list to the archive, and that their removal is recorded.
+     */
+    @Test
+    public void testArchiveList() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        Task finished = new Task("Finished", true);
+        Task daily = new DailyTask("Daily", true);
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        set.addTask(finished);
+        set.addTask(daily);
+        set.addTask(new Task("Open"));
+
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            journal.snapshot(set);
+            TaskList list = new TaskList("default", set, journal, new TaskArchive(directory));
+            assertTrue(list.archive(Instant.now().minusSeconds(3600)).isEmpty());
+            assertEquals(1, list.archive(Instant.now().plusSeconds(1)).size());
+            assertEquals(1, list.searchArchive("finished").size());
+        }
+
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            TaskSet loaded = journal.load();
+            assertEquals(2, loaded.size());
+            assertFalse(loaded.containsTask(finished.getId()));
+            List<String> labels = new ArrayList<>();
+            for (Task task : new TaskArchive(directory).search(task -> true)) {
+                labels.add(task.getTodo());
+            }
+            assertEquals(Arrays.asList("Finished"), labels);
+        }
+    }
+
+    /**
+     * Ensures the tasks which could not be archived are kept in the journal, and archived with the next modifications.
+     */
+    @Test
+    public void testArchiveFailure() throws IOException, SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        Task finished = new Task("Finished", true);
+        TaskSet set = new TaskSet();
+        set.addTask(finished);
+        set.addTask(new Task("Open"));
+
+        try (TaskJournal journal = new TaskJournal(directory, 1)) {
+            journal.snapshot(set);
+            TaskList list = new TaskList("default", set, journal, new TaskArchive(directory));
+            // the archive cannot be written while its file is a directory
+            Path blocker = Files.createDirectory(directory.resolve("archive.log"));
+            List<Task> archived = set.removeTasksDoneBefore(Instant.now().plusSeconds(1));
+            assertEquals(1, archived.size());
+
+            Task added = new Task("Added");
+            set.addTask(added);
+            list.recordWithSnapshot(archived, set.snapshot(), TaskEvent.added(added));
+            set.updateTaskState(added.getId(), true);
+            list.recordWithSnapshot(set.snapshot(), TaskEvent.stateChanged(added.getId(), true));
+            // no snapshot lost the task
+            TaskSet loaded = journal.load();
+            assertTrue(loaded.containsTask(finished.getId()));
+            assertEquals(3, loaded.size());
+
+            Files.delete(blocker);
+            list.recordWithSnapshot(set.snapshot(), TaskEvent.stateChanged(added.getId(), true));
+            loaded = journal.load();
+            assertFalse(loaded.containsTask(finished.getId()));
+            assertEquals(2, loaded.size());
+            assertEquals(1, list.searchArchive("finished").size());
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.model.DailyTask;
+import org.keyboardplaying.dailytasks.model.Recurrence;
+import org.keyboardplaying.dailytasks.model.RecurringTask;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link TaskJournal} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class TaskJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ensures the set is rebuilt from the recorded events, restoring the states as a saved session would.
+     */
+    @Test
+    public void testReplay() throws IOException, SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        Task task = new Task("Task");
+        Task daily = new DailyTask("Daily");
+        Task recurring = new RecurringTask("Recurring", Recurrence.cron("0 0 1 1 *"));
+        Task removed = new Task("Removed");
+        TaskSet tasks = new TaskSet();
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            assertNull(journal.load());
+            tasks.addTask(task);
+            journal.snapshot(tasks);
+            for (Task added : new Task[]{daily, recurring, removed}) {
+                tasks.addTask(added);
+                journal.record(tasks, TaskEvent.added(added));
+            }
+            tasks.updateAllTaskStates(true);
+            journal.record(tasks, TaskEvent.allStatesChanged(true));
+            tasks.updateTaskState(task.getId(), false);
+            journal.record(tasks, TaskEvent.stateChanged(task.getId(), false));
+            tasks.removeTask(removed.getId());
+            journal.record(tasks, TaskEvent.removed(removed.getId()));
+        }
+
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            TaskSet result = journal.load();
+            assertEquals(3, result.size());
+            assertFalse(result.getTask(task.getId()).isDone());
+            // the state of dailies is not restored, the one of a recurring task until its next occurrence
+            assertFalse(result.getTask(daily.getId()).isDone());
+            assertTrue(result.getTask(recurring.getId()).isDone());
+            assertFalse(result.containsTask(removed.getId()));
+        }
+    }
+
+    /**
+     * Ensures snapshots are taken periodically, the log continues after them and the segments they include are
+     * deleted.
+     */
+    @Test
+    public void testSnapshots() throws IOException, SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        List<Long> ids = new ArrayList<>();
+        try (TaskJournal journal = new TaskJournal(directory, 3)) {
+            journal.snapshot(tasks);
+            for (int i = 0; i < 7; i++) {
+                Task task = new Task("Task " + i);
+                ids.add(task.getId());
+                tasks.addTask(task);
+                journal.record(tasks, TaskEvent.added(task));
+            }
+        }
+        assertTrue(Files.exists(directory.resolve("snapshot.ser")));
+        // only the segment following the last snapshot is left
+        assertEquals(1, segments(directory).size());
+        assertTrue(segments(directory).get(0).endsWith("events-00000000000000000007.log"));
+
+        try (TaskJournal journal = new TaskJournal(directory, 3)) {
+            TaskSet result = journal.load();
+            assertEquals(7, result.size());
+            result.updateTaskState(ids.get(0), true);
+            journal.record(result, TaskEvent.stateChanged(ids.get(0), true));
+        }
+        try (TaskJournal journal = new TaskJournal(directory, 3)) {
+            TaskSet result = journal.load();
+            assertTrue(result.getTask(ids.get(0)).isDone());
+            assertEquals(1, result.countDone());
+        }
+    }
+
+    /**
+     * Ensures no snapshot is taken while the events are recorded without the set, and that the next supplied set is.
+     */
+    @Test
+    public void testRecordWithoutSet() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        try (TaskJournal journal = new TaskJournal(directory, 2)) {
+            for (int i = 0; i < 5; i++) {
+                Task task = new Task("Task " + i);
+                tasks.addTask(task);
+                journal.record(null, TaskEvent.added(task));
+            }
+            assertFalse(Files.exists(directory.resolve("snapshot.ser")));
+            Task task = new Task("Task 5");
+            tasks.addTask(task);
+            journal.record(tasks.snapshot(), TaskEvent.added(task));
+        }
+        assertTrue(Files.exists(directory.resolve("snapshot.ser")));
+
+        try (TaskJournal journal = new TaskJournal(directory, 2)) {
+            assertEquals(6, journal.load().size());
+        }
+    }
+
+    /**
+     * Ensures an event partially written when the application stopped is dropped.
+     */
+    @Test
+    public void testPartialWrite() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            Task task = new Task("Task");
+            tasks.addTask(task);
+            journal.record(tasks, TaskEvent.added(task));
+        }
+        Path segment = segments(directory).get(0);
+        long length = Files.size(segment);
+        try (OutputStream out = Files.newOutputStream(segment, StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0, 0, 1, 0, 42});
+        }
+
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            assertEquals(length, Files.size(segment));
+            TaskSet result = journal.load();
+            assertEquals(1, result.size());
+            Task task = new Task("Other");
+            result.addTask(task);
+            journal.record(result, TaskEvent.added(task));
+        }
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            assertEquals(2, journal.load().size());
+        }
+    }
+
+    /**
+     * Ensures a corrupted record length is treated as the end of the log rather than allocated.
+     */
+    @Test
+    public void testCorruptedLength() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            Task task = new Task("Task");
+            tasks.addTask(task);
+            journal.record(tasks, TaskEvent.added(task));
+        }
+        Path segment = segments(directory).get(0);
+        long length = Files.size(segment);
+        try (OutputStream out = Files.newOutputStream(segment, StandardOpenOption.APPEND)) {
+            out.write(new byte[]{0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 42});
+        }
+
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            assertEquals(length, Files.size(segment));
+            assertEquals(1, journal.load().size());
+        }
+    }
+
+    /**
+     * Ensures recording a modification appends a few bytes, whatever the size of the set.
+     */
+    @Test
+    public void testAppendCost() throws IOException, SerializationException, TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        for (int i = 0; i < 100_000; i++) {
+            tasks.addTask(new Task("Task " + i));
+        }
+        long taskId = tasks.iterator().next().getId();
+        try (TaskJournal journal = new TaskJournal(directory)) {
+            journal.snapshot(tasks);
+            long snapshot = Files.size(directory.resolve("snapshot.ser"));
+            for (int i = 0; i < 10; i++) {
+                tasks.updateTaskState(taskId, i % 2 == 0);
+                journal.record(tasks, TaskEvent.stateChanged(taskId, i % 2 == 0));
+            }
+            long log = Files.size(segments(directory).get(0));
+            assertEquals(snapshot, Files.size(directory.resolve("snapshot.ser")));
+            assertTrue(log + " bytes for 10 events", log < 10 * 32);
+        }
+    }
+
+    /**
+     * Ensures the snapshots taken as events are recorded are written in the background from a consistent image of the
+     * set, while the following events keep being recorded.
+     */
+    @Test
+    public void testBackgroundCompaction() throws IOException, SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        TaskSet tasks = new TaskSet();
+        for (int i = 0; i < 10_000; i++) {
+            tasks.addTask(new Task("Task " + i));
+        }
+        long taskId = tasks.iterator().next().getId();
+        try (TaskJournal journal = new TaskJournal(directory, 10, SyncPolicy.NEVER)) {
+            journal.snapshot(tasks);
+            for (int i = 0; i < 25; i++) {
+                Task task = new Task("New task " + i);
+                tasks.addTask(task);
+                journal.record(tasks, TaskEvent.added(task));
+                tasks.updateTaskState(taskId, i % 2 == 0);
+                journal.record(tasks, TaskEvent.stateChanged(taskId, i % 2 == 0));
+            }
+        }
+        // the last snapshot includes all the events, so that all the segments were deleted
+        assertTrue(segments(directory).isEmpty());
+
+        try (TaskJournal journal = new TaskJournal(directory, 10)) {
+            TaskSet result = journal.load();
+            assertEquals(10_025, result.size());
+            assertTrue(result.getTask(taskId).isDone());
+            assertEquals(1, result.countDone());
+        }
+    }
+
+    /**
+     * Ensures the events are recorded whatever the sync policy, and that the policy can be set by a system property.
+     */
+    @Test
+    public void testSyncPolicies() throws IOException, SerializationException, DeserializationException {
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            Path directory = folder.getRoot().toPath().resolve(policy.name());
+            try (TaskJournal journal = new TaskJournal(directory, TaskJournal.DEFAULT_SNAPSHOT_INTERVAL, policy)) {
+                TaskSet tasks = new TaskSet();
+                for (int i = 0; i < 3; i++) {
+                    Task task = new Task("Task " + i);
+                    tasks.addTask(task);
+                    journal.record(tasks, TaskEvent.added(task));
+                }
+            }
+            try (TaskJournal journal = new TaskJournal(directory)) {
+                assertEquals(3, journal.load().size());
+            }
+        }
+
+        assertFalse(SyncPolicy.INTERVAL.isSyncDue(0, 1));
+        assertTrue(SyncPolicy.INTERVAL.isSyncDue(0, SyncPolicy.INTERVAL_MILLIS * 1_000_000));
+
+        String previous = System.getProperty(SyncPolicy.SYNC_PROPERTY);
+        try {
+            System.setProperty(SyncPolicy.SYNC_PROPERTY, "interval");
+            assertEquals(SyncPolicy.INTERVAL, SyncPolicy.getDefault());
+            System.setProperty(SyncPolicy.SYNC_PROPERTY, "unknown");
+            assertEquals(SyncPolicy.ALWAYS, SyncPolicy.getDefault());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(SyncPolicy.SYNC_PROPERTY);
+            } else {
+                System.setProperty(SyncPolicy.SYNC_PROPERTY, previous);
+            }
+        }
+    }
+
+    /**
+     * Ensures the events left unforced by the {@link SyncPolicy#INTERVAL} policy are forced once the interval elapsed,
+     * even if no other event is appended.
+     */
+    @Test
+    public void testIdleSync() throws IOException, SerializationException, InterruptedException {
+        try (EventLog log = new EventLog(folder.getRoot().toPath(), SyncPolicy.INTERVAL)) {
+            // the segment was just opened, so that the events are not forced when appended
+            log.append(TaskEvent.added(new Task("Task")));
+            assertTrue(log.hasUnsyncedEvents());
+            long deadline = System.currentTimeMillis() + 10 * SyncPolicy.INTERVAL_MILLIS;
+            while (log.hasUnsyncedEvents() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(log.hasUnsyncedEvents());
+        }
+        assertTrue(SyncPolicy.NEVER.getSyncDelay(0, 1) < 0);
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "events-*.log")) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+}
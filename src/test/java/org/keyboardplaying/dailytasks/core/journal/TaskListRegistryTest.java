@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link TaskListRegistry} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class TaskListRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The number of sets created by {@link #initializer}.
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Creates a set containing a single task labelled after the list.
+     */
+    private final Function<String, TaskSet> initializer = name -> {
+        created.incrementAndGet();
+        TaskSet set = new TaskSet();
+        set.addTask(new Task(name));
+        return set;
+    };
+
+    /**
+     * Ensures the lists are created in their own directory and loaded only when requested.
+     */
+    @Test
+    public void testLazyLoading() throws IOException, SerializationException, DeserializationException {
+        Path directory = folder.getRoot().toPath();
+        try (TaskListRegistry registry = new TaskListRegistry(directory, 4, initializer)) {
+            TaskList ops = registry.get("ops");
+            assertEquals("ops", ops.getTasks().iterator().next().getTodo());
+            assertTrue(Files.isDirectory(directory.resolve(TaskListRegistry.LISTS_DIR).resolve("ops")));
+            ops.recordLive(TaskEvent.added(new Task("Check backups")));
+            registry.get(TaskListRegistry.DEFAULT_LIST);
+            registry.get("dev");
+            assertEquals(3, created.get());
+        }
+
+        try (TaskListRegistry registry = new TaskListRegistry(directory, 4, initializer)) {
+            // listing the lists does not load them
+            assertEquals(Arrays.asList(TaskListRegistry.DEFAULT_LIST, "dev", "ops"), registry.getNames());
+            assertFalse(registry.isLoaded("ops"));
+
+            TaskList ops = registry.get("ops");
+            assertEquals(2, ops.getTasks().size());
+            assertSame(ops, registry.get("ops"));
+            assertFalse(registry.isLoaded("dev"));
+            assertEquals(3, created.get());
+        }
+    }
+
+    /**
+     * Ensures the least recently used list is evicted, and reloaded from its journal when requested again.
+     */
+    @Test
+    public void testEviction() throws IOException, SerializationException, DeserializationException {
+        try (TaskListRegistry registry = new TaskListRegistry(folder.getRoot().toPath(), 2, initializer)) {
+            TaskList first = registry.get("first");
+            first.recordLive(TaskEvent.added(new Task("Recorded")));
+            registry.get("second");
+            registry.get("first");
+            registry.get("third");
+
+            // the second list was the least recently used
+            assertTrue(registry.isLoaded("first"));
+            assertFalse(registry.isLoaded("second"));
+            assertTrue(registry.isLoaded("third"));
+
+            registry.get("fourth");
+            assertFalse(registry.isLoaded("first"));
+            TaskList reloaded = registry.get("first");
+            assertNotSame(first, reloaded);
+            assertEquals(2, reloaded.getTasks().size());
+            assertEquals(4, created.get());
+        }
+    }
+
+    /**
+     * Ensures names which cannot be used as directory names are rejected.
+     */
+    @Test
+    public void testNames() throws IOException, SerializationException, DeserializationException {
+        assertTrue(TaskListRegistry.isValidName("team-a.prod"));
+        assertFalse(TaskListRegistry.isValidName(null));
+        assertFalse(TaskListRegistry.isValidName(""));
+        assertFalse(TaskListRegistry.isValidName(".."));
+        assertFalse(TaskListRegistry.isValidName("a/b"));
+
+        try (TaskListRegistry registry = new TaskListRegistry(folder.getRoot().toPath(), 1, initializer)) {
+            registry.get("../escape");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, created.get());
+            return;
+        }
+        throw new AssertionError("An invalid name was accepted.");
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.model.DailyTask;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskEvent;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@link TaskStatistics} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class TaskStatisticsTest {
+
+    /**
+     * The first day of the tests.
+     */
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ensures the streaks and rates of a repeating task follow the days on which it was finished.
+     */
+    @Test
+    public void testStreaks() {
+        TaskStatistics stats = new TaskStatistics(ZoneOffset.UTC);
+        DailyTask daily = new DailyTask("Stand-up");
+        stats.taskAdded(daily, at(0, 8));
+
+        // finished on days 0, 1 and 2, then on days 4 and 5
+        for (int day : new int[]{0, 1, 2, 4, 5}) {
+            stats.stateChanged(daily.getId(), true, at(day, 9));
+        }
+        // finishing it again the same day does not count for the streak
+        stats.stateChanged(daily.getId(), false, at(5, 10));
+        stats.stateChanged(daily.getId(), true, at(5, 11));
+
+        CompletionStatistics result = stats.getStatistics(daily.getId(), DAY.plusDays(6));
+        assertEquals(6, result.getCompletions());
+        assertEquals(2, result.getCurrentStreak());
+        assertEquals(3, result.getLongestStreak());
+        assertEquals(5.0 / 7, result.getCompletionRate(), 1e-9);
+        // an hour after it was added, nine hours after midnight on the next days, and an hour after it was reopened
+        assertEquals(Duration.ofHours(1 + 4 * 9 + 1).dividedBy(6), result.getAverageTimeToDone());
+
+        // the streak is broken once a day is missed
+        assertEquals(0, stats.getStatistics(daily.getId(), DAY.plusDays(7)).getCurrentStreak());
+        assertNull(stats.getStatistics(new Task("Unknown").getId(), DAY));
+    }
+
+    /**
+     * Ensures the statistics of a list are summed from the statistics of its tasks.
+     */
+    @Test
+    public void testListStatistics() {
+        TaskStatistics stats = new TaskStatistics(ZoneOffset.UTC);
+        Task report = new Task("Report");
+        Task review = new Task("Review");
+        DailyTask daily = new DailyTask("Mail");
+        stats.taskAdded(report, at(0, 8));
+        stats.taskAdded(review, at(0, 8));
+        stats.taskAdded(daily, at(0, 8));
+
+        stats.stateChanged(report.getId(), true, at(1, 8));
+        stats.stateChanged(daily.getId(), true, at(0, 10));
+        stats.stateChanged(daily.getId(), true, at(1, 12));
+
+        CompletionStatistics result = stats.getListStatistics(DAY.plusDays(1));
+        assertEquals(3, result.getCompletions());
+        // report done, review not, mail done both days
+        assertEquals(3.0 / 4, result.getCompletionRate(), 1e-9);
+        assertEquals(2, result.getCurrentStreak());
+        assertEquals(Duration.ofHours(24 + 2 + 12).dividedBy(3), result.getAverageTimeToDone());
+    }
+
+    /**
+     * Ensures the statistics are saved with the snapshots and updated with the events recorded since.
+     */
+    @Test
+    public void testPersistence() throws IOException, SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Path directory = folder.getRoot().toPath();
+        Task task = new Task("Task");
+        DailyTask daily = new DailyTask("Daily");
+        TaskSet set = new TaskSet();
+        set.addTask(task);
+        set.addTask(daily);
+
+        try (TaskJournal journal = new TaskJournal(directory, 2)) {
+            journal.record(set, TaskEvent.added(task), TaskEvent.added(daily));
+            set.getTask(daily.getId()).setDone(true);
+            journal.record(set, TaskEvent.stateChanged(daily.getId(), true));
+            set.getTask(task.getId()).setDone(true);
+            journal.record(set, TaskEvent.stateChanged(task.getId(), true));
+            // a snapshot was taken, the following event is only in the last segment
+            set.getTask(task.getId()).setDone(false);
+            journal.record(set, TaskEvent.stateChanged(task.getId(), false));
+            assertEquals(2, journal.getStatistics().getListStatistics().getCompletions());
+        }
+
+        try (TaskJournal journal = new TaskJournal(directory, 2)) {
+            journal.load();
+            TaskStatistics stats = journal.getStatistics();
+            assertEquals(2, stats.getListStatistics().getCompletions());
+            assertEquals(1, stats.getStatistics(daily.getId()).getCurrentStreak());
+            assertEquals(0, stats.getStatistics(task.getId()).getCompletionRate(), 0);
+        }
+
+        // without the saved statistics, they are rebuilt from the snapshot, as the events it includes were deleted
+        Files.delete(directory.resolve("stats.ser"));
+        try (TaskJournal journal = new TaskJournal(directory, 2)) {
+            journal.load();
+            CompletionStatistics stats = journal.getStatistics().getStatistics(daily.getId());
+            assertNotNull(stats);
+            assertEquals(0, stats.getCompletions());
+            assertNotNull(journal.getStatistics().getStatistics(task.getId()));
+        }
+    }
+
+    /**
+     * Returns a time of a day of the tests.
+     *
+     * @param day  the number of days after {@link #DAY}
+     * @param hour the hour of the day
+     * @return the time in milliseconds since the epoch
+     */
+    private static long at(int day, int hour) {
+        return DAY.plusDays(day).atTime(hour, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.core.managers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link PreferencesOutputStream} and {@link PreferencesInputStream} classes.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class PreferencesOutputStreamTest {
+
+    private static final String KEY = "value";
+
+    private Preferences prefs;
+
+    @Before
+    public void createNode() {
+        prefs = Preferences.userRoot().node(PreferencesOutputStreamTest.class.getName());
+    }
+
+    @After
+    public void removeNode() throws BackingStoreException {
+        prefs.removeNode();
+    }
+
+    /**
+     * Ensures a value is only replaced once the stream is committed.
+     */
+    @Test
+    public void testCommit() throws IOException, BackingStoreException {
+        assertFalse(PreferencesInputStream.exists(prefs, KEY));
+
+        byte[] first = bytes(3 * PreferencesOutputStream.CHUNK_SIZE, 1);
+        write(first, true);
+        assertTrue(PreferencesInputStream.exists(prefs, KEY));
+        assertArrayEquals(first, read());
+        int keys = prefs.keys().length;
+
+        // a stream closed without being committed leaves the previous value
+        write(bytes(2 * PreferencesOutputStream.CHUNK_SIZE + 1, 2), false);
+        assertArrayEquals(first, read());
+        assertEquals(keys, prefs.keys().length);
+
+        // the chunks of the previous value are removed once the new one is committed
+        byte[] second = bytes(10, 3);
+        write(second, true);
+        assertArrayEquals(second, read());
+        assertEquals(2, prefs.keys().length);
+    }
+
+    /**
+     * Ensures the chunks written before generations were introduced are read, and replaced.
+     */
+    @Test
+    public void testWithoutGeneration() throws IOException, BackingStoreException {
+        byte[] legacy = bytes(10, 4);
+        prefs.put(PreferencesOutputStream.chunkKey(KEY, 0), Base64.getEncoder().encodeToString(legacy));
+        assertTrue(PreferencesInputStream.exists(prefs, KEY));
+        assertArrayEquals(legacy, read());
+
+        byte[] value = bytes(10, 5);
+        write(value, true);
+        assertArrayEquals(value, read());
+        assertNull(prefs.get(PreferencesOutputStream.chunkKey(KEY, 0), null));
+    }
+
+    private void write(byte[] bytes, boolean commit) throws IOException {
+        try (PreferencesOutputStream out = new PreferencesOutputStream(prefs, KEY)) {
+            out.write(bytes);
+            if (commit) {
+                out.commit();
+            }
+        }
+    }
+
+    private byte[] read() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new PreferencesInputStream(prefs, KEY)) {
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
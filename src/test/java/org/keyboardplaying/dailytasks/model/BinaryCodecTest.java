@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link BinaryCodec} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class BinaryCodecTest {
+
+    /**
+     * Ensures a set is restored with all of its features, whatever the storage.
+     */
+    @Test
+    public void testSetRoundTrip() throws IOException, TaskNotFoundException {
+        Instant dueDate = Instant.parse("2026-10-18T12:00:00Z");
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet original = new TaskSet(storage);
+            Task parent = new Task("Release");
+            Task child = new Task("Tag the release", true);
+            Task daily = new DailyTask("Check the build", true);
+            Task yearly = new RecurringTask("Renew the certificates", Recurrence.cron("0 0 1 1 *"));
+            Task unicode = new Task("Relire le café ☕");
+            original.addTask(parent);
+            original.addSubtask(parent.getId(), child);
+            original.addTask(daily);
+            original.addTask(yearly);
+            original.addTask(unicode);
+            original.updateTaskState(yearly.getId(), true);
+            original.setDueDate(parent.getId(), dueDate);
+            original.addTag(unicode.getId(), "fr");
+            original.addTag(unicode.getId(), "food");
+            if (storage == TaskSet.Storage.PRIORITY) {
+                original.setPriority(unicode.getId(), -2);
+                original.setPriority(yearly.getId(), 5);
+            }
+
+            TaskSet result = decode(encode(original));
+
+            assertSame(storage, result.getStorage());
+            assertEquals(original.size(), result.size());
+            Iterator<Task> iterL = original.iterator();
+            for (Task right : result) {
+                Task left = iterL.next();
+                assertSame(left.getClass(), right.getClass());
+                assertEquals(left.getId(), right.getId());
+                assertEquals(left.getTodo(), right.getTodo());
+                assertEquals(left.getDueDate(), right.getDueDate());
+                if (!(left instanceof DailyTask)) {
+                    assertEquals(left.isDone(), right.isDone());
+                    assertEquals(left.getCompletionDate(), right.getCompletionDate());
+                }
+                assertEquals(original.getParentId(left.getId()), result.getParentId(right.getId()));
+                assertEquals(original.getTags(left.getId()), result.getTags(right.getId()));
+                assertEquals(original.getPriority(left.getId()), result.getPriority(right.getId()));
+            }
+            // the state of a daily task is not saved
+            assertFalse(result.getTask(daily.getId()).isDone());
+            assertEquals(yearly.getRecurrence().toString(), result.getTask(yearly.getId()).getRecurrence().toString());
+        }
+    }
+
+    /**
+     * Tests the encoding of single tasks.
+     */
+    @Test
+    public void testTaskRoundTrip() throws IOException {
+        Task task = new Task("Some label", true);
+        task.setDueDate(Instant.parse("2026-10-18T12:00:00Z"));
+        Task result = decode(encode(task));
+        assertEquals(task, result);
+        assertEquals(task.getTodo(), result.getTodo());
+        assertTrue(result.isDone());
+        assertEquals(task.getDueDate(), result.getDueDate());
+        assertEquals(task.getCompletionDate(), result.getCompletionDate());
+
+        Task daily = new DailyTask("Daily", true);
+        result = decode(encode(daily));
+        assertTrue(result instanceof DailyTask);
+        assertFalse(result.isDone());
+        assertNull(result.getCompletionDate());
+
+        // the labels are shared with the existing tasks
+        assertSame(daily.getTodo(), result.getTodo());
+        // the IDs are not allocated again
+        assertTrue(new Task("New task").getId() > result.getId());
+    }
+
+    /**
+     * Ensures events are restored, and that an event which does not carry a task takes a few bytes.
+     */
+    @Test
+    public void testEventRoundTrip() throws IOException {
+        Task task = new Task("Some label");
+        long parentId = new Task("Parent").getId();
+        for (TaskEvent event : new TaskEvent[]{TaskEvent.added(task, parentId), TaskEvent.added(task),
+                TaskEvent.removed(task.getId()), TaskEvent.stateChanged(task.getId(), true),
+                TaskEvent.allStatesChanged(false)}) {
+            TaskEvent result = decode(encode(event));
+            assertEquals(event.getType(), result.getType());
+            assertEquals(event.getTime(), result.getTime());
+            assertEquals(event.getTaskId(), result.getTaskId());
+            assertEquals(event.getParentId(), result.getParentId());
+            assertEquals(event.isDone(), result.isDone());
+            assertEquals(event.getTask(), result.getTask());
+            if (event.getTask() != null) {
+                assertEquals(task.getTodo(), result.getTask().getTodo());
+            }
+        }
+
+        byte[] toggle = encode(TaskEvent.stateChanged(task.getId(), true));
+        assertTrue(toggle.length + " bytes", toggle.length <= 32);
+        assertTrue(toggle.length * 8 < serialize(TaskEvent.stateChanged(task.getId(), true)).length);
+    }
+
+    /**
+     * Ensures only the known types of tasks are encoded, as the fields of other subclasses would be lost.
+     */
+    @Test
+    public void testSupports() {
+        assertTrue(BinaryCodec.supports(new TaskSet()));
+        assertTrue(BinaryCodec.supports(new Task("Task")));
+        assertTrue(BinaryCodec.supports(new DailyTask("Daily")));
+        assertTrue(BinaryCodec.supports(new RecurringTask("Weekly", Recurrence.weekdays())));
+        assertFalse(BinaryCodec.supports(new Task("Subclass") {
+            private static final long serialVersionUID = 1L;
+        }));
+        assertFalse(BinaryCodec.supports("Task"));
+        assertFalse(BinaryCodec.supports(null));
+    }
+
+    /**
+     * Ensures corrupted data is rejected.
+     */
+    @Test
+    public void testCorruptedData() throws IOException {
+        TaskSet set = new TaskSet();
+        set.addTask(new Task("Task"));
+        byte[] data = encode(set);
+        assertTrue(BinaryCodec.isEncoded(data));
+
+        try {
+            decode(Arrays.copyOf(data, data.length - 1));
+            fail("Truncated data should not be read");
+        } catch (EOFException e) {
+            // expected
+        }
+
+        data[2]++;
+        try {
+            decode(data);
+            fail("An unknown version should not be read");
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the size and speed of the binary format with the Java serialization.
+     */
+    @Test
+    public void testCompactness() throws IOException, ClassNotFoundException {
+        final int size = 100_000;
+        TaskSet set = new TaskSet();
+        for (int i = 0; i < size; i++) {
+            Task task = i % 10 == 0 ? new DailyTask("Daily task #" + i) : new Task("Task #" + i, i % 3 == 0);
+            set.addTask(task);
+        }
+
+        // warm up both paths before measuring them
+        byte[] java = null;
+        byte[] binary = null;
+        for (int i = 0; i < 3; i++) {
+            java = serialize(set);
+            binary = encode(set);
+            deserialize(java);
+            decode(binary);
+        }
+
+        long start = System.nanoTime();
+        serialize(set);
+        long javaWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        deserialize(java);
+        long javaRead = System.nanoTime() - start;
+        start = System.nanoTime();
+        encode(set);
+        long binaryWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        TaskSet result = decode(binary);
+        long binaryRead = System.nanoTime() - start;
+
+        assertEquals(size, result.size());
+        Logger.getLogger(getClass().getName()).info(String.format(
+                "%,d tasks: Java serialization writes %,d bytes in %,d ns and reads them in %,d ns, "
+                        + "binary format writes %,d bytes in %,d ns and reads them in %,d ns",
+                size, java.length, javaWrite, javaRead, binary.length, binaryWrite, binaryRead));
+
+        assertTrue(String.format("%,d bytes in binary format, %,d with Java serialization", binary.length,
+                java.length), binary.length * 2 < java.length);
+    }
+
+    private static byte[] encode(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.encode(object, out);
+        return out.toByteArray();
+    }
+
+    private static <T> T decode(byte[] data) throws IOException {
+        return BinaryCodec.decode(new ByteArrayInputStream(data));
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(object);
+        }
+        return out.toByteArray();
+    }
+
+    private static Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link JsonCodec} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class JsonCodecTest {
+
+    /**
+     * Ensures a set is restored with all of its features, whatever the storage.
+     */
+    @Test
+    public void testSetRoundTrip() throws IOException, TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet original = new TaskSet(storage);
+            Task parent = new Task("Release");
+            Task child = new Task("Tag the release", true);
+            Task daily = new DailyTask("Check the build", true);
+            Task yearly = new RecurringTask("Renew the certificates", Recurrence.cron("0 0 1 1 *"));
+            original.addTask(parent);
+            original.addSubtask(parent.getId(), child);
+            original.addTask(daily);
+            original.addTask(yearly);
+            original.updateTaskState(yearly.getId(), true);
+            original.setDueDate(parent.getId(), Instant.parse("2026-10-18T12:00:00Z"));
+            original.addTag(child.getId(), "git");
+            if (storage == TaskSet.Storage.PRIORITY) {
+                original.setPriority(yearly.getId(), 5);
+            }
+
+            TaskSet result = decode(encode(original));
+
+            assertSame(storage, result.getStorage());
+            assertEquals(original.size(), result.size());
+            Iterator<Task> iterL = original.iterator();
+            for (Task right : result) {
+                Task left = iterL.next();
+                assertSame(left.getClass(), right.getClass());
+                assertEquals(left.getId(), right.getId());
+                assertEquals(left.getTodo(), right.getTodo());
+                assertEquals(left.getDueDate(), right.getDueDate());
+                if (!(left instanceof DailyTask)) {
+                    assertEquals(left.isDone(), right.isDone());
+                    assertEquals(left.getCompletionDate(), right.getCompletionDate());
+                }
+                assertEquals(original.getParentId(left.getId()), result.getParentId(right.getId()));
+                assertEquals(original.getTags(left.getId()), result.getTags(right.getId()));
+                assertEquals(original.getPriority(left.getId()), result.getPriority(right.getId()));
+            }
+            assertFalse(result.getTask(daily.getId()).isDone());
+        }
+    }
+
+    /**
+     * Ensures the labels are escaped and read back unchanged.
+     */
+    @Test
+    public void testEscaping() throws IOException {
+        String label = "Say \"hello\"\\\n\tto Zoë ☕ \u0001";
+        Task task = new Task(label);
+        byte[] data = encode(task);
+        String json = new String(data, StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{"));
+        assertTrue(json.contains("\\\"hello\\\"\\\\\\u000a\\u0009to Zoë ☕ \\u0001"));
+
+        Task result = decode(data);
+        assertEquals(label, result.getTodo());
+        assertEquals(task.getId(), result.getId());
+        assertNull(result.getDueDate());
+    }
+
+    /**
+     * Ensures invalid documents are rejected.
+     */
+    @Test
+    public void testInvalidDocuments() throws IOException {
+        String[] documents = {
+                "",
+                "{\"version\":1,\"task\":{\"id\":1,\"type\":\"task\",\"todo\":\"Task\",\"done\":false}",
+                "{\"version\":2,\"task\":{\"id\":1,\"type\":\"task\",\"todo\":\"Task\",\"done\":false}}",
+                "{\"version\":1,\"task\":{\"id\":1,\"type\":\"unknown\",\"todo\":\"Task\",\"done\":false}}",
+                "{\"version\":1,\"task\":{\"id\":\"1\",\"type\":\"task\",\"todo\":\"Task\",\"done\":false}}",
+                "{\"version\":1,\"storage\":\"LINKED\",\"tasks\":[],\"links\":[[1]]}",
+        };
+        for (String document : documents) {
+            try {
+                decode(document.getBytes(StandardCharsets.UTF_8));
+                fail("Should not be read: " + document);
+            } catch (StreamCorruptedException e) {
+                // expected
+            }
+        }
+    }
+
+    private static byte[] encode(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonCodec.encode(object, out);
+        return out.toByteArray();
+    }
+
+    private static <T> T decode(byte[] data) throws IOException {
+        return JsonCodec.decode(new ByteArrayInputStream(data));
+    }
+}
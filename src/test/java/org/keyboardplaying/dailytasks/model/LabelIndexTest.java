@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link LabelIndex} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class LabelIndexTest {
+
+    /**
+     * Tests the queries on a small set, and ensures the index follows the changes of the set.
+     */
+    @Test
+    public void testQueries() throws TaskNotFoundException {
+        for (boolean trigrams : new boolean[]{false, true}) {
+            TaskSet set = new TaskSet();
+            Task backups = new Task("Check backups");
+            Task alerts = new DailyTask("Review alerts, then check the logs");
+            Task mail = new Task("Répondre aux e-mails");
+            set.addTask(backups);
+            set.addTask(alerts);
+
+            LabelIndex index = new LabelIndex(set, trigrams);
+            set.addTask(mail);
+
+            assertIds(index.search("check"), backups, alerts);
+            assertIds(index.search("CHECK Backups"), backups);
+            assertIds(index.search("check mail"));
+            assertIds(index.search("repondre"), mail);
+            assertIds(index.search("e mails"), mail);
+
+            assertIds(index.searchSubstring("ck"), backups, alerts);
+            assertIds(index.searchSubstring("back chec"), backups);
+            assertIds(index.searchSubstring("pond"), mail);
+            assertIds(index.searchSubstring("xyz"));
+
+            assertIds(index.searchApproximate("chek", 1), backups, alerts);
+            assertIds(index.searchApproximate("reveiw alrets", 2), alerts);
+            assertIds(index.searchApproximate("reveiw alrets", 1));
+
+            set.removeTask(backups.getId());
+            assertIds(index.search("check"), alerts);
+            assertIds(index.searchSubstring("back"));
+            assertEquals(10, index.getVocabularySize());
+
+            index.close();
+            set.addTask(new Task("Check the mail"));
+            assertIds(index.search("check"), alerts);
+        }
+    }
+
+    /**
+     * Tests the distance computation.
+     */
+    @Test
+    public void testDistance() {
+        assertEquals(0, LabelIndex.distance("check", "check", 2));
+        assertEquals(1, LabelIndex.distance("check", "chek", 2));
+        assertEquals(2, LabelIndex.distance("alerts", "alrets", 2));
+        assertEquals(3, LabelIndex.distance("backups", "alerts", 2));
+    }
+
+    /**
+     * Ensures each kind of query finds the tasks of a random vocabulary it was built from.
+     */
+    @Test
+    public void testRandomQueries() {
+        Random random = new Random(42);
+        String[] vocabulary = new String[200];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = TaskSetBenchmark.randomWord(random);
+        }
+        TaskSet set = new TaskSet();
+        List<String[]> labels = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String[] words = {TaskSetBenchmark.pick(vocabulary, random), TaskSetBenchmark.pick(vocabulary, random),
+                    TaskSetBenchmark.pick(vocabulary, random)};
+            set.addTask(new Task(words[0] + " " + words[1] + " " + words[2]));
+            if (i % 100 == 0) {
+                labels.add(words);
+            }
+        }
+        LabelIndex index = new LabelIndex(set, true);
+
+        for (String[] label : labels) {
+            assertTrue(index.search(label[0] + " " + label[1]).length > 0);
+            assertTrue(index.searchSubstring(label[0].substring(1, 5) + " " + label[2].substring(0, 4)).length > 0);
+            assertTrue(index.searchApproximate(TaskSetBenchmark.typo(label[1]) + " " + label[2], 1).length > 0);
+        }
+    }
+
+    private static void assertIds(long[] actual, Task... expected) {
+        long[] ids = new long[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            ids[i] = expected[i].getId();
+        }
+        Arrays.sort(ids);
+        assertArrayEquals(ids, actual);
+    }
+}
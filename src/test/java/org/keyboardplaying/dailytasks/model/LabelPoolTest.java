@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link LabelPool} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class LabelPoolTest {
+
+    /**
+     * Ensures equal labels share one instance, and that the statistics account for it.
+     */
+    @Test
+    public void testIntern() {
+        String label = new String("Check backups");
+        String copy = new String("Check backups");
+        assertNotSame(label, copy);
+
+        long hits = LabelPool.getHits();
+        long saved = LabelPool.getBytesSaved();
+        String pooled = LabelPool.intern(label);
+        assertSame(pooled, LabelPool.intern(copy));
+        assertSame(pooled, new Task(new String("Check backups")).getTodo());
+        assertSame(pooled, new DailyTask(new String("Check backups")).getTodo());
+
+        assertEquals(hits + 3, LabelPool.getHits());
+        assertTrue(LabelPool.getBytesSaved() >= saved + 3 * "Check backups".length());
+        assertTrue(LabelPool.getHitRate() > 0);
+        assertNull(LabelPool.intern(null));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.util.Serializer;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link Recurrence} class and the occurrences of repeating tasks.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class RecurrenceTest {
+
+    /**
+     * A Sunday.
+     */
+    private static final LocalDateTime SUNDAY = LocalDateTime.of(2026, 10, 18, 12, 0);
+
+    /**
+     * Ensures the predefined rules occur when expected.
+     */
+    @Test
+    public void testPredefinedRules() {
+        assertEquals(LocalDateTime.of(2026, 10, 19, 0, 0), Recurrence.daily().next(SUNDAY));
+        assertEquals(LocalDateTime.of(2026, 10, 19, 0, 0), Recurrence.weekdays().next(SUNDAY));
+        assertEquals(LocalDateTime.of(2026, 10, 26, 0, 0),
+                Recurrence.weekdays().next(LocalDateTime.of(2026, 10, 23, 0, 0)));
+        assertEquals(LocalDateTime.of(2026, 10, 21, 0, 0), Recurrence.weekly(DayOfWeek.WEDNESDAY).next(SUNDAY));
+        assertEquals(LocalDateTime.of(2026, 10, 25, 7, 30),
+                Recurrence.weekly(DayOfWeek.SUNDAY).at(LocalTime.of(7, 30)).next(SUNDAY));
+        assertEquals(LocalDateTime.of(2026, 10, 18, 18, 0), Recurrence.daily().at(LocalTime.of(18, 0)).next(SUNDAY));
+        // months with fewer than 31 days are skipped
+        assertEquals(LocalDateTime.of(2026, 12, 31, 0, 0), Recurrence.monthly(31).next(SUNDAY.plusDays(14)));
+        assertEquals(LocalDateTime.of(2028, 2, 29, 0, 0), Recurrence.cron("0 0 29 2 *").next(SUNDAY));
+        // impossible rules do not occur
+        assertNull(Recurrence.cron("0 0 30 FEB *").next(SUNDAY));
+    }
+
+    /**
+     * Ensures cron expressions are parsed and formatted as cron does.
+     */
+    @Test
+    public void testCronExpressions() {
+        Recurrence rule = Recurrence.cron("*/15 9-17 * * mon-fri");
+        assertEquals("0,15,30,45 9-17 * * 1-5", rule.toString());
+        assertEquals(rule, Recurrence.cron(rule.toString()));
+        assertEquals(Recurrence.cron("0 0 * * 0"), Recurrence.cron("0 0 * * 7"));
+        assertEquals(Recurrence.weekdays(), Recurrence.cron("0 0 * * 1,2,3,4,5"));
+
+        List<LocalDateTime> occurrences = new ArrayList<>();
+        for (LocalDateTime occurrence : rule.between(LocalDateTime.of(2026, 10, 16, 17, 0), SUNDAY.plusDays(1))) {
+            occurrences.add(occurrence);
+        }
+        // Friday afternoon, then Monday morning
+        assertEquals(Arrays.asList(LocalDateTime.of(2026, 10, 16, 17, 0), LocalDateTime.of(2026, 10, 16, 17, 15),
+                LocalDateTime.of(2026, 10, 16, 17, 30), LocalDateTime.of(2026, 10, 16, 17, 45),
+                LocalDateTime.of(2026, 10, 19, 9, 0), LocalDateTime.of(2026, 10, 19, 9, 15),
+                LocalDateTime.of(2026, 10, 19, 9, 30), LocalDateTime.of(2026, 10, 19, 9, 45)),
+                occurrences.subList(0, 8));
+
+        // either the day of month or the day of week when both are restricted
+        Recurrence firstOrMonday = Recurrence.cron("30 8 1 * MON");
+        assertEquals(LocalDateTime.of(2026, 10, 19, 8, 30), firstOrMonday.next(SUNDAY));
+        assertEquals(LocalDateTime.of(2026, 11, 1, 8, 30), firstOrMonday.next(LocalDateTime.of(2026, 10, 26, 9, 0)));
+
+        for (String invalid : new String[]{"0 0 * *", "60 * * * *", "0 0 0 * *", "0 0 * 13 *", "0 0 * * 8",
+                "5-1 * * * *", "x * * * *"}) {
+            try {
+                Recurrence.cron(invalid);
+                fail(invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Ensures the occurrences of the repeating tasks of a set are listed in chronological order, whatever the storage.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testOccurrences() throws TaskNotFoundException {
+        LocalDate today = LocalDate.now();
+        LocalDateTime from = today.minusDays(1).atStartOfDay();
+        LocalDateTime to = today.plusDays(2).atStartOfDay();
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            RecurringTask standUp = new RecurringTask("Stand-up", Recurrence.daily().at(LocalTime.of(9, 30)));
+            RecurringTask backup = new RecurringTask("Backup", Recurrence.cron("0 0,12 * * *"));
+            set.addTask(standUp);
+            set.addTask(new Task("Once"));
+            set.addTask(backup);
+            set.addTask(new DailyTask("Daily"));
+
+            List<String> occurrences = new ArrayList<>();
+            for (Iterator<Occurrence> iter = set.getOccurrences(from, to); iter.hasNext(); ) {
+                Occurrence occurrence = iter.next();
+                assertFalse(occurrence.isDone());
+                occurrences.add(occurrence.getTask().getTodo() + " " + occurrence.getStart().toLocalTime());
+            }
+            List<String> day = Arrays.asList("Backup 00:00", "Daily 00:00", "Stand-up 09:30", "Backup 12:00");
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                expected.addAll(day);
+            }
+            assertEquals(storage.name(), expected, occurrences);
+
+            // only the current occurrence of a finished task is finished
+            set.updateTaskState(backup.getId(), true);
+            int done = 0;
+            for (Iterator<Occurrence> iter = set.getOccurrences(from, to); iter.hasNext(); ) {
+                Occurrence occurrence = iter.next();
+                if (occurrence.isDone()) {
+                    assertEquals(backup, occurrence.getTask());
+                    assertFalse(occurrence.getStart().isAfter(LocalDateTime.now()));
+                    done++;
+                }
+            }
+            assertEquals(1, done);
+            assertEquals(backup.getRecurrence(), set.getTask(backup.getId()).getRecurrence());
+
+            set.removeTask(backup.getId());
+            set.removeTask(standUp.getId());
+            Iterator<Occurrence> iter = set.snapshot().getOccurrences(from, to);
+            assertEquals("Daily", iter.next().getTask().getTodo());
+        }
+    }
+
+    /**
+     * Ensures a finished repeating task is restored finished unless a new occurrence started since.
+     *
+     * @throws SerializationException   if the task cannot be serialized
+     * @throws DeserializationException if the task cannot be deserialized
+     */
+    @Test
+    public void testStateRestoration() throws SerializationException, DeserializationException {
+        Recurrence yearly = Recurrence.cron("0 0 1 1 *");
+        long now = System.currentTimeMillis();
+        RecurringTask finished = new RecurringTask(1L, "Finished", true, yearly, now);
+        RecurringTask stale = new RecurringTask(2L, "Stale", true, yearly,
+                LocalDate.now().minusYears(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+
+        RecurringTask restored = Serializer.deserialize(Serializer.serialize(finished));
+        assertTrue(restored.isDone());
+        assertEquals(now, restored.getCompletionTime());
+        assertEquals(yearly, restored.getRecurrence());
+        restored = Serializer.deserialize(Serializer.serialize(stale));
+        assertFalse(restored.isDone());
+
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        set.addTask(finished);
+        set.addTask(stale);
+        TaskSet result = Serializer.deserialize(Serializer.serialize(set));
+        Iterator<Task> iter = result.iterator();
+        assertTrue(iter.next().isDone());
+        assertFalse(iter.next().isDone());
+    }
+
+    /**
+     * Ensures viewing a period costs the occurrences in the period only, however many repeating tasks there are.
+     */
+    @Test
+    public void testLazyExpansion() {
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        for (int i = 0; i < 10_000; i++) {
+            // a year of occurrences every five minutes for each task
+            set.addTask(new RecurringTask("Task " + i, Recurrence.cron((i % 5) + "/5 * * * *")));
+        }
+
+        LocalDateTime from = SUNDAY.plusYears(10);
+        Iterator<Occurrence> iter = set.getOccurrences(from, from.plusYears(1));
+        // the first screen
+        for (int i = 0; i < 50; i++) {
+            Occurrence occurrence = iter.next();
+            assertEquals(from, occurrence.getStart());
+        }
+        assertTrue(iter.hasNext());
+
+        int count = 0;
+        for (iter = set.getOccurrences(from, from.plusMinutes(5)); iter.hasNext(); iter.next()) {
+            count++;
+        }
+        assertEquals(10_000, count);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the tags of the {@link TaskSet} class, maintained by {@link TagIndex}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TagIndexTest {
+
+    /**
+     * Ensures filters select the tasks bearing the right tags in the right state.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testFilters() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task backup = new Task("Check backups");
+            Task deploy = new DailyTask("Deploy");
+            Task report = new Task("Write report");
+            set.addTask(backup);
+            set.addTask(deploy);
+            set.addTask(report);
+            assertTrue(set.addTag(backup.getId(), "ops"));
+            assertTrue(set.addTag(backup.getId(), "daily"));
+            assertFalse(set.addTag(backup.getId(), "daily"));
+            set.addTag(deploy.getId(), "ops");
+            set.addTag(deploy.getId(), "daily");
+            set.addTag(report.getId(), "writing");
+
+            TaskFilter opsDailyTodo = TaskFilter.tag("ops").and(TaskFilter.tag("daily")).andNot(TaskFilter.done());
+            assertEquals("((\"ops\" AND \"daily\") AND NOT DONE)", opsDailyTodo.toString());
+            assertEquals(2, set.count(opsDailyTodo));
+
+            set.updateTaskState(backup.getId(), true);
+            assertArrayEquals(new long[]{deploy.getId()}, set.filter(opsDailyTodo));
+            assertEquals(1, set.count(TaskFilter.done()));
+            assertEquals(2, set.count(TaskFilter.remaining()));
+            assertEquals(2, set.count(TaskFilter.tag("writing").or(TaskFilter.done())));
+            assertEquals(0, set.count(TaskFilter.tag("unknown")));
+            assertEquals(3, set.count(TaskFilter.all()));
+
+            assertEquals(Arrays.asList("daily", "ops"), Arrays.asList(set.getTags(deploy.getId()).toArray()));
+            assertEquals(Arrays.asList("daily", "ops", "writing"), Arrays.asList(set.getTagNames().toArray()));
+
+            // the tags of a removed task are dropped, and its ordinal reused
+            set.removeTask(report);
+            assertEquals(Arrays.asList("daily", "ops"), Arrays.asList(set.getTagNames().toArray()));
+            Task other = new Task("Other");
+            set.addTask(other);
+            assertEquals(Collections.emptySet(), set.getTags(other.getId()));
+            assertEquals(0, set.count(TaskFilter.tag("writing")));
+
+            assertTrue(set.removeTag(deploy.getId(), "ops"));
+            assertFalse(set.removeTag(deploy.getId(), "ops"));
+            assertEquals(0, set.count(opsDailyTodo));
+        }
+    }
+
+    /**
+     * Ensures snapshots keep the tags of the set as they were when taken.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testSnapshots() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        for (int i = 0; i < 10_000; i++) {
+            Task task = new Task("Task " + i);
+            set.addTask(task);
+            set.addTag(task.getId(), i % 2 == 0 ? "even" : "odd");
+        }
+
+        TaskSet snapshot = set.snapshot();
+        long first = set.iterator().next().getId();
+        set.removeTag(first, "even");
+        set.addTag(first, "odd");
+
+        assertEquals(5_000, snapshot.count(TaskFilter.tag("even")));
+        assertEquals(Collections.singleton("even"), snapshot.getTags(first));
+        assertEquals(4_999, set.count(TaskFilter.tag("even")));
+        assertEquals(Collections.singleton("odd"), set.getTags(first));
+    }
+
+    /**
+     * Ensures the operations of {@link SparseBitmap} match the ones of {@link BitSet}.
+     */
+    @Test
+    public void testBitmaps() {
+        Random random = new Random(42);
+        SparseBitmap left = new SparseBitmap();
+        SparseBitmap right = new SparseBitmap();
+        BitSet leftBits = new BitSet();
+        BitSet rightBits = new BitSet();
+        for (int i = 0; i < 20_000; i++) {
+            // clustered bits, leaving some blocks empty
+            int ordinal = random.nextInt(50) * 4096 + random.nextInt(300);
+            if (random.nextBoolean()) {
+                left.set(ordinal);
+                leftBits.set(ordinal);
+            } else {
+                right.set(ordinal);
+                rightBits.set(ordinal);
+            }
+        }
+        SparseBitmap copy = left.copy();
+        left.clear(leftBits.nextSetBit(0));
+        leftBits.clear(leftBits.nextSetBit(0));
+
+        assertBits(leftBits, left);
+        BitSet expected = (BitSet) leftBits.clone();
+        expected.and(rightBits);
+        assertBits(expected, left.and(right));
+        expected = (BitSet) leftBits.clone();
+        expected.or(rightBits);
+        assertBits(expected, left.or(right));
+        expected = (BitSet) leftBits.clone();
+        expected.andNot(rightBits);
+        assertBits(expected, left.andNot(right));
+        assertEquals(leftBits.cardinality() + 1, copy.cardinality());
+    }
+
+    /**
+     * Ensures a filter combining tags and states matches the same tasks as a scan of the set.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testFilterCount() throws TaskNotFoundException {
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        String[] tags = {"ops", "daily", "dev", "home", "urgent"};
+        Random random = new Random(42);
+        int expected = 0;
+        for (int i = 0; i < 10_000; i++) {
+            Task task = new Task("Task " + i, random.nextInt(4) == 0);
+            set.addTask(task);
+            boolean[] tagged = new boolean[tags.length];
+            for (int t = 0; t < tags.length; t++) {
+                if (random.nextInt(4) == 0) {
+                    set.addTag(task.getId(), tags[t]);
+                    tagged[t] = true;
+                }
+            }
+            if (tagged[0] && tagged[1] && !task.isDone() && !tagged[3] && !tagged[4]) {
+                expected++;
+            }
+        }
+
+        TaskFilter filter = TaskFilter.tag("ops").and(TaskFilter.tag("daily")).andNot(TaskFilter.done())
+                .andNot(TaskFilter.tag("home").or(TaskFilter.tag("urgent")));
+        assertTrue(expected > 0);
+        assertEquals(expected, set.count(filter));
+        assertEquals(expected, set.filter(filter).length);
+    }
+
+    /**
+     * Asserts a bitmap has the expected bits.
+     *
+     * @param expected the expected bits
+     * @param actual   the bitmap
+     */
+    private static void assertBits(BitSet expected, SparseBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        for (int i = expected.nextSetBit(0), j = actual.nextSetBit(0); i >= 0 || j >= 0;
+             i = expected.nextSetBit(i + 1), j = actual.nextSetBit(j + 1)) {
+            assertEquals(i, j);
+            assertTrue(actual.get(j));
+        }
+    }
+}
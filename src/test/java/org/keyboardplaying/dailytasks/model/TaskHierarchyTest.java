@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the subtasks of the {@link TaskSet} class, maintained by {@link TaskHierarchy}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TaskHierarchyTest {
+
+    /**
+     * Ensures the counts of leaves and the derived states follow the changes of the subtasks.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testRollUp() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task release = new Task("Release");
+            Task backend = new Task("Back-end");
+            Task api = new Task("Deploy the API");
+            Task worker = new Task("Deploy the worker");
+            Task frontend = new Task("Deploy the front-end");
+            Task other = new Task("Other");
+            set.addTask(release);
+            set.addTask(other);
+            set.addSubtask(release.getId(), backend);
+            set.addSubtask(backend.getId(), api);
+            set.addSubtask(backend.getId(), worker);
+            set.addSubtask(release.getId(), frontend);
+
+            assertEquals(release.getId(), set.getParentId(backend.getId()));
+            assertEquals(0, set.getParentId(release.getId()));
+            assertEquals(Arrays.asList(api, worker), set.getSubtasks(backend.getId()));
+            assertEquals(6, set.size());
+            assertEquals(4, set.countLeaves());
+            assertEquals(4, set.countRemainingLeaves());
+            assertEquals(3, set.countLeaves(release.getId()));
+            assertEquals(1, set.countLeaves(api.getId()));
+
+            set.updateTaskState(api.getId(), true);
+            assertEquals(2, set.countRemainingLeaves(release.getId()));
+            assertFalse(set.getTask(backend.getId()).isDone());
+            set.updateTaskState(worker.getId(), true);
+            assertTrue(set.getTask(backend.getId()).isDone());
+            assertFalse(set.getTask(release.getId()).isDone());
+            set.updateTaskState(frontend.getId(), true);
+            assertTrue(set.getTask(release.getId()).isDone());
+            assertEquals(1, set.countRemainingLeaves());
+
+            set.updateTaskState(other.getId(), true);
+            assertEquals(0, set.countRemainingLeaves());
+            assertEquals(6, set.countDone());
+
+            set.updateTaskState(worker.getId(), false);
+            assertFalse(set.getTask(backend.getId()).isDone());
+            assertFalse(set.getTask(release.getId()).isDone());
+            assertEquals(1, set.countRemainingLeaves());
+            assertEquals(3, set.countDone());
+        }
+    }
+
+    /**
+     * Ensures changing the state of a task with subtasks applies it to its leaves.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testCascade() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            long root = buildTree(set, 3, 3);
+            assertEquals(27, set.countLeaves());
+
+            set.updateTaskState(root, true);
+            assertEquals(0, set.countRemainingLeaves());
+            assertEquals(set.size(), set.countDone());
+
+            long child = set.getSubtasks(root).get(1).getId();
+            set.updateTaskState(child, false);
+            assertEquals(9, set.countRemainingLeaves());
+            assertFalse(set.getTask(root).isDone());
+            assertEquals(set.size() - 9 - 3 - 1 - 1, set.countDone());
+
+            set.updateAllTaskStates(true);
+            assertEquals(0, set.countRemainingLeaves());
+        }
+    }
+
+    /**
+     * Ensures removing a task removes its subtasks, and that its parent is updated.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testRemoval() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            long root = buildTree(set, 2, 2);
+            List<Task> children = set.getSubtasks(root);
+            assertEquals(7, set.size());
+
+            set.removeTask(children.get(0).getId());
+            assertEquals(4, set.size());
+            assertEquals(2, set.countLeaves());
+            assertEquals(2, set.countLeaves(root));
+
+            for (Task leaf : set.getSubtasks(children.get(1).getId())) {
+                set.updateTaskState(leaf.getId(), true);
+            }
+            assertTrue(set.getTask(root).isDone());
+            assertEquals(4, set.removeDoneTasks().size());
+            assertTrue(set.isEmpty());
+            assertEquals(0, set.countLeaves());
+
+            // a parent losing its subtasks becomes a leaf again
+            Task parent = new Task("Parent");
+            Task child = new Task("Child");
+            set.addTask(parent);
+            set.addSubtask(parent.getId(), child);
+            set.updateTaskState(child.getId(), true);
+            set.removeTask(child);
+            assertEquals(1, set.countLeaves());
+            assertEquals(0, set.countRemainingLeaves());
+
+            try {
+                set.addSubtask(child.getId(), new Task("Orphan"));
+                fail("A subtask cannot be added to a missing task");
+            } catch (TaskNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Ensures a task cannot become a subtask of its own subtasks.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycle() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        long root = buildTree(set, 2, 1);
+        set.addSubtask(set.getSubtasks(root).get(0).getId(), set.getTask(root));
+    }
+
+    /**
+     * Ensures snapshots keep the subtasks of the set.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testSnapshots() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        long root = buildTree(set, 2, 2);
+        long leaf = set.getSubtasks(set.getSubtasks(root).get(0).getId()).get(0).getId();
+        set.updateTaskState(leaf, true);
+
+        TaskSet snapshot = set.snapshot();
+        set.removeTask(root);
+        assertEquals(root, snapshot.getParentId(snapshot.getParentId(leaf)));
+        assertEquals(4, snapshot.countLeaves());
+        assertEquals(3, snapshot.countRemainingLeaves());
+        assertEquals(1, snapshot.countRemainingLeaves(snapshot.getParentId(leaf)));
+    }
+
+    /**
+     * Ensures the counts remain exact when leaves of the same tree are toggled by several threads.
+     *
+     * @throws Exception if a thread fails
+     */
+    @Test
+    public void testConcurrentRollUp() throws Exception {
+        final TaskSet set = new TaskSet(TaskSet.Storage.CONCURRENT);
+        final long root = buildTree(set, 4, 5);
+        final List<Long> leaves = new ArrayList<>();
+        for (Task task : set) {
+            if (set.countLeaves(task.getId()) == 1) {
+                leaves.add(task.getId());
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        set.updateTaskState(leaves.get(random.nextInt(leaves.size())), random.nextBoolean());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int remaining = 0;
+        for (long leaf : leaves) {
+            remaining += set.getTask(leaf).isDone() ? 0 : 1;
+        }
+        assertEquals(remaining, set.countRemainingLeaves());
+        assertEquals(remaining, set.countRemainingLeaves(root));
+        assertEquals(remaining == 0, set.getTask(root).isDone());
+        set.updateAllTaskStates(true);
+        assertEquals(0, set.countRemainingLeaves());
+    }
+
+    /**
+     * Adds a tree of unfinished tasks to a set.
+     *
+     * @param set    the set
+     * @param depth  the number of levels below the root
+     * @param degree the number of subtasks of each task which is not a leaf
+     * @return the ID of the root
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    private static long buildTree(TaskSet set, int depth, int degree) throws TaskNotFoundException {
+        Task root = new Task("Root");
+        set.addTask(root);
+        List<Long> level = Arrays.asList(root.getId());
+        for (int d = 1; d <= depth; d++) {
+            List<Long> next = new ArrayList<>();
+            for (long parent : level) {
+                for (int i = 0; i < degree; i++) {
+                    Task child = new Task("Level " + d + ", task " + i);
+                    set.addSubtask(parent, child);
+                    next.add(child.getId());
+                }
+            }
+            level = next;
+        }
+        return root.getId();
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A benchmark measuring the time and memory costs of the operations of a {@link TaskSet} and of its indexes on large
+ * sets.
+ * <p/>
+ * The measures are logged rather than asserted, as they depend on the machine and on its load: the benchmark is not
+ * part of the unit tests, and can be run from the test classpath through its {@link #main(String[]) main} method.
+ * The times are the best or the average of a few runs after a warm-up, which gives an order of magnitude rather than
+ * a precise comparison.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class TaskSetBenchmark {
+
+    /**
+     * The logger the measures are written to.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TaskSetBenchmark.class.getName());
+
+    /**
+     * Private constructor for utility class.
+     */
+    private TaskSetBenchmark() {
+    }
+
+    /**
+     * Runs all the measures.
+     *
+     * @param args the arguments, which are ignored
+     * @throws Exception if a measure fails
+     */
+    public static void main(String[] args) throws Exception {
+        measureUpdates();
+        measureConcurrentThroughput();
+        measureFootprint();
+        measureSnapshots();
+        measurePartitionedIteration();
+        measureReprioritizations();
+        measureDueQueries();
+        measureRollUp();
+        measureTagFilters();
+        measureLabelQueries();
+    }
+
+    /**
+     * Measures the cost of updating a task by its ID, which should not depend on the size of the set.
+     *
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    static void measureUpdates() throws TaskNotFoundException {
+        final int operations = 200_000;
+        Random random = new Random(42);
+
+        // warm up
+        timeUpdates(buildSet(TaskSet.Storage.LINKED, 1_000), operations, random);
+
+        for (int size = 1_000; size <= 1_000_000; size *= 10) {
+            long nanos = timeUpdates(buildSet(TaskSet.Storage.LINKED, size), operations, random);
+            LOGGER.info(String.format("%,d tasks: %d ns per update", size, nanos / operations));
+        }
+    }
+
+    /**
+     * Compares the throughput of the concurrent storage to the one of the linked storage under a global lock, with
+     * several threads performing lookups (90%) and updates (10%).
+     *
+     * @throws Exception if a thread fails
+     */
+    static void measureConcurrentThroughput() throws Exception {
+        final int size = 100_000;
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final int operations = 200_000;
+
+        for (int run = 0; run < 2; run++) {
+            // the first run is a warm-up
+            long linked = timeMixedLoad(buildSet(TaskSet.Storage.LINKED, size), true, threads, operations);
+            long concurrent = timeMixedLoad(buildSet(TaskSet.Storage.CONCURRENT, size), false, threads, operations);
+            if (run > 0) {
+                LOGGER.info(String.format(
+                        "%d threads: %,d ops/s with a locked linked storage, %,d ops/s with a concurrent storage",
+                        threads, throughput(threads, operations, linked), throughput(threads, operations, concurrent)));
+            }
+        }
+    }
+
+    /**
+     * Compares the heap used by a million tasks in the linked and the compact storages.
+     */
+    static void measureFootprint() {
+        final int size = 1_000_000;
+        long linked = measureHeap(TaskSet.Storage.LINKED, size);
+        long compact = measureHeap(TaskSet.Storage.COMPACT, size);
+        LOGGER.info(String.format("%,d tasks: %,d bytes in linked storage, %,d bytes in compact storage", size,
+                linked, compact));
+    }
+
+    /**
+     * Compares the cost of a first snapshot to the one of the snapshots following a few changes, which should depend
+     * on the number of changes rather than on the size of the set.
+     *
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    static void measureSnapshots() throws TaskNotFoundException {
+        final int size = 1_000_000;
+        final int changes = 100;
+        Random random = new Random(42);
+        TaskSet set = buildSet(TaskSet.Storage.LINKED, size);
+        long[] ids = ids(set);
+
+        long start = System.nanoTime();
+        set.snapshot();
+        long full = System.nanoTime() - start;
+
+        long incremental = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < changes; i++) {
+                long taskId = ids[random.nextInt(ids.length)];
+                set.updateTaskState(taskId, !set.getTask(taskId).isDone());
+            }
+            start = System.nanoTime();
+            set.snapshot();
+            incremental += System.nanoTime() - start;
+        }
+        LOGGER.info(String.format("%,d tasks: first snapshot in %,d ns, then %,d ns after %d changes", size, full,
+                incremental / 10, changes));
+    }
+
+    /**
+     * Compares the iteration over the few unfinished tasks of a large set to the iteration over the whole set, in
+     * each storage.
+     */
+    static void measurePartitionedIteration() {
+        final int size = 1_000_000;
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            for (int i = 0; i < size; i++) {
+                set.addTask(new Task("Task", i % 10_000 != 0));
+            }
+
+            long full = 0;
+            long remaining = 0;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                count(set.iterator());
+                full += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                count(set.remainingIterator());
+                remaining += System.nanoTime() - start;
+            }
+            LOGGER.info(String.format(
+                    "%s storage: %,d ns to iterate over %,d tasks, %,d ns over the %d unfinished ones", storage,
+                    full / 3, size, remaining / 3, size / 10_000));
+        }
+    }
+
+    /**
+     * Compares the cost of reprioritizing a task in small and large sets, which should be logarithmic.
+     *
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    static void measureReprioritizations() throws TaskNotFoundException {
+        long small = timeReprioritizations(buildSet(TaskSet.Storage.PRIORITY, 1_000));
+        long large = timeReprioritizations(buildSet(TaskSet.Storage.PRIORITY, 1_000_000));
+        LOGGER.info(String.format("Reprioritization: %,d ns among 1,000 tasks, %,d ns among 1,000,000 tasks", small,
+                large));
+    }
+
+    /**
+     * Compares the cost of a due date query in small and large sets, which should not depend on the number of tasks
+     * outside the period.
+     */
+    static void measureDueQueries() {
+        long small = timeDueQueries(1_000);
+        long large = timeDueQueries(500_000);
+        LOGGER.info(String.format("Due date query: %,d ns among 1,000 tasks, %,d ns among 500,000 tasks", small,
+                large));
+    }
+
+    /**
+     * Compares the cost of toggling a leaf in small and large trees of the same depth, which should not depend on the
+     * size of the tree.
+     *
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    static void measureRollUp() throws TaskNotFoundException {
+        long small = timeToggles(buildTreeSet(4, 2));
+        long large = timeToggles(buildTreeSet(4, 20));
+        LOGGER.info(String.format("Leaf toggle: %,d ns in a tree of 16 leaves, %,d ns in a tree of 160,000 leaves",
+                small, large));
+    }
+
+    /**
+     * Measures the evaluation of a filter combining tags and states over a million tasks.
+     *
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    static void measureTagFilters() throws TaskNotFoundException {
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        String[] tags = {"ops", "daily", "dev", "home", "urgent"};
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            Task task = new Task("Task " + i, random.nextInt(4) == 0);
+            set.addTask(task);
+            for (String tag : tags) {
+                if (random.nextInt(4) == 0) {
+                    set.addTag(task.getId(), tag);
+                }
+            }
+        }
+
+        TaskFilter filter = TaskFilter.tag("ops").and(TaskFilter.tag("daily")).andNot(TaskFilter.done())
+                .andNot(TaskFilter.tag("home").or(TaskFilter.tag("urgent")));
+        int runs = 200;
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                count = set.count(filter);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / runs);
+        }
+        LOGGER.info(String.format("1,000,000 tasks: %,d ns per filter matching %,d tasks", best, count));
+    }
+
+    /**
+     * Measures the queries of a label index over a million tasks.
+     */
+    static void measureLabelQueries() {
+        final int size = 1_000_000;
+        final int queries = 1_000;
+        Random random = new Random(42);
+
+        String[] vocabulary = new String[2_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        TaskSet set = new TaskSet();
+        List<String[]> labels = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String[] words = {pick(vocabulary, random), pick(vocabulary, random), pick(vocabulary, random)};
+            set.addTask(new Task(words[0] + " " + words[1] + " " + words[2]));
+            if (i % (size / queries) == 0) {
+                labels.add(words);
+            }
+        }
+        LabelIndex index = new LabelIndex(set, true);
+
+        for (int run = 0; run < 2; run++) {
+            // the first run is a warm-up
+            long words = 0;
+            long substrings = 0;
+            long approximate = 0;
+            for (String[] label : labels) {
+                long start = System.nanoTime();
+                index.search(label[0] + " " + label[1]);
+                words += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                index.searchSubstring(label[0].substring(1, 5) + " " + label[2].substring(0, 4));
+                substrings += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                index.searchApproximate(typo(label[1]) + " " + label[2], 1);
+                approximate += System.nanoTime() - start;
+            }
+
+            if (run > 0) {
+                LOGGER.info(String.format(
+                        "%,d tasks: %,d ns per word query, %,d ns per substring query, %,d ns per approximate query",
+                        size, words / queries, substrings / queries, approximate / queries));
+            }
+        }
+    }
+
+    /**
+     * Builds a set of unfinished tasks.
+     *
+     * @param storage the storage of the set
+     * @param size    the number of tasks
+     * @return the set
+     */
+    private static TaskSet buildSet(TaskSet.Storage storage, int size) {
+        TaskSet set = new TaskSet(storage);
+        for (int i = 0; i < size; i++) {
+            set.addTask(new Task("Task"));
+        }
+        return set;
+    }
+
+    /**
+     * Builds a set containing a single tree of unfinished tasks.
+     *
+     * @param depth  the number of levels below the root
+     * @param degree the number of subtasks of each task which is not a leaf
+     * @return the set
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    private static TaskSet buildTreeSet(int depth, int degree) throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task root = new Task("Root");
+        set.addTask(root);
+        List<Long> level = Arrays.asList(root.getId());
+        for (int d = 1; d <= depth; d++) {
+            List<Long> next = new ArrayList<>();
+            for (long parent : level) {
+                for (int i = 0; i < degree; i++) {
+                    Task child = new Task("Level " + d + ", task " + i);
+                    set.addSubtask(parent, child);
+                    next.add(child.getId());
+                }
+            }
+            level = next;
+        }
+        return set;
+    }
+
+    /**
+     * Returns the IDs of the tasks of a set.
+     *
+     * @param set the set
+     * @return the IDs, in the order of the set
+     */
+    private static long[] ids(TaskSet set) {
+        long[] ids = new long[set.size()];
+        int i = 0;
+        for (Task task : set) {
+            ids[i++] = task.getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Counts the tasks returned by an iterator.
+     *
+     * @param iterator the iterator
+     * @return the number of tasks
+     */
+    private static int count(Iterator<Task> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Measures the total time of random updates.
+     *
+     * @param set        the set
+     * @param operations the number of updates
+     * @param random     the source of the updated tasks
+     * @return the total time, in nanoseconds
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    private static long timeUpdates(TaskSet set, int operations, Random random) throws TaskNotFoundException {
+        long[] ids = ids(set);
+        long start = System.nanoTime();
+        for (int op = 0; op < operations; op++) {
+            set.updateTaskState(ids[random.nextInt(ids.length)], (op & 1) == 0);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Measures the time several threads need to perform random lookups and updates.
+     *
+     * @param set        the set
+     * @param locked     whether the operations are performed under a global lock
+     * @param threads    the number of threads
+     * @param operations the number of operations of each thread
+     * @return the total time, in nanoseconds
+     * @throws Exception if a thread fails
+     */
+    private static long timeMixedLoad(TaskSet set, boolean locked, int threads, int operations) throws Exception {
+        long[] ids = ids(set);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < operations; op++) {
+                    long taskId = ids[random.nextInt(ids.length)];
+                    boolean update = random.nextInt(10) == 0;
+                    if (locked) {
+                        synchronized (set) {
+                            mixedOperation(set, taskId, update);
+                        }
+                    } else {
+                        mixedOperation(set, taskId, update);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        return elapsed;
+    }
+
+    /**
+     * Looks a task up, or toggles its state.
+     *
+     * @param set    the set
+     * @param taskId the ID of the task
+     * @param update {@code true} to toggle the state of the task
+     * @throws TaskNotFoundException if the task cannot be found
+     */
+    private static void mixedOperation(TaskSet set, long taskId, boolean update) throws TaskNotFoundException {
+        if (update) {
+            set.updateTaskState(taskId, !set.getTask(taskId).isDone());
+        } else {
+            set.getTask(taskId).isDone();
+        }
+    }
+
+    /**
+     * Computes a throughput.
+     *
+     * @param threads    the number of threads
+     * @param operations the number of operations of each thread
+     * @param nanos      the total time, in nanoseconds
+     * @return the number of operations per second
+     */
+    private static long throughput(int threads, int operations, long nanos) {
+        return threads * (long) operations * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Measures the heap used by a set of unfinished tasks.
+     *
+     * @param storage the storage of the set
+     * @param size    the number of tasks
+     * @return the number of bytes
+     */
+    private static long measureHeap(TaskSet.Storage storage, int size) {
+        long before = usedHeap();
+        TaskSet set = buildSet(storage, size);
+        long used = usedHeap() - before;
+        // keep the set reachable until measured
+        LOGGER.fine(String.format("%,d tasks measured", set.size()));
+        return used;
+    }
+
+    /**
+     * Returns the heap in use, after requesting a few garbage collections.
+     *
+     * @return the number of bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Measures the best average time of random reprioritizations.
+     *
+     * @param set the set, in the priority storage
+     * @return the time of a reprioritization, in nanoseconds
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    private static long timeReprioritizations(TaskSet set) throws TaskNotFoundException {
+        long[] ids = ids(set);
+        Random random = new Random(42);
+        int operations = 200_000;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            for (int op = 0; op < operations; op++) {
+                set.setPriority(ids[random.nextInt(ids.length)], random.nextInt(100));
+            }
+            best = Math.min(best, (System.nanoTime() - start) / operations);
+        }
+        return best;
+    }
+
+    /**
+     * Measures the best average time of the query of the tasks due in the next hour, in a set where one task is due
+     * every minute from a time in the past.
+     *
+     * @param size the number of tasks in the set
+     * @return the time of a query, in nanoseconds
+     */
+    private static long timeDueQueries(int size) {
+        Instant now = Instant.now();
+        TaskSet set = new TaskSet();
+        Instant start = now.minusSeconds(60L * size / 2);
+        for (int i = 0; i < size; i++) {
+            Task task = new Task("Task " + i);
+            task.setDueDate(start.plusSeconds(60L * i));
+            set.addTask(task);
+        }
+
+        int runs = 2_000;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                set.getTasksDue(now, now.plusSeconds(3600));
+            }
+            best = Math.min(best, (System.nanoTime() - begin) / runs);
+        }
+        return best;
+    }
+
+    /**
+     * Measures the best average time needed to toggle the first leaf of a set.
+     *
+     * @param set the set
+     * @return the time of a toggle, in nanoseconds
+     * @throws TaskNotFoundException if a task cannot be found
+     */
+    private static long timeToggles(TaskSet set) throws TaskNotFoundException {
+        long leaf = 0;
+        for (Task task : set) {
+            if (set.countLeaves(task.getId()) == 1) {
+                leaf = task.getId();
+                break;
+            }
+        }
+
+        int toggles = 200_000;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < toggles; i++) {
+                set.updateTaskState(leaf, i % 2 == 0);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / toggles);
+        }
+        return best;
+    }
+
+    /**
+     * Generates a random word of 6 to 9 lowercase letters.
+     *
+     * @param random the source of the letters
+     * @return the word
+     */
+    static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 6 + random.nextInt(4); i > 0; i--) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Picks a random word of a vocabulary.
+     *
+     * @param vocabulary the vocabulary
+     * @param random     the source of the choice
+     * @return the word
+     */
+    static String pick(String[] vocabulary, Random random) {
+        return vocabulary[random.nextInt(vocabulary.length)];
+    }
+
+    /**
+     * Introduces a typo in a word, by replacing its third letter.
+     *
+     * @param word the word
+     * @return the misspelled word
+     */
+    static String typo(String word) {
+        char replaced = word.charAt(2) == 'z' ? 'a' : (char) (word.charAt(2) + 1);
+        return word.substring(0, 2) + replaced + word.substring(3);
+    }
+}
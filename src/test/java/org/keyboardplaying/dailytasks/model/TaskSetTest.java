@@ -16,9 +16,22 @@ import org.junit.Test;
 import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
 
 import java.rmi.UnexpectedException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -85,6 +98,523 @@ public class TaskSetTest {
         assertEquals(2, set.size());
     }
 
+    /**
+     * Ensures tasks can be looked up and removed by ID without altering the order of the other tasks.
+     */
+    @Test
+    public void testIdOperations() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Task task = new Task("Task " + i);
+            tasks.add(task);
+            set.addTask(task);
+        }
+
+        Task removed = tasks.remove(2);
+        assertSame(removed, set.getTask(removed.getId()));
+        assertSame(removed, set.removeTask(removed.getId()));
+        assertEquals(4, set.size());
+
+        // The removed task cannot be found anymore.
+        try {
+            set.removeTask(removed.getId());
+            fail();
+        } catch (TaskNotFoundException e) {
+            // this is expected
+        }
+
+        // Insertion order is preserved.
+        Iterator<Task> iter = set.iterator();
+        for (Task task : tasks) {
+            assertSame(task, iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    /**
+     * Ensures the counters are maintained whichever way the tasks are modified.
+     */
+    @Test
+    public void testCounters() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            assertCounts(set, 0, 0);
+
+            Task task1 = new Task("Task 1", true);
+            Task task2 = new Task("Task 2", false);
+            Task task3 = new DailyTask("Task 3", false);
+            set.addTask(task1);
+            set.addTask(task2);
+            set.addTask(task3);
+            set.addTask(task1);
+            assertCounts(set, 1, 2);
+
+            set.updateTaskState(task2.getId(), true);
+            assertCounts(set, 2, 1);
+            // updating to the same state changes nothing
+            set.updateTaskState(task2.getId(), true);
+            assertCounts(set, 2, 1);
+
+            set.removeTask(task1);
+            assertCounts(set, 1, 1);
+            set.removeTask(task3.getId());
+            assertCounts(set, 1, 0);
+        }
+
+        // In the linked storage, tasks can be modified directly.
+        TaskSet set = new TaskSet();
+        Task task = new Task("Task");
+        set.addTask(task);
+        task.setDone(true);
+        assertCounts(set, 1, 0);
+        set.removeTask(task);
+        task.setDone(false);
+        assertCounts(set, 0, 0);
+
+        // A task cannot be added to two sets, it must be removed from the first one.
+        set.addTask(task);
+        TaskSet other = new TaskSet();
+        try {
+            other.addTask(task);
+            fail("A task belonging to another set was added");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(other.containsTask(task.getId()));
+        set.removeTask(task);
+        other.addTask(task);
+        task.setDone(true);
+        assertCounts(set, 0, 0);
+        assertCounts(other, 1, 0);
+    }
+
+    /**
+     * Tests the operations updating several tasks at once.
+     */
+    @Test
+    public void testBatchOperations() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task task1 = new Task("Task 1");
+            Task task2 = new Task("Task 2");
+            Task task3 = new Task("Task 3");
+            Task absent = new Task("Absent");
+            set.addTask(task1);
+            set.addTask(task2);
+            set.addTask(task3);
+
+            // An unknown ID prevents the whole batch from being applied.
+            try {
+                set.updateTaskStates(Arrays.asList(task1.getId(), absent.getId()), true);
+                fail();
+            } catch (TaskNotFoundException e) {
+                // this is expected
+            }
+            assertCounts(set, 0, 3);
+            assertFalse(set.getTask(task1.getId()).isDone());
+
+            List<Task> updated = set.updateTaskStates(Arrays.asList(task3.getId(), task1.getId()), true);
+            assertEquals(2, updated.size());
+            assertEquals(task3, updated.get(0));
+            assertTrue(updated.get(0).isDone());
+            assertCounts(set, 2, 1);
+
+            set.updateAllTaskStates(true);
+            assertCounts(set, 3, 0);
+            set.updateAllTaskStates(false);
+            assertCounts(set, 0, 3);
+
+            set.updateTaskStates(Arrays.asList(task1.getId(), task2.getId()), true);
+            List<Task> removed = set.removeDoneTasks();
+            assertEquals(Arrays.asList(task1, task2), removed);
+            assertCounts(set, 0, 1);
+            assertTrue(set.containsTask(task3.getId()));
+            assertFalse(set.containsTask(task1.getId()));
+        }
+    }
+
+    /**
+     * Tests the removal of the one-off tasks finished before some time, whatever the storage.
+     */
+    @Test
+    public void testRemoveTasksDoneBefore() throws TaskNotFoundException {
+        long now = System.currentTimeMillis();
+        Instant yesterday = Instant.ofEpochMilli(now - 86_400_000L);
+        Instant later = Instant.ofEpochMilli(now + 3_600_000L);
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task old = new Task("Old");
+            Task recent = new Task("Recent");
+            Task open = new Task("Open");
+            Task daily = new DailyTask("Daily");
+            Task parent = new Task("Parent");
+            Task child = new Task("Child");
+            set.addTask(old);
+            set.addTask(recent);
+            set.addTask(open);
+            set.addTask(daily);
+            set.addTask(parent);
+            set.addSubtask(parent.getId(), child);
+
+            set.restoreTaskState(old.getId(), true, now - 10 * 86_400_000L);
+            set.restoreTaskState(child.getId(), true, now - 10 * 86_400_000L);
+            set.updateTaskState(recent.getId(), true);
+            set.updateTaskState(daily.getId(), true);
+            assertEquals(Instant.ofEpochMilli(now - 10 * 86_400_000L), set.getTask(old.getId()).getCompletionDate());
+            assertNull(set.getTask(open.getId()).getCompletionDate());
+
+            // the parent was finished along with its subtask, and the subtask is not removed without it
+            assertEquals(Arrays.asList(old), set.removeTasksDoneBefore(yesterday));
+            assertTrue(set.containsTask(child.getId()));
+
+            // the tasks which repeat are kept
+            assertEquals(Arrays.asList(recent, parent, child), set.removeTasksDoneBefore(later));
+            assertEquals(2, set.size());
+            assertTrue(set.containsTask(daily.getId()));
+            assertTrue(set.getTask(daily.getId()).isDone());
+        }
+    }
+
+    private static void assertCounts(TaskSet set, int done, int remaining) {
+        assertEquals(done, set.countDone());
+        assertEquals(remaining, set.countRemaining());
+    }
+
+    /**
+     * Tests the compact storage, whose tasks are rebuilt from columns.
+     */
+    @Test
+    public void testCompactStorage() throws TaskNotFoundException {
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        assertSame(TaskSet.Storage.COMPACT, set.getStorage());
+
+        List<Task> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Task task = i % 3 == 0 ? new DailyTask("Daily " + i, i % 2 == 0) : new Task("Task " + i, i % 2 == 0);
+            expected.add(task);
+            set.addTask(task);
+        }
+        // Adding a task twice has no effect.
+        set.addTask(expected.get(0));
+        assertEquals(100, set.size());
+
+        // Removing most tasks compacts the storage without altering the order.
+        for (int i = 99; i >= 0; i -= 2) {
+            set.removeTask(expected.remove(i).getId());
+        }
+        for (int i = 49; i >= 0; i -= 3) {
+            set.removeTask(expected.remove(i));
+        }
+        assertEquals(expected.size(), set.size());
+
+        // State changes are applied through the set.
+        Task updated = set.updateTaskState(expected.get(1).getId(), true);
+        assertTrue(updated.isDone());
+        assertTrue(set.getTask(updated.getId()).isDone());
+        expected.get(1).setDone(true);
+
+        Iterator<Task> iter = set.iterator();
+        for (Task task : expected) {
+            Task actual = iter.next();
+            assertEquals(task, actual);
+            assertSame(task.getClass(), actual.getClass());
+            assertEquals(task.getTodo(), actual.getTodo());
+            assertEquals(task.isDone(), actual.isDone());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    /**
+     * Ensures the concurrent storage remains consistent when modified by several threads at once.
+     */
+    @Test
+    public void testConcurrentModifications() throws Exception {
+        final int threads = 4;
+        final int tasksPerThread = 10_000;
+        TaskSet set = new TaskSet(TaskSet.Storage.CONCURRENT);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Task>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Task> kept = new ArrayList<>();
+                for (int i = 0; i < tasksPerThread; i++) {
+                    Task task = new Task(Thread.currentThread().getName() + " " + i);
+                    set.addTask(task);
+                    kept.add(task);
+
+                    // toggle one of our tasks, and remove one from time to time
+                    Task toggled = kept.get(random.nextInt(kept.size()));
+                    set.updateTaskState(toggled.getId(), !toggled.isDone());
+                    if (random.nextInt(4) == 0) {
+                        set.removeTask(kept.remove(random.nextInt(kept.size())).getId());
+                    }
+                }
+                return kept;
+            }));
+        }
+
+        List<List<Task>> kept = new ArrayList<>();
+        for (Future<List<Task>> future : futures) {
+            kept.add(future.get());
+        }
+        executor.shutdown();
+
+        // Counters match the content of the set.
+        int size = 0;
+        int done = 0;
+        for (Task task : set) {
+            size++;
+            done += task.isDone() ? 1 : 0;
+        }
+        assertEquals(size, set.size());
+        assertEquals(done, set.countDone());
+
+        // The IDs allocated by the threads never collided.
+        int expectedSize = 0;
+        for (List<Task> tasks : kept) {
+            expectedSize += tasks.size();
+        }
+        assertEquals(expectedSize, size);
+
+        // The tasks added by each thread are found in the order of their insertion.
+        for (List<Task> tasks : kept) {
+            Iterator<Task> iter = tasks.iterator();
+            Task expected = iter.next();
+            for (Task task : set) {
+                if (task == expected) {
+                    expected = iter.hasNext() ? iter.next() : null;
+                }
+            }
+            assertNull(expected);
+        }
+    }
+
+    /**
+     * Ensures a snapshot is not affected by the changes made to its set, whatever the storage.
+     */
+    @Test
+    public void testSnapshots() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task task1 = new Task("Task 1", true);
+            Task task2 = new DailyTask("Task 2");
+            Task task3 = new Task("Task 3");
+            set.addTask(task1);
+            set.addTask(task2);
+            set.addTask(task3);
+
+            TaskSet first = set.snapshot();
+            set.updateTaskState(task2.getId(), true);
+            set.removeTask(task1.getId());
+            Task task4 = new Task("Task 4");
+            set.addTask(task4);
+            TaskSet second = set.snapshot();
+
+            assertEquals(storage, first.getStorage());
+            assertEquals(Arrays.asList(task1, task2, task3), toList(first));
+            assertCounts(first, 1, 2);
+            assertFalse(first.getTask(task2.getId()).isDone());
+            assertTrue(first.getTask(task2.getId()) instanceof DailyTask);
+            assertFalse(first.containsTask(task4.getId()));
+
+            assertEquals(Arrays.asList(task2, task3, task4), toList(second));
+            assertCounts(second, 1, 2);
+            assertTrue(second.getTask(task2.getId()).isDone());
+            assertFalse(second.containsTask(task1.getId()));
+
+            // the tasks of a snapshot are copies
+            second.getTask(task3.getId()).setDone(true);
+            assertCounts(second, 1, 2);
+            assertFalse(set.getTask(task3.getId()).isDone());
+            assertSame(second, second.snapshot());
+            try {
+                second.addTask(new Task("Task 5"));
+                fail("A snapshot should not be modifiable.");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+
+            // a task removed then added again moves to the end
+            set.removeTask(task2.getId());
+            set.addTask(task2);
+            task3.setDone(true);
+            assertEquals(toList(set), toList(set.snapshot()));
+            assertCounts(set.snapshot(), set.countDone(), set.countRemaining());
+        }
+    }
+
+    /**
+     * Ensures the successive snapshots of a set randomly modified always match its content.
+     */
+    @Test
+    public void testSnapshotConsistency() throws TaskNotFoundException {
+        Random random = new Random(42);
+        TaskSet set = buildSet(1_000);
+        List<Task> tasks = toList(set);
+
+        for (int round = 0; round < 200; round++) {
+            for (int op = random.nextInt(20); op > 0; op--) {
+                Task task = tasks.get(random.nextInt(tasks.size()));
+                int action = random.nextInt(4);
+                if (action == 0 && set.containsTask(task.getId())) {
+                    set.removeTask(task.getId());
+                } else if (action == 1) {
+                    set.addTask(task);
+                } else if (set.containsTask(task.getId())) {
+                    set.updateTaskState(task.getId(), !set.getTask(task.getId()).isDone());
+                }
+            }
+
+            TaskSet snapshot = set.snapshot();
+            assertEquals(toList(set), toList(snapshot));
+            assertCounts(snapshot, set.countDone(), set.countRemaining());
+            for (Task task : set) {
+                assertEquals(task.isDone(), snapshot.getTask(task.getId()).isDone());
+            }
+        }
+    }
+
+    /**
+     * Ensures the partitioned iterators return the tasks in each state in insertion order, whatever the storage.
+     */
+    @Test
+    public void testPartitionedIteration() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            List<Task> tasks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Task task = i % 5 == 0 ? new DailyTask("Daily " + i, i % 3 == 0) : new Task("Task " + i, i % 3 == 0);
+                set.addTask(task);
+                tasks.add(task);
+            }
+            assertPartitions(set);
+
+            Random random = new Random(42);
+            for (int i = 0; i < 500; i++) {
+                Task task = tasks.get(random.nextInt(tasks.size()));
+                if (!set.containsTask(task.getId())) {
+                    set.addTask(task);
+                } else if (random.nextInt(10) == 0) {
+                    set.removeTask(task.getId());
+                } else if (storage == TaskSet.Storage.COMPACT || random.nextBoolean()) {
+                    set.updateTaskState(task.getId(), !set.getTask(task.getId()).isDone());
+                } else {
+                    // the tasks of the compact storage are flyweights, the others notify their set
+                    Task stored = set.getTask(task.getId());
+                    stored.setDone(!stored.isDone());
+                }
+            }
+            assertPartitions(set);
+            assertPartitions(set.snapshot());
+
+            set.updateAllTaskStates(true);
+            assertFalse(set.remainingIterator().hasNext());
+            assertPartitions(set);
+            set.removeDoneTasks();
+            assertFalse(set.doneIterator().hasNext());
+            assertPartitions(set);
+        }
+    }
+
+    private static void assertPartitions(TaskSet set) {
+        List<Task> remaining = new ArrayList<>();
+        List<Task> done = new ArrayList<>();
+        for (Task task : set) {
+            (task.isDone() ? done : remaining).add(task);
+        }
+        assertEquals(remaining, toList(set.remainingIterator(), false));
+        assertEquals(done, toList(set.doneIterator(), true));
+        assertCounts(set, done.size(), remaining.size());
+    }
+
+    private static List<Task> toList(Iterator<Task> iterator, boolean done) {
+        List<Task> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            assertEquals(done, task.isDone());
+            list.add(task);
+        }
+        return list;
+    }
+
+    /**
+     * Ensures the priority storage iterates from the highest priority to the lowest, in insertion order for ties.
+     */
+    @Test
+    public void testPriorityOrdering() throws TaskNotFoundException {
+        TaskSet set = new TaskSet(TaskSet.Storage.PRIORITY);
+        Task low = new Task("Low");
+        Task first = new Task("First");
+        Task second = new Task("Second", true);
+        Task high = new Task("High");
+        set.addTask(low);
+        set.addTask(first);
+        set.addTask(second);
+        set.addTask(high);
+        set.setPriority(low.getId(), -1);
+        set.setPriority(high.getId(), 10);
+        assertEquals(Arrays.asList(high, first, second, low), toList(set));
+        assertEquals(-1, set.getPriority(low.getId()));
+
+        set.setPriority(high.getId(), 0);
+        assertEquals(Arrays.asList(first, second, high, low), toList(set));
+        assertEquals(Arrays.asList(first, high, low), toList(set.remainingIterator(), false));
+
+        // state changes do not disturb an iteration in progress
+        List<Task> iterated = new ArrayList<>();
+        for (Task task : set) {
+            iterated.add(task);
+            set.updateTaskState(task.getId(), !task.isDone());
+        }
+        assertEquals(Arrays.asList(first, second, high, low), iterated);
+        assertPartitions(set);
+
+        // snapshots keep the priorities
+        TaskSet snapshot = set.snapshot();
+        set.setPriority(low.getId(), 20);
+        assertEquals(Arrays.asList(first, second, high, low), toList(snapshot));
+        assertEquals(Arrays.asList(low, first, second, high), toList(set));
+
+        try {
+            for (Task task : set) {
+                set.setPriority(task.getId(), -5);
+            }
+            fail("Reprioritizing a task during an iteration should fail");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+
+        try {
+            new TaskSet().setPriority(low.getId(), 1);
+            fail("Only the priority storage can be reprioritized");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static List<Task> toList(TaskSet set) {
+        List<Task> list = new ArrayList<>(set.size());
+        for (Task task : set) {
+            list.add(task);
+        }
+        return list;
+    }
+
+    private static TaskSet buildSet(int size) {
+        return buildSet(TaskSet.Storage.LINKED, size);
+    }
+
+    private static TaskSet buildSet(TaskSet.Storage storage, int size) {
+        TaskSet set = new TaskSet(storage);
+        for (int i = 0; i < size; i++) {
+            set.addTask(new Task("Task"));
+        }
+        return set;
+    }
+
     /**
      * Checks a task state in a set.
      *
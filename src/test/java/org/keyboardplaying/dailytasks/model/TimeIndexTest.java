@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the due dates of the {@link TaskSet} class, maintained by {@link TimeIndex}, and the {@link DueDateView}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class TimeIndexTest {
+
+    /**
+     * The current time of the tests.
+     */
+    private static final Instant NOON = Instant.parse("2026-10-18T12:00:00Z");
+
+    /**
+     * Ensures range queries return the unfinished tasks due in the period, whatever the storage.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testRangeQueries() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task late = new Task("Late");
+            late.setDueDate(NOON.minusSeconds(3600));
+            Task soon = new Task("Soon");
+            Task later = new DailyTask("Later");
+            set.addTask(new Task("Whenever"));
+            set.addTask(late);
+            set.addTask(soon);
+            set.addTask(later);
+            set.setDueDate(soon.getId(), NOON.plusSeconds(600));
+            set.setDueDate(later.getId(), NOON.plusSeconds(7200));
+
+            assertEquals(NOON.plusSeconds(600), set.getTask(soon.getId()).getDueDate());
+            assertEquals(ids(late), ids(set.getOverdueTasks(NOON)));
+            assertEquals(ids(soon), ids(set.getTasksDue(NOON, NOON.plusSeconds(3600))));
+            assertEquals(ids(late, soon, later),
+                ids(set.getTasksDue(NOON.minusSeconds(86400), NOON.plusSeconds(86400))));
+
+            // finished tasks are not due
+            set.updateTaskState(late.getId(), true);
+            assertEquals(Collections.emptyList(), set.getOverdueTasks(NOON));
+
+            // moved and removed due dates
+            set.setDueDate(later.getId(), NOON.minusSeconds(60));
+            set.setDueDate(soon.getId(), null);
+            assertEquals(ids(later), ids(set.getOverdueTasks(NOON)));
+            assertEquals(Collections.emptyList(), set.getTasksDue(NOON, NOON.plusSeconds(86400)));
+
+            set.removeTask(later.getId());
+            assertEquals(Collections.emptyList(), set.getOverdueTasks(NOON));
+        }
+    }
+
+    /**
+     * Ensures due dates set directly on a task of the set are indexed, even when the index does not exist yet.
+     */
+    @Test
+    public void testDirectChanges() {
+        TaskSet set = new TaskSet();
+        Task task = new Task("Task");
+        set.addTask(task);
+
+        task.setDueDate(NOON);
+        assertEquals(ids(task), ids(set.getOverdueTasks(NOON.plusSeconds(1))));
+        task.setDueDate(NOON.plusSeconds(60));
+        assertEquals(Collections.emptyList(), set.getOverdueTasks(NOON.plusSeconds(1)));
+    }
+
+    /**
+     * Ensures finished tasks leave the index until they are reopened, so that overdue queries do not go through them.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testFinishedTasksNotIndexed() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task finished = new Task("Finished", true);
+        finished.setDueDate(NOON.minusSeconds(60));
+        Task task = new Task("Task");
+        task.setDueDate(NOON.minusSeconds(120));
+        set.addTask(finished);
+        set.addTask(task);
+        TimeIndex index = new TimeIndex(set);
+        set.addListener(index, true);
+
+        assertEquals(Collections.singletonList(task.getId()), index.getTaskIds(Long.MIN_VALUE, NOON.toEpochMilli()));
+        set.updateTaskState(task.getId(), true);
+        assertEquals(Collections.emptyList(), index.getTaskIds(Long.MIN_VALUE, NOON.toEpochMilli()));
+        set.updateTaskState(finished.getId(), false);
+        assertEquals(Collections.singletonList(finished.getId()),
+                index.getTaskIds(Long.MIN_VALUE, NOON.toEpochMilli()));
+    }
+
+    /**
+     * Ensures snapshots keep the due dates of the set as they were when taken.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testSnapshots() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task task = new Task("Task");
+        set.addTask(task);
+        set.setDueDate(task.getId(), NOON);
+
+        TaskSet snapshot = set.snapshot();
+        set.setDueDate(task.getId(), NOON.plusSeconds(3600));
+
+        assertEquals(NOON, snapshot.getTask(task.getId()).getDueDate());
+        assertEquals(ids(task), ids(snapshot.getOverdueTasks(NOON.plusSeconds(1))));
+        assertEquals(Collections.emptyList(), set.getOverdueTasks(NOON.plusSeconds(1)));
+        assertEquals(NOON.plusSeconds(3600), set.snapshot().getTask(task.getId()).getDueDate());
+    }
+
+    /**
+     * Ensures views follow the time of their clock and report whether they changed.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testViews() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task yesterday = new Task("Yesterday");
+        Task morning = new Task("Morning");
+        Task afternoon = new Task("Afternoon");
+        Task tomorrow = new Task("Tomorrow");
+        yesterday.setDueDate(NOON.minusSeconds(86400));
+        morning.setDueDate(NOON.minusSeconds(3 * 3600));
+        afternoon.setDueDate(NOON.plusSeconds(1800));
+        tomorrow.setDueDate(NOON.plusSeconds(86400));
+        for (Task task : Arrays.asList(yesterday, morning, afternoon, tomorrow)) {
+            set.addTask(task);
+        }
+
+        Clock clock = Clock.fixed(NOON, ZoneOffset.UTC);
+        DueDateView overdue = new DueDateView(set, DueDateView.Window.OVERDUE, clock);
+        DueDateView nextHour = new DueDateView(set, DueDateView.Window.NEXT_HOUR, clock);
+        DueDateView today = new DueDateView(set, DueDateView.Window.TODAY, clock);
+        assertEquals(ids(yesterday, morning), ids(overdue.getTasks()));
+        assertEquals(ids(afternoon), ids(nextHour.getTasks()));
+        assertEquals(ids(morning, afternoon), ids(today.getTasks()));
+
+        // the day depends on the time zone of the clock
+        DueDateView todayInHawaii = new DueDateView(set, DueDateView.Window.TODAY,
+                clock.withZone(ZoneOffset.ofHours(-10)));
+        assertEquals(ids(afternoon), ids(todayInHawaii.getTasks()));
+
+        assertFalse(overdue.refresh());
+        set.updateTaskState(yesterday.getId(), true);
+        assertTrue(overdue.refresh());
+        assertEquals(ids(morning), ids(overdue.getTasks()));
+    }
+
+    /**
+     * Ensures a range query returns the tasks due in the period only, among tasks due every minute.
+     */
+    @Test
+    public void testRangeQuery() {
+        TaskSet set = new TaskSet();
+        Instant start = NOON.minusSeconds(60L * 500);
+        for (int i = 0; i < 1_000; i++) {
+            Task task = new Task("Task " + i);
+            task.setDueDate(start.plusSeconds(60L * i));
+            set.addTask(task);
+        }
+        assertEquals(60, set.getTasksDue(NOON, NOON.plusSeconds(3600)).size());
+    }
+
+    /**
+     * Returns the IDs of some tasks.
+     *
+     * @param tasks the tasks
+     * @return the IDs of the tasks, in the same order
+     */
+    private static List<Long> ids(Task... tasks) {
+        return ids(Arrays.asList(tasks));
+    }
+
+    /**
+     * Returns the IDs of some tasks.
+     *
+     * @param tasks the tasks
+     * @return the IDs of the tasks, in the same order
+     */
+    private static List<Long> ids(List<Task> tasks) {
+        List<Long> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
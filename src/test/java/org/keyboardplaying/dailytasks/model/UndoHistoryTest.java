@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.model;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link UndoHistory} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+public class UndoHistoryTest {
+
+    /**
+     * Ensures steps are undone and redone in order, whatever the storage.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testUndoRedo() throws TaskNotFoundException {
+        for (TaskSet.Storage storage : TaskSet.Storage.values()) {
+            TaskSet set = new TaskSet(storage);
+            Task first = new Task("First");
+            Task second = new Task("Second");
+            set.addTask(first);
+            set.addTask(second);
+            UndoHistory history = new UndoHistory(10);
+            assertFalse(history.canUndo());
+
+            set.updateTaskState(first.getId(), true);
+            history.record(first.getId(), true);
+            set.updateTaskStates(Arrays.asList(first.getId(), second.getId()), false);
+            history.record(Arrays.asList(first.getId(), second.getId()), false);
+
+            // the batch is undone as a whole
+            List<Task> updated = history.undo(set);
+            assertEquals(2, updated.size());
+            assertTrue(set.getTask(first.getId()).isDone());
+            assertTrue(set.getTask(second.getId()).isDone());
+
+            history.undo(set);
+            assertFalse(set.getTask(first.getId()).isDone());
+            assertFalse(history.canUndo());
+            assertTrue(history.undo(set).isEmpty());
+
+            history.redo(set);
+            assertTrue(set.getTask(first.getId()).isDone());
+            assertTrue(history.canRedo());
+
+            // a new step forgets the undone ones
+            set.updateTaskState(second.getId(), true);
+            history.record(second.getId(), true);
+            assertFalse(history.canRedo());
+            assertTrue(history.redo(set).isEmpty());
+        }
+    }
+
+    /**
+     * Ensures undoing a state change on a parent restores the previous states of its leaves.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testHierarchy() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task parent = new Task("Parent");
+        Task doneLeaf = new Task("Done leaf", true);
+        Task remainingLeaf = new Task("Remaining leaf");
+        set.addTask(parent);
+        set.addSubtask(parent.getId(), doneLeaf);
+        set.addSubtask(parent.getId(), remainingLeaf);
+        UndoHistory history = new UndoHistory(10);
+
+        List<Long> changed = UndoHistory.changedLeaves(set, Arrays.asList(parent.getId()), true);
+        assertEquals(Arrays.asList(remainingLeaf.getId()), changed);
+        set.updateTaskState(parent.getId(), true);
+        history.record(changed, true);
+        assertTrue(set.getTask(parent.getId()).isDone());
+
+        history.undo(set);
+        assertTrue(set.getTask(doneLeaf.getId()).isDone());
+        assertFalse(set.getTask(remainingLeaf.getId()).isDone());
+        assertFalse(set.getTask(parent.getId()).isDone());
+
+        history.redo(set);
+        assertTrue(set.getTask(doneLeaf.getId()).isDone());
+        assertTrue(set.getTask(remainingLeaf.getId()).isDone());
+        assertTrue(set.getTask(parent.getId()).isDone());
+    }
+
+    /**
+     * Ensures the history does not keep more steps than its capacity.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testCapacity() throws TaskNotFoundException {
+        TaskSet set = new TaskSet();
+        Task task = new Task("Task");
+        set.addTask(task);
+        UndoHistory history = new UndoHistory(3);
+
+        boolean done = false;
+        for (int i = 0; i < 5; i++) {
+            done = !done;
+            set.updateTaskState(task.getId(), done);
+            history.record(task.getId(), done);
+        }
+
+        int undone = 0;
+        while (!history.undo(set).isEmpty()) {
+            undone++;
+        }
+        assertEquals(3, undone);
+        // the three latest steps were undone: done, !done, done
+        assertFalse(set.getTask(task.getId()).isDone());
+    }
+
+    /**
+     * Ensures a step whose tasks were removed is dropped without altering the set.
+     *
+     * @throws TaskNotFoundException if a test task cannot be found
+     */
+    @Test
+    public void testRemovedTasks() throws TaskNotFoundException {
+        TaskSet set = new TaskSet(TaskSet.Storage.COMPACT);
+        Task kept = new Task("Kept");
+        Task removed = new Task("Removed");
+        set.addTask(kept);
+        set.addTask(removed);
+        UndoHistory history = new UndoHistory(10);
+
+        set.updateTaskState(kept.getId(), true);
+        history.record(kept.getId(), true);
+        set.updateTaskStates(Arrays.asList(kept.getId(), removed.getId()), false);
+        history.record(Arrays.asList(kept.getId(), removed.getId()), false);
+        set.removeTask(removed.getId());
+
+        assertTrue(history.undo(set).isEmpty());
+        assertFalse(set.getTask(kept.getId()).isDone());
+        assertFalse(history.canRedo());
+
+        // the older step is still available
+        history.undo(set);
+        assertFalse(set.getTask(kept.getId()).isDone());
+        history.redo(set);
+        assertTrue(set.getTask(kept.getId()).isDone());
+    }
+}
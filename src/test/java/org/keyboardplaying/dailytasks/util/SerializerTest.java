@@ -15,15 +15,28 @@ package org.keyboardplaying.dailytasks.util;
 import org.junit.Test;
 import org.keyboardplaying.dailytasks.exception.DeserializationException;
 import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.exception.TaskNotFoundException;
+import org.keyboardplaying.dailytasks.model.BinaryCodec;
 import org.keyboardplaying.dailytasks.model.DailyTask;
 import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskFilter;
 import org.keyboardplaying.dailytasks.model.TaskSet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Iterator;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -43,9 +56,9 @@ public class SerializerTest {
         byte[] serialized = Serializer.serialize(original);
         Task deserialized = Serializer.deserialize(serialized);
 
-        // Do not test for object equality: original and deserialized will not
-        // have the same ID.
-        // Make sure label and state are fine, though.
+        // The ID is persistent, so that the deserialized task equals the original.
+        assertEquals(original, deserialized);
+        assertEquals(original.getId(), deserialized.getId());
         assertEquals(original.getTodo(), deserialized.getTodo());
         assertEquals(original.isDone(), deserialized.isDone());
     }
@@ -59,9 +72,8 @@ public class SerializerTest {
         byte[] serialized = Serializer.serialize(original);
         DailyTask deserialized = Serializer.deserialize(serialized);
 
-        // Do not test for object equality: original and deserialized will not
-        // have the same ID.
-        // Make sure label and state are fine, though.
+        // The ID is persistent, so that the deserialized task equals the original.
+        assertEquals(original.getId(), deserialized.getId());
         assertEquals(original.getTodo(), deserialized.getTodo());
         // deserialized's done should always be false.
         assertFalse(original.isDone());
@@ -71,9 +83,8 @@ public class SerializerTest {
         serialized = Serializer.serialize(original);
         deserialized = Serializer.deserialize(serialized);
 
-        // Do not test for object equality: original and deserialized will not
-        // have the same ID.
-        // Make sure label and state are fine, though.
+        // The ID is persistent, so that the deserialized task equals the original.
+        assertEquals(original.getId(), deserialized.getId());
         assertEquals(original.getTodo(), deserialized.getTodo());
         // deserialized's done should always be false.
         assertTrue(original.isDone());
@@ -104,8 +115,269 @@ public class SerializerTest {
         while (iterL.hasNext()) {
             Task left = iterL.next();
             Task right = iterR.next();
+            assertEquals(left.getId(), right.getId());
             assertEquals(left.getTodo(), right.getTodo());
             assertEquals(left.isDone(), right.isDone());
         }
     }
+
+    /**
+     * Tests serialization and deserialization of a compact {@link TaskSet}.
+     */
+    @Test
+    public void testCompactTaskSetSerialization() throws SerializationException, DeserializationException {
+        TaskSet original = new TaskSet(TaskSet.Storage.COMPACT);
+        original.addTask(new Task("Task", true));
+        original.addTask(new DailyTask("Daily", true));
+
+        TaskSet result = Serializer.deserialize(Serializer.serialize(original));
+
+        assertSame(TaskSet.Storage.COMPACT, result.getStorage());
+        Iterator<Task> iter = result.iterator();
+        Task task = iter.next();
+        assertEquals("Task", task.getTodo());
+        assertTrue(task.isDone());
+        task = iter.next();
+        assertTrue(task instanceof DailyTask);
+        assertEquals("Daily", task.getTodo());
+        assertFalse(task.isDone());
+        assertFalse(iter.hasNext());
+    }
+
+    /**
+     * Tests the serialization of a {@link TaskSet} containing subtasks, whose derived states must be restored.
+     */
+    @Test
+    public void testSubtaskSerialization() throws SerializationException, DeserializationException,
+            TaskNotFoundException {
+        TaskSet original = new TaskSet();
+        Task parent = new Task("Release");
+        Task task = new Task("Tag");
+        Task daily = new DailyTask("Deploy");
+        original.addTask(parent);
+        original.addSubtask(parent.getId(), task);
+        original.addSubtask(parent.getId(), daily);
+        original.updateAllTaskStates(true);
+        assertTrue(original.getTask(parent.getId()).isDone());
+
+        TaskSet result = Serializer.deserialize(Serializer.serialize(original.snapshot()));
+
+        assertEquals(parent.getId(), result.getParentId(task.getId()));
+        assertEquals(parent.getId(), result.getParentId(daily.getId()));
+        assertEquals(2, result.countLeaves());
+        // the daily task was reset, so the parent is no longer finished
+        assertEquals(1, result.countRemainingLeaves());
+        assertFalse(result.getTask(parent.getId()).isDone());
+    }
+
+    /**
+     * Tests the serialization of the tags of a {@link TaskSet}.
+     */
+    @Test
+    public void testTagSerialization() throws SerializationException, DeserializationException,
+            TaskNotFoundException {
+        TaskSet original = new TaskSet(TaskSet.Storage.COMPACT);
+        Task task = new Task("Check backups");
+        original.addTask(task);
+        original.addTask(new Task("Untagged"));
+        original.addTag(task.getId(), "ops");
+        original.addTag(task.getId(), "daily");
+
+        TaskSet result = Serializer.deserialize(Serializer.serialize(original));
+
+        assertEquals(original.getTags(task.getId()), result.getTags(task.getId()));
+        assertEquals(1, result.count(TaskFilter.tag("ops").and(TaskFilter.tag("daily"))));
+    }
+
+    /**
+     * Tests the serialization of a {@link TaskSet} ordered by priority.
+     */
+    @Test
+    public void testPriorityTaskSetSerialization() throws SerializationException, DeserializationException,
+            TaskNotFoundException {
+        TaskSet original = new TaskSet(TaskSet.Storage.PRIORITY);
+        Task low = new Task("Low");
+        Task high = new Task("High");
+        original.addTask(low);
+        original.addTask(new Task("Default"));
+        original.addTask(high);
+        original.setPriority(low.getId(), -3);
+        original.setPriority(high.getId(), 7);
+
+        TaskSet result = Serializer.deserialize(Serializer.serialize(original.snapshot()));
+
+        assertSame(TaskSet.Storage.PRIORITY, result.getStorage());
+        assertEquals(7, result.getPriority(high.getId()));
+        Iterator<Task> iterL = original.iterator();
+        for (Task task : result) {
+            assertEquals(iterL.next().getId(), task.getId());
+        }
+    }
+
+    /**
+     * Tests the serialization of due dates, including in a compact {@link TaskSet}.
+     */
+    @Test
+    public void testDueDateSerialization() throws SerializationException, DeserializationException,
+            TaskNotFoundException {
+        Instant dueDate = Instant.parse("2026-10-18T12:00:00Z");
+        Task task = new Task("Task");
+        task.setDueDate(dueDate);
+        DailyTask daily = new DailyTask("Daily");
+        daily.setDueDate(dueDate.plusSeconds(60));
+
+        assertEquals(dueDate, Serializer.<Task>deserialize(Serializer.serialize(task)).getDueDate());
+        assertEquals(daily.getDueDate(), Serializer.<Task>deserialize(Serializer.serialize(daily)).getDueDate());
+
+        TaskSet original = new TaskSet(TaskSet.Storage.COMPACT);
+        original.addTask(task);
+        original.addTask(daily);
+        original.addTask(new Task("Whenever"));
+
+        TaskSet result = Serializer.deserialize(Serializer.serialize(original));
+
+        assertEquals(dueDate, result.getTask(task.getId()).getDueDate());
+        assertEquals(2, result.getOverdueTasks(dueDate.plusSeconds(3600)).size());
+    }
+
+    /**
+     * Tests the deserialization of a set saved before the IDs were persistent, containing a finished {@link Task}
+     * labelled "Task" and a {@link DailyTask} labelled "Daily".
+     */
+    @Test
+    public void testLegacyTaskSetDeserialization() throws DeserializationException {
+        byte[] serialized = Base64.getDecoder().decode("rO0ABXNyACxvcmcua2V5Ym9hcmRwbGF5aW5nLmRhaWx5dGFza3MubW9kZWwu"
+                + "VGFza1NldPDa241HZ1yfAgABTAAFdGFza3N0AA9MamF2YS91dGlsL1NldDt4cHNyABdqYXZhLnV0aWwuTGlua2VkSGFzaFNldNhs"
+                + "11qV3SoeAgAAeHIAEWphdmEudXRpbC5IYXNoU2V0ukSFlZa4tzQDAAB4cHcMAAAAED9AAAAAAAACc3IAKW9yZy5rZXlib2FyZHBs"
+                + "YXlpbmcuZGFpbHl0YXNrcy5tb2RlbC5UYXNrXfbdKxJiuyECAAJaAARkb25lTAAEdG9kb3QAEkxqYXZhL2xhbmcvU3RyaW5nO3hw"
+                + "AXQABFRhc2tzcgAub3JnLmtleWJvYXJkcGxheWluZy5kYWlseXRhc2tzLm1vZGVsLkRhaWx5VGFzaxAjLPsTOEADDAAAeHEAfgAG"
+                + "dAAFRGFpbHl4eA==");
+
+        TaskSet result = Serializer.deserialize(serialized);
+
+        assertEquals(2, result.size());
+        Iterator<Task> iter = result.iterator();
+        Task task = iter.next();
+        assertEquals("Task", task.getTodo());
+        assertTrue(task.isDone());
+        Task daily = iter.next();
+        assertTrue(daily instanceof DailyTask);
+        assertEquals("Daily", daily.getTodo());
+
+        // the tasks were given new IDs, which are not allocated again
+        assertNotEquals(task.getId(), daily.getId());
+        Task created = new Task("New task");
+        assertNotEquals(task.getId(), created.getId());
+        assertNotEquals(daily.getId(), created.getId());
+    }
+
+    /**
+     * Ensures the sets saved with the Java serialization by previous versions are still read, and saved again in the
+     * binary format.
+     */
+    @Test
+    public void testJavaSerializedTaskSetMigration() throws IOException, SerializationException,
+            DeserializationException, TaskNotFoundException {
+        TaskSet original = new TaskSet();
+        Task parent = new Task("Release");
+        Task task = new Task("Tag", true);
+        original.addTask(parent);
+        original.addSubtask(parent.getId(), task);
+        original.addTag(task.getId(), "git");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(output)) {
+            oos.writeObject(original);
+        }
+        assertFalse(BinaryCodec.isEncoded(output.toByteArray()));
+
+        TaskSet result = Serializer.deserialize(output.toByteArray());
+        assertEquals(parent.getId(), result.getParentId(task.getId()));
+        assertTrue(result.getTask(task.getId()).isDone());
+        assertEquals(original.getTags(task.getId()), result.getTags(task.getId()));
+
+        byte[] serialized = Serializer.serialize(result);
+        assertTrue(BinaryCodec.isEncoded(serialized));
+        assertTrue(serialized.length < output.size());
+        assertEquals(2, Serializer.<TaskSet>deserialize(serialized).size());
+    }
+
+    /**
+     * Ensures a compact set written with the Java serialization, whose tasks are streamed from its columns, is read
+     * with its tasks in order.
+     */
+    @Test
+    public void testJavaSerializedCompactTaskSet() throws IOException, DeserializationException {
+        TaskSet original = new TaskSet(TaskSet.Storage.COMPACT);
+        for (int i = 0; i < 1_000; i++) {
+            original.addTask(new Task("Task " + i, i % 3 == 0));
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(output)) {
+            oos.writeObject(original);
+        }
+        TaskSet result = Serializer.deserialize(output.toByteArray());
+        assertSame(TaskSet.Storage.COMPACT, result.getStorage());
+        assertEquals(original.size(), result.size());
+        assertEquals(original.countDone(), result.countDone());
+        Iterator<Task> expected = original.iterator();
+        for (Task task : result) {
+            Task next = expected.next();
+            assertEquals(next, task);
+            assertEquals(next.getTodo(), task.getTodo());
+        }
+    }
+
+    /**
+     * Tests the stream methods, with both formats and on streams which do not support marks.
+     */
+    @Test
+    public void testStreams() throws SerializationException, DeserializationException, IOException {
+        TaskSet original = new TaskSet();
+        for (int i = 0; i < 1_000; i++) {
+            original.addTask(new Task("Task " + i, i % 2 == 0));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Serializer.writeTo(original, output);
+
+        output.write(42);
+        InputStream input = new FilterInputStream(new ByteArrayInputStream(output.toByteArray())) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        TaskSet result = Serializer.readFrom(input);
+        assertEquals(original.size(), result.size());
+        assertEquals(original.countDone(), result.countDone());
+        // the stream is not read past the end of the object
+        assertEquals(42, input.read());
+
+        // objects which are not tasks are written with the Java serialization
+        output.reset();
+        Serializer.writeTo(Instant.EPOCH, output);
+        assertFalse(BinaryCodec.isEncoded(output.toByteArray()));
+        assertEquals(Instant.EPOCH, Serializer.readFrom(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    /**
+     * Ensures the labels of deserialized tasks are shared with the existing tasks.
+     */
+    @Test
+    public void testDeserializedLabelsAreShared() throws SerializationException, DeserializationException {
+        TaskSet original = new TaskSet();
+        original.addTask(new Task("Check backups"));
+        original.addTask(new DailyTask("Review alerts"));
+        byte[] serialized = Serializer.serialize(original);
+
+        TaskSet first = Serializer.deserialize(serialized);
+        TaskSet second = Serializer.deserialize(serialized);
+
+        Iterator<Task> iterL = first.iterator();
+        Iterator<Task> iterR = second.iterator();
+        while (iterL.hasNext()) {
+            assertSame(iterL.next().getTodo(), iterR.next().getTodo());
+        }
+    }
 }
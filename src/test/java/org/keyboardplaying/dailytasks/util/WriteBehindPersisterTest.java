@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link WriteBehindPersister} class.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class WriteBehindPersisterTest {
+
+    /**
+     * Ensures the values submitted within the delay are merged into a single write, which does not block the
+     * submitting thread.
+     */
+    @Test
+    public void testCoalescing() throws InterruptedException {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        try (WriteBehindPersister<Integer> persister = new WriteBehindPersister<>("test-persister", 100,
+                Integer::sum, value -> {
+                    written.add(value);
+                    latch.countDown();
+                })) {
+            for (int i = 1; i <= 10; i++) {
+                persister.submit(i);
+            }
+            assertEquals(10, persister.getQueueDepth());
+            assertTrue(written.isEmpty());
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(55), written);
+            // wait for the end of the write before reading its metrics
+            persister.flush();
+            assertEquals(0, persister.getQueueDepth());
+            assertEquals(1, persister.getWriteCount());
+            assertTrue(persister.getMaxWriteNanos() >= persister.getAverageWriteNanos());
+        }
+    }
+
+    /**
+     * Ensures flushing writes the pending value at once, and that a failed write does not stop the next ones.
+     */
+    @Test
+    public void testFlush() {
+        List<String> written = new ArrayList<>();
+        WriteBehindPersister<String> persister = new WriteBehindPersister<>("test-persister", 60_000,
+                (earlier, later) -> later, value -> {
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("Nothing to write");
+                    }
+                    written.add(value);
+                });
+        persister.submit("");
+        persister.flush();
+        persister.submit("first");
+        persister.submit("second");
+        persister.flush();
+        assertEquals(Collections.singletonList("second"), written);
+        assertEquals(2, persister.getWriteCount());
+
+        // closing writes the pending value, and the values submitted afterwards are ignored
+        persister.submit("third");
+        persister.close();
+        persister.submit("fourth");
+        persister.flush();
+        assertEquals(2, written.size());
+        assertEquals("third", written.get(1));
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util.codec;
+
+import org.keyboardplaying.dailytasks.model.DailyTask;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A benchmark measuring the size of the data written by codecs, and the throughput at which they write and read it.
+ * <p/>
+ * The benchmark can be run on any sample, so that the codec best suited to the actual data can be selected. The
+ * times are averaged over a few runs after a short warm-up, which gives an order of magnitude rather than a precise
+ * comparison.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+final class CodecBenchmark {
+
+    /**
+     * The number of runs performed to warm up a codec before measuring it.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Private constructor for utility class.
+     */
+    private CodecBenchmark() {
+    }
+
+    /**
+     * Measures a codec on a sample.
+     *
+     * @param codec  the codec, which must support the sample
+     * @param sample the object to write and read
+     * @param runs   the number of measured runs
+     * @return the measures
+     * @throws IOException            if the codec fails to write or read the sample
+     * @throws ClassNotFoundException if the codec fails to read the sample
+     */
+    public static Result run(Codec codec, Serializable sample, int runs) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            out.reset();
+            codec.encode(sample, out);
+            codec.decode(new ByteArrayInputStream(out.toByteArray()));
+        }
+        byte[] data = out.toByteArray();
+
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int i = 0; i < runs; i++) {
+            out.reset();
+            long start = System.nanoTime();
+            codec.encode(sample, out);
+            encodeNanos += System.nanoTime() - start;
+
+            ByteArrayInputStream in = new ByteArrayInputStream(data);
+            start = System.nanoTime();
+            codec.decode(in);
+            decodeNanos += System.nanoTime() - start;
+        }
+        return new Result(codec, data.length, encodeNanos / runs, decodeNanos / runs);
+    }
+
+    /**
+     * Measures all the available codecs which support a sample.
+     *
+     * @param sample the object to write and read
+     * @param runs   the number of measured runs for each codec
+     * @return the measures, in the order of the {@link Codecs#getCodecs() codecs}
+     * @throws IOException            if a codec fails to write or read the sample
+     * @throws ClassNotFoundException if a codec fails to read the sample
+     */
+    public static List<Result> run(Serializable sample, int runs) throws IOException, ClassNotFoundException {
+        List<Result> results = new ArrayList<>();
+        for (Codec codec : Codecs.getCodecs()) {
+            if (codec.supports(sample)) {
+                results.add(run(codec, sample, runs));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Creates a set resembling the lists of the users, to be used as a sample.
+     *
+     * @param size the number of tasks
+     * @return a set holding one-off tasks, a third of them being finished, and a daily task out of ten
+     */
+    public static TaskSet createSample(int size) {
+        TaskSet set = new TaskSet();
+        for (int i = 0; i < size; i++) {
+            set.addTask(i % 10 == 0 ? new DailyTask("Daily task #" + i) : new Task("Task #" + i, i % 3 == 0));
+        }
+        return set;
+    }
+
+    /**
+     * The measures of a codec on a sample.
+     */
+    public static final class Result {
+
+        /**
+         * The measured codec.
+         */
+        private final Codec codec;
+        /**
+         * The number of bytes written for the sample.
+         */
+        private final int size;
+        /**
+         * The average time to write the sample, in nanoseconds.
+         */
+        private final long encodeNanos;
+        /**
+         * The average time to read the sample, in nanoseconds.
+         */
+        private final long decodeNanos;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param codec       the measured codec
+         * @param size        the number of bytes written for the sample
+         * @param encodeNanos the average time to write the sample, in nanoseconds
+         * @param decodeNanos the average time to read the sample, in nanoseconds
+         */
+        Result(Codec codec, int size, long encodeNanos, long decodeNanos) {
+            this.codec = codec;
+            this.size = size;
+            this.encodeNanos = encodeNanos;
+            this.decodeNanos = decodeNanos;
+        }
+
+        /**
+         * Returns the measured codec.
+         *
+         * @return the codec
+         */
+        public Codec getCodec() {
+            return codec;
+        }
+
+        /**
+         * Returns the number of bytes written for the sample.
+         *
+         * @return the size of the data
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the average time to write the sample.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        /**
+         * Returns the average time to read the sample.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        /**
+         * Returns the throughput at which the sample is written.
+         *
+         * @return the number of bytes written per second
+         */
+        public double getEncodeThroughput() {
+            return throughput(encodeNanos);
+        }
+
+        /**
+         * Returns the throughput at which the sample is read.
+         *
+         * @return the number of bytes read per second
+         */
+        public double getDecodeThroughput() {
+            return throughput(decodeNanos);
+        }
+
+        /**
+         * Returns the throughput at which the data is processed.
+         *
+         * @param nanos the time to process the data, in nanoseconds
+         * @return the number of bytes processed per second
+         */
+        private double throughput(long nanos) {
+            return nanos == 0 ? Double.POSITIVE_INFINITY : size * 1e9 / nanos;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-8s %,12d bytes, encoded in %,12d ns (%,8.1f MB/s), decoded in %,12d ns (%,8.1f MB/s)",
+                    codec.getName(), size, encodeNanos, getEncodeThroughput() / 1e6, decodeNanos,
+                    getDecodeThroughput() / 1e6);
+        }
+    }
+}
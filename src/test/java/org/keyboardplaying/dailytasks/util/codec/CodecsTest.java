@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.keyboardplaying.dailytasks.util.codec;
+
+import org.junit.Test;
+import org.keyboardplaying.dailytasks.exception.DeserializationException;
+import org.keyboardplaying.dailytasks.exception.SerializationException;
+import org.keyboardplaying.dailytasks.model.Task;
+import org.keyboardplaying.dailytasks.model.TaskSet;
+import org.keyboardplaying.dailytasks.util.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link Codecs} class and the {@link CodecBenchmark}.
+ *
+ * @author Cyrille Chopelet (https://keyboardplaying.org)
+ */
+@SuppressWarnings("javadoc")
+public class CodecsTest {
+
+    /**
+     * Ensures the data written by each codec is read back with the same codec.
+     */
+    @Test
+    public void testDetection() throws SerializationException, DeserializationException {
+        TaskSet original = CodecBenchmark.createSample(100);
+        for (Codec codec : Codecs.getCodecs()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Serializer.writeTo(original, out, codec);
+            byte[] data = out.toByteArray();
+            assertSame(codec, Codecs.forHeader(data[0] & 0xFF));
+
+            TaskSet result = Serializer.deserialize(data);
+            assertEquals(original.size(), result.size());
+            Iterator<Task> iterL = original.iterator();
+            for (Task task : result) {
+                Task expected = iterL.next();
+                assertEquals(expected.getId(), task.getId());
+                assertEquals(expected.isDone(), task.isDone());
+            }
+        }
+
+        assertSame(StandardCodec.JSON, Codecs.forName("JSON"));
+        assertNull(Codecs.forName("xml"));
+        assertNull(Codecs.forHeader('<'));
+    }
+
+    /**
+     * Tests the selection of the codec with the system property.
+     */
+    @Test
+    public void testSelection() throws SerializationException {
+        TaskSet tasks = CodecBenchmark.createSample(10);
+        try {
+            assertSame(Codecs.DEFAULT_CODEC, Codecs.getDefault());
+
+            System.setProperty(Codecs.CODEC_PROPERTY, "json");
+            assertSame(StandardCodec.JSON, Codecs.getDefault());
+            assertEquals('{', Serializer.serialize(tasks)[0]);
+            // the objects the codec does not support are written with the Java serialization
+            assertEquals(StandardCodec.JAVA.getHeader(), Serializer.serialize(Instant.EPOCH)[0] & 0xFF);
+
+            System.setProperty(Codecs.CODEC_PROPERTY, "unknown");
+            assertSame(Codecs.DEFAULT_CODEC, Codecs.getDefault());
+        } finally {
+            System.clearProperty(Codecs.CODEC_PROPERTY);
+        }
+    }
+
+    /**
+     * Runs the benchmark on all the codecs.
+     */
+    @Test
+    public void testBenchmark() throws IOException, ClassNotFoundException {
+        List<CodecBenchmark.Result> results = CodecBenchmark.run(CodecBenchmark.createSample(20_000), 5);
+
+        assertEquals(Codecs.getCodecs().size(), results.size());
+        CodecBenchmark.Result smallest = results.get(0);
+        for (CodecBenchmark.Result result : results) {
+            Logger.getLogger(getClass().getName()).info(result.toString());
+            assertTrue(result.getSize() > 0);
+            assertTrue(result.getEncodeThroughput() > 0);
+            assertTrue(result.getDecodeThroughput() > 0);
+            if (result.getSize() < smallest.getSize()) {
+                smallest = result;
+            }
+        }
+        assertSame(StandardCodec.BINARY, smallest.getCodec());
+    }
+}